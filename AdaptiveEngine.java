@@ -0,0 +1,169 @@
+package enigma;
+
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** The engine that chooses, for each run of characters, whichever of
+ *  the interpreted, run-length, compiled and parallel engines an
+ *  EngineProfile says will be quickest.  The choice depends on how long
+ *  the current segment (the characters converted under the current key)
+ *  is likely to be, taken to be at least as long again as it has been so
+ *  far, and on the alphabet size, the number of rotor slots and the
+ *  number of processors.  The profile is read from its file when the
+ *  engine is made or, failing that, measured before the engine converts
+ *  its first characters (and saved, if there is a file to save it in),
+ *  so that even the first segment is converted by the engine it suits.
+ *  The number of characters given to each engine is recorded for
+ *  usage().
+ *  @author Amy Kwon
+ */
+class AdaptiveEngine implements Engine {
+
+    /** The name of this engine. */
+    static final String NAME = "auto";
+
+    /** An engine taking its profile from PROFILE, if it exists, and
+     *  otherwise measuring one when first needed and saving it there.
+     *  PROFILE may be null, in which case nothing is saved. */
+    AdaptiveEngine(File profile) {
+        this(new Shared(profile), new CompiledEngine());
+    }
+
+    /** An engine sharing SHARED with the engines it is forked from, and
+     *  using COMPILED as its compiled engine. */
+    private AdaptiveEngine(Shared shared, CompiledEngine compiled) {
+        _shared = shared;
+        _compiled = compiled;
+        _parallelCompiled = new ParallelEngine(_compiled, PROCESSORS);
+        _parallelRunLength = new ParallelEngine(_runLength, PROCESSORS);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Engine fork() {
+        return new AdaptiveEngine(_shared, (CompiledEngine) _compiled.fork());
+    }
+
+    @Override
+    public String usage() {
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, LongAdder> e
+                 : new TreeMap<String, LongAdder>(_shared.used).entrySet()) {
+            result.append(result.length() == 0 ? "" : ", ")
+                .append(e.getKey()).append(' ').append(e.getValue().sum());
+        }
+        return result.length() == 0 ? NAME : NAME + " (" + result + ")";
+    }
+
+    @Override
+    public void convert(Machine machine, int[] buf, int from, int len) {
+        Engine engine = choose(machine, len);
+        engine.convert(machine, buf, from, len);
+        _shared.used.computeIfAbsent(engine.name(), k -> new LongAdder())
+            .add(len);
+    }
+
+    /** Return the engine to convert the next LEN characters with
+     *  MACHINE. */
+    Engine choose(Machine machine, int len) {
+        long remaining = Math.max(len, machine.offset());
+        EngineProfile profile = _shared.profile;
+        if (profile == null) {
+            profile = _shared.profile(machine);
+        }
+        int slots = machine.numRotors();
+        Engine best = _interpreted;
+        double perChar = profile.interpreted(slots);
+        if (profile.runLength(slots) < perChar) {
+            best = _runLength;
+            perChar = profile.runLength(slots);
+        }
+        double compiled = profile.compiled(slots) * remaining;
+        if (!_compiled.prepared(machine)) {
+            compiled += profile.setup(machine.alphabet().size(), slots);
+            if (!PathCompiler.compiled(slots)) {
+                compiled += profile.compiler();
+            }
+        }
+        if (compiled < perChar * remaining) {
+            best = _compiled;
+            perChar = profile.compiled(slots);
+        }
+        if (best != _interpreted) {
+            ParallelEngine parallel =
+                best == _compiled ? _parallelCompiled : _parallelRunLength;
+            int chunks = parallel.chunks(len);
+            double split = perChar * len / chunks
+                + profile.thread() * (chunks - 1);
+            if (chunks > 1 && split < perChar * len) {
+                return parallel;
+            }
+        }
+        return best;
+    }
+
+    /** What is shared among an engine and those forked from it. */
+    private static class Shared {
+
+        /** Shared state with a profile kept in FILE (or nowhere, if
+         *  null). */
+        Shared(File file) {
+            this.file = file;
+            if (file != null && file.exists()) {
+                profile = EngineProfile.read(file);
+            }
+        }
+
+        /** Return the profile, measuring it with MACHINE if need be. */
+        synchronized EngineProfile profile(Machine machine) {
+            if (profile == null) {
+                EngineProfile measured = EngineProfile.calibrate(machine);
+                if (file != null) {
+                    measured.write(file);
+                }
+                profile = measured;
+            }
+            return profile;
+        }
+
+        /** The profile, or null if not yet read or measured. */
+        private volatile EngineProfile profile;
+
+        /** Number of characters converted by each engine, by name. */
+        private final ConcurrentHashMap<String, LongAdder> used =
+            new ConcurrentHashMap<String, LongAdder>();
+
+        /** File holding the profile, or null. */
+        private final File file;
+    }
+
+    /** Number of processors available. */
+    private static final int PROCESSORS =
+        Runtime.getRuntime().availableProcessors();
+
+    /** State shared with the engines I was forked from or fork. */
+    private final Shared _shared;
+
+    /** The interpreted engine. */
+    private final Engine _interpreted = new InterpretedEngine();
+
+    /** The run-length engine. */
+    private final Engine _runLength = new RunLengthEngine();
+
+    /** The compiled engine. */
+    private final CompiledEngine _compiled;
+
+    /** The parallel engine, converting chunks with _compiled. */
+    private final ParallelEngine _parallelCompiled;
+
+    /** The parallel engine, converting chunks by runs. */
+    private final ParallelEngine _parallelRunLength;
+
+}
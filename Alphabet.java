@@ -2,11 +2,22 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Every character has a class,
+ *  found in a table built once: its index if it is in the alphabet, or
+ *  PASS or DROP if not, saying whether text converted with passthrough
+ *  (see Machine.convertPassthrough) keeps it as it is or leaves it out.
  *  @author Amy Kwon
  */
 class Alphabet {
 
+    /** Class of characters outside the alphabet that passthrough
+     *  keeps. */
+    static final int PASS = -1;
+
+    /** Class of characters outside the alphabet that passthrough
+     *  leaves out: control characters other than tabs. */
+    static final int DROP = -2;
+
     /** A new alphabet containing CHARS.  Character number #k has index
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
@@ -14,6 +25,14 @@ class Alphabet {
         if (nonAlphabet()) {
             throw error("Not an alphabet.");
         }
+        int last = TABLE - 1;
+        for (int i = 0; i < chars.length(); i += 1) {
+            last = Math.max(last, chars.charAt(i));
+        }
+        _classes = new int[last + 1];
+        for (int c = 0; c <= last; c += 1) {
+            _classes[c] = outsideClass((char) c);
+        }
         if (checkDuplicate()) {
             throw error("There are repeating alphabets.");
         }
@@ -31,12 +50,13 @@ class Alphabet {
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        for (int i = 0; i < this.size(); i += 1) {
-            if (this.toChar(i) == ch) {
-                return true;
-            }
-        }
-        return false;
+        return ch < _classes.length && _classes[ch] >= 0;
+    }
+
+    /** Returns the class of CH: its index if it is in this alphabet, and
+     *  otherwise PASS or DROP. */
+    int classOf(char ch) {
+        return ch < _classes.length ? _classes[ch] : outsideClass(ch);
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -51,10 +71,10 @@ class Alphabet {
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        if (!_alpha.contains(ch + "")) {
+        if (!contains(ch)) {
             throw error("char not in alphabet!");
         }
-        return _alpha.indexOf(ch);
+        return _classes[ch];
     }
 
     /** Alphabet contains an non-alphabet figure.
@@ -67,22 +87,34 @@ class Alphabet {
         return a || b || c || d;
     }
 
-    /** Alphabet contains a repeating letter.
+    /** Alphabet contains a repeating letter.  Enters each letter in
+     *  the class table as it goes.
      * @return true or false */
     boolean checkDuplicate() {
         for (int i = 0; i < size(); i += 1) {
-            for (int j = 0; j < size(); j += 1) {
-                if (i != j) {
-                    if (_alpha.charAt(i) == _alpha.charAt(j)) {
-                        return true;
-                    }
-                }
+            char ch = _alpha.charAt(i);
+            if (_classes[ch] >= 0 && _classes[ch] != i) {
+                return true;
             }
+            _classes[ch] = i;
         }
         return false;
     }
 
+    /** Returns the class of CH if it is not in any alphabet. */
+    private static int outsideClass(char ch) {
+        return Character.isISOControl(ch) && ch != '\t' ? DROP : PASS;
+    }
+
+    /** Number of characters always in the class table, so that looking
+     *  up the common ones needs no range check beyond the first. */
+    private static final int TABLE = 128;
+
     /** Common alphabet. */
     private String _alpha;
 
+    /** The class of each character up to the last in the alphabet (or
+     *  TABLE - 1, if greater). */
+    private final int[] _classes;
+
 }
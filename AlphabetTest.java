@@ -0,0 +1,63 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet class and passthrough
+ *  conversion.
+ *  @author Amy Kwon
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testClasses() {
+        Alphabet alpha = new Alphabet("AB\u00e9\u0416");
+        assertEquals(0, alpha.classOf('A'));
+        assertEquals(2, alpha.classOf('\u00e9'));
+        assertEquals(3, alpha.classOf('\u0416'));
+        assertEquals(Alphabet.PASS, alpha.classOf('C'));
+        assertEquals(Alphabet.PASS, alpha.classOf('\t'));
+        assertEquals(Alphabet.PASS, alpha.classOf('\u0417'));
+        assertEquals(Alphabet.PASS, alpha.classOf('\u4e00'));
+        assertEquals(Alphabet.DROP, alpha.classOf('\r'));
+        assertEquals(Alphabet.DROP, alpha.classOf('\u0085'));
+        assertTrue(alpha.contains('\u0416'));
+        assertFalse(alpha.contains('\u4e00'));
+    }
+
+    @Test
+    public void testPassthrough() {
+        Machine reference = machine("AADU", null, "(AQ)");
+        Machine tested = machine("AADU", null, "(AQ)");
+        tested.setEngine(new CompiledEngine());
+        String expected = reference.convert("HWORLDTAB").replace(" ", "");
+        assertEquals(expected.charAt(0) + "ello, " + expected.substring(1, 6)
+                     + "! 42 times\t" + expected.substring(6),
+                     tested.convertPassthrough("Hello, WORLD! 42 times\r\t"
+                                               + "TAB"));
+        assertEquals(Alphabet.PASS, tested.alphabet().classOf('\u00e9'));
+        assertEquals(Alphabet.DROP, tested.alphabet().classOf('\0'));
+    }
+
+    @Test
+    public void testPassthroughOnlyAlphabet() {
+        Machine reference = machine("AADU", null, "(AQ)");
+        Machine tested = machine("AADU", null, "(AQ)");
+        assertEquals(reference.convert("HELLOWORLD").replace(" ", ""),
+                     tested.convertPassthrough("HELLOWORLD"));
+        assertEquals("", tested.convertPassthrough(""));
+        assertEquals("\t, !", tested.convertPassthrough("\t,\0 !"));
+        assertArrayEquals(reference.positions(), tested.positions());
+    }
+
+}
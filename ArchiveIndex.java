@@ -0,0 +1,371 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A sparse index of a file of messages in the input format of Main,
+ *  allowing any stretch of any of its segments (the messages following
+ *  one settings line) to be converted without converting what comes
+ *  before it.  Building the index reads the file once, counting the
+ *  message characters of each line and moving a machine along by that
+ *  many steps without converting anything (see Machine.advance); every
+ *  STRIDE characters it records the state of the machine and the
+ *  position in the file of the character being reached, which may lie
+ *  inside a line.  Converting a stretch then starts from the nearest
+ *  recorded state before it.
+ *
+ *  As a command, the arguments
+ *      --extract CONFIG FILE SEGMENT FROM COUNT
+ *  print COUNT characters of segment number SEGMENT (numbering from 0)
+ *  of FILE, starting with its character number FROM (from 0).
+ *  @author Amy Kwon
+ */
+class ArchiveIndex {
+
+    /** Command-line option that selects extraction. */
+    static final String OPTION = "--extract";
+
+    /** Approximate number of characters between recorded states. */
+    static final long STRIDE = 1 << 16;
+
+    /** An index of FILE, whose settings lines refer to the rotors of
+     *  MACHINE, which is not changed. */
+    ArchiveIndex(Machine machine, File file) {
+        _machine = machine.copy();
+        _file = file;
+        _segments = new ArrayList<Segment>();
+        build();
+    }
+
+    /** Perform the extraction given by ARGS (see the class comment). */
+    static void extract(String[] args) {
+        if (args.length != 6) {
+            throw error("Usage: --extract CONFIG FILE SEGMENT FROM COUNT");
+        }
+        ArchiveIndex index = new ArchiveIndex(Main.configure(args[1]),
+                                              new File(args[2]));
+        String text;
+        try {
+            text = index.convert(Integer.parseInt(args[3]),
+                                 Long.parseLong(args[4]),
+                                 Long.parseLong(args[5]));
+        } catch (NumberFormatException excp) {
+            throw error("bad number in extraction arguments");
+        }
+        ArrayList<Character> chars = new ArrayList<Character>();
+        for (int i = 0; i < text.length(); i += 1) {
+            chars.add(text.charAt(i));
+        }
+        System.out.println(index._machine.convertToString(chars));
+    }
+
+    /** Return the number of segments in my file. */
+    int segments() {
+        return _segments.size();
+    }
+
+    /** Return the number of message characters in segment SEGMENT. */
+    long length(int segment) {
+        return segment(segment).length;
+    }
+
+    /** Return the number of states recorded along segment SEGMENT. */
+    int marks(int segment) {
+        return segment(segment).size;
+    }
+
+    /** Return the conversion of characters FROM .. FROM+COUNT-1 of
+     *  segment SEGMENT (fewer if the segment ends first), without the
+     *  grouping into blocks of five that Main applies. */
+    String convert(int segment, long from, long count) {
+        Segment seg = segment(segment);
+        if (from < 0 || count < 0) {
+            throw error("negative position or count");
+        }
+        if (from >= seg.length || count == 0) {
+            return "";
+        }
+        int k = Arrays.binarySearch(seg.marks, 0, seg.size, from);
+        if (k < 0) {
+            k = -k - 2;
+        }
+        Machine machine = _machine.copy();
+        machine.restore(seg.states.get(k));
+        Alphabet alpha = machine.alphabet();
+        StringBuilder result = new StringBuilder();
+        long skip = from - seg.marks[k];
+        try (RandomAccessFile file = new RandomAccessFile(_file, "r")) {
+            file.seek(seg.offsets[k]);
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(Channels.newInputStream(
+                    file.getChannel()), CHARSET));
+            String line;
+            boolean first = true;
+            while (result.length() < count
+                   && (line = in.readLine()) != null
+                   && (first || KeySwitcher.settingsStart(line) < 0)) {
+                first = false;
+                for (int i = 0; i < line.length(); i += 1) {
+                    char c = line.charAt(i);
+                    if (c == ' ') {
+                        continue;
+                    } else if (skip > 0) {
+                        skip -= 1;
+                        if (skip == 0) {
+                            machine.advance(from - seg.marks[k]);
+                        }
+                    } else if (result.length() < count) {
+                        int converted = machine.convert(alpha.toInt(c));
+                        result.append(alpha.toChar(converted));
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", _file);
+        }
+        return result.toString();
+    }
+
+    /** Return segment number K. */
+    private Segment segment(int k) {
+        if (k < 0 || k >= _segments.size()) {
+            throw error("no segment %d in %s", k, _file);
+        }
+        return _segments.get(k);
+    }
+
+    /** Read my file, recording its segments and the states of the
+     *  machine along them. */
+    private void build() {
+        KeySwitcher keys = new KeySwitcher(_machine);
+        LineBuffer line = new LineBuffer();
+        Segment seg = null;
+        long reached = 0;
+        long position = 0;
+        try (InputStream in = new FileInputStream(_file)) {
+            while (line.read(in)) {
+                long start = position;
+                position += line.bytes();
+                if (line.isSettings()) {
+                    String text = line.text();
+                    keys.apply(text, KeySwitcher.settingsStart(text));
+                    seg = new Segment();
+                    seg.mark(0, position, _machine.snapshot());
+                    _segments.add(seg);
+                    reached = 0;
+                    continue;
+                }
+                long letters = line.letters();
+                if (letters == 0) {
+                    continue;
+                } else if (seg == null) {
+                    throw error("Input does not start with a setting");
+                }
+                long end = seg.length + letters;
+                long due = seg.marks[seg.size - 1] + STRIDE;
+                long atLetter = seg.length;
+                int at = 0;
+                while (due < end) {
+                    long letter = Math.max(due, seg.length);
+                    at = line.skip(at, letter - atLetter);
+                    atLetter = letter;
+                    _machine.advance(letter - reached);
+                    reached = letter;
+                    seg.mark(letter, start + at, _machine.snapshot());
+                    due = letter + STRIDE;
+                }
+                seg.length = end;
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", _file);
+        }
+    }
+
+    /** The lines of a file, read one at a time as bytes. */
+    private static class LineBuffer {
+
+        /** Read the next line of IN, including its terminator, returning
+         *  false at the end of IN. */
+        boolean read(InputStream in) throws IOException {
+            _length = 0;
+            while (true) {
+                if (_next == _end) {
+                    _end = in.read(_chunk);
+                    _next = 0;
+                    if (_end <= 0) {
+                        _end = 0;
+                        return _length > 0;
+                    }
+                }
+                int i = _next;
+                while (i < _end && _chunk[i] != '\n') {
+                    i += 1;
+                }
+                boolean found = i < _end;
+                if (found) {
+                    i += 1;
+                }
+                int n = i - _next;
+                if (_length + n > _bytes.length) {
+                    _bytes = Arrays.copyOf(_bytes,
+                                           Math.max(2 * _bytes.length,
+                                                    _length + n));
+                }
+                System.arraycopy(_chunk, _next, _bytes, _length, n);
+                _length += n;
+                _next = i;
+                if (found) {
+                    return true;
+                }
+            }
+        }
+
+        /** Return the number of bytes in the line, with terminator. */
+        int bytes() {
+            return _length;
+        }
+
+        /** Return the number of bytes in the line, without terminator. */
+        int content() {
+            int n = _length;
+            if (n > 0 && _bytes[n - 1] == '\n') {
+                n -= 1;
+                if (n > 0 && _bytes[n - 1] == '\r') {
+                    n -= 1;
+                }
+            }
+            return n;
+        }
+
+        /** Return the line as text, without its terminator. */
+        String text() {
+            return new String(_bytes, 0, content(), CHARSET);
+        }
+
+        /** Return true iff the line is a settings line. */
+        boolean isSettings() {
+            int i = 0, n = content();
+            while (i < n && Character.isWhitespace(_bytes[i])) {
+                i += 1;
+            }
+            return i < n && _bytes[i] == '*'
+                && (i + 1 == n || Character.isWhitespace(_bytes[i + 1]));
+        }
+
+        /** Return the number of characters other than blanks in the
+         *  line, counting the bytes that start a character. */
+        long letters() {
+            long result = 0;
+            for (int i = 0, n = content(); i < n; i += 1) {
+                byte b = _bytes[i];
+                if (b != ' ' && (b & UTF8_CONTINUATION_MASK)
+                    != UTF8_CONTINUATION) {
+                    result += 1;
+                }
+            }
+            return result;
+        }
+
+        /** Return the position of the byte starting character number N
+         *  (counting from 0 and not counting blanks) after that at
+         *  position FROM, which starts a character or the line. */
+        int skip(int from, long n) {
+            int i = from, end = content();
+            while (true) {
+                while (i < end && (_bytes[i] == ' '
+                                   || (_bytes[i] & UTF8_CONTINUATION_MASK)
+                                   == UTF8_CONTINUATION)) {
+                    i += 1;
+                }
+                if (n == 0) {
+                    return i;
+                }
+                i += 1;
+                n -= 1;
+            }
+        }
+
+        /** Bytes of the line. */
+        private byte[] _bytes = new byte[INITIAL_LINE];
+
+        /** Bytes read from the file and not yet returned. */
+        private byte[] _chunk = new byte[CHUNK];
+
+        /** Position of the next unreturned byte of _chunk. */
+        private int _next;
+
+        /** Number of bytes in _chunk. */
+        private int _end;
+
+        /** Number of bytes of the line in _bytes. */
+        private int _length;
+    }
+
+    /** What is known about one segment. */
+    private static class Segment {
+
+        /** Record that character number LETTER starts at byte OFFSET of
+         *  the file, where the machine is in STATE. */
+        void mark(long letter, long offset, Checkpoint state) {
+            if (size == marks.length) {
+                marks = Arrays.copyOf(marks, 2 * size);
+                offsets = Arrays.copyOf(offsets, 2 * size);
+            }
+            marks[size] = letter;
+            offsets[size] = offset;
+            states.add(state);
+            size += 1;
+        }
+
+        /** Number of message characters. */
+        private long length;
+
+        /** Character numbers at which states were recorded. */
+        private long[] marks = new long[1];
+
+        /** Byte offset in the file of the character at each mark. */
+        private long[] offsets = new long[1];
+
+        /** State of the machine at each mark. */
+        private ArrayList<Checkpoint> states = new ArrayList<Checkpoint>();
+
+        /** Number of marks. */
+        private int size;
+    }
+
+    /** Character set of message files (that used by Main's Scanners). */
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    /** Number of bytes read from a file at a time. */
+    private static final int CHUNK = 1 << 16;
+
+    /** Initial capacity of a line buffer. */
+    private static final int INITIAL_LINE = 256;
+
+    /** Mask selecting the high bits of a UTF-8 continuation byte. */
+    private static final int UTF8_CONTINUATION_MASK = 0xC0;
+
+    /** High bits of a UTF-8 continuation byte. */
+    private static final int UTF8_CONTINUATION = 0x80;
+
+    /** Machine used to build the index, and copied to convert. */
+    private final Machine _machine;
+
+    /** The indexed file. */
+    private final File _file;
+
+    /** The segments of the file, in order. */
+    private final ArrayList<Segment> _segments;
+
+}
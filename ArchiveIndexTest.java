@@ -0,0 +1,84 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the ArchiveIndex class.
+ *  @author Amy Kwon
+ */
+public class ArchiveIndexTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return COUNT random letters from RANDOM, with a blank after every
+     *  fifth. */
+    private String letters(Random random, int count) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < count; i += 1) {
+            result.append((char) ('A' + random.nextInt(26)));
+            if (i % 5 == 4) {
+                result.append(' ');
+            }
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testLongLines() throws IOException {
+        Random random = new Random(30);
+        String[] keys = {
+            "B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+            "B Beta I II III AAAA",
+        };
+        String[] texts = {
+            letters(random, (int) (3.5 * ArchiveIndex.STRIDE)),
+            letters(random, 100) + "\n\n"
+            + letters(random, (int) (2 * ArchiveIndex.STRIDE)) + "\n"
+            + letters(random, 7),
+        };
+        StringBuilder file = new StringBuilder();
+        for (int s = 0; s < keys.length; s += 1) {
+            file.append("* ").append(keys[s]).append('\n')
+                .append(texts[s]).append('\n');
+        }
+        File path = File.createTempFile("archive", ".in");
+        path.deleteOnExit();
+        Files.write(path.toPath(), file.toString().getBytes());
+        File config = File.createTempFile("archive", ".conf");
+        config.deleteOnExit();
+        Files.write(config.toPath(), BatchTest.CONFIG.getBytes());
+        Machine machine = Main.configure(config.getPath());
+        ArchiveIndex index = new ArchiveIndex(machine, path);
+        assertEquals(2, index.segments());
+        assertEquals(4, index.marks(0));
+        Machine m = machine.copy();
+        KeySwitcher switcher = new KeySwitcher(m);
+        for (int s = 0; s < keys.length; s += 1) {
+            switcher.apply(keys[s]);
+            String all = m.convert(texts[s].replaceAll("[ \n]", ""))
+                .replace(" ", "");
+            assertEquals(all.length(), index.length(s));
+            for (int trial = 0; trial < 20; trial += 1) {
+                int from = random.nextInt(all.length());
+                int count = random.nextInt(2 * (int) ArchiveIndex.STRIDE);
+                assertEquals(all.substring(from, Math.min(all.length(),
+                                                          from + count)),
+                             index.convert(s, from, count));
+            }
+        }
+    }
+
+}
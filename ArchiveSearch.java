@@ -0,0 +1,426 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.EnigmaException.*;
+
+/** A search of an archive of messages in the input format of Main, whose
+ *  keys are known, for phrases of their plaintext, without writing the
+ *  plaintext anywhere.  The archive is read once, as a stream (gzip data
+ *  included; see Compression), by one thread, which only splits each
+ *  segment (the message characters following one settings line) into
+ *  chunks of CHUNK symbols (alphabet indices) and moves a machine along
+ *  each chunk without converting it (see Machine.advance), to record
+ *  the state at its start.  Chunks are converted and searched on the
+ *  common pool, several at once: each is converted from its recorded
+ *  state and run through an Aho-Corasick automaton over alphabet
+ *  indices, which finds every occurrence of every phrase in one pass,
+ *  without turning the indices back into characters.  Each chunk
+ *  starts with the last characters of the one before it, so that
+ *  phrases that cross from one to the next are found.
+ *
+ *  Matches are reported in the order of the archive, each with its
+ *  segment (numbered from 0) and the position in the segment of its
+ *  first character (from 0), as --extract takes them (see
+ *  ArchiveIndex).  Only a bounded number of chunks is in progress at
+ *  once, and once LIMIT matches are reported, reading stops and
+ *  chunks in progress are abandoned.
+ *
+ *  As a command, the arguments
+ *      --grep CONFIG FILE LIMIT PHRASE ...
+ *  print the first LIMIT (all, if LIMIT is 0) matches of the PHRASEs
+ *  in the plaintext of FILE, with the configuration CONFIG, one per
+ *  line as the segment, the position and the phrase.  Blanks in
+ *  phrases are ignored, as they are in messages.
+ *  @author Amy Kwon
+ */
+class ArchiveSearch {
+
+    /** Command-line option that selects searching. */
+    static final String OPTION = "--grep";
+
+    /** Number of new symbols in a chunk. */
+    static final int CHUNK = 1 << 16;
+
+    /** Largest number of entries of the transition table of the
+     *  automaton. */
+    static final int MAX_TABLE = 1 << 24;
+
+    /** Where matches go. */
+    interface Reporter {
+        /** Report a match of phrase number PHRASE at character OFFSET of
+         *  segment SEGMENT. */
+        void match(int segment, long offset, int phrase);
+    }
+
+    /** A search with MACHINE's configuration for PHRASES, stopping
+     *  after LIMIT matches (or never, if LIMIT is 0). */
+    ArchiveSearch(Machine machine, List<String> phrases, long limit) {
+        if (phrases.isEmpty() || limit < 0) {
+            throw error("nothing to search for");
+        }
+        _machine = machine.copy();
+        _limit = limit == 0 ? Long.MAX_VALUE : limit;
+        _phrases = new int[phrases.size()][];
+        Alphabet alpha = machine.alphabet();
+        int longest = 0;
+        for (int k = 0; k < _phrases.length; k += 1) {
+            String phrase = phrases.get(k).replace(" ", "");
+            if (phrase.isEmpty()) {
+                throw error("empty phrase");
+            }
+            _phrases[k] = new int[phrase.length()];
+            for (int i = 0; i < phrase.length(); i += 1) {
+                if (!alpha.contains(phrase.charAt(i))) {
+                    throw error("phrase %s is not in the alphabet",
+                                phrases.get(k));
+                }
+                _phrases[k][i] = alpha.toInt(phrase.charAt(i));
+            }
+            longest = Math.max(longest, phrase.length());
+        }
+        _overlap = longest - 1;
+        build(alpha.size());
+    }
+
+    /** Perform the search given by ARGS (see the class comment). */
+    static void grep(String[] args) {
+        if (args.length < 5) {
+            throw error("Usage: --grep CONFIG FILE LIMIT PHRASE ...");
+        }
+        long limit;
+        try {
+            limit = Long.parseLong(args[3]);
+        } catch (NumberFormatException excp) {
+            throw error("bad match limit: %s", args[3]);
+        }
+        List<String> phrases = Arrays.asList(args).subList(4, args.length);
+        ArchiveSearch search =
+            new ArchiveSearch(Main.configure(args[1]), phrases, limit);
+        StringBuilder out = new StringBuilder();
+        try (InputStream in = new FileInputStream(args[2])) {
+            search.search(in, (segment, offset, phrase) -> {
+                out.append(segment).append(' ').append(offset).append(' ')
+                    .append(phrases.get(phrase)).append('\n');
+                if (out.length() >= FLUSH) {
+                    System.out.print(out);
+                    out.setLength(0);
+                }
+            });
+        } catch (IOException excp) {
+            throw error("could not read %s", args[2]);
+        }
+        System.out.print(out);
+        System.out.flush();
+    }
+
+    /** Search the archive IN, reporting each match to REPORTER in
+     *  order, and return the number of matches reported. */
+    long search(InputStream in, Reporter reporter) throws IOException {
+        Machine machine = _machine.copy();
+        KeySwitcher keys = new KeySwitcher(machine);
+        Alphabet alpha = machine.alphabet();
+        BufferedReader lines = new BufferedReader(new InputStreamReader(
+            Compression.input(in), CHARSET), BUFFER);
+        _pending.clear();
+        _reported = 0;
+        Chunk chunk = null;
+        int segment = -1;
+        String line;
+        while (_reported < _limit && (line = lines.readLine()) != null) {
+            int start = KeySwitcher.settingsStart(line);
+            if (start >= 0) {
+                if (chunk != null) {
+                    submit(chunk, machine, reporter);
+                }
+                keys.apply(line, start);
+                segment += 1;
+                chunk = newChunk(segment, 0, machine);
+                continue;
+            }
+            for (int i = 0; i < line.length(); i += 1) {
+                char c = line.charAt(i);
+                if (c == ' ') {
+                    continue;
+                } else if (chunk == null) {
+                    throw error("Input does not start with a setting");
+                }
+                if (chunk._length == chunk._symbols.length) {
+                    chunk = submit(chunk, machine, reporter);
+                }
+                chunk._symbols[chunk._length] = alpha.toInt(c);
+                chunk._length += 1;
+            }
+        }
+        if (chunk != null && _reported < _limit) {
+            submit(chunk, machine, reporter);
+        }
+        while (!_pending.isEmpty() && _reported < _limit) {
+            collect(reporter);
+        }
+        for (CompletableFuture<Chunk> abandoned : _pending) {
+            abandoned.cancel(false);
+        }
+        _pending.clear();
+        return _reported;
+    }
+
+    /** A stretch of a segment, converted and searched apart. */
+    private static class Chunk {
+
+        /** A chunk of segment SEGMENT starting at its character START,
+         *  to be converted from STATE, whose first CARRIED symbols are
+         *  the last of the chunk before, holding up to SIZE symbols in
+         *  all. */
+        Chunk(int segment, long start, Checkpoint state, int carried,
+              int size) {
+            _segment = segment;
+            _start = start;
+            _state = state;
+            _carried = carried;
+            _symbols = new int[size];
+        }
+
+        /** Record a match of phrase PHRASE at OFFSET. */
+        void found(long offset, int phrase) {
+            if (_found == _offsets.length) {
+                _offsets = Arrays.copyOf(_offsets, 2 * _found + 1);
+                _phrases = Arrays.copyOf(_phrases, 2 * _found + 1);
+            }
+            _offsets[_found] = offset;
+            _phrases[_found] = phrase;
+            _found += 1;
+        }
+
+        /** My segment. */
+        private final int _segment;
+
+        /** Position in the segment of my first symbol. */
+        private final long _start;
+
+        /** State of the machine before my first symbol. */
+        private final Checkpoint _state;
+
+        /** Number of symbols at my start taken from the chunk before. */
+        private final int _carried;
+
+        /** My symbols. */
+        private final int[] _symbols;
+
+        /** Number of my symbols. */
+        private int _length;
+
+        /** Number of matches found in me. */
+        private int _found;
+
+        /** The position in the segment of each match. */
+        private long[] _offsets = new long[0];
+
+        /** The phrase of each match. */
+        private int[] _phrases = new int[0];
+    }
+
+    /** Return a new chunk of segment SEGMENT starting at its character
+     *  START, with MACHINE in the state before that character. */
+    private Chunk newChunk(int segment, long start, Machine machine) {
+        return new Chunk(segment, start, machine.snapshot(), 0,
+                         _overlap + CHUNK);
+    }
+
+    /** Start converting and searching CHUNK, whose state MACHINE is in,
+     *  reporting earlier chunks to REPORTER if too many are pending, and
+     *  return the chunk that follows it, with MACHINE at its state. */
+    private Chunk submit(Chunk chunk, Machine machine, Reporter reporter) {
+        while (_pending.size() >= MAX_PENDING) {
+            collect(reporter);
+        }
+        int carried = Math.min(_overlap, chunk._length);
+        long next = chunk._start + chunk._length - carried;
+        machine.advance(chunk._length - carried);
+        Chunk result = new Chunk(chunk._segment, next, machine.snapshot(),
+                                 carried, _overlap + CHUNK);
+        System.arraycopy(chunk._symbols, chunk._length - carried,
+                         result._symbols, 0, carried);
+        result._length = carried;
+        if (chunk._length > chunk._carried) {
+            _pending.add(CompletableFuture.supplyAsync(() -> scan(chunk),
+                                                       POOL));
+        }
+        return result;
+    }
+
+    /** Wait for the oldest pending chunk and report its matches to
+     *  REPORTER, up to my limit. */
+    private void collect(Reporter reporter) {
+        Chunk chunk;
+        try {
+            chunk = _pending.poll().join();
+        } catch (CompletionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("search failed: %s", excp.getCause());
+        }
+        for (int i = 0; i < chunk._found && _reported < _limit; i += 1) {
+            reporter.match(chunk._segment, chunk._offsets[i],
+                           chunk._phrases[i]);
+            _reported += 1;
+        }
+    }
+
+    /** Convert CHUNK and record the matches in it, returning it. */
+    private Chunk scan(Chunk chunk) {
+        Machine machine = _machines.get();
+        machine.restore(chunk._state);
+        int[] symbols = chunk._symbols;
+        machine.convert(symbols, 0, chunk._length);
+        int n = _size;
+        int[] next = _next;
+        int state = 0;
+        for (int i = 0; i < chunk._length; i += 1) {
+            state = next[state * n + symbols[i]];
+            if (i >= chunk._carried) {
+                for (int s = _output[state] < 0 ? _link[state] : state;
+                     s > 0; s = _link[s]) {
+                    int k = _output[s];
+                    chunk.found(chunk._start + i + 1 - _phrases[k].length, k);
+                }
+            }
+        }
+        return chunk;
+    }
+
+    /** Build the automaton for my phrases over an alphabet of N
+     *  symbols. */
+    private void build(int n) {
+        int states = 1;
+        for (int[] phrase : _phrases) {
+            states += phrase.length;
+        }
+        if ((long) states * n > MAX_TABLE) {
+            throw error("phrases too long to search for");
+        }
+        _size = n;
+        _next = new int[states * n];
+        Arrays.fill(_next, -1);
+        _output = new int[states];
+        Arrays.fill(_output, -1);
+        int used = 1;
+        for (int k = 0; k < _phrases.length; k += 1) {
+            int state = 0;
+            for (int c : _phrases[k]) {
+                if (_next[state * n + c] < 0) {
+                    _next[state * n + c] = used;
+                    used += 1;
+                }
+                state = _next[state * n + c];
+            }
+            if (_output[state] < 0) {
+                _output[state] = k;
+            }
+        }
+        int[] fail = new int[used];
+        _link = new int[used];
+        int[] queue = new int[used];
+        int head = 0, tail = 0;
+        for (int c = 0; c < n; c += 1) {
+            int child = _next[c];
+            if (child < 0) {
+                _next[c] = 0;
+            } else {
+                queue[tail] = child;
+                tail += 1;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head];
+            head += 1;
+            int back = fail[state];
+            _link[state] = _output[back] >= 0 ? back : _link[back];
+            for (int c = 0; c < n; c += 1) {
+                int child = _next[state * n + c];
+                if (child < 0) {
+                    _next[state * n + c] = _next[back * n + c];
+                } else {
+                    fail[child] = _next[back * n + c];
+                    queue[tail] = child;
+                    tail += 1;
+                }
+            }
+        }
+        _next = Arrays.copyOf(_next, used * n);
+        _output = Arrays.copyOf(_output, used);
+    }
+
+    /** Largest number of chunks in progress at once. */
+    private static final int MAX_PENDING =
+        2 * ForkJoinPool.commonPool().getParallelism() + 1;
+
+    /** The pool converting and searching chunks. */
+    private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+
+    /** Number of characters of output gathered before printing. */
+    private static final int FLUSH = 1 << 16;
+
+    /** Size of the buffer for reading the archive, in characters. */
+    private static final int BUFFER = 1 << 16;
+
+    /** Encoding of archives. */
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    /** A machine with my configuration, not changed. */
+    private final Machine _machine;
+
+    /** Each thread's machine for converting chunks. */
+    private final ThreadLocal<Machine> _machines =
+        ThreadLocal.withInitial(this::copyMachine);
+
+    /** The phrases, as alphabet indices. */
+    private final int[][] _phrases;
+
+    /** Number of symbols a chunk takes from the one before it: one less
+     *  than the length of the longest phrase. */
+    private final int _overlap;
+
+    /** Largest number of matches reported. */
+    private final long _limit;
+
+    /** The alphabet size. */
+    private int _size;
+
+    /** The transitions of the automaton: the state after state S reads
+     *  symbol C is _next[S * _size + C].  State 0 is the start. */
+    private int[] _next;
+
+    /** For each state, the number of the phrase it completes, or -1. */
+    private int[] _output;
+
+    /** For each state, the next state along its chain of suffixes that
+     *  completes a phrase, or 0 if there is none. */
+    private int[] _link;
+
+    /** Chunks being converted and searched, oldest first. */
+    private final ArrayDeque<CompletableFuture<Chunk>> _pending =
+        new ArrayDeque<CompletableFuture<Chunk>>();
+
+    /** Number of matches reported so far. */
+    private long _reported;
+
+    /** Return a copy of my machine. */
+    private Machine copyMachine() {
+        return _machine.copy();
+    }
+
+}
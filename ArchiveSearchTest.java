@@ -0,0 +1,80 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ArchiveSearch class.
+ *  @author Amy Kwon
+ */
+public class ArchiveSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSearch() throws IOException {
+        Machine m = machine("AAAA", null, "(AQ)");
+        char[] plain = new char[ArchiveSearch.CHUNK + 20];
+        Arrays.fill(plain, 'X');
+        "HEIL".getChars(0, 4, plain, 3);
+        "WEATHER".getChars(0, 7, plain, ArchiveSearch.CHUNK - 2);
+        String key = "* B Beta I II III ABCD (AQ)";
+        KeySwitcher keys = new KeySwitcher(m);
+        keys.apply(key, 1);
+        String archive = key + "\n" + m.convert(new String(plain)) + "\n";
+        keys.apply(key, 1);
+        archive += key + "\n" + m.convert("ZZHEILZZ") + "\n";
+        ArchiveSearch search = new ArchiveSearch(
+            machine("AAAA", null, "(AQ)"),
+            List.of("WEATHER", "HEIL", "ATHER"), 0);
+        StringBuilder found = new StringBuilder();
+        long count = search.search(
+            new ByteArrayInputStream(archive.getBytes()),
+            (segment, offset, phrase) -> found.append(
+                segment + ":" + offset + ":" + phrase + " "));
+        int c = ArchiveSearch.CHUNK;
+        assertEquals("0:3:1 0:" + (c - 2) + ":0 0:" + c + ":2 1:2:1 ",
+                     found.toString());
+        assertEquals(4, count);
+    }
+
+    @Test
+    public void testLimit() throws IOException {
+        Machine m = machine("AAAA", null, "");
+        String key = "* B Beta I II III AAAA";
+        String archive = key + "\n" + m.convert("HEILHEILHEILHEIL") + "\n";
+        ArchiveSearch search = new ArchiveSearch(
+            machine("AAAA", null, ""), List.of("HEIL"), 2);
+        StringBuilder found = new StringBuilder();
+        long count = search.search(
+            new ByteArrayInputStream(archive.getBytes()),
+            (segment, offset, phrase) -> found.append(offset + " "));
+        assertEquals("0 4 ", found.toString());
+        assertEquals(2, count);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testPhraseOutsideAlphabet() {
+        new ArchiveSearch(machine("AAAA", null, ""), List.of("HE1L"), 0);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNoSetting() throws IOException {
+        new ArchiveSearch(machine("AAAA", null, ""), List.of("HEIL"), 0)
+            .search(new ByteArrayInputStream("HELLO\n".getBytes()),
+                    (segment, offset, phrase) -> { });
+    }
+
+}
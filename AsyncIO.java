@@ -0,0 +1,327 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/** Reading and writing files on threads of their own, so that the
+ *  thread converting messages does not wait for the disk.  A reader
+ *  reads the blocks of its file ahead of their use, and a writer writes
+ *  full blocks behind the converting thread, each through a few direct
+ *  buffers that pass back and forth between the two threads and are
+ *  reused, so that the disk is busy with one block while the machine
+ *  converts another.
+ *  @author Amy Kwon
+ */
+final class AsyncIO {
+
+    /** Size of a block, in bytes. */
+    static final int BLOCK = 1 << 20;
+
+    /** Number of buffers of each stream: one for each thread, and one
+     *  on its way between them. */
+    static final int BUFFERS = 3;
+
+    /** Not instantiable. */
+    private AsyncIO() {
+    }
+
+    /** Return a stream of the contents of the file at PATH, read ahead
+     *  on another thread. */
+    static InputStream input(Path path) throws IOException {
+        return new ReadAhead(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /** Return a stream writing to the file at PATH, which it creates or
+     *  empties, behind the writer on another thread.  Flushing or closing
+     *  the stream waits until everything written is in the file. */
+    static OutputStream output(Path path) throws IOException {
+        return new WriteBehind(FileChannel.open(
+            path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /** Return a queue holding N new direct buffers of BLOCK bytes, with
+     *  room for them all. */
+    private static BlockingQueue<ByteBuffer> buffers(int n) {
+        BlockingQueue<ByteBuffer> result =
+            new ArrayBlockingQueue<ByteBuffer>(BUFFERS + 1);
+        for (int i = 0; i < n; i += 1) {
+            result.add(ByteBuffer.allocateDirect(BLOCK));
+        }
+        return result;
+    }
+
+    /** Throw an error reporting FAILURE, met by the thread of a stream,
+     *  if it is not null.  Each call throws a new exception, as a caller
+     *  may meet the same failure more than once (in flush and then in
+     *  close, say). */
+    private static void check(IOException failure) throws IOException {
+        if (failure != null) {
+            throw new IOException(failure.getMessage(), failure);
+        }
+    }
+
+    /** Start a daemon thread named NAME running BODY. */
+    private static Thread start(String name, Runnable body) {
+        Thread thread = new Thread(body, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /** An input stream whose blocks are read ahead by a thread of its
+     *  own. */
+    private static class ReadAhead extends InputStream {
+
+        /** A stream of the contents of CHANNEL. */
+        ReadAhead(FileChannel channel) {
+            _channel = channel;
+            _thread = start("enigma-read-ahead", this::fill);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!next()) {
+                return -1;
+            }
+            return _current.get() & BYTE_MASK;
+        }
+
+        @Override
+        public int read(byte[] buf, int from, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!next()) {
+                return -1;
+            }
+            int n = Math.min(len, _current.remaining());
+            _current.get(buf, from, n);
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _thread.interrupt();
+            _channel.close();
+        }
+
+        /** Make _current a buffer with bytes left, if there are any more,
+         *  returning true iff there are. */
+        private boolean next() throws IOException {
+            if (_current != null && _current.hasRemaining()) {
+                return true;
+            }
+            if (_current == END) {
+                check(_failure);
+                return false;
+            }
+            try {
+                if (_current != null) {
+                    _free.put(_current);
+                }
+                _current = _filled.take();
+            } catch (InterruptedException excp) {
+                throw new InterruptedIOException();
+            }
+            if (_current == END) {
+                check(_failure);
+                return false;
+            }
+            return true;
+        }
+
+        /** Read blocks of my file into free buffers until its end. */
+        private void fill() {
+            try {
+                while (true) {
+                    ByteBuffer buf = _free.take();
+                    buf.clear();
+                    int n = 0;
+                    while (buf.hasRemaining() && n >= 0) {
+                        n = _channel.read(buf);
+                    }
+                    buf.flip();
+                    if (buf.hasRemaining()) {
+                        _filled.put(buf);
+                    }
+                    if (n < 0) {
+                        break;
+                    }
+                }
+            } catch (IOException excp) {
+                _failure = excp;
+            } catch (InterruptedException excp) {
+                return;
+            }
+            _filled.add(END);
+        }
+
+        /** The file read. */
+        private final FileChannel _channel;
+
+        /** The thread reading it. */
+        private final Thread _thread;
+
+        /** Buffers ready to be filled. */
+        private final BlockingQueue<ByteBuffer> _free = buffers(BUFFERS);
+
+        /** Buffers filled and not yet read, in order, ending with END. */
+        private final BlockingQueue<ByteBuffer> _filled = buffers(0);
+
+        /** The buffer being read, or null. */
+        private ByteBuffer _current;
+
+        /** The error met while reading, or null. */
+        private volatile IOException _failure;
+    }
+
+    /** An output stream whose blocks are written by a thread of its
+     *  own. */
+    private static class WriteBehind extends OutputStream {
+
+        /** A stream writing to CHANNEL. */
+        WriteBehind(FileChannel channel) {
+            _channel = channel;
+            _thread = start("enigma-write-behind", this::drain);
+            _current = _free.remove();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!_current.hasRemaining()) {
+                handOff();
+            }
+            _current.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] buf, int from, int len) throws IOException {
+            while (len > 0) {
+                if (!_current.hasRemaining()) {
+                    handOff();
+                }
+                int n = Math.min(len, _current.remaining());
+                _current.put(buf, from, n);
+                from += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (_current.position() > 0) {
+                handOff();
+            }
+            synchronized (this) {
+                while (_written < _handed && _failure == null) {
+                    try {
+                        wait();
+                    } catch (InterruptedException excp) {
+                        throw new InterruptedIOException();
+                    }
+                }
+            }
+            check(_failure);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (_closed) {
+                return;
+            }
+            _closed = true;
+            try {
+                flush();
+            } finally {
+                _thread.interrupt();
+                _channel.close();
+            }
+        }
+
+        /** Give the current buffer to my thread to write, and take a
+         *  free one, waiting for it if need be. */
+        private void handOff() throws IOException {
+            check(_failure);
+            _current.flip();
+            try {
+                synchronized (this) {
+                    _handed += 1;
+                }
+                _filled.put(_current);
+                _current = _free.take();
+            } catch (InterruptedException excp) {
+                throw new InterruptedIOException();
+            }
+            _current.clear();
+        }
+
+        /** Write the buffers handed to me, in order, until interrupted or
+         *  a write fails.  The buffer that failed goes back to _free
+         *  after _failure is set, so that a writer waiting for a buffer
+         *  wakes, and its next handOff reports the failure. */
+        private void drain() {
+            ByteBuffer buf = null;
+            try {
+                while (true) {
+                    buf = _filled.take();
+                    while (buf.hasRemaining()) {
+                        _channel.write(buf);
+                    }
+                    _free.put(buf);
+                    synchronized (this) {
+                        _written += 1;
+                        notifyAll();
+                    }
+                }
+            } catch (IOException excp) {
+                synchronized (this) {
+                    _failure = excp;
+                    notifyAll();
+                }
+                _free.add(buf);
+            } catch (InterruptedException excp) {
+                return;
+            }
+        }
+
+        /** The file written. */
+        private final FileChannel _channel;
+
+        /** The thread writing it. */
+        private final Thread _thread;
+
+        /** Buffers free to be filled. */
+        private final BlockingQueue<ByteBuffer> _free = buffers(BUFFERS);
+
+        /** Buffers filled and not yet written, in order. */
+        private final BlockingQueue<ByteBuffer> _filled = buffers(0);
+
+        /** The buffer being filled. */
+        private ByteBuffer _current;
+
+        /** Number of buffers handed to my thread, and written by it. */
+        private long _handed, _written;
+
+        /** The error met while writing, or null. */
+        private volatile IOException _failure;
+
+        /** True once I am closed. */
+        private boolean _closed;
+    }
+
+    /** Marker ending the blocks of a file. */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /** Mask of the bits of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+}
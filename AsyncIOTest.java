@@ -0,0 +1,215 @@
+package enigma;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the AsyncIO class and Main's
+ *  --async-io option.
+ *  @author Amy Kwon
+ */
+public class AsyncIOTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The temporary directories of the current test. */
+    private final TempDirs _temps = new TempDirs();
+
+    /** Delete the temporary directories of the current test. */
+    @After
+    public void deleteTemps() throws IOException {
+        _temps.delete();
+    }
+
+    /** A device on which every write fails, where there is one. */
+    static final File FULL = new File("/dev/full");
+
+    /** Return LEN random bytes from RANDOM. */
+    private byte[] bytes(Random random, int len) {
+        byte[] result = new byte[len];
+        random.nextBytes(result);
+        return result;
+    }
+
+    /** Return a message input of about LEN bytes, with a few keys. */
+    private String input(int len) {
+        StringBuilder result = new StringBuilder();
+        result.append("* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n");
+        for (int k = 0; result.length() < len; k += 1) {
+            if (k % 1000 == 999) {
+                result.append("* B Beta II III IV QRST BCDE (AB)\n");
+            }
+            result.append(k % 9 == 0 ? "\n"
+                          : "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA\n");
+        }
+        return result.toString();
+    }
+
+    /** Return a new configuration file BatchTest.CONFIG in DIR. */
+    private File config(File dir) throws IOException {
+        File result = new File(dir, "default.conf");
+        Files.write(result.toPath(), BatchTest.CONFIG.getBytes());
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testStreams() throws IOException {
+        Random random = new Random(46);
+        File file = File.createTempFile("async", ".bin");
+        file.deleteOnExit();
+        byte[] data = bytes(random, 2 * AsyncIO.BLOCK + 4321);
+        try (OutputStream out = AsyncIO.output(file.toPath())) {
+            int i = 0;
+            while (i < data.length) {
+                if (random.nextInt(4) == 0) {
+                    out.write(data[i]);
+                    i += 1;
+                } else {
+                    int n = Math.min(data.length - i,
+                                     random.nextInt(AsyncIO.BLOCK / 3));
+                    out.write(data, i, n);
+                    i += n;
+                }
+                if (random.nextInt(10) == 0) {
+                    out.flush();
+                    assertTrue(file.length() == i);
+                }
+            }
+        }
+        assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+
+        byte[] read = new byte[data.length];
+        try (InputStream in = AsyncIO.input(file.toPath())) {
+            int i = 0;
+            while (i < read.length) {
+                if (random.nextInt(4) == 0) {
+                    int b = in.read();
+                    assertTrue(b >= 0);
+                    read[i] = (byte) b;
+                    i += 1;
+                } else {
+                    int n = in.read(read, i, Math.min(
+                        read.length - i, random.nextInt(AsyncIO.BLOCK / 3)));
+                    assertTrue(n >= 0);
+                    i += n;
+                }
+            }
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read(read, 0, 1));
+        }
+        assertArrayEquals(data, read);
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        File file = File.createTempFile("async", ".bin");
+        file.deleteOnExit();
+        AsyncIO.output(file.toPath()).close();
+        assertEquals(0, file.length());
+        try (InputStream in = AsyncIO.input(file.toPath())) {
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testSameAsSynchronous() throws IOException {
+        File dir = _temps.make("async");
+        String config = config(dir).getPath();
+        File in = new File(dir, "job.in");
+        Files.write(in.toPath(), input(3 * AsyncIO.BLOCK).getBytes());
+        File plain = new File(dir, "plain.out");
+        new Main(new String[] {
+            config, in.getPath(), plain.getPath()
+        }).process();
+        for (String name : new String[] {
+                "async.out", "async.out" + Compression.SUFFIX }) {
+            File out = new File(dir, name);
+            new Main(new String[] {
+                "--async-io", config, in.getPath(), out.getPath()
+            }).process();
+            byte[] written = Files.readAllBytes(out.toPath());
+            if (Compression.compressed(name)) {
+                try (InputStream unpacked = Compression.input(
+                         new ByteArrayInputStream(written))) {
+                    written = unpacked.readAllBytes();
+                }
+            }
+            assertArrayEquals(Files.readAllBytes(plain.toPath()), written);
+        }
+    }
+
+    @Test
+    public void testReadError() throws IOException {
+        File dir = _temps.make("async");
+        try (InputStream in = AsyncIO.input(dir.toPath())) {
+            for (int k = 0; k < 2; k += 1) {
+                try {
+                    in.read();
+                    fail("reading a directory did not fail");
+                } catch (IOException excp) {
+                    assertNotNull(excp.getMessage());
+                }
+            }
+        }
+        try {
+            new Main(new String[] {
+                "--async-io", config(dir).getPath(), dir.getPath(),
+                new File(dir, "job.out").getPath()
+            }).process();
+            fail("reading a directory did not fail");
+        } catch (EnigmaException excp) {
+            assertEquals("could not open " + dir.getPath(),
+                         excp.getMessage());
+        }
+    }
+
+    @Test
+    public void testWriteError() throws IOException {
+        if (!FULL.exists()) {
+            return;
+        }
+        try (OutputStream out = AsyncIO.output(FULL.toPath())) {
+            byte[] data = new byte[AsyncIO.BLOCK];
+            for (int k = 0; k < 4 * AsyncIO.BUFFERS; k += 1) {
+                out.write(data);
+            }
+            out.flush();
+            fail("writing to " + FULL + " did not fail");
+        } catch (IOException excp) {
+            assertNotNull(excp.getMessage());
+        }
+
+        File dir = _temps.make("async");
+        File in = new File(dir, "job.in");
+        Files.write(in.toPath(), input(3 * AsyncIO.BLOCK).getBytes());
+        try {
+            new Main(new String[] {
+                "--async-io", config(dir).getPath(), in.getPath(),
+                FULL.getPath()
+            }).process();
+            fail("writing to " + FULL + " did not fail");
+        } catch (EnigmaException excp) {
+            assertEquals("could not write " + FULL.getPath(),
+                         excp.getMessage());
+        }
+    }
+
+}
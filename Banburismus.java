@@ -0,0 +1,568 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static enigma.EnigmaException.*;
+
+/** A statistical attack, after Banburismus, on the rightmost two moving
+ *  rotors of many messages sent with one ground setting (rotor order,
+ *  rings and plugboard) and each with its own message key, which is
+ *  known (as the indicators of the day gave it away).  Two messages
+ *  whose keys differ only in the rightmost two slots are in depth, at
+ *  some offset, exactly when the rotors stepping from one key to the
+ *  other move no rotor further left; so whether they are depends on the
+ *  notches of the rotors in those slots (which, as they are fixed to
+ *  the letters in the windows, do not depend on the rings).  Each such
+ *  pair is slid against the other at the offsets some candidate rotors
+ *  predict, and each alignment is scored by its coincidences with
+ *  precomputed weights, in decibans: a coincidence adds
+ *  10 log10(PLAIN_COINCIDENCE), the odds of one in depth against one at
+ *  random, and each other compared position adds a small negative
+ *  weight.  The evidence for a rotor in the rightmost slot is the sum
+ *  of the scores of the alignments its notches put in depth; that for a
+ *  pair of rotors in the rightmost two slots also counts pairs whose
+ *  middle letters are adjacent, which are in depth only across one
+ *  turnover of the middle rotor.  Candidates are the moving rotors of
+ *  the configuration.
+ *
+ *  The messages are kept in packed arrays: their text as one array of
+ *  alphabet indices, and their keys and extents in arrays indexed by
+ *  message number.  Sorting them by key brings the messages that can be
+ *  in depth with one another together, so only those pairs are compared,
+ *  not every pair; groups of them are scored in parallel, each thread
+ *  adding into arrays of its own that are summed at the end.
+ *
+ *  As a command, the arguments
+ *      --banburismus CONFIG MESSAGES [THREADS]
+ *  rank the candidates for the messages in the file MESSAGES, with the
+ *  configuration CONFIG, using at most THREADS (by default, the number
+ *  of processors) threads.  Each line of MESSAGES is one message: its
+ *  key, the letters of the slots after the reflector as in a settings
+ *  line, followed by its ciphertext; blanks and characters outside the
+ *  alphabet in the ciphertext are skipped, and blank lines ignored.
+ *  @author Amy Kwon
+ */
+class Banburismus {
+
+    /** Command-line option that selects the attack. */
+    static final String OPTION = "--banburismus";
+
+    /** Index of coincidence of the plaintext, as a multiple of that of
+     *  uniformly random text (about 1.73 for English, 2 for German). */
+    static final double PLAIN_COINCIDENCE = 1.73;
+
+    /** Number of pairs of rotors reported. */
+    static final int TOP = 10;
+
+    /** A candidate for the rightmost rotor, or for the rightmost two. */
+    static class Candidate {
+
+        /** The candidate RIGHT, with MIDDLE to its left (null if only
+         *  the rightmost rotor is considered), whose evidence is SCORE
+         *  decibans. */
+        Candidate(Rotor right, Rotor middle, double score) {
+            this.right = right;
+            this.middle = middle;
+            this.score = score;
+        }
+
+        /** The rotors. */
+        final Rotor right, middle;
+
+        /** The evidence for them, in decibans. */
+        final double score;
+    }
+
+    /** An attack on messages for MACHINE's configuration, using THREADS
+     *  threads. */
+    Banburismus(Machine machine, int threads) {
+        _alphabet = machine.alphabet();
+        _slots = machine.numRotors();
+        _threads = threads;
+        int n = _alphabet.size();
+        if (_slots < 3 || machine.numPawls() < 2) {
+            throw error("Banburismus needs two moving rotors");
+        }
+        if ((_slots - 3) * Math.log(n) >= Math.log(Long.MAX_VALUE)) {
+            throw error("too many slots for Banburismus");
+        }
+        for (Rotor rotor : machine.allRotors()) {
+            if (rotor.rotates()) {
+                _candidates.add(rotor);
+            }
+        }
+        if (_candidates.size() < 2) {
+            throw error("Banburismus needs two moving rotors");
+        }
+        _notch = new boolean[_candidates.size()][n];
+        _notches = new int[_candidates.size()][];
+        for (int r = 0; r < _notches.length; r += 1) {
+            _notches[r] = _candidates.get(r).notches();
+            for (int p : _notches[r]) {
+                _notch[r][p] = true;
+            }
+        }
+        _repeat = DECIBANS * Math.log10(PLAIN_COINCIDENCE);
+        _miss = DECIBANS * Math.log10((1 - PLAIN_COINCIDENCE / n)
+                                      / (1 - 1.0 / n));
+    }
+
+    /** Perform the attack given by ARGS (see the class comment). */
+    static void attack(String[] args) {
+        if (args.length < 3 || args.length > 4) {
+            throw error("Usage: --banburismus CONFIG MESSAGES [THREADS]");
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 3) {
+            try {
+                threads = Integer.parseInt(args[3]);
+            } catch (NumberFormatException excp) {
+                threads = 0;
+            }
+            if (threads < 1) {
+                throw error("bad thread count: %s", args[3]);
+            }
+        }
+        Banburismus attack =
+            new Banburismus(Main.configure(args[1]), threads);
+        attack.read(args[2]);
+        attack.analyze();
+        System.out.print(attack.report());
+    }
+
+    /** Add the messages in the file named NAME. */
+    void read(String name) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                 new FileInputStream(name), CHARSET), BUFFER)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String trimmed = line.trim();
+                if (!trimmed.isEmpty()) {
+                    int end = 0;
+                    while (end < trimmed.length()
+                           && !Character.isWhitespace(trimmed.charAt(end))) {
+                        end += 1;
+                    }
+                    add(trimmed.substring(0, end), trimmed.substring(end));
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+    /** Add the message whose key is KEY and whose ciphertext is TEXT. */
+    void add(String key, CharSequence text) {
+        if (key.length() != _slots - 1) {
+            throw error("bad message key: %s", key);
+        }
+        int n = _alphabet.size();
+        long prefix = 0;
+        for (int i = 0; i < key.length(); i += 1) {
+            if (!_alphabet.contains(key.charAt(i))) {
+                throw error("bad message key: %s", key);
+            }
+            if (i < key.length() - 2) {
+                prefix = prefix * n + _alphabet.toInt(key.charAt(i));
+            }
+        }
+        if (_count == _prefix.length) {
+            int size = 2 * _count + 1;
+            _prefix = Arrays.copyOf(_prefix, size);
+            _middle = Arrays.copyOf(_middle, size);
+            _right = Arrays.copyOf(_right, size);
+            _start = Arrays.copyOf(_start, size + 1);
+        }
+        _prefix[_count] = prefix;
+        _middle[_count] = _alphabet.toInt(key.charAt(key.length() - 2));
+        _right[_count] = _alphabet.toInt(key.charAt(key.length() - 1));
+        for (int i = 0; i < text.length(); i += 1) {
+            char ch = text.charAt(i);
+            if (_alphabet.contains(ch)) {
+                if (_used == _text.length) {
+                    _text = Arrays.copyOf(_text, 2 * _used + BUFFER);
+                }
+                _text[_used] = (char) _alphabet.toInt(ch);
+                _used += 1;
+            }
+        }
+        _count += 1;
+        _start[_count] = _used;
+    }
+
+    /** Return the number of messages added. */
+    int size() {
+        return _count;
+    }
+
+    /** Score every pair of my messages that some candidates put in
+     *  depth. */
+    void analyze() {
+        Integer[] sorted = new Integer[_count];
+        for (int i = 0; i < _count; i += 1) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, Comparator.comparingLong((Integer i) -> _prefix[i])
+                    .thenComparingInt(i -> _middle[i])
+                    .thenComparingInt(i -> _right[i]));
+        int[] order = new int[_count];
+        List<Integer> groups = new ArrayList<Integer>();
+        for (int i = 0; i < _count; i += 1) {
+            order[i] = sorted[i];
+            if (i == 0 || _prefix[order[i]] != _prefix[order[i - 1]]) {
+                groups.add(i);
+            }
+        }
+        groups.add(_count);
+        AtomicInteger next = new AtomicInteger();
+        List<Evidence> parts = run(() -> {
+            Evidence evidence = new Evidence();
+            int g;
+            while ((g = next.getAndIncrement()) < groups.size() - 1) {
+                score(order, groups.get(g), groups.get(g + 1), evidence);
+            }
+            return evidence;
+        });
+        _evidence = new Evidence();
+        for (Evidence part : parts) {
+            _evidence.add(part);
+        }
+    }
+
+    /** Return the candidates for the rightmost rotor, best first. */
+    List<Candidate> rights() {
+        int n = _alphabet.size();
+        List<Candidate> result = new ArrayList<Candidate>();
+        for (int r = 0; r < _candidates.size(); r += 1) {
+            double score = 0;
+            for (int m = 0; m < n; m += 1) {
+                score += _evidence._single[r * n + m];
+            }
+            result.add(new Candidate(_candidates.get(r), null, score));
+        }
+        result.sort(Comparator.comparingDouble((Candidate c) -> -c.score));
+        return result;
+    }
+
+    /** Return the candidates for the rightmost two rotors, best
+     *  first. */
+    List<Candidate> pairs() {
+        int n = _alphabet.size();
+        int k = _candidates.size();
+        List<Candidate> result = new ArrayList<Candidate>();
+        for (int r = 0; r < k; r += 1) {
+            for (int mi = 0; mi < k; mi += 1) {
+                if (mi == r) {
+                    continue;
+                }
+                double score = _evidence._double[r * k + mi];
+                for (int m = 0; m < n; m += 1) {
+                    if (!_notch[mi][m]) {
+                        score += _evidence._single[r * n + m];
+                    }
+                }
+                result.add(new Candidate(_candidates.get(r),
+                                         _candidates.get(mi), score));
+            }
+        }
+        result.sort(Comparator.comparingDouble((Candidate c) -> -c.score));
+        return result;
+    }
+
+    /** Return the report of the analysis. */
+    String report() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("%d messages, %d pairs compared, "
+                                    + "%d alignments scored%n", _count,
+                                    _evidence._pairs,
+                                    _evidence._alignments));
+        result.append(String.format("%5s %10s  %s%n", "rank", "decibans",
+                                    "right"));
+        List<Candidate> rights = rights();
+        for (int i = 0; i < rights.size(); i += 1) {
+            Candidate c = rights.get(i);
+            result.append(String.format("%5d %10.1f  %s%n", i + 1, c.score,
+                                        c.right.name()));
+        }
+        result.append(String.format("%5s %10s  %s%n", "rank", "decibans",
+                                    "middle right"));
+        List<Candidate> pairs = pairs();
+        for (int i = 0; i < pairs.size() && i < TOP; i += 1) {
+            Candidate c = pairs.get(i);
+            result.append(String.format("%5d %10.1f  %s %s%n", i + 1,
+                                        c.score, c.middle.name(),
+                                        c.right.name()));
+        }
+        return result.toString();
+    }
+
+    /** Add to EVIDENCE the scores of the pairs of messages ORDER[FROM ..
+     *  TO-1], whose keys agree left of the middle slot and which are in
+     *  order of key. */
+    private void score(int[] order, int from, int to, Evidence evidence) {
+        int n = _alphabet.size();
+        int[] bound = new int[n + 1];
+        int i = from;
+        for (int m = 0; m <= n; m += 1) {
+            while (i < to && _middle[order[i]] < m) {
+                i += 1;
+            }
+            bound[m] = i;
+        }
+        for (i = from; i < to; i += 1) {
+            int a = order[i];
+            int m = _middle[a];
+            for (int j = i + 1; j < bound[m + 1]; j += 1) {
+                if (_right[order[j]] != _right[a]) {
+                    scoreSame(a, order[j], evidence);
+                }
+            }
+            int next = m + 1 == n ? 0 : m + 1;
+            if (next != m) {
+                for (int j = bound[next]; j < bound[next + 1]; j += 1) {
+                    scoreAdjacent(a, order[j], evidence);
+                }
+            }
+        }
+    }
+
+    /** Add to EVIDENCE the scores of messages A and B, whose keys differ
+     *  only in the rightmost slot, where A's is before B's. */
+    private void scoreSame(int a, int b, Evidence evidence) {
+        int n = _alphabet.size();
+        int d = _right[b] - _right[a];
+        double ahead = alignment(a, b, d), behind = alignment(b, a, n - d);
+        evidence._pairs += 1;
+        evidence._alignments += 2;
+        int base = _middle[a];
+        for (int r = 0; r < _notches.length; r += 1) {
+            double score = 0;
+            if (passes(_notches[r], _right[a], d) == 0) {
+                score += ahead;
+            }
+            if (passes(_notches[r], _right[b], n - d) == 0) {
+                score += behind;
+            }
+            evidence._single[r * n + base] += score;
+        }
+    }
+
+    /** Add to EVIDENCE the scores of messages A and B, whose keys differ
+     *  in the rightmost slot and in the middle, where B's middle letter
+     *  is the one after A's. */
+    private void scoreAdjacent(int a, int b, Evidence evidence) {
+        int n = _alphabet.size();
+        int k = _notches.length;
+        int length = _start[a + 1] - _start[a];
+        int ra = _right[a], ma = _middle[a];
+        int mb = _middle[b];
+        int first = Math.floorMod(_right[b] - ra, n);
+        double[] cache = evidence.cache(length / n + 1);
+        boolean compared = false;
+        for (int r = 0; r < k; r += 1) {
+            for (int d = first == 0 ? n : first; d < length; d += n) {
+                int count = passes(_notches[r], ra, d);
+                if (count > 1) {
+                    break;
+                } else if (count == 1) {
+                    int slot = d / n;
+                    if (Double.isNaN(cache[slot])) {
+                        cache[slot] = alignment(a, b, d);
+                        evidence._alignments += 1;
+                        compared = true;
+                    }
+                    boolean last = _notch[r][Math.floorMod(ra + d - 1, n)];
+                    for (int mi = 0; mi < k; mi += 1) {
+                        if (mi != r && !_notch[mi][ma]
+                            && (last || !_notch[mi][mb])) {
+                            evidence._double[r * k + mi] += cache[slot];
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+        if (compared) {
+            evidence._pairs += 1;
+        }
+    }
+
+    /** Return the number of times a rotor with the notches NOTCHES
+     *  passes one in D steps from position FROM, and so moves the rotor
+     *  to its left. */
+    private int passes(int[] notches, int from, int d) {
+        int n = _alphabet.size();
+        int result = 0;
+        for (int p : notches) {
+            int t = Math.floorMod(p - from, n);
+            if (t < d) {
+                result += (d - 1 - t) / n + 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return the score, in decibans, of message X aligned D characters
+     *  ahead of message Y (so that X's character D + J is compared with
+     *  Y's character J). */
+    private double alignment(int x, int y, int d) {
+        int px = _start[x] + d, py = _start[y];
+        int overlap = Math.min(_start[x + 1] - px, _start[y + 1] - py);
+        if (overlap <= 0) {
+            return 0;
+        }
+        char[] text = _text;
+        int same = 0;
+        for (int j = 0; j < overlap; j += 1) {
+            if (text[px + j] == text[py + j]) {
+                same += 1;
+            }
+        }
+        return same * _repeat + (overlap - same) * _miss;
+    }
+
+    /** The evidence gathered by one thread. */
+    private class Evidence {
+
+        /** Add the evidence in OTHER to mine. */
+        void add(Evidence other) {
+            for (int i = 0; i < _single.length; i += 1) {
+                _single[i] += other._single[i];
+            }
+            for (int i = 0; i < _double.length; i += 1) {
+                _double[i] += other._double[i];
+            }
+            _pairs += other._pairs;
+            _alignments += other._alignments;
+        }
+
+        /** Return a table of at least SIZE scores, all NaN. */
+        double[] cache(int size) {
+            if (_cache.length < size) {
+                _cache = new double[size];
+            }
+            Arrays.fill(_cache, 0, size, Double.NaN);
+            return _cache;
+        }
+
+        /** Evidence from pairs with the same middle letter, for
+         *  candidate R in the rightmost slot and middle letter M, at
+         *  R * alphabet size + M. */
+        private final double[] _single =
+            new double[_candidates.size() * _alphabet.size()];
+
+        /** Evidence from pairs with adjacent middle letters, for
+         *  candidate R in the rightmost slot and candidate M in the
+         *  middle, at R * number of candidates + M. */
+        private final double[] _double =
+            new double[_candidates.size() * _candidates.size()];
+
+        /** Scores of the alignments of the pair being scored, by
+         *  offset divided by the alphabet size. */
+        private double[] _cache = new double[0];
+
+        /** Numbers of pairs and alignments scored. */
+        private long _pairs, _alignments;
+    }
+
+    /** A task computing the evidence of one thread. */
+    private interface Task {
+        /** Return the evidence gathered. */
+        Evidence call();
+    }
+
+    /** Return the results of running TASK on each of my threads. */
+    private List<Evidence> run(Task task) {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        try {
+            List<Future<Evidence>> futures = new ArrayList<Future<Evidence>>();
+            for (int i = 0; i < _threads; i += 1) {
+                futures.add(pool.submit(task::call));
+            }
+            List<Evidence> result = new ArrayList<Evidence>();
+            for (Future<Evidence> future : futures) {
+                result.add(future.get());
+            }
+            return result;
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("Banburismus failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            throw error("Banburismus interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Decibans in a factor of 10 of odds. */
+    private static final double DECIBANS = 10;
+
+    /** Size of the buffer for reading a file, in characters. */
+    private static final int BUFFER = 1 << 16;
+
+    /** Encoding of input files. */
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    /** Alphabet of the messages. */
+    private final Alphabet _alphabet;
+
+    /** Number of slots of the machine. */
+    private final int _slots;
+
+    /** Number of threads. */
+    private final int _threads;
+
+    /** The candidate rotors: the moving rotors of the configuration. */
+    private final List<Rotor> _candidates = new ArrayList<Rotor>();
+
+    /** The positions of the notches of each candidate. */
+    private final int[][] _notches;
+
+    /** _notch[R][P] is true iff candidate R has a notch at P. */
+    private final boolean[][] _notch;
+
+    /** Weights of a coincidence and of any other compared position, in
+     *  decibans. */
+    private final double _repeat, _miss;
+
+    /** Number of messages. */
+    private int _count;
+
+    /** The text of the messages, as alphabet indices, one after
+     *  another. */
+    private char[] _text = new char[0];
+
+    /** Number of characters of _text used. */
+    private int _used;
+
+    /** Start of the text of each message in _text; the text of message I
+     *  ends at _start[I + 1]. */
+    private int[] _start = new int[1];
+
+    /** For each message, the letters of its key left of the middle slot,
+     *  as a number in base alphabet size. */
+    private long[] _prefix = new long[0];
+
+    /** For each message, the alphabet indices of its middle and
+     *  rightmost letters. */
+    private int[] _middle = new int[0], _right = new int[0];
+
+    /** The evidence of the last analysis. */
+    private Evidence _evidence;
+
+}
@@ -0,0 +1,57 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Banburismus class.
+ *  @author Amy Kwon
+ */
+public class BanburismusTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testBanburismus() {
+        Machine m = machine("AAAA", "CDEF", "(AQ) (BX)");
+        Random random = new Random(48);
+        String common = "EEEEETTTTAAAOOOIIINNSSHHRRDLCUMWFGYPBVKJXQZ";
+        Banburismus attack = new Banburismus(m, 2);
+        for (int k = 0; k < 3000; k += 1) {
+            char[] key = {'A', (char) ('A' + random.nextInt(2)),
+                          (char) ('A' + random.nextInt(26)),
+                          (char) ('A' + random.nextInt(26))};
+            StringBuilder plain = new StringBuilder();
+            for (int i = 80 + random.nextInt(120); i > 0; i -= 1) {
+                plain.append(common.charAt(random.nextInt(common.length())));
+            }
+            m.setRotors(new String(key));
+            attack.add(new String(key), m.convert(plain.toString()));
+        }
+        attack.analyze();
+        assertEquals(3000, attack.size());
+        assertEquals("III", attack.rights().get(0).right.name());
+        assertEquals("III", attack.pairs().get(0).right.name());
+        assertEquals("II", attack.pairs().get(0).middle.name());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testShortKey() {
+        new Banburismus(machine("AAAA", null, ""), 1).add("AAA", "HELLO");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testKeyOutsideAlphabet() {
+        new Banburismus(machine("AAAA", null, ""), 1).add("AA1A", "HELLO");
+    }
+
+}
@@ -0,0 +1,219 @@
+package enigma;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Batch mode of the Enigma simulator: many input files processed with
+ *  one configuration, or with many.  The arguments are
+ *      --batch CONFIG SOURCE [THREADS]
+ *  where SOURCE is either a directory, whose files named F.in are
+ *  processed into files F.out beside them, or a manifest, each of whose
+ *  non-blank lines names an input file and an output file (relative
+ *  names being taken relative to the manifest's directory).  CONFIG is
+ *  read once; each file is processed by a copy of the resulting machine,
+ *  at most THREADS (by default, the number of processors) at a time,
+ *  with the engines chosen by AdaptiveEngine.  If CONFIG is a directory,
+ *  its files C.conf are registered in a ConfigRegistry as C, and each
+ *  line of the manifest names after its files the configuration for
+ *  them, which is compiled when first used and kept while memory
+ *  allows.
+ *  An error in one file is reported and does not stop the others.
+ *  @author Amy Kwon
+ */
+final class Batch {
+
+    /** Command-line option that selects batch mode. */
+    static final String OPTION = "--batch";
+
+    /** Suffix of the input files processed in a directory. */
+    static final String IN_SUFFIX = ".in";
+
+    /** Suffix given to the corresponding output files. */
+    static final String OUT_SUFFIX = ".out";
+
+    /** Nanoseconds per second. */
+    private static final double NANOS = 1e9;
+
+    /** A batch run as specified by ARGS (see the class comment). */
+    Batch(String[] args) {
+        if (args.length < 3 || args.length > 4) {
+            throw error("Usage: --batch CONFIG SOURCE [THREADS]");
+        }
+        _config = args[1];
+        _configIds = new ArrayList<String>();
+        _jobs = jobs(new File(args[2]), _configIds);
+        if (new File(_config).isDirectory()) {
+            _registry = new ConfigRegistry();
+            if (_registry.registerAll(new File(_config)) == 0) {
+                throw error("no configurations in %s", _config);
+            }
+            for (int i = 0; i < _jobs.size(); i += 1) {
+                String id = _configIds.get(i);
+                if (id == null || !_registry.contains(id)) {
+                    throw error("no configuration for %s", _jobs.get(i)[0]);
+                }
+            }
+        } else {
+            _registry = null;
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 3) {
+            try {
+                threads = Integer.parseInt(args[3]);
+            } catch (NumberFormatException excp) {
+                throw error("bad thread count: %s", args[3]);
+            }
+            if (threads < 1) {
+                throw error("bad thread count: %s", args[3]);
+            }
+        }
+        _threads = Math.max(1, Math.min(threads, _jobs.size()));
+    }
+
+    /** Process all my files, reporting errors and a summary on the
+     *  standard error.  Returns true iff every file was processed
+     *  without error. */
+    boolean process() {
+        Engine engine = new AdaptiveEngine(null);
+        Machine machine = null;
+        if (_registry == null) {
+            machine = Main.configure(_config);
+            machine.setEngine(engine);
+        }
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        List<Future<Long>> results = new ArrayList<Future<Long>>();
+        try {
+            for (int i = 0; i < _jobs.size(); i += 1) {
+                File[] job = _jobs.get(i);
+                String id = _configIds.get(i);
+                Machine shared = machine;
+                results.add(pool.submit(() -> {
+                    Machine m = shared;
+                    if (m == null) {
+                        m = _registry.machine(id);
+                        m.setEngine(engine.fork());
+                    }
+                    return process(m, job);
+                }));
+            }
+            int failed = 0;
+            long chars = 0;
+            for (int i = 0; i < _jobs.size(); i += 1) {
+                try {
+                    chars += results.get(i).get();
+                } catch (ExecutionException excp) {
+                    failed += 1;
+                    System.err.printf("Error: %s: %s%n", _jobs.get(i)[0],
+                                      excp.getCause().getMessage());
+                } catch (InterruptedException excp) {
+                    throw error("batch interrupted");
+                }
+            }
+            double secs = (System.nanoTime() - start) / NANOS;
+            System.err.printf("%d files (%d failed), %d characters in "
+                              + "%.3f s on %d threads: %.0f characters/s; "
+                              + "engine %s%n",
+                              _jobs.size(), failed, chars, secs, _threads,
+                              chars / Math.max(secs, 1 / NANOS),
+                              engine.usage());
+            return failed == 0;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Apply a copy of MACHINE to the input file JOB[0], writing the
+     *  result to JOB[1].  Returns the number of characters processed. */
+    private static long process(Machine machine, File[] job) {
+        Scanner input = Main.getInput(job[0].getPath());
+        PrintStream output = Main.getOutput(job[1].getPath());
+        try {
+            Main main = new Main(machine, input, output);
+            main.process();
+            return main.converted();
+        } catch (NoSuchElementException excp) {
+            throw error("input truncated");
+        } finally {
+            input.close();
+            output.close();
+        }
+    }
+
+    /** Return the input and output files named by SOURCE, a directory or
+     *  a manifest, adding to IDS the configuration named for each (or
+     *  null if none is). */
+    private static List<File[]> jobs(File source, List<String> ids) {
+        List<File[]> result = new ArrayList<File[]>();
+        if (source.isDirectory()) {
+            File[] files = source.listFiles();
+            if (files == null) {
+                throw error("could not read %s", source);
+            }
+            Arrays.sort(files);
+            for (File in : files) {
+                String name = in.getName();
+                if (in.isFile() && name.endsWith(IN_SUFFIX)) {
+                    String base = name.substring(0, name.length()
+                                                 - IN_SUFFIX.length());
+                    result.add(new File[] {
+                        in, new File(source, base + OUT_SUFFIX) });
+                    ids.add(null);
+                }
+            }
+        } else {
+            Scanner manifest = Main.getInput(source.getPath());
+            File dir = source.getAbsoluteFile().getParentFile();
+            while (manifest.hasNextLine()) {
+                Scanner line = new Scanner(manifest.nextLine());
+                if (!line.hasNext()) {
+                    continue;
+                }
+                File in = resolve(dir, line.next());
+                if (!line.hasNext()) {
+                    throw error("manifest line for %s has no output", in);
+                }
+                result.add(new File[] { in, resolve(dir, line.next()) });
+                ids.add(line.hasNext() ? line.next() : null);
+            }
+            manifest.close();
+        }
+        if (result.isEmpty()) {
+            throw error("no input files in %s", source);
+        }
+        return result;
+    }
+
+    /** Return the file named NAME, relative to DIR unless absolute. */
+    private static File resolve(File dir, String name) {
+        File file = new File(name);
+        return file.isAbsolute() ? file : new File(dir, name);
+    }
+
+    /** Name of the configuration file. */
+    private final String _config;
+
+    /** Input and output file of each job. */
+    private final List<File[]> _jobs;
+
+    /** Id of the configuration of each job, or null. */
+    private final List<String> _configIds;
+
+    /** The configurations, if CONFIG is a directory, or null. */
+    private final ConfigRegistry _registry;
+
+    /** Number of worker threads. */
+    private final int _threads;
+
+}
@@ -0,0 +1,126 @@
+package enigma;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for batch mode.
+ *  @author Amy Kwon
+ */
+public class BatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The temporary directories of the current test. */
+    private final TempDirs _temps = new TempDirs();
+
+    /** Delete the temporary directories of the current test. */
+    @After
+    public void deleteTemps() throws IOException {
+        _temps.delete();
+    }
+
+    /** A configuration. */
+    static final String CONFIG = "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n5 3\n"
+        + "I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + "II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + "III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + "IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + "Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + "B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) "
+        + "(SZ) (TV)\n";
+
+    /** A configuration with no pawls, whose rotors never move. */
+    static final String NO_PAWLS_CONFIG = "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n3 0\n"
+        + "I N (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + "II N (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + "B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) "
+        + "(SZ) (TV)\n";
+
+    /** Number of times "HELLOWORLD" is repeated in the long message
+     *  converted under NO_PAWLS_CONFIG, so that the short one before it
+     *  and this one may be converted by different engines. */
+    static final int NO_PAWLS_REPEATS = 10000;
+
+    /** Return a new file named NAME in DIR holding CONTENTS. */
+    private File write(File dir, String name, String contents)
+        throws IOException {
+        File result = new File(dir, name);
+        Files.write(result.toPath(), contents.getBytes());
+        return result;
+    }
+
+    /** Return the contents of FILE. */
+    private String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSameAsSingleRunsAndIsolatesErrors() throws IOException {
+        File root = _temps.make("batch");
+        File dir = new File(root, "in");
+        File single = new File(root, "single");
+        assertTrue(dir.mkdir() && single.mkdir());
+        File config = write(root, "default.conf", CONFIG);
+        String[] inputs = {
+            "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+            + "FROM HIS SHOULDER HIAWATHA\nTOOK THE CAMERA OF ROSEWOOD\n",
+            "* B Beta I II III AAAA\n\nHELLO WORLD\n"
+            + "* B Beta II III IV QRST BCDE (AB)\nTHE QUICK BROWN FOX\n",
+            "* B Beta I II VI AAAA\nHELLO\n",
+        };
+        for (int k = 0; k < inputs.length; k += 1) {
+            write(dir, "m" + k + Batch.IN_SUFFIX, inputs[k]);
+        }
+        assertFalse(new Batch(new String[] {
+            Batch.OPTION, config.getPath(), dir.getPath(), "2"
+        }).process());
+        for (int k = 0; k < 2; k += 1) {
+            File in = new File(dir, "m" + k + Batch.IN_SUFFIX);
+            File expected = new File(single, "m" + k + Batch.OUT_SUFFIX);
+            new Main(new String[] {
+                config.getPath(), in.getPath(), expected.getPath()
+            }).process();
+            assertEquals(read(expected),
+                         read(new File(dir, "m" + k + Batch.OUT_SUFFIX)));
+        }
+    }
+
+    @Test
+    public void testNoPawls() throws IOException {
+        File dir = _temps.make("batch");
+        File config = write(dir, "fixed.conf", NO_PAWLS_CONFIG);
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int repeats : new int[] {2, NO_PAWLS_REPEATS}) {
+            input.append("* B I II AB\n");
+            for (int k = 0; k < repeats; k += 1) {
+                input.append("HELLOWORLD");
+                expected.append(k == 0 ? "" : " ").append("JKZZR IROZY");
+            }
+            input.append('\n');
+            expected.append('\n');
+        }
+        write(dir, "m" + Batch.IN_SUFFIX, input.toString());
+        assertTrue(new Batch(new String[] {
+            Batch.OPTION, config.getPath(), dir.getPath(), "1"
+        }).process());
+        assertEquals(expected.toString(),
+                     read(new File(dir, "m" + Batch.OUT_SUFFIX)));
+    }
+
+}
@@ -0,0 +1,380 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static enigma.EnigmaException.*;
+
+/** A chain of machines, each converting the output of the one before it
+ *  (super-encryption), with each machine on a thread of its own.  The
+ *  stages pass character indices to one another through bounded ring
+ *  buffers of ints, each written by one thread and read by one other,
+ *  without locks, so that the chain converts about as fast as its
+ *  slowest stage rather than as fast as all of them in turn.  Line ends
+ *  and key changes travel down the chain in order with the characters,
+ *  as negative markers; each stage takes its part of a new key from a
+ *  queue of its own when the marker reaches it.  The results go to a
+ *  Sink, called on a thread of its own.
+ *
+ *  A Cascade is used once: start it, write characters, line ends and
+ *  keys to it from one thread, and finish it.
+ *  @author Amy Kwon
+ */
+class Cascade {
+
+    /** Separator of the parts of a settings line for a cascade, one per
+     *  stage (as "B Beta I II III AAAA | B Gamma IV V VI QQQQ"). */
+    static final char KEY_SEPARATOR = '|';
+
+    /** Default number of character indices held between two stages. */
+    static final int CAPACITY = 1 << 16;
+
+    /** The receiver of the output of a cascade. */
+    interface Sink {
+
+        /** Receive the LEN converted character indices BUF[FROM ..
+         *  FROM+LEN-1].  BUF may be reused once I return. */
+        void symbols(int[] buf, int from, int len);
+
+        /** Receive the end of a line. */
+        void newline();
+
+    }
+
+    /** A cascade of MACHINES, the first of which converts the input,
+     *  holding about CAPACITY character indices between stages.  The
+     *  machines must have the same alphabet, and are used only by the
+     *  cascade's threads until it finishes. */
+    Cascade(Machine[] machines, int capacity) {
+        if (machines.length == 0) {
+            throw error("a cascade needs at least one machine");
+        }
+        Alphabet first = machines[0].alphabet();
+        for (Machine machine : machines) {
+            if (!sameAlphabet(first, machine.alphabet())) {
+                throw error("machines in a cascade need the same alphabet");
+            }
+        }
+        _machines = machines;
+        _rings = new Ring[machines.length + 1];
+        for (int k = 0; k < _rings.length; k += 1) {
+            _rings[k] = new Ring(capacity);
+        }
+        _keys = new ArrayList<ConcurrentLinkedQueue<String>>();
+        for (int k = 0; k < machines.length; k += 1) {
+            _keys.add(new ConcurrentLinkedQueue<String>());
+        }
+        _threads = new Thread[machines.length + 1];
+        _one = new int[1];
+    }
+
+    /** A cascade of MACHINES with the default capacity. */
+    Cascade(Machine... machines) {
+        this(machines, CAPACITY);
+    }
+
+    /** Return the number of my stages. */
+    int stages() {
+        return _machines.length;
+    }
+
+    /** Start my threads, sending my output to SINK. */
+    void start(Sink sink) {
+        for (int k = 0; k < _machines.length; k += 1) {
+            int stage = k;
+            _threads[k] = new Thread(() -> stage(stage),
+                                     "enigma-cascade-" + k);
+        }
+        _threads[_machines.length] =
+            new Thread(() -> drain(sink), "enigma-cascade-sink");
+        for (Thread thread : _threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /** Set new keys on my machines, from the part of a settings line
+     *  after its "*", LINE: the keys for each machine in turn, separated
+     *  by KEY_SEPARATOR.  The keys take effect after the characters
+     *  already written. */
+    void setKey(String line) {
+        String[] parts = line.split("\\" + KEY_SEPARATOR, -1);
+        if (parts.length != _machines.length) {
+            throw error("a cascade of %d machines needs %d keys",
+                        _machines.length, _machines.length);
+        }
+        for (int k = 0; k < parts.length; k += 1) {
+            _keys.get(k).add(parts[k]);
+        }
+        _one[0] = KEY;
+        _rings[0].put(_one, 0, 1);
+    }
+
+    /** Convert the LEN character indices BUF[FROM .. FROM+LEN-1]. */
+    void write(int[] buf, int from, int len) {
+        _rings[0].put(buf, from, len);
+    }
+
+    /** End the current line. */
+    void newline() {
+        _one[0] = NEWLINE;
+        _rings[0].put(_one, 0, 1);
+    }
+
+    /** Wait until everything written to me has reached my sink, and
+     *  stop my threads.  Throws the first error met by any of them. */
+    void finish() {
+        _one[0] = END;
+        _rings[0].put(_one, 0, 1);
+        for (Thread thread : _threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException excp) {
+                throw error("interrupted while finishing a cascade");
+            }
+        }
+        checkFailure();
+    }
+
+    /** Convert everything that reaches stage K, passing it on to the
+     *  next. */
+    private void stage(int k) {
+        Machine machine = _machines[k];
+        KeySwitcher keys = new KeySwitcher(machine);
+        Ring in = _rings[k], out = _rings[k + 1];
+        int[] buf = new int[CHUNK];
+        try {
+            boolean done = false;
+            while (!done) {
+                int n = in.take(buf, CHUNK);
+                int i = 0;
+                while (i < n) {
+                    if (buf[i] >= 0) {
+                        int j = i + 1;
+                        while (j < n && buf[j] >= 0) {
+                            j += 1;
+                        }
+                        machine.convert(buf, i, j - i);
+                        i = j;
+                    } else {
+                        if (buf[i] == KEY) {
+                            keys.apply(_keys.get(k).poll(), 0);
+                        } else if (buf[i] == END) {
+                            done = true;
+                        }
+                        i += 1;
+                    }
+                }
+                out.put(buf, 0, n);
+            }
+        } catch (RuntimeException excp) {
+            fail(excp);
+        }
+    }
+
+    /** Hand everything that leaves my last stage to SINK. */
+    private void drain(Sink sink) {
+        Ring in = _rings[_machines.length];
+        int[] buf = new int[CHUNK];
+        try {
+            boolean done = false;
+            while (!done) {
+                int n = in.take(buf, CHUNK);
+                int i = 0;
+                while (i < n) {
+                    int j = i;
+                    while (j < n && buf[j] >= 0) {
+                        j += 1;
+                    }
+                    if (j > i) {
+                        sink.symbols(buf, i, j - i);
+                    }
+                    if (j < n) {
+                        if (buf[j] == NEWLINE) {
+                            sink.newline();
+                        } else if (buf[j] == END) {
+                            done = true;
+                        }
+                        j += 1;
+                    }
+                    i = j;
+                }
+            }
+        } catch (RuntimeException excp) {
+            fail(excp);
+        }
+    }
+
+    /** Record that a thread of mine failed with EXCP, which is thrown to
+     *  the writer unless something failed first. */
+    private void fail(RuntimeException excp) {
+        _failure.compareAndSet(null, excp);
+    }
+
+    /** Throw the first error met by one of my threads, if any. */
+    private void checkFailure() {
+        RuntimeException failure = _failure.get();
+        if (failure instanceof EnigmaException) {
+            throw (EnigmaException) failure;
+        } else if (failure != null) {
+            throw error("cascade failed: %s", failure);
+        }
+    }
+
+    /** Return true iff A and B have the same characters in the same
+     *  order. */
+    private static boolean sameAlphabet(Alphabet a, Alphabet b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i += 1) {
+            if (a.toChar(i) != b.toChar(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** A bounded queue of ints written by one thread and read by one
+     *  other. */
+    private class Ring {
+
+        /** A ring holding at least CAPACITY ints. */
+        Ring(int capacity) {
+            if (capacity < 1 || capacity > MAX_CAPACITY) {
+                throw error("bad cascade capacity: %d", capacity);
+            }
+            int size = Integer.highestOneBit(capacity);
+            _data = new int[size < capacity ? 2 * size : size];
+        }
+
+        /** Append the LEN ints BUF[FROM .. FROM+LEN-1], waiting for room
+         *  as needed. */
+        void put(int[] buf, int from, int len) {
+            long tail = _tail.get();
+            int idle = 0;
+            while (len > 0) {
+                int room = (int) (_data.length - (tail - _readCache));
+                if (room == 0) {
+                    _readCache = _head.get();
+                    room = (int) (_data.length - (tail - _readCache));
+                    if (room == 0) {
+                        idle = pause(idle);
+                        continue;
+                    }
+                }
+                int n = Math.min(room, len);
+                copy(buf, from, tail, n, true);
+                tail += n;
+                from += n;
+                len -= n;
+                _tail.lazySet(tail);
+                idle = 0;
+            }
+        }
+
+        /** Remove between 1 and MAX ints into BUF[0 ..], waiting for
+         *  some to arrive as needed, and return how many. */
+        int take(int[] buf, int max) {
+            long head = _head.get();
+            int idle = 0;
+            while (_writeCache == head) {
+                _writeCache = _tail.get();
+                if (_writeCache == head) {
+                    idle = pause(idle);
+                }
+            }
+            int n = (int) Math.min(max, _writeCache - head);
+            copy(buf, 0, head, n, false);
+            _head.lazySet(head + n);
+            return n;
+        }
+
+        /** Copy N ints between BUF[FROM ..] and my entries from number
+         *  AT on, into me iff INTO. */
+        private void copy(int[] buf, int from, long at, int n,
+                          boolean into) {
+            int start = (int) (at & (_data.length - 1));
+            int first = Math.min(n, _data.length - start);
+            if (into) {
+                System.arraycopy(buf, from, _data, start, first);
+                System.arraycopy(buf, from + first, _data, 0, n - first);
+            } else {
+                System.arraycopy(_data, start, buf, from, first);
+                System.arraycopy(_data, 0, buf, from + first, n - first);
+            }
+        }
+
+        /** Wait a little, having waited IDLE times already without
+         *  progress, and return the new count.  Throws the error of
+         *  another thread of the cascade if it has failed, since then I
+         *  may wait forever. */
+        private int pause(int idle) {
+            checkFailure();
+            if (idle < SPINS) {
+                Thread.onSpinWait();
+            } else if (idle < SPINS + YIELDS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+            return idle + 1;
+        }
+
+        /** The entries, a power of 2 in number. */
+        private final int[] _data;
+
+        /** Number of ints ever read; written only by the reader. */
+        private final AtomicLong _head = new AtomicLong();
+
+        /** Number of ints ever written; written only by the writer. */
+        private final AtomicLong _tail = new AtomicLong();
+
+        /** The writer's last view of _head. */
+        private long _readCache;
+
+        /** The reader's last view of _tail. */
+        private long _writeCache;
+    }
+
+    /** Markers of the end of a line, a key change, and the end of the
+     *  input. */
+    private static final int NEWLINE = -1, KEY = -2, END = -3;
+
+    /** Largest capacity of a ring. */
+    private static final int MAX_CAPACITY = 1 << 28;
+
+    /** Number of ints a stage handles at once. */
+    private static final int CHUNK = 1 << 12;
+
+    /** Number of times a waiting thread spins, and then yields, before
+     *  it sleeps. */
+    private static final int SPINS = 1 << 8, YIELDS = 1 << 4;
+
+    /** Time a waiting thread sleeps, in nanoseconds. */
+    private static final long PARK_NANOS = 50000;
+
+    /** The machines of my stages, in order. */
+    private final Machine[] _machines;
+
+    /** The rings feeding each stage, and then my sink. */
+    private final Ring[] _rings;
+
+    /** The parts of the keys not yet applied, for each stage. */
+    private final List<ConcurrentLinkedQueue<String>> _keys;
+
+    /** My stages' threads, and then my sink's. */
+    private final Thread[] _threads;
+
+    /** Buffer for writing a single marker. */
+    private final int[] _one;
+
+    /** The first failure of one of my threads, or null. */
+    private final AtomicReference<RuntimeException> _failure =
+        new AtomicReference<RuntimeException>();
+
+}
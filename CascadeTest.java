@@ -0,0 +1,116 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Cascade class.
+ *  @author Amy Kwon
+ */
+public class CascadeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A sink that keeps what it receives, with line ends as '/'. */
+    private static class Collector implements Cascade.Sink {
+
+        /** A sink for characters of ALPHA. */
+        Collector(Alphabet alpha) {
+            _alpha = alpha;
+        }
+
+        @Override
+        public void symbols(int[] buf, int from, int len) {
+            for (int i = from; i < from + len; i += 1) {
+                _out.append(_alpha.toChar(buf[i]));
+            }
+        }
+
+        @Override
+        public void newline() {
+            _out.append('/');
+        }
+
+        @Override
+        public String toString() {
+            return _out.toString();
+        }
+
+        /** The alphabet of my characters. */
+        private final Alphabet _alpha;
+        /** What I have received. */
+        private final StringBuilder _out = new StringBuilder();
+    }
+
+    /** Return the character indices of MSG in ALPHA. */
+    private int[] indices(Alphabet alpha, String msg) {
+        int[] result = new int[msg.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = alpha.toInt(msg.charAt(i));
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCascade() {
+        Machine first = machine("AAAA", null, "(AQ)");
+        Machine second = machine("ZEVQ", "BCDE", "(BX)");
+        Machine[] stages = {first.copy(), second.copy()};
+        stages[1].setEngine(new CompiledEngine());
+        Cascade cascade = new Cascade(stages, 5);
+        Collector out = new Collector(first.alphabet());
+        cascade.start(out);
+        String msg = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG";
+        int[] buf = indices(first.alphabet(), msg);
+        cascade.write(buf, 0, buf.length);
+        cascade.newline();
+        cascade.setKey("B Beta III II I QRST | B Beta I III II ABCD (CD)");
+        cascade.write(buf, 0, buf.length);
+        cascade.finish();
+        String expected = second.convert(first.convert(msg)) + "/";
+        new KeySwitcher(first).apply("B Beta III II I QRST");
+        new KeySwitcher(second).apply("B Beta I III II ABCD (CD)");
+        expected += second.convert(first.convert(msg));
+        assertEquals(expected.replace(" ", ""), out.toString());
+    }
+
+    @Test
+    public void testStageFailure() {
+        Machine[] stages = {
+            machine("AAAA", null, "(AQ)"), machine("ZEVQ", "BCDE", "(BX)")
+        };
+        String message = null;
+        try {
+            new KeySwitcher(machine("AAAA", null, "")).apply(
+                "B Beta I II VI AAAA");
+        } catch (EnigmaException excp) {
+            message = excp.getMessage();
+        }
+        assertNotNull(message);
+
+        Cascade cascade = new Cascade(stages, 5);
+        cascade.start(new Collector(stages[0].alphabet()));
+        int[] buf = indices(stages[0].alphabet(), "THEQUICKBROWNFOX");
+        cascade.write(buf, 0, buf.length);
+        cascade.setKey("B Beta I II VI AAAA | B Beta I II III AAAA");
+        try {
+            for (int k = 0; k < 1000; k += 1) {
+                cascade.write(buf, 0, buf.length);
+            }
+            cascade.finish();
+            fail("cascade did not fail");
+        } catch (EnigmaException excp) {
+            assertEquals(message, excp.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,647 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A catalog, after Rejewski's, of the characteristic of every key of
+ *  a configuration: the cycle types of the products AD, BE and CF of
+ *  the permutations A .. F that a machine applies to the six letters of
+ *  a doubled three-letter indicator (the characters converted first,
+ *  second, ... sixth after its rotors are set).  The plugboard only
+ *  conjugates those products, and so does not change their cycle types;
+ *  the catalog therefore covers every rotor order allowed in the
+ *  configuration and every setting of its rotors, without rings or
+ *  plugboard.  Given the characteristic observed in a day's indicators,
+ *  the catalog lists the keys that produce it.
+ *
+ *  A catalog lives in a directory.  Building it computes, in parallel,
+ *  a part file for each rotor order, holding the characteristic of each
+ *  setting; an interrupted build resumes with the parts not yet
+ *  written.  The parts are then merged into an index: a sorted table of
+ *  the characteristics that occur, each with the range of a file of
+ *  entries (rotor order and setting) that it has, so that a lookup is
+ *  one binary search and one read.  Characteristics are numbered
+ *  exactly, as triples of ranks of partitions of the alphabet size.
+ *
+ *  As commands, the arguments
+ *      --catalog CONFIG DIR [THREADS]
+ *  build (or finish building) the catalog of CONFIG in DIR, and
+ *      --catalog-find DIR AD BE CF
+ *  print the keys with the characteristic whose cycle types are AD, BE
+ *  and CF, each a list of cycle lengths such as "10 10 3 3".
+ *  @author Amy Kwon
+ */
+class Catalog {
+
+    /** Command-line option that selects building a catalog. */
+    static final String OPTION = "--catalog";
+
+    /** Command-line option that selects a lookup. */
+    static final String FIND_OPTION = "--catalog-find";
+
+    /** Number of letters in an indicator, which is sent twice. */
+    static final int INDICATOR = 3;
+
+    /** The catalog in DIR, which must have been built. */
+    Catalog(File dir) {
+        _dir = dir;
+        Properties props = readProperties(dir);
+        if (props == null || !new File(dir, KEYS).exists()) {
+            throw error("no complete catalog in %s", dir);
+        }
+        _alphabet = new Alphabet(props.getProperty(ALPHABET));
+        _positions = Long.parseLong(props.getProperty(POSITIONS));
+        _width = Integer.parseInt(props.getProperty(WIDTH));
+        _orders = readOrders(dir);
+        _partitions = new Partitions(_alphabet.size());
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(
+                     new FileInputStream(new File(dir, KEYS))))) {
+            int count = in.readInt();
+            _keys = new long[count];
+            _starts = new long[count + 1];
+            for (int i = 0; i < count; i += 1) {
+                _keys[i] = in.readLong();
+            }
+            for (int i = 0; i <= count; i += 1) {
+                _starts[i] = in.readLong();
+            }
+        } catch (IOException excp) {
+            throw error("could not read catalog in %s", dir);
+        }
+    }
+
+    /** Perform the build given by ARGS (see the class comment). */
+    static void build(String[] args) {
+        if (args.length < 3 || args.length > 4) {
+            throw error("Usage: --catalog CONFIG DIR [THREADS]");
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 3) {
+            try {
+                threads = Integer.parseInt(args[3]);
+            } catch (NumberFormatException excp) {
+                threads = 0;
+            }
+            if (threads < 1) {
+                throw error("bad thread count: %s", args[3]);
+            }
+        }
+        build(Main.configure(args[1]), new File(args[2]), threads);
+    }
+
+    /** Perform the lookup given by ARGS (see the class comment). */
+    static void find(String[] args) {
+        if (args.length != 5) {
+            throw error("Usage: --catalog-find DIR AD BE CF");
+        }
+        int[][] types = new int[INDICATOR][];
+        for (int t = 0; t < INDICATOR; t += 1) {
+            Scanner lengths = new Scanner(args[t + 2]);
+            ArrayList<Integer> list = new ArrayList<Integer>();
+            while (lengths.hasNextInt()) {
+                list.add(lengths.nextInt());
+            }
+            if (lengths.hasNext()) {
+                throw error("bad cycle type: %s", args[t + 2]);
+            }
+            types[t] = list.stream().mapToInt(Integer::intValue).toArray();
+        }
+        for (String key : new Catalog(new File(args[1])).find(types)) {
+            System.out.println(key);
+        }
+    }
+
+    /** Return the keys (rotor names and setting) whose characteristic
+     *  has the cycle types TYPES[0] (of AD), TYPES[1] (BE) and TYPES[2]
+     *  (CF), each a list of cycle lengths in any order. */
+    List<String> find(int[][] types) {
+        int n = _alphabet.size();
+        long key = 0;
+        for (int[] type : types) {
+            int[] counts = new int[n + 1];
+            int total = 0;
+            for (int m : type) {
+                if (m < 1 || m > n) {
+                    throw error("bad cycle length: %d", m);
+                }
+                counts[m] += 1;
+                total += m;
+            }
+            if (total != n) {
+                throw error("cycle lengths must add up to %d", n);
+            }
+            key = key * _partitions.count() + _partitions.rank(counts);
+        }
+        List<String> result = new ArrayList<String>();
+        int i = Arrays.binarySearch(_keys, key);
+        if (i < 0) {
+            return result;
+        }
+        int count = (int) (_starts[i + 1] - _starts[i]);
+        ByteBuffer entries = ByteBuffer.allocate(count * _width);
+        try (FileChannel in = FileChannel.open(
+                 new File(_dir, ENTRIES).toPath())) {
+            long at = _starts[i] * _width;
+            while (entries.hasRemaining()) {
+                if (in.read(entries, at + entries.position()) < 0) {
+                    throw error("catalog in %s is truncated", _dir);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read catalog in %s", _dir);
+        }
+        entries.flip();
+        for (int k = 0; k < count; k += 1) {
+            long entry = _width == Integer.BYTES ? entries.getInt()
+                : entries.getLong();
+            result.add(_orders.get((int) (entry / _positions)) + " "
+                       + setting(entry % _positions));
+        }
+        return result;
+    }
+
+    /** Return the setting (rotor positions after the reflector) with
+     *  number POSITION. */
+    private String setting(long position) {
+        int n = _alphabet.size();
+        int slots = _orders.get(0).split(" ").length;
+        char[] result = new char[slots - 1];
+        for (int k = result.length - 1; k >= 0; k -= 1) {
+            result[k] = _alphabet.toChar((int) (position % n));
+            position /= n;
+        }
+        return new String(result);
+    }
+
+    /** Return the cycle types (as arrays of counts of cycles of each
+     *  length) of AD, BE and CF for MACHINE in its current state, using
+     *  ENGINE to tabulate its permutations. */
+    static int[][] characteristic(Machine machine, RunLengthEngine engine) {
+        int n = machine.alphabet().size();
+        char[] perms = new char[2 * INDICATOR * n];
+        int[] pos = machine.positions();
+        Stepper stepper = machine.stepper();
+        for (int t = 0; t < 2 * INDICATOR; t += 1) {
+            stepper.step(pos);
+            engine.permutation(machine, pos, perms, t * n);
+        }
+        int[][] result = new int[INDICATOR][n + 1];
+        boolean[] seen = new boolean[n];
+        for (int t = 0; t < INDICATOR; t += 1) {
+            int first = t * n, second = (t + INDICATOR) * n;
+            Arrays.fill(seen, false);
+            for (int c = 0; c < n; c += 1) {
+                if (!seen[c]) {
+                    int m = 0;
+                    for (int x = c; !seen[x];
+                         x = perms[second + perms[first + x]]) {
+                        seen[x] = true;
+                        m += 1;
+                    }
+                    result[t][m] += 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Build (or finish building) the catalog of the configuration of
+     *  MACHINE, which is not changed, in DIR, using THREADS threads. */
+    static void build(Machine machine, File dir, int threads) {
+        List<int[]> orders = orders(machine);
+        List<String> names = new ArrayList<String>();
+        for (int[] order : orders) {
+            StringBuilder name = new StringBuilder();
+            for (int r : order) {
+                name.append(name.length() == 0 ? "" : " ")
+                    .append(machine.allRotors().get(r).name());
+            }
+            names.add(name.toString());
+        }
+        if (orders.isEmpty()) {
+            throw error("configuration allows no rotor orders");
+        }
+        int n = machine.alphabet().size();
+        Partitions partitions = new Partitions(n);
+        long settings = 1;
+        for (int k = 1; k < machine.numRotors(); k += 1) {
+            settings = Math.multiplyExact(settings, n);
+        }
+        if (settings > Integer.MAX_VALUE) {
+            throw error("too many settings to catalog");
+        }
+        int positions = (int) settings;
+        long entries = (long) positions * orders.size();
+        int width = entries <= Integer.MAX_VALUE ? Integer.BYTES : Long.BYTES;
+
+        Properties props = new Properties();
+        props.setProperty(VERSION, CURRENT_VERSION);
+        props.setProperty(ALPHABET, alphabetString(machine.alphabet()));
+        props.setProperty(POSITIONS, Long.toString(positions));
+        props.setProperty(WIDTH, Integer.toString(width));
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw error("could not create %s", dir);
+        }
+        Properties old = readProperties(dir);
+        if (old == null) {
+            writeOrders(dir, names);
+            writeProperties(dir, props);
+        } else if (!old.equals(props) || !readOrders(dir).equals(names)) {
+            throw error("%s holds a catalog of another configuration", dir);
+        }
+        if (new File(dir, KEYS).exists()) {
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> parts = new ArrayList<Future<?>>();
+            for (int i = 0; i < orders.size(); i += 1) {
+                File part = part(dir, i);
+                if (!part.exists()) {
+                    int[] order = orders.get(i);
+                    parts.add(pool.submit(() -> writePart(machine, order,
+                                                          partitions,
+                                                          positions,
+                                                          part)));
+                }
+            }
+            for (Future<?> part : parts) {
+                part.get();
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("catalog failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            throw error("catalog interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+        merge(dir, orders.size(), positions, width);
+        for (int i = 0; i < orders.size(); i += 1) {
+            part(dir, i).delete();
+        }
+    }
+
+    /** Write to PART the characteristic of each setting of the rotors of
+     *  a copy of MACHINE holding the rotors ORDER (indices in its
+     *  allRotors), numbered with PARTITIONS, of which there are
+     *  POSITIONS. */
+    private static void writePart(Machine machine, int[] order,
+                                  Partitions partitions, int positions,
+                                  File part) {
+        Machine copy = machine.copy();
+        Rotor[] rotors = new Rotor[order.length];
+        for (int k = 0; k < order.length; k += 1) {
+            rotors[k] = copy.allRotors().get(order[k]);
+        }
+        copy.useRotors(rotors);
+        copy.setRing(null);
+        copy.setPlugboard(null);
+        RunLengthEngine engine = new RunLengthEngine();
+        int n = copy.alphabet().size();
+        int[] pos = new int[order.length];
+        File temp = new File(part.getPath() + TEMP);
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(temp)))) {
+            for (int p = 0; p < positions; p += 1) {
+                copy.setPositions(pos);
+                long key = 0;
+                for (int[] counts : characteristic(copy, engine)) {
+                    key = key * partitions.count() + partitions.rank(counts);
+                }
+                out.writeLong(key);
+                for (int k = pos.length - 1; k >= 1; k -= 1) {
+                    pos[k] += 1;
+                    if (pos[k] < n) {
+                        break;
+                    }
+                    pos[k] = 0;
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", temp);
+        }
+        move(temp, part);
+    }
+
+    /** Merge the parts in DIR for ORDERS rotor orders of POSITIONS
+     *  settings each into an index with entries WIDTH bytes wide. */
+    private static void merge(File dir, int orders, int positions,
+                              int width) {
+        HashMap<Long, long[]> counts = new HashMap<Long, long[]>();
+        for (int i = 0; i < orders; i += 1) {
+            try (DataInputStream in = openPart(dir, i)) {
+                for (int p = 0; p < positions; p += 1) {
+                    counts.computeIfAbsent(in.readLong(),
+                                           k -> new long[1])[0] += 1;
+                }
+            } catch (IOException excp) {
+                throw error("could not read %s", part(dir, i));
+            }
+        }
+        long[] keys = new long[counts.size()];
+        int k = 0;
+        for (long key : counts.keySet()) {
+            keys[k] = key;
+            k += 1;
+        }
+        Arrays.sort(keys);
+        long[] starts = new long[keys.length + 1];
+        for (int i = 0; i < keys.length; i += 1) {
+            long[] count = counts.get(keys[i]);
+            starts[i + 1] = starts[i] + count[0];
+            count[0] = starts[i];
+        }
+
+        File entries = new File(dir, ENTRIES + TEMP);
+        long bytes = starts[keys.length] * width;
+        try (RandomAccessFile file = new RandomAccessFile(entries, "rw")) {
+            file.setLength(bytes);
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer[] maps =
+                new MappedByteBuffer[(int) ((bytes + MAP - 1) / MAP)];
+            for (int m = 0; m < maps.length; m += 1) {
+                maps[m] = channel.map(FileChannel.MapMode.READ_WRITE,
+                                      m * MAP,
+                                      Math.min(MAP, bytes - m * MAP));
+            }
+            for (int i = 0; i < orders; i += 1) {
+                try (DataInputStream in = openPart(dir, i)) {
+                    for (int p = 0; p < positions; p += 1) {
+                        long[] cursor = counts.get(in.readLong());
+                        long at = cursor[0] * width;
+                        cursor[0] += 1;
+                        long entry = (long) i * positions + p;
+                        MappedByteBuffer map = maps[(int) (at / MAP)];
+                        if (width == Integer.BYTES) {
+                            map.putInt((int) (at % MAP), (int) entry);
+                        } else {
+                            map.putLong((int) (at % MAP), entry);
+                        }
+                    }
+                }
+            }
+            for (MappedByteBuffer map : maps) {
+                map.force();
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", entries);
+        }
+        move(entries, new File(dir, ENTRIES));
+
+        File index = new File(dir, KEYS + TEMP);
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(index)))) {
+            out.writeInt(keys.length);
+            for (long key : keys) {
+                out.writeLong(key);
+            }
+            for (long start : starts) {
+                out.writeLong(start);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", index);
+        }
+        move(index, new File(dir, KEYS));
+    }
+
+    /** Return the rotor orders allowed in MACHINE's configuration, as
+     *  indices in its allRotors, reflector first. */
+    static List<int[]> orders(Machine machine) {
+        List<int[]> result = new ArrayList<int[]>();
+        addOrders(machine, new int[machine.numRotors()], 0, result);
+        return result;
+    }
+
+    /** Add to RESULT every allowed order of MACHINE's rotors that starts
+     *  with ORDER[0 .. K-1]. */
+    private static void addOrders(Machine machine, int[] order, int k,
+                                  List<int[]> result) {
+        if (k == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        int fixed = machine.numRotors() - machine.numPawls();
+        List<Rotor> rotors = machine.allRotors();
+        for (int r = 0; r < rotors.size(); r += 1) {
+            Rotor rotor = rotors.get(r);
+            boolean fits = k == 0 ? rotor.reflecting()
+                : k < fixed ? !rotor.reflecting() && !rotor.rotates()
+                : rotor.rotates();
+            for (int j = 0; fits && j < k; j += 1) {
+                fits = order[j] != r;
+            }
+            if (fits) {
+                order[k] = r;
+                addOrders(machine, order, k + 1, result);
+            }
+        }
+    }
+
+    /** The partitions of an integer into positive parts (as the cycle
+     *  types of permutations of that many things), numbered from 0. */
+    static class Partitions {
+
+        /** The partitions of N. */
+        Partitions(int n) {
+            _n = n;
+            _fit = new long[n + 1][n + 1];
+            for (int k = 0; k <= n; k += 1) {
+                _fit[0][k] = 1;
+            }
+            for (int m = 1; m <= n; m += 1) {
+                for (int k = 1; k <= n; k += 1) {
+                    _fit[m][k] = _fit[m][k - 1]
+                        + (k <= m ? _fit[m - k][k] : 0);
+                }
+            }
+            if (_fit[n][n] > MAX_PARTITIONS) {
+                throw error("alphabet too large to catalog");
+            }
+        }
+
+        /** Return the number of partitions. */
+        long count() {
+            return _fit[_n][_n];
+        }
+
+        /** Return the number of the partition with COUNTS[M] parts equal
+         *  to M, for 1 <= M <= N. */
+        long rank(int[] counts) {
+            long result = 0;
+            int m = _n;
+            for (int part = _n; part >= 1; part -= 1) {
+                for (int c = 0; c < counts[part]; c += 1) {
+                    result += _fit[m][part - 1];
+                    m -= part;
+                }
+            }
+            return result;
+        }
+
+        /** The number partitioned. */
+        private final int _n;
+
+        /** _fit[M][K] is the number of partitions of M into parts no
+         *  larger than K. */
+        private final long[][] _fit;
+    }
+
+    /** Return the characters of ALPHA, in order. */
+    private static String alphabetString(Alphabet alpha) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < alpha.size(); i += 1) {
+            result.append(alpha.toChar(i));
+        }
+        return result.toString();
+    }
+
+    /** Return the part file of order number I in DIR. */
+    private static File part(File dir, int i) {
+        return new File(dir, String.format("part-%d.bin", i));
+    }
+
+    /** Return a stream reading the part file of order I in DIR. */
+    private static DataInputStream openPart(File dir, int i)
+        throws IOException {
+        return new DataInputStream(new BufferedInputStream(
+            new FileInputStream(part(dir, i))));
+    }
+
+    /** Return the properties of the catalog in DIR, or null if there
+     *  are none. */
+    private static Properties readProperties(File dir) {
+        File file = new File(dir, PROPERTIES);
+        if (!file.exists()) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            props.load(in);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+        if (!CURRENT_VERSION.equals(props.getProperty(VERSION))) {
+            throw error("%s is not a catalog", dir);
+        }
+        return props;
+    }
+
+    /** Write PROPS as the properties of the catalog in DIR. */
+    private static void writeProperties(File dir, Properties props) {
+        File temp = new File(dir, PROPERTIES + TEMP);
+        try (OutputStream out = new FileOutputStream(temp)) {
+            props.store(out, "Enigma characteristic catalog");
+        } catch (IOException excp) {
+            throw error("could not write %s", temp);
+        }
+        move(temp, new File(dir, PROPERTIES));
+    }
+
+    /** Return the names of the rotor orders of the catalog in DIR. */
+    private static List<String> readOrders(File dir) {
+        try {
+            return Files.readAllLines(new File(dir, ORDERS).toPath());
+        } catch (IOException excp) {
+            throw error("could not read catalog in %s", dir);
+        }
+    }
+
+    /** Write NAMES as the rotor orders of the catalog in DIR. */
+    private static void writeOrders(File dir, List<String> names) {
+        File temp = new File(dir, ORDERS + TEMP);
+        try {
+            Files.write(temp.toPath(), names);
+        } catch (IOException excp) {
+            throw error("could not write %s", temp);
+        }
+        move(temp, new File(dir, ORDERS));
+    }
+
+    /** Rename FROM to TO, replacing TO. */
+    private static void move(File from, File to) {
+        try {
+            Files.move(from.toPath(), to.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write %s", to);
+        }
+    }
+
+    /** Largest number of partitions of the alphabet size for which the
+     *  three ranks of a characteristic fit in a long. */
+    private static final long MAX_PARTITIONS = 1 << 21;
+
+    /** Number of bytes of the entries file mapped at a time. */
+    private static final long MAP = 1 << 30;
+
+    /** Suffix of files being written. */
+    private static final String TEMP = ".tmp";
+
+    /** Names of the files of a catalog. */
+    private static final String PROPERTIES = "catalog.properties",
+        ORDERS = "orders.txt", KEYS = "keys.bin", ENTRIES = "entries.bin";
+
+    /** Property names. */
+    private static final String VERSION = "version", ALPHABET = "alphabet",
+        POSITIONS = "positions", WIDTH = "width";
+
+    /** The version written by this class. */
+    private static final String CURRENT_VERSION = "1";
+
+    /** Directory holding the catalog. */
+    private final File _dir;
+
+    /** Alphabet of the catalogued configuration. */
+    private final Alphabet _alphabet;
+
+    /** Number of settings of each rotor order. */
+    private final long _positions;
+
+    /** Bytes per entry. */
+    private final int _width;
+
+    /** Names of the rotors of each order, separated by blanks. */
+    private final List<String> _orders;
+
+    /** Numbering of cycle types. */
+    private final Partitions _partitions;
+
+    /** The characteristics that occur, in increasing order. */
+    private final long[] _keys;
+
+    /** Entries for _keys[I] are numbers _starts[I] .. _starts[I+1]-1. */
+    private final long[] _starts;
+
+}
@@ -0,0 +1,186 @@
+package enigma;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Catalog class.
+ *  @author Amy Kwon
+ */
+public class CatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The temporary directories of the current test. */
+    private final TempDirs _temps = new TempDirs();
+
+    /** Delete the temporary directories of the current test. */
+    @After
+    public void deleteTemps() throws IOException {
+        _temps.delete();
+    }
+
+    /** Names of the moving rotors of machine(). */
+    static final String[] MOVING = {"I", "II", "III"};
+
+    /** Return a machine on the alphabet A-F with three slots, two pawls,
+     *  reflector R and the moving rotors named by MOVING. */
+    private Machine machine() {
+        Alphabet alpha = new Alphabet("ABCDEF");
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        rotors.add(new Reflector("R", new Permutation("(AB) (CD) (EF)",
+                                                      alpha)));
+        rotors.add(new MovingRotor("I", new Permutation("(ACE) (BDF)",
+                                                        alpha), "C"));
+        rotors.add(new MovingRotor("II", new Permutation("(ABDC) (EF)",
+                                                         alpha), "E"));
+        rotors.add(new MovingRotor("III", new Permutation("(AFB) (CDE)",
+                                                          alpha), "AD"));
+        return new Machine(alpha, 3, 2, rotors);
+    }
+
+    /** Return every key (rotor names and setting) of machine(). */
+    private List<String> keys() {
+        List<String> result = new ArrayList<String>();
+        String letters = "ABCDEF";
+        for (String left : MOVING) {
+            for (String right : MOVING) {
+                if (left.equals(right)) {
+                    continue;
+                }
+                for (int p = 0; p < letters.length() * letters.length();
+                     p += 1) {
+                    result.add("R " + left + " " + right + " "
+                               + letters.charAt(p / letters.length())
+                               + letters.charAt(p % letters.length()));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the cycle types of AD, BE and CF for the key KEY, found by
+     *  converting each letter at each of the first six steps with a
+     *  machine set to KEY. */
+    private int[][] characteristic(String key) {
+        int n = machine().alphabet().size();
+        int[][] perms = new int[2 * Catalog.INDICATOR][n];
+        for (int t = 0; t < perms.length; t += 1) {
+            for (int c = 0; c < n; c += 1) {
+                Machine m = machine();
+                new KeySwitcher(m).apply(key);
+                for (int s = 0; s < t; s += 1) {
+                    m.convert(0);
+                }
+                perms[t][c] = m.convert(c);
+            }
+        }
+        int[][] result = new int[Catalog.INDICATOR][];
+        for (int t = 0; t < Catalog.INDICATOR; t += 1) {
+            List<Integer> lengths = new ArrayList<Integer>();
+            boolean[] seen = new boolean[n];
+            for (int c = 0; c < n; c += 1) {
+                int m = 0;
+                for (int x = c; !seen[x];
+                     x = perms[t + Catalog.INDICATOR][perms[t][x]]) {
+                    seen[x] = true;
+                    m += 1;
+                }
+                if (m > 0) {
+                    lengths.add(m);
+                }
+            }
+            result[t] = lengths.stream().mapToInt(Integer::intValue)
+                .sorted().toArray();
+        }
+        return result;
+    }
+
+    /** Check that the catalog in DIR lists each key of machine() under
+     *  its characteristic, and lists each key once in all. */
+    private void checkCatalog(File dir) {
+        Catalog catalog = new Catalog(dir);
+        List<String> keys = keys();
+        HashSet<String> types = new HashSet<String>();
+        int listed = 0;
+        for (String key : keys) {
+            int[][] type = characteristic(key);
+            List<String> found = catalog.find(type);
+            assertTrue(key, found.contains(key));
+            if (types.add(Arrays.deepToString(type))) {
+                listed += found.size();
+            }
+        }
+        assertEquals(keys.size(), listed);
+    }
+
+    /** Return the number of part files in DIR. */
+    private int parts(File dir) {
+        return (int) Arrays.stream(dir.list())
+            .filter(name -> name.startsWith("part-")
+                    && name.endsWith(".bin")).count();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testBuildAndFind() throws IOException {
+        File dir = _temps.make("catalog");
+        Catalog.build(machine(), dir, 2);
+        assertEquals(0, parts(dir));
+        checkCatalog(dir);
+        Catalog.build(machine(), dir, 2);
+        checkCatalog(dir);
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        File dir = _temps.make("catalog");
+        File blocker = new File(dir, "part-3.bin.tmp");
+        assertTrue(blocker.mkdir());
+        try {
+            Catalog.build(machine(), dir, 1);
+            fail("build did not stop at part 3");
+        } catch (EnigmaException excp) {
+            assertTrue(parts(dir) >= 3);
+            assertFalse(new File(dir, "part-3.bin").exists());
+        }
+        assertTrue(blocker.delete());
+        Catalog.build(machine(), dir, 1);
+        assertEquals(0, parts(dir));
+        checkCatalog(dir);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testOtherConfiguration() throws IOException {
+        File dir = _temps.make("catalog");
+        Catalog.build(machine(), dir, 1);
+        Machine other = machine();
+        other.addRotor(new MovingRotor("IV", new Permutation(
+            "(ABCDEF)", other.alphabet()), "A"));
+        Catalog.build(other, dir, 1);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadCycleType() throws IOException {
+        File dir = _temps.make("catalog");
+        Catalog.build(machine(), dir, 1);
+        new Catalog(dir).find(new int[][] {{5}, {6}, {6}});
+    }
+
+}
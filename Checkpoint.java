@@ -0,0 +1,253 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import static enigma.EnigmaException.*;
+
+/** A snapshot of the complete state of a machine part of the way through
+ *  a job: the rotors in its slots, their settings and notches, its ring
+ *  settings and plugboard, how many characters it has converted since
+ *  its key was last set, and how far the job had got through its input
+ *  and output files.  Snapshots are saved as small property files, in
+ *  which the settings, rings and notches are spelled in the machine's
+ *  alphabet.
+ *  @author Amy Kwon
+ */
+class Checkpoint {
+
+    /** A snapshot of rotors named ROTORS at SETTINGS, whose moving rotors
+     *  have notches at NOTCHES (null for the other slots), with ring
+     *  settings RING (or null) and plugboard PLUGBOARD (cycle notation,
+     *  or null), having converted OFFSET characters since its key was
+     *  set. */
+    Checkpoint(String[] rotors, int[] settings, int[][] notches, int[] ring,
+               String plugboard, long offset) {
+        _rotors = rotors;
+        _settings = settings;
+        _notches = notches;
+        _ring = ring;
+        _plugboard = plugboard;
+        _offset = offset;
+    }
+
+    /** Return the names of the rotors in each slot, reflector first. */
+    String[] rotors() {
+        return _rotors;
+    }
+
+    /** Return the setting of the rotor in each slot. */
+    int[] settings() {
+        return _settings;
+    }
+
+    /** Return the notches of the rotor in each slot (null if the rotor
+     *  does not move). */
+    int[][] notches() {
+        return _notches;
+    }
+
+    /** Return the ring settings, or null if none were set. */
+    int[] ring() {
+        return _ring;
+    }
+
+    /** Return the plugboard in cycle notation, or null if none was
+     *  set. */
+    String plugboard() {
+        return _plugboard;
+    }
+
+    /** Return the number of characters converted since the key was
+     *  set. */
+    long offset() {
+        return _offset;
+    }
+
+    /** Return the number of input lines the job had finished. */
+    long inputLines() {
+        return _inputLines;
+    }
+
+    /** Return the number of bytes of output the job had written. */
+    long outputBytes() {
+        return _outputBytes;
+    }
+
+    /** Record that the job had finished INPUTLINES lines of input and
+     *  written OUTPUTBYTES bytes of output. */
+    void setProgress(long inputLines, long outputBytes) {
+        _inputLines = inputLines;
+        _outputBytes = outputBytes;
+    }
+
+    /** Save me in FILE, using ALPHA to spell settings.  The file is
+     *  replaced as a whole, so an interrupted save leaves the previous
+     *  checkpoint intact. */
+    void write(File file, Alphabet alpha) {
+        Properties props = new Properties();
+        props.setProperty(VERSION, CURRENT_VERSION);
+        props.setProperty(ROTORS, String.join(" ", _rotors));
+        props.setProperty(SETTINGS, spell(_settings, alpha));
+        StringBuilder notches = new StringBuilder();
+        for (int[] slot : _notches) {
+            notches.append(slot == null ? FIXED : spell(slot, alpha));
+            notches.append(' ');
+        }
+        props.setProperty(NOTCHES, notches.toString().strip());
+        if (_ring != null) {
+            props.setProperty(RING, spell(_ring, alpha));
+        }
+        if (_plugboard != null) {
+            props.setProperty(PLUGBOARD, _plugboard);
+        }
+        props.setProperty(OFFSET, Long.toString(_offset));
+        props.setProperty(INPUT_LINES, Long.toString(_inputLines));
+        props.setProperty(OUTPUT_BYTES, Long.toString(_outputBytes));
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                props.store((OutputStream) out, "Enigma checkpoint");
+                out.getFD().sync();
+            }
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s", file);
+        }
+    }
+
+    /** Return the checkpoint saved in FILE, whose settings are spelled
+     *  in ALPHA. */
+    static Checkpoint read(File file, Alphabet alpha) {
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            props.load(in);
+        } catch (IOException excp) {
+            throw error("could not read checkpoint %s", file);
+        }
+        if (!CURRENT_VERSION.equals(props.getProperty(VERSION))) {
+            throw error("%s is not a checkpoint", file);
+        }
+        try {
+            String[] rotors = property(props, ROTORS).split(" ");
+            int[] settings = unspell(property(props, SETTINGS), alpha);
+            String[] slots = property(props, NOTCHES).split(" ");
+            if (settings.length != rotors.length
+                || slots.length != rotors.length) {
+                throw error("corrupt checkpoint %s", file);
+            }
+            int[][] notches = new int[slots.length][];
+            for (int i = 0; i < slots.length; i += 1) {
+                if (!slots[i].equals(FIXED)) {
+                    notches[i] = unspell(slots[i], alpha);
+                }
+            }
+            String ring = props.getProperty(RING);
+            Checkpoint result =
+                new Checkpoint(rotors, settings, notches,
+                               ring == null ? null : unspell(ring, alpha),
+                               props.getProperty(PLUGBOARD),
+                               Long.parseLong(property(props, OFFSET)));
+            result.setProgress(Long.parseLong(property(props, INPUT_LINES)),
+                               Long.parseLong(property(props,
+                                                       OUTPUT_BYTES)));
+            return result;
+        } catch (NumberFormatException excp) {
+            throw error("corrupt checkpoint %s", file);
+        }
+    }
+
+    /** Return property KEY of PROPS, which must be present. */
+    private static String property(Properties props, String key) {
+        String value = props.getProperty(key);
+        if (value == null) {
+            throw error("checkpoint has no %s", key);
+        }
+        return value;
+    }
+
+    /** Return the characters of ALPHA with indices INDICES. */
+    private static String spell(int[] indices, Alphabet alpha) {
+        StringBuilder result = new StringBuilder();
+        for (int k : indices) {
+            result.append(alpha.toChar(k));
+        }
+        return result.toString();
+    }
+
+    /** Return the indices in ALPHA of the characters of TEXT. */
+    private static int[] unspell(String text, Alphabet alpha) {
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = alpha.toInt(text.charAt(i));
+        }
+        return result;
+    }
+
+    /** Property naming the checkpoint format version. */
+    private static final String VERSION = "version";
+
+    /** The checkpoint format version written. */
+    private static final String CURRENT_VERSION = "1";
+
+    /** Property naming the rotors. */
+    private static final String ROTORS = "rotors";
+
+    /** Property holding the rotor settings. */
+    private static final String SETTINGS = "settings";
+
+    /** Property holding the notches of each slot. */
+    private static final String NOTCHES = "notches";
+
+    /** Notches entry of a slot whose rotor does not move. */
+    private static final String FIXED = "-";
+
+    /** Property holding the ring settings. */
+    private static final String RING = "ring";
+
+    /** Property holding the plugboard. */
+    private static final String PLUGBOARD = "plugboard";
+
+    /** Property holding the offset within the current key. */
+    private static final String OFFSET = "offset";
+
+    /** Property holding the number of input lines finished. */
+    private static final String INPUT_LINES = "input.lines";
+
+    /** Property holding the number of output bytes written. */
+    private static final String OUTPUT_BYTES = "output.bytes";
+
+    /** Rotor names, by slot. */
+    private final String[] _rotors;
+
+    /** Rotor settings, by slot. */
+    private final int[] _settings;
+
+    /** Rotor notches, by slot. */
+    private final int[][] _notches;
+
+    /** Ring settings, or null. */
+    private final int[] _ring;
+
+    /** Plugboard cycles, or null. */
+    private final String _plugboard;
+
+    /** Characters converted since the key was set. */
+    private final long _offset;
+
+    /** Input lines finished. */
+    private long _inputLines;
+
+    /** Output bytes written. */
+    private long _outputBytes;
+
+}
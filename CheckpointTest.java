@@ -0,0 +1,109 @@
+package enigma;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for checkpointed jobs.
+ *  @author Amy Kwon
+ */
+public class CheckpointTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The temporary directories of the current test. */
+    private final TempDirs _temps = new TempDirs();
+
+    /** Delete the temporary directories of the current test. */
+    @After
+    public void deleteTemps() throws IOException {
+        _temps.delete();
+    }
+
+    /** A key line that names a rotor the configuration lacks, so that a
+     *  job stops with an error when it reaches it. */
+    static final String BAD_KEY = "* B Beta I II VI AAAA";
+
+    /** The line that BAD_KEY stands in for. */
+    static final String GOOD_KEY = "* B Beta II III IV QRST BCDE (AB)";
+
+    /** Return a new file named NAME in DIR holding CONTENTS. */
+    private File write(File dir, String name, String contents)
+        throws IOException {
+        File result = new File(dir, name);
+        Files.write(result.toPath(), contents.getBytes());
+        return result;
+    }
+
+    /** Return the contents of FILE. */
+    private String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()));
+    }
+
+    /** Check that a checkpointed job on INPUT that stops at its BAD_KEY
+     *  line, resumed once that line is replaced by GOOD_KEY, writes what
+     *  an uninterrupted job on the repaired input does. */
+    private void checkResume(String input) throws IOException {
+        File dir = _temps.make("checkpoint");
+        String config = write(dir, "default.conf", BatchTest.CONFIG)
+            .getPath();
+        String repaired = input.replace(BAD_KEY, GOOD_KEY);
+        String in = write(dir, "job.in", input).getPath();
+        String out = new File(dir, "job.out").getPath();
+        File state = new File(dir, "job.state");
+        String[] args = {
+            "--checkpoint", state.getPath(), "--checkpoint-every", "1",
+            config, in, out
+        };
+        try {
+            new Main(args).process();
+            fail("job did not stop at " + BAD_KEY);
+        } catch (EnigmaException excp) {
+            assertTrue(state.exists());
+        }
+        write(dir, "job.in", repaired);
+        new Main(args).process();
+        assertFalse(state.exists());
+
+        String cleanIn = write(dir, "clean.in", repaired).getPath();
+        File cleanOut = new File(dir, "clean.out");
+        new Main(new String[] {
+            config, cleanIn, cleanOut.getPath()
+        }).process();
+        assertEquals(read(cleanOut), read(new File(out)));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testKillAndResume() throws IOException {
+        checkResume("* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+                    + "FROM HIS SHOULDER HIAWATHA\n\n"
+                    + "TOOK THE CAMERA OF ROSEWOOD\n"
+                    + BAD_KEY + "\n"
+                    + "MADE OF SLIDING FOLDING ROSEWOOD\n"
+                    + "NEATLY PUT IT ALL TOGETHER\n");
+    }
+
+    @Test
+    public void testResumeAfterBlankLines() throws IOException {
+        checkResume("\n  \n\n* B Beta III IV I AXLE (HQ) (EX)\n"
+                    + "FROM HIS SHOULDER HIAWATHA\n"
+                    + "TOOK THE CAMERA OF ROSEWOOD\n"
+                    + BAD_KEY + "\n"
+                    + "MADE OF SLIDING FOLDING ROSEWOOD\n");
+    }
+
+}
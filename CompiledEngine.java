@@ -0,0 +1,173 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The engine that converts with a RotorPath generated by PathCompiler
+ *  for the machine's current rotors, rings and plugboard, stepping the
+ *  rotors with the machine's Stepper.  Paths are kept for the most
+ *  recently used configurations.  Where no path can be generated (as
+ *  when no Java compiler is available), converts as InterpretedEngine
+ *  does.
+ *  @author Amy Kwon
+ */
+class CompiledEngine implements Engine {
+
+    /** The name of this engine. */
+    static final String NAME = "compiled";
+
+    /** Number of configurations whose paths are kept. */
+    static final int CACHED_PATHS = 64;
+
+    /** A new engine, with no paths yet generated. */
+    CompiledEngine() {
+        this(new LinkedHashMap<Key, RotorPath>(CACHED_PATHS, LOAD, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key,
+                                                    RotorPath> e) {
+                    return size() > CACHED_PATHS;
+                }
+            });
+    }
+
+    /** A new engine keeping its paths in PATHS, which may be shared with
+     *  other engines. */
+    private CompiledEngine(Map<Key, RotorPath> paths) {
+        _paths = paths;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Engine fork() {
+        return new CompiledEngine(_paths);
+    }
+
+    @Override
+    public void convert(Machine machine, int[] buf, int from, int len) {
+        RotorPath path = path(machine);
+        if (path == null) {
+            _fallback.convert(machine, buf, from, len);
+            return;
+        }
+        Stepper stepper = machine.stepper();
+        int[] pos = machine.positions();
+        long run = stepper.runLength(pos);
+        for (int i = from; i < from + len; i += 1) {
+            run = stepper.next(pos, run);
+            buf[i] = path.convert(buf[i], pos);
+        }
+        machine.moved(pos, len);
+    }
+
+    /** Return the path for MACHINE's current configuration, or null if
+     *  none can be generated. */
+    RotorPath path(Machine machine) {
+        Rotor[] rotors = machine.activeRotors();
+        int[] ring = machine.ring();
+        Permutation plugboard = machine.plugboard();
+        if (_last != null && _last.matches(rotors, ring, plugboard)) {
+            return _lastPath;
+        }
+        Key key = new Key(rotors, ring, plugboard);
+        RotorPath path;
+        synchronized (_paths) {
+            if (_paths.containsKey(key)) {
+                path = _paths.get(key);
+            } else {
+                path = PathCompiler.compile(rotors, ring, plugboard);
+                _paths.put(key, path);
+            }
+        }
+        _last = key;
+        _lastPath = path;
+        return path;
+    }
+
+    /** Return true iff a path (or the lack of one) is already known for
+     *  MACHINE's current configuration, so that path(MACHINE) will take
+     *  no time. */
+    boolean prepared(Machine machine) {
+        Rotor[] rotors = machine.activeRotors();
+        int[] ring = machine.ring();
+        Permutation plugboard = machine.plugboard();
+        if (_last != null && _last.matches(rotors, ring, plugboard)) {
+            return true;
+        }
+        synchronized (_paths) {
+            return _paths.containsKey(new Key(rotors, ring, plugboard));
+        }
+    }
+
+    /** A configuration: rotors, ring settings and plugboard, compared by
+     *  identity (the objects are never changed in place). */
+    private static class Key {
+
+        /** The key for ROTORS, RING and PLUGBOARD. */
+        Key(Rotor[] rotors, int[] ring, Permutation plugboard) {
+            _rotors = List.of(rotors);
+            _ring = ring;
+            _plugboard = plugboard;
+        }
+
+        /** Return true iff I am the key for ROTORS, RING and PLUGBOARD. */
+        boolean matches(Rotor[] rotors, int[] ring, Permutation plugboard) {
+            if (ring != _ring || plugboard != _plugboard
+                || rotors.length != _rotors.size()) {
+                return false;
+            }
+            for (int i = 0; i < rotors.length; i += 1) {
+                if (rotors[i] != _rotors.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return matches(other._rotors.toArray(new Rotor[0]), other._ring,
+                           other._plugboard);
+        }
+
+        @Override
+        public int hashCode() {
+            return _rotors.hashCode() ^ System.identityHashCode(_ring)
+                ^ System.identityHashCode(_plugboard);
+        }
+
+        /** Rotors, by slot. */
+        private final List<Rotor> _rotors;
+
+        /** Ring settings, or null. */
+        private final int[] _ring;
+
+        /** Plugboard, or null. */
+        private final Permutation _plugboard;
+    }
+
+    /** Load factor of the map of paths. */
+    private static final float LOAD = 0.75f;
+
+    /** Paths for the most recently used configurations, shared with the
+     *  engines forked from me, and guarded by its own lock. */
+    private final Map<Key, RotorPath> _paths;
+
+    /** Key of the configuration last converted. */
+    private Key _last;
+
+    /** Path for _last. */
+    private RotorPath _lastPath;
+
+    /** Engine used when no path can be generated. */
+    private final Engine _fallback = new InterpretedEngine();
+
+}
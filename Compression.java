@@ -0,0 +1,228 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static enigma.EnigmaException.*;
+
+/** Compressed input and output, with the gzip codec of the JDK.  Input
+ *  is decompressed as it is read if it starts as gzip data does,
+ *  whatever its name.  Output to a file whose name ends in SUFFIX is
+ *  compressed in blocks, several at once on other threads while the
+ *  writer goes on producing more, each block becoming a gzip member of
+ *  its own; gzip readers take the concatenated members as one stream.
+ *  No uncompressed data is written to disk.
+ *  @author Amy Kwon
+ */
+final class Compression {
+
+    /** Suffix of the names of files written compressed. */
+    static final String SUFFIX = ".gz";
+
+    /** Uncompressed bytes compressed as one gzip member. */
+    static final int BLOCK = 1 << 20;
+
+    /** Not instantiable. */
+    private Compression() {
+    }
+
+    /** Return a stream of the contents of IN, decompressed if they are
+     *  gzip data. */
+    static InputStream input(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER);
+        buffered.mark(MAGIC_BYTES);
+        int magic = 0;
+        int n = 0;
+        while (n < MAGIC_BYTES) {
+            int b = buffered.read();
+            if (b < 0) {
+                break;
+            }
+            magic = (magic << Byte.SIZE) | b;
+            n += 1;
+        }
+        buffered.reset();
+        if (n >= 2 && magic >>> (Byte.SIZE * (n - 2)) == GZIP_MAGIC) {
+            return new GZIPInputStream(buffered, BUFFER);
+        }
+        if (n == MAGIC_BYTES && magic == ZSTD_MAGIC) {
+            throw error("zstd input is not supported; recompress it with "
+                        + "gzip");
+        }
+        return buffered;
+    }
+
+    /** Return true iff output to the file named NAME is compressed. */
+    static boolean compressed(String name) {
+        return name.endsWith(SUFFIX);
+    }
+
+    /** Return a stream compressing what is written to it onto OUT, in
+     *  blocks on the common pool.  Flushing or closing it waits until
+     *  everything written so far is written to OUT. */
+    static OutputStream output(OutputStream out) {
+        return new ParallelGzipOutputStream(out, ForkJoinPool.commonPool()
+                                            .getParallelism());
+    }
+
+    /** An output stream that compresses blocks of what is written to it
+     *  on other threads, and writes them in order. */
+    private static class ParallelGzipOutputStream extends OutputStream {
+
+        /** A stream writing to OUT, with at most about THREADS blocks
+         *  being compressed at once. */
+        ParallelGzipOutputStream(OutputStream out, int threads) {
+            _out = out;
+            _maxPending = 2 * Math.max(1, threads);
+            _block = new byte[BLOCK];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (_count == _block.length) {
+                submit();
+            }
+            _block[_count] = (byte) b;
+            _count += 1;
+        }
+
+        @Override
+        public void write(byte[] buf, int from, int len) throws IOException {
+            while (len > 0) {
+                if (_count == _block.length) {
+                    submit();
+                }
+                int n = Math.min(len, _block.length - _count);
+                System.arraycopy(buf, from, _block, _count, n);
+                _count += n;
+                from += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (_count > 0) {
+                submit();
+            }
+            while (!_pending.isEmpty()) {
+                writeOldest();
+            }
+            _out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (_closed) {
+                return;
+            }
+            _closed = true;
+            try {
+                flush();
+            } finally {
+                _out.close();
+            }
+        }
+
+        /** Start compressing the current block, first writing out the
+         *  oldest blocks if too many are pending. */
+        private void submit() throws IOException {
+            while (_pending.size() >= _maxPending) {
+                writeOldest();
+            }
+            byte[] block = _block;
+            int count = _count;
+            _pending.add(CompletableFuture.supplyAsync(
+                () -> compress(block, count)));
+            byte[] free = _free.poll();
+            _block = free != null ? free : new byte[BLOCK];
+            _count = 0;
+        }
+
+        /** Wait for the oldest pending block and write it. */
+        private void writeOldest() throws IOException {
+            Compressed oldest;
+            try {
+                oldest = _pending.poll().join();
+            } catch (CompletionException excp) {
+                throw new IOException("compression failed",
+                                      excp.getCause());
+            }
+            oldest._bytes.writeTo(_out);
+            _free.add(oldest._block);
+        }
+
+        /** Return the first COUNT bytes of BLOCK as a gzip member. */
+        private static Compressed compress(byte[] block, int count) {
+            ByteArrayOutputStream bytes =
+                new ByteArrayOutputStream(count / 2 + BUFFER);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(bytes,
+                                                              BUFFER)) {
+                gzip.write(block, 0, count);
+            } catch (IOException excp) {
+                throw new CompletionException(excp);
+            }
+            return new Compressed(block, bytes);
+        }
+
+        /** Where the compressed blocks go. */
+        private final OutputStream _out;
+
+        /** Largest number of blocks pending. */
+        private final int _maxPending;
+
+        /** Blocks being compressed, oldest first. */
+        private final ArrayDeque<CompletableFuture<Compressed>> _pending =
+            new ArrayDeque<CompletableFuture<Compressed>>();
+
+        /** Blocks whose contents have been written, for reuse. */
+        private final ArrayDeque<byte[]> _free = new ArrayDeque<byte[]>();
+
+        /** The block being filled. */
+        private byte[] _block;
+
+        /** Number of bytes in _block. */
+        private int _count;
+
+        /** True once I am closed. */
+        private boolean _closed;
+    }
+
+    /** A block and its compressed contents. */
+    private static class Compressed {
+
+        /** The compressed form BYTES of BLOCK. */
+        Compressed(byte[] block, ByteArrayOutputStream bytes) {
+            _block = block;
+            _bytes = bytes;
+        }
+
+        /** The uncompressed block, to be reused. */
+        private final byte[] _block;
+
+        /** Its compressed contents. */
+        private final ByteArrayOutputStream _bytes;
+    }
+
+    /** The first two bytes of gzip data. */
+    private static final int GZIP_MAGIC = 0x1f8b;
+
+    /** The first four bytes of zstd data. */
+    private static final int ZSTD_MAGIC = 0x28b52ffd;
+
+    /** Number of bytes examined to recognize compressed data. */
+    private static final int MAGIC_BYTES = 4;
+
+    /** Size of I/O buffers. */
+    private static final int BUFFER = 1 << 16;
+
+}
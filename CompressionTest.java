@@ -0,0 +1,151 @@
+package enigma;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Compression class and compressed
+ *  input and output of Main.
+ *  @author Amy Kwon
+ */
+public class CompressionTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The temporary directories of the current test. */
+    private final TempDirs _temps = new TempDirs();
+
+    /** Delete the temporary directories of the current test. */
+    @After
+    public void deleteTemps() throws IOException {
+        _temps.delete();
+    }
+
+    /** Return a message input of LINES lines, with a few keys. */
+    private String input(int lines) {
+        StringBuilder result = new StringBuilder();
+        result.append("* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n");
+        for (int k = 0; k < lines; k += 1) {
+            if (k % 100 == 99) {
+                result.append("* B Beta II III IV QRST BCDE (AB)\n");
+            }
+            result.append("FROM HIS SHOULDER HIAWATHA ").append(k % 7 == 0
+                ? "\n" : "TOOK THE CAMERA OF ROSEWOOD\n");
+        }
+        return result.toString();
+    }
+
+    /** Return BYTES compressed with gzip. */
+    private byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(result)) {
+            out.write(bytes);
+        }
+        return result.toByteArray();
+    }
+
+    /** Return the contents of IN, decompressed by Compression.input. */
+    private byte[] read(InputStream in) throws IOException {
+        try (InputStream decompressed = Compression.input(in)) {
+            return decompressed.readAllBytes();
+        }
+    }
+
+    /** Run Main with the configuration BatchTest.CONFIG, in DIR, on the
+     *  file IN, writing the file OUT. */
+    private void run(File dir, File in, File out) throws IOException {
+        File config = new File(dir, "default.conf");
+        Files.write(config.toPath(), BatchTest.CONFIG.getBytes());
+        new Main(new String[] {
+            config.getPath(), in.getPath(), out.getPath()
+        }).process();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testStreams() throws IOException {
+        Random random = new Random(45);
+        byte[] data = new byte[2 * Compression.BLOCK + 1234];
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = (byte) ('A' + random.nextInt(4));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = Compression.output(bytes)) {
+            int i = 0;
+            while (i < data.length) {
+                if (random.nextBoolean()) {
+                    out.write(data[i]);
+                    i += 1;
+                } else {
+                    int n = Math.min(data.length - i,
+                                     random.nextInt(100000));
+                    out.write(data, i, n);
+                    i += n;
+                }
+            }
+        }
+        byte[] written = bytes.toByteArray();
+        assertTrue(written.length < data.length);
+        assertArrayEquals(data, read(new ByteArrayInputStream(written)));
+
+        byte[] plain = "HELLO\n".getBytes();
+        assertArrayEquals(plain, read(new ByteArrayInputStream(plain)));
+        assertArrayEquals(new byte[0],
+                          read(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File dir = _temps.make("compression");
+        byte[] text = input(2000).getBytes();
+        File plainIn = new File(dir, "plain.in");
+        Files.write(plainIn.toPath(), text);
+        File plainOut = new File(dir, "plain.out");
+        run(dir, plainIn, plainOut);
+        byte[] expected = Files.readAllBytes(plainOut.toPath());
+
+        File packedIn = new File(dir, "packed.in");
+        Files.write(packedIn.toPath(), gzip(text));
+        File packedOut = new File(dir, "packed.out" + Compression.SUFFIX);
+        run(dir, packedIn, packedOut);
+        byte[] packed = Files.readAllBytes(packedOut.toPath());
+        assertTrue(packed.length < expected.length);
+        assertArrayEquals(expected,
+                          read(new ByteArrayInputStream(packed)));
+    }
+
+    @Test
+    public void testTruncatedInput() throws IOException {
+        File dir = _temps.make("compression");
+        byte[] packed = gzip(input(2000).getBytes());
+        File in = new File(dir, "truncated.in");
+        Files.write(in.toPath(), Arrays.copyOf(packed, packed.length / 2));
+        try {
+            run(dir, in, new File(dir, "truncated.out"));
+            fail("truncated input was accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("could not read " + in.getPath(), excp.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,236 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static enigma.EnigmaException.*;
+
+/** A configuration file read lazily.  The file is scanned once, to find
+ *  its alphabet, its numbers of slots and pawls, and the name and
+ *  extent of each rotor's entry, without parsing the cycles; a rotor is
+ *  only built when a settings line first names it (see KeySwitcher), so
+ *  the time taken to start depends on the rotors used, not on the size
+ *  of the library.  The check that every entry is valid, which reading
+ *  a configuration eagerly makes, is done apart, in parallel.
+ *  @author Amy Kwon
+ */
+class ConfigIndex {
+
+    /** An index of the configuration file named NAME. */
+    ConfigIndex(String name) {
+        try {
+            _text = new String(Files.readAllBytes(Paths.get(name)));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        _entries = new RegionTable<Entry>(Integer.MAX_VALUE);
+        _order = new ArrayList<Entry>();
+        scan();
+    }
+
+    /** Return a new machine for my configuration, with no rotors yet
+     *  available; they are added as rotor(NAME) builds them. */
+    Machine machine() {
+        return new Machine(_alphabet, _numRotors, _numPawls);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotors in my configuration. */
+    int size() {
+        return _order.size();
+    }
+
+    /** Return a new rotor built from my entry for the rotor whose name is
+     *  TEXT[FROM .. TO-1], or null if there is no such entry. */
+    Rotor rotor(CharSequence text, int from, int to) {
+        Entry entry = _entries.get(text, from, to);
+        return entry == null ? null : build(entry);
+    }
+
+    /** Start checking every entry of my configuration, on the common
+     *  pool, returning a future that fails with the first error found. */
+    CompletableFuture<Void> validate() {
+        return CompletableFuture.runAsync(
+            () -> _order.parallelStream().forEach(this::build));
+    }
+
+    /** Wait for VALIDATION, as returned by validate(), and throw the
+     *  error it found, if any. */
+    static void await(CompletableFuture<Void> validation) {
+        try {
+            validation.join();
+        } catch (CompletionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw excp;
+        }
+    }
+
+    /** Return the rotor described by ENTRY. */
+    private Rotor build(Entry entry) {
+        try {
+            return Main.rotor(description(entry), _alphabet);
+        } catch (EnigmaException excp) {
+            throw error("rotor %s: %s", entry._name, excp.getMessage());
+        }
+    }
+
+    /** Return the description of ENTRY, joined as Main.readConfig joins
+     *  the lines of an entry. */
+    private String description(Entry entry) {
+        StringBuilder result = new StringBuilder();
+        int i = entry._start;
+        while (i < entry._end) {
+            int end = lineEnd(i);
+            int stop = Math.min(end, entry._end);
+            if (stop > i && _text.charAt(stop - 1) == '\r') {
+                stop -= 1;
+            }
+            result.append(_text, skipSpace(i, stop), stop);
+            i = end + 1;
+        }
+        return result.toString();
+    }
+
+    /** Find my alphabet, slots and pawls, and my entries. */
+    private void scan() {
+        if (_text.isEmpty()) {
+            throw error("The configuration file is empty.");
+        }
+        int end = lineEnd(0);
+        String first = _text.substring(0, end);
+        if (first.endsWith("\r")) {
+            first = first.substring(0, first.length() - 1);
+        }
+        _alphabet = new Alphabet(first);
+        int i = nextToken(end);
+        int rotorsEnd = tokenEnd(i);
+        int j = nextToken(rotorsEnd);
+        int pawlsEnd = tokenEnd(j);
+        if (i == _text.length() || j == _text.length()) {
+            throw error("configuration file truncated");
+        }
+        String strRotors = _text.substring(i, rotorsEnd);
+        String strPawls = _text.substring(j, pawlsEnd);
+        if (!(strRotors.matches(".*\\d.*") && strPawls.matches(".*\\d.*"))) {
+            throw error("Second line must be numbers.");
+        }
+        try {
+            _numRotors = Integer.parseInt(strRotors);
+            _numPawls = Integer.parseInt(strPawls);
+        } catch (NumberFormatException excp) {
+            throw error("Second line must be numbers.");
+        }
+        if (!(_numRotors > _numPawls && _numPawls >= 0)) {
+            throw error("S>P>=0, wrong number format.");
+        }
+        scanEntries(pawlsEnd);
+        if (_order.isEmpty()) {
+            throw error("All rotors is not the right size!");
+        }
+    }
+
+    /** Record the entries that start at or after FROM. */
+    private void scanEntries(int from) {
+        Entry current = null;
+        int i = from;
+        while (i < _text.length()) {
+            int end = lineEnd(i);
+            int start = skipSpace(i, end);
+            if (start < end) {
+                int tokenEnd = tokenEnd(start);
+                if (current != null && _text.charAt(start) == '('
+                    && _text.charAt(tokenEnd - 1) == ')') {
+                    current._end = end;
+                } else {
+                    String name = _text.substring(start, tokenEnd);
+                    if (_entries.get(name) != null) {
+                        throw error("Rotors cannot repeat in config");
+                    }
+                    current = new Entry(name, start, end);
+                    _entries.put(name, current);
+                    _order.add(current);
+                }
+            }
+            i = end + 1;
+        }
+    }
+
+    /** Return the position of the end of the line containing position I
+     *  (the position of its newline, or the length of my text). */
+    private int lineEnd(int i) {
+        int end = _text.indexOf('\n', i);
+        return end < 0 ? _text.length() : end;
+    }
+
+    /** Return the first position from I on, before END, that is not
+     *  whitespace, or END. */
+    private int skipSpace(int i, int end) {
+        while (i < end && Character.isWhitespace(_text.charAt(i))) {
+            i += 1;
+        }
+        return i;
+    }
+
+    /** Return the position of the first character of the token at or
+     *  after position I, or the length of my text. */
+    private int nextToken(int i) {
+        return skipSpace(i, _text.length());
+    }
+
+    /** Return the position just after the token starting at I. */
+    private int tokenEnd(int i) {
+        while (i < _text.length()
+               && !Character.isWhitespace(_text.charAt(i))) {
+            i += 1;
+        }
+        return i;
+    }
+
+    /** The entry of one rotor. */
+    private static class Entry {
+
+        /** The entry for the rotor NAME, starting at position START of
+         *  the text, whose first line ends at END. */
+        Entry(String name, int start, int end) {
+            _name = name;
+            _start = start;
+            _end = end;
+        }
+
+        /** Name of the rotor. */
+        private final String _name;
+
+        /** Position of the start of the entry. */
+        private final int _start;
+
+        /** Position of the end of the entry's last line. */
+        private int _end;
+    }
+
+    /** Contents of the configuration file. */
+    private final String _text;
+
+    /** The entries, by rotor name. */
+    private final RegionTable<Entry> _entries;
+
+    /** The entries, in order. */
+    private final List<Entry> _order;
+
+    /** My alphabet. */
+    private Alphabet _alphabet;
+
+    /** Number of slots and of pawls. */
+    private int _numRotors, _numPawls;
+
+}
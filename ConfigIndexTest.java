@@ -0,0 +1,142 @@
+package enigma;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigIndex class and Main's
+ *  --lazy-config option.
+ *  @author Amy Kwon
+ */
+public class ConfigIndexTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The temporary directories of the current test. */
+    private final TempDirs _temps = new TempDirs();
+
+    /** Delete the temporary directories of the current test. */
+    @After
+    public void deleteTemps() throws IOException {
+        _temps.delete();
+    }
+
+    /** A configuration with entries that span lines, and rotors that
+     *  no message below uses. */
+    static final String CONFIG = BatchTest.CONFIG
+        + "V MZ (AVOLDRWFIUQ)(BZKSMNHYC)\n   (EGTJPX)\n"
+        + "  VI MZM (AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK)\n"
+        + "Gamma N (AFNIRLBSQWVXGUZDKMTPCOYJHE)\n"
+        + "C R (AR) (BD) (CO) (EJ) (FN) (GT) (HK) (IV) (LM) (PW) (QZ)\n"
+        + " (SX) (UY)\n";
+
+    /** Input using some of the rotors of CONFIG. */
+    static final String INPUT =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + "FROM HIS SHOULDER HIAWATHA\n\n"
+        + "* C Gamma V VI I BCDE\n"
+        + "TOOK THE CAMERA OF ROSEWOOD\n";
+
+    /** Return a new file named NAME in DIR holding CONTENTS. */
+    private File write(File dir, String name, String contents)
+        throws IOException {
+        File result = new File(dir, name);
+        Files.write(result.toPath(), contents.getBytes());
+        return result;
+    }
+
+    /** Return what Main writes for INPUT with the configuration file
+     *  CONFIG, with OPTIONS before its other arguments. */
+    private String run(File config, String... options) throws IOException {
+        File dir = config.getParentFile();
+        File in = write(dir, "job.in", INPUT);
+        File out = new File(dir, "job.out");
+        String[] args = Arrays.copyOf(options, options.length + 3);
+        args[options.length] = config.getPath();
+        args[options.length + 1] = in.getPath();
+        args[options.length + 2] = out.getPath();
+        new Main(args).process();
+        return new String(Files.readAllBytes(out.toPath()));
+    }
+
+    /** Check that INDEX builds each rotor of EAGER as Main.configure
+     *  does. */
+    private void checkRotors(ConfigIndex index, Machine eager) {
+        assertEquals(eager.allRotors().size(), index.size());
+        Alphabet alpha = index.alphabet();
+        for (Rotor expected : eager.allRotors()) {
+            String name = expected.name();
+            Rotor rotor = index.rotor(name, 0, name.length());
+            assertTrue(name, rotor != null);
+            assertEquals(name, rotor.name());
+            assertEquals(expected.getClass(), rotor.getClass());
+            assertArrayEquals(name, expected.notches(), rotor.notches());
+            for (int c = 0; c < alpha.size(); c += 1) {
+                assertEquals(expected.permutation().permute(c),
+                             rotor.permutation().permute(c));
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSameAsEager() throws IOException {
+        File dir = _temps.make("index");
+        for (String config : new String[] {
+                CONFIG, CONFIG.replace("\n", "\r\n") }) {
+            File file = write(dir, "default.conf", config);
+            ConfigIndex index = new ConfigIndex(file.getPath());
+            Machine eager = Main.configure(file.getPath());
+            checkRotors(index, eager);
+            assertNull(index.rotor("XII", 0, 3));
+            assertNull(index.rotor("Bet", 0, 3));
+            ConfigIndex.await(index.validate());
+            assertEquals(run(file), run(file, "--lazy-config"));
+        }
+    }
+
+    @Test
+    public void testBadEntry() throws IOException {
+        File dir = _temps.make("index");
+        File file = write(dir, "default.conf",
+                          CONFIG + "D R (AB) (CD) (EF)\n");
+        ConfigIndex index = new ConfigIndex(file.getPath());
+        Rotor used = index.rotor("B", 0, 1);
+        assertNotNull(used);
+        try {
+            ConfigIndex.await(index.validate());
+            fail("bad entry D was not found");
+        } catch (EnigmaException excp) {
+            assertEquals("rotor D: reflectors must implement derangements",
+                         excp.getMessage());
+        }
+        try {
+            run(file, "--lazy-config");
+            fail("bad entry D was not reported");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().startsWith("rotor D: "));
+        }
+        try {
+            run(file);
+            fail("bad entry D was not reported");
+        } catch (EnigmaException excp) {
+            assertEquals("reflectors must implement derangements",
+                         excp.getMessage());
+        }
+    }
+
+}
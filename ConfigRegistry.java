@@ -0,0 +1,230 @@
+package enigma;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static enigma.EnigmaException.*;
+
+/** A set of configurations, each known by an id, of which only the
+ *  recently used are kept compiled.  Registering a configuration only
+ *  records where it is; the first request for a machine with it reads
+ *  the file and builds its rotors and their permutation tables, which
+ *  are then shared by every machine handed out for it (each a copy, with
+ *  rotors of its own to step).  When the compiled configurations take
+ *  more than the memory budget, those used least recently are dropped,
+ *  to be compiled again if they are asked for later; so memory stays
+ *  bounded however many configurations there are, while busy ones stay
+ *  compiled.  Lookups take no lock shared between configurations:
+ *  only threads compiling the same configuration wait for one another,
+ *  and eviction is done by one thread at a time, which others do not
+ *  wait for.
+ *  @author Amy Kwon
+ */
+class ConfigRegistry {
+
+    /** Default memory budget for compiled configurations, in bytes. */
+    static final long BUDGET = 1L << 26;
+
+    /** Suffix of the configuration files registered from a directory. */
+    static final String SUFFIX = ".conf";
+
+    /** A registry keeping at most about BUDGET bytes of compiled
+     *  configurations (one more may be kept while it is in use). */
+    ConfigRegistry(long budget) {
+        if (budget <= 0) {
+            throw error("bad configuration budget: %d", budget);
+        }
+        _budget = budget;
+    }
+
+    /** A registry with the default budget. */
+    ConfigRegistry() {
+        this(BUDGET);
+    }
+
+    /** Register the configuration file named PATH as ID. */
+    void register(String id, String path) {
+        if (_entries.putIfAbsent(id, new Entry(path)) != null) {
+            throw error("configuration %s registered twice", id);
+        }
+    }
+
+    /** Register each file F.conf in DIR as F, and return how many there
+     *  were. */
+    int registerAll(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw error("could not read %s", dir);
+        }
+        Arrays.sort(files);
+        int count = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isFile() && name.endsWith(SUFFIX)) {
+                register(name.substring(0, name.length() - SUFFIX.length()),
+                         file.getPath());
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Return true iff a configuration is registered as ID. */
+    boolean contains(String id) {
+        return _entries.containsKey(id);
+    }
+
+    /** Return a new machine with the configuration registered as ID,
+     *  with no rotors yet inserted, compiling the configuration if it is
+     *  not compiled. */
+    Machine machine(String id) {
+        Entry entry = _entries.get(id);
+        if (entry == null) {
+            throw error("no configuration %s", id);
+        }
+        Machine prototype = entry.prototype();
+        entry._used = _clock.incrementAndGet();
+        if (_bytes.get() > _budget) {
+            evict(entry);
+        }
+        return prototype.copy();
+    }
+
+    /** Return true iff the configuration registered as ID is compiled
+     *  now. */
+    boolean compiled(String id) {
+        Entry entry = _entries.get(id);
+        return entry != null && entry._prototype != null;
+    }
+
+    /** Return the estimated size of the compiled configurations, in
+     *  bytes. */
+    long bytes() {
+        return _bytes.get();
+    }
+
+    /** Return the number of times a configuration has been compiled. */
+    long compilations() {
+        return _compilations.get();
+    }
+
+    /** Drop the least recently used compiled configurations other than
+     *  KEEP until the rest fit in my budget, unless another thread is
+     *  already doing so. */
+    private void evict(Entry keep) {
+        if (!_evicting.tryLock()) {
+            return;
+        }
+        try {
+            List<Entry> compiled = new ArrayList<Entry>();
+            for (Entry entry : _entries.values()) {
+                if (entry != keep && entry._prototype != null) {
+                    compiled.add(entry);
+                }
+            }
+            compiled.sort((a, b) -> Long.compare(a._used, b._used));
+            for (Entry entry : compiled) {
+                if (_bytes.get() <= _budget) {
+                    break;
+                }
+                entry.drop();
+            }
+        } finally {
+            _evicting.unlock();
+        }
+    }
+
+    /** Return an estimate of the bytes taken by the rotors of MACHINE
+     *  and their tables. */
+    static long size(Machine machine) {
+        long n = machine.alphabet().size();
+        long perRotor = OBJECT_BYTES + TABLES * Integer.BYTES * n
+            + Character.BYTES * CYCLE_CHARS * n;
+        return OBJECT_BYTES + n * Integer.BYTES
+            + machine.allRotors().size() * perRotor;
+    }
+
+    /** A registered configuration. */
+    private class Entry {
+
+        /** A configuration read from the file named PATH. */
+        Entry(String path) {
+            _path = path;
+        }
+
+        /** Return my compiled form, compiling it if need be. */
+        Machine prototype() {
+            Machine result = _prototype;
+            if (result != null) {
+                return result;
+            }
+            synchronized (this) {
+                if (_prototype == null) {
+                    Machine machine = Main.configure(_path);
+                    _size = size(machine);
+                    _bytes.addAndGet(_size);
+                    _compilations.incrementAndGet();
+                    _prototype = machine;
+                }
+                return _prototype;
+            }
+        }
+
+        /** Drop my compiled form, if I have one. */
+        synchronized void drop() {
+            if (_prototype != null) {
+                _prototype = null;
+                _bytes.addAndGet(-_size);
+            }
+        }
+
+        /** Name of my file. */
+        private final String _path;
+
+        /** My compiled form, with no rotors inserted, or null. */
+        private volatile Machine _prototype;
+
+        /** The estimated size of _prototype. */
+        private long _size;
+
+        /** Value of _clock when I was last used. */
+        private volatile long _used;
+    }
+
+    /** Estimated bytes of the objects of a rotor or machine, besides
+     *  their tables. */
+    private static final long OBJECT_BYTES = 256;
+
+    /** Number of int tables of the size of the alphabet kept for each
+     *  rotor (a permutation and its inverse). */
+    private static final long TABLES = 2;
+
+    /** Estimated characters, per character of the alphabet, of the
+     *  cycles of a permutation kept as text. */
+    private static final long CYCLE_CHARS = 2;
+
+    /** The memory budget, in bytes. */
+    private final long _budget;
+
+    /** The registered configurations, by id. */
+    private final ConcurrentHashMap<String, Entry> _entries =
+        new ConcurrentHashMap<String, Entry>();
+
+    /** Estimated bytes of the compiled configurations. */
+    private final AtomicLong _bytes = new AtomicLong();
+
+    /** Count of uses, giving the order in which entries were used. */
+    private final AtomicLong _clock = new AtomicLong();
+
+    /** Number of compilations done. */
+    private final AtomicLong _compilations = new AtomicLong();
+
+    /** Held by the thread evicting configurations. */
+    private final ReentrantLock _evicting = new ReentrantLock();
+
+}
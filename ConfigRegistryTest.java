@@ -0,0 +1,155 @@
+package enigma;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigRegistry class.
+ *  @author Amy Kwon
+ */
+public class ConfigRegistryTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The temporary directories of the current test. */
+    private final TempDirs _temps = new TempDirs();
+
+    /** Delete the temporary directories of the current test. */
+    @After
+    public void deleteTemps() throws IOException {
+        _temps.delete();
+    }
+
+    /** Number of configurations registered by registry(). */
+    static final int CONFIGS = 6;
+
+    /** Key used with machines of the registered configurations. */
+    static final String KEY = "B Beta III IV I AXLE (HQ) (EX) (IP)";
+
+    /** Message converted with KEY. */
+    static final String MESSAGE = "FROMHISSHOULDERHIAWATHA";
+
+    /** Return a registry with budget BUDGET of CONFIGS copies of
+     *  BatchTest.CONFIG, registered as c0, c1, .... */
+    private ConfigRegistry registry(long budget) throws IOException {
+        File dir = _temps.make("registry");
+        for (int k = 0; k < CONFIGS; k += 1) {
+            File file = new File(dir, "c" + k + ConfigRegistry.SUFFIX);
+            Files.write(file.toPath(), BatchTest.CONFIG.getBytes());
+        }
+        ConfigRegistry result = new ConfigRegistry(budget);
+        assertEquals(CONFIGS, result.registerAll(dir));
+        return result;
+    }
+
+    /** Return the estimated size of one compiled configuration. */
+    private long size() throws IOException {
+        ConfigRegistry registry = registry(ConfigRegistry.BUDGET);
+        registry.machine("c0");
+        return registry.bytes();
+    }
+
+    /** Return MESSAGE converted with KEY by MACHINE. */
+    private String convert(Machine machine) {
+        new KeySwitcher(machine).apply(KEY);
+        return machine.convert(MESSAGE);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testLazy() throws IOException {
+        ConfigRegistry registry = registry(ConfigRegistry.BUDGET);
+        assertTrue(registry.contains("c3"));
+        assertFalse(registry.contains("c" + CONFIGS));
+        assertEquals(0, registry.bytes());
+        assertFalse(registry.compiled("c3"));
+        registry.machine("c3");
+        registry.machine("c3");
+        assertTrue(registry.compiled("c3"));
+        assertEquals(1, registry.compilations());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws IOException {
+        long size = size();
+        ConfigRegistry registry = registry(2 * size);
+        registry.machine("c0");
+        registry.machine("c1");
+        registry.machine("c0");
+        registry.machine("c2");
+        assertTrue(registry.compiled("c0"));
+        assertFalse(registry.compiled("c1"));
+        assertTrue(registry.compiled("c2"));
+        assertEquals(2 * size, registry.bytes());
+
+        for (int k = 1; k < CONFIGS; k += 1) {
+            registry.machine("c0");
+            registry.machine("c" + k);
+            assertTrue(registry.bytes() <= 2 * size);
+        }
+        assertEquals(CONFIGS + 2, registry.compilations());
+        assertTrue(registry.compiled("c0"));
+
+        registry.machine("c1");
+        assertEquals(CONFIGS + 3, registry.compilations());
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        long size = size();
+        ConfigRegistry registry = registry(3 * size);
+        String expected =
+            convert(registry(ConfigRegistry.BUDGET).machine("c0"));
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t += 1) {
+            int seed = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int k = 0; k < 200; k += 1) {
+                        String id = "c" + (seed * 7 + k * k) % CONFIGS;
+                        assertEquals(expected, convert(registry.machine(id)));
+                    }
+                } catch (Throwable excp) {
+                    failure.compareAndSet(null, excp);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        int compiled = 0;
+        for (int k = 0; k < CONFIGS; k += 1) {
+            if (registry.compiled("c" + k)) {
+                compiled += 1;
+            }
+        }
+        assertEquals(compiled * size, registry.bytes());
+        registry.machine("c0");
+        assertTrue(registry.bytes() <= 3 * size);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testUnknown() throws IOException {
+        registry(ConfigRegistry.BUDGET).machine("c" + CONFIGS);
+    }
+
+}
@@ -0,0 +1,60 @@
+package enigma;
+
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** A way of converting runs of characters with a machine.  Every engine
+ *  must give exactly the results of calling Machine.convert(int) on each
+ *  character in turn, and leave the machine in the same state.
+ *  @author Amy Kwon
+ */
+interface Engine {
+
+    /** The names of the kinds of engine, as forName takes them. */
+    List<String> NAMES = List.of(InterpretedEngine.NAME, CompiledEngine.NAME,
+                                 RunLengthEngine.NAME, TableEngine.NAME,
+                                 ParallelEngine.NAME, AdaptiveEngine.NAME);
+
+    /** Return my name, as reported in metrics. */
+    String name();
+
+    /** Convert the LEN character indices BUF[FROM .. FROM+LEN-1] in place
+     *  with MACHINE, advancing MACHINE before each as Machine.convert
+     *  does. */
+    void convert(Machine machine, int[] buf, int from, int len);
+
+    /** Return an engine that converts as I do, for use by another
+     *  machine, which may be on another thread.  It shares with me
+     *  whatever may safely be shared (by default, everything). */
+    default Engine fork() {
+        return this;
+    }
+
+    /** Return a description of the use made of me (and of the engines
+     *  forked from me) so far, as reported in metrics. */
+    default String usage() {
+        return name();
+    }
+
+    /** Return a new engine of the kind named NAME. */
+    static Engine forName(String name) {
+        switch (name) {
+        case InterpretedEngine.NAME:
+            return new InterpretedEngine();
+        case CompiledEngine.NAME:
+            return new CompiledEngine();
+        case RunLengthEngine.NAME:
+            return new RunLengthEngine();
+        case TableEngine.NAME:
+            return new TableEngine();
+        case ParallelEngine.NAME:
+            return new ParallelEngine();
+        case AdaptiveEngine.NAME:
+            return new AdaptiveEngine(null);
+        default:
+            throw error("unknown engine: %s", name);
+        }
+    }
+
+}
@@ -0,0 +1,460 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A differential check of every engine against the reference, calls of
+ *  Machine.convert(int) one character at a time.  Each trial builds a
+ *  random configuration (alphabet size, numbers of slots and pawls,
+ *  rotors and their notches), then converts a few random messages, each
+ *  of a random length under a random key (rotors, setting, and perhaps
+ *  ring and plugboard), with the reference and with a machine for each
+ *  engine, which converts in chunks of random sizes.  Most messages are
+ *  under MAX_LENGTH characters, but one in LONG_ODDS is long enough
+ *  that the parallel engine splits it, jumping its copies ahead past
+ *  Stepper.CYCLE_SEARCH steps, and that the table engine builds tables
+ *  for larger configurations.  The outputs are compared character by
+ *  character, and the rotor settings and offsets after each message;
+ *  the first difference is reported, with the seed that reproduces the
+ *  trial.  The engines of all trials are forked from one of each kind,
+ *  so that the adaptive engine calibrates once.  Trials run in
+ *  parallel, and the time each engine spends converting is summed, to
+ *  report its throughput and its speed as a multiple of the
+ *  reference's (under the load of the other threads).
+ *
+ *  As a command, the arguments
+ *      --check-engines TRIALS [SEED [THREADS]]
+ *  run TRIALS trials, trial K with the seed SEED + K (by default,
+ *  SEED is 1), on THREADS threads (by default, the number of
+ *  processors), print the report, and fail if any engine differed.
+ *  @author Amy Kwon
+ */
+class EngineCheck {
+
+    /** Command-line option that selects the check. */
+    static final String OPTION = "--check-engines";
+
+    /** Longest message converted, other than long ones. */
+    static final int MAX_LENGTH = 1 << 16;
+
+    /** One message in LONG_ODDS is long. */
+    static final int LONG_ODDS = 8;
+
+    /** Shortest long message: the shortest that the parallel engine
+     *  splits. */
+    static final int MIN_LONG = 2 * ParallelEngine.MIN_CHUNK;
+
+    /** Longest long message. */
+    static final int MAX_LONG = 1 << 19;
+
+    /** Largest number of messages, each with its key, of a trial. */
+    static final int MAX_KEYS = 4;
+
+    /** Largest alphabet size. */
+    static final int MAX_ALPHABET = 40;
+
+    /** Largest number of slots. */
+    static final int MAX_SLOTS = 6;
+
+    /** Largest number of notches of a moving rotor. */
+    static final int MAX_NOTCHES = 3;
+
+    /** Least number of threads among which the parallel engine checked
+     *  splits a run. */
+    static final int MIN_THREADS = 4;
+
+    /** Number of differences listed in the report. */
+    static final int MAX_REPORTED = 20;
+
+    /** A check whose trial K uses the seed SEED + K, running on THREADS
+     *  threads. */
+    EngineCheck(long seed, int threads) {
+        _seed = seed;
+        _threads = threads;
+        _nanos = new long[Engine.NAMES.size() + 1];
+        _engines = new Engine[Engine.NAMES.size()];
+        for (int e = 0; e < _engines.length; e += 1) {
+            _engines[e] = engine(Engine.NAMES.get(e));
+        }
+    }
+
+    /** Return a new engine of the kind NAME.  A parallel engine splits
+     *  runs among at least MIN_THREADS threads, so that splitting is
+     *  checked even with fewer processors. */
+    static Engine engine(String name) {
+        if (name.equals(ParallelEngine.NAME)) {
+            return new ParallelEngine(new CompiledEngine(), Math.max(
+                MIN_THREADS, Runtime.getRuntime().availableProcessors()));
+        }
+        return Engine.forName(name);
+    }
+
+    /** Perform the check given by ARGS (see the class comment). */
+    static void check(String[] args) {
+        if (args.length < 2 || args.length > 4) {
+            throw error("Usage: --check-engines TRIALS [SEED [THREADS]]");
+        }
+        int trials;
+        long seed = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            trials = Integer.parseInt(args[1]);
+            if (args.length > 2) {
+                seed = Long.parseLong(args[2]);
+            }
+            if (args.length > 3) {
+                threads = Integer.parseInt(args[3]);
+            }
+        } catch (NumberFormatException excp) {
+            throw error("bad number in %s", String.join(" ", args));
+        }
+        if (trials < 0 || threads < 1) {
+            throw error("bad trial or thread count");
+        }
+        EngineCheck check = new EngineCheck(seed, threads);
+        check.run(trials);
+        System.out.print(check.report());
+        if (!check.differences().isEmpty()) {
+            throw error("%d differences from the reference",
+                        check.differences().size());
+        }
+    }
+
+    /** Run TRIALS more trials. */
+    void run(int trials) {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        try {
+            List<Future<Trial>> futures = new ArrayList<Future<Trial>>();
+            for (int k = 0; k < trials; k += 1) {
+                long seed = _seed + _trials + k;
+                futures.add(pool.submit(() -> new Trial(seed, _engines)));
+            }
+            for (Future<Trial> future : futures) {
+                add(future.get());
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("engine check failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            throw error("engine check interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return the number of long messages converted. */
+    long longKeys() {
+        return _longKeys;
+    }
+
+    /** Return the differences found, in order of trial. */
+    List<String> differences() {
+        return _differences;
+    }
+
+    /** Return the report of the trials run. */
+    String report() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("%d trials, %d keys (%d long), %d "
+                                    + "characters, %d threads%n", _trials,
+                                    _keys, _longKeys, _chars, _threads));
+        result.append(String.format("%-12s %9s %10s %7s %11s%n", "engine",
+                                    "seconds", "Mchars/s", "ratio",
+                                    "differences"));
+        for (int e = 0; e < _nanos.length; e += 1) {
+            String name = e == 0 ? REFERENCE : Engine.NAMES.get(e - 1);
+            double seconds = _nanos[e] / NANOS;
+            result.append(String.format("%-12s %9.3f %10.2f %7.2f %11s%n",
+                                        name, seconds,
+                                        _chars / MEGA / Math.max(seconds,
+                                                                 1 / NANOS),
+                                        _nanos[0] / (double) Math.max(
+                                            _nanos[e], 1),
+                                        e == 0 ? "" : count(name)));
+        }
+        for (int i = 0; i < _differences.size() && i < MAX_REPORTED;
+             i += 1) {
+            result.append(_differences.get(i)).append('\n');
+        }
+        if (_differences.size() > MAX_REPORTED) {
+            result.append(String.format("... and %d more%n",
+                                        _differences.size() - MAX_REPORTED));
+        }
+        return result.toString();
+    }
+
+    /** Return the number of differences found in the engine NAME. */
+    private int count(String name) {
+        int result = 0;
+        for (String difference : _differences) {
+            if (difference.startsWith(name + ":")) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Add the results of TRIAL to mine. */
+    private void add(Trial trial) {
+        _trials += 1;
+        _keys += trial._keys;
+        _longKeys += trial._longKeys;
+        _chars += trial._chars;
+        for (int e = 0; e < _nanos.length; e += 1) {
+            _nanos[e] += trial._nanos[e];
+        }
+        _differences.addAll(trial._differences);
+    }
+
+    /** One trial: a random configuration and messages converted by the
+     *  reference and by each engine. */
+    private static class Trial {
+
+        /** Run the trial whose random choices follow from SEED, with
+         *  engines forked from ENGINES, one of each kind in the order of
+         *  Engine.NAMES. */
+        Trial(long seed, Engine[] engines) {
+            _seed = seed;
+            _random = new Random(seed);
+            int size = 2 * (1 + _random.nextInt(MAX_ALPHABET / 2));
+            _slots = 2 + _random.nextInt(MAX_SLOTS - 1);
+            _pawls = _random.nextInt(_slots);
+            _symbols = MacroBench.alphabet(size);
+            Machine prototype = configure();
+            Machine reference = prototype.copy();
+            Machine[] tested = new Machine[Engine.NAMES.size()];
+            KeySwitcher[] keys = new KeySwitcher[tested.length + 1];
+            keys[0] = new KeySwitcher(reference);
+            for (int e = 0; e < tested.length; e += 1) {
+                tested[e] = prototype.copy();
+                tested[e].setEngine(engines[e].fork());
+                keys[e + 1] = new KeySwitcher(tested[e]);
+            }
+            _nanos = new long[tested.length + 1];
+            _keys = 1 + _random.nextInt(MAX_KEYS);
+            for (int k = 0; k < _keys; k += 1) {
+                String key = key();
+                int length = length();
+                int[] input = new int[length];
+                for (int i = 0; i < length; i += 1) {
+                    input[i] = _random.nextInt(size);
+                }
+                keys[0].apply(key);
+                int[] expected = input.clone();
+                long start = System.nanoTime();
+                for (int i = 0; i < length; i += 1) {
+                    expected[i] = reference.convert(expected[i]);
+                }
+                _nanos[0] += System.nanoTime() - start;
+                for (int e = 0; e < tested.length; e += 1) {
+                    String failure;
+                    try {
+                        keys[e + 1].apply(key);
+                        failure = compare(reference, expected, tested[e],
+                                          input.clone(), e + 1);
+                    } catch (RuntimeException excp) {
+                        failure = "failed with " + excp;
+                    }
+                    if (failure != null) {
+                        _differences.add(String.format(
+                            "%s: %s (seed %d, alphabet %d, %d slots, "
+                            + "%d pawls, message %d, key %s)",
+                            Engine.NAMES.get(e), failure, _seed, size,
+                            _slots, _pawls, k + 1, key));
+                    }
+                }
+                _chars += length;
+            }
+        }
+
+        /** Convert BUF with MACHINE, in chunks, timing it as engine E,
+         *  and return a description of the first difference between its
+         *  results and EXPECTED and the state of REFERENCE, or null if
+         *  there is none. */
+        private String compare(Machine reference, int[] expected,
+                               Machine machine, int[] buf, int e) {
+            long nanos = 0;
+            int done = 0;
+            while (done < buf.length) {
+                int len = 1 + _random.nextInt(buf.length - done);
+                long start = System.nanoTime();
+                machine.convert(buf, done, len);
+                nanos += System.nanoTime() - start;
+                done += len;
+            }
+            _nanos[e] += nanos;
+            for (int i = 0; i < buf.length; i += 1) {
+                if (buf[i] != expected[i]) {
+                    return String.format("character %d is %c, not %c", i,
+                                         _symbols[buf[i]],
+                                         _symbols[expected[i]]);
+                }
+            }
+            if (!Arrays.equals(reference.positions(), machine.positions())) {
+                return String.format("rotors at %s, not %s",
+                                     Arrays.toString(machine.positions()),
+                                     Arrays.toString(reference.positions()));
+            }
+            if (reference.offset() != machine.offset()) {
+                return String.format("offset %d, not %d", machine.offset(),
+                                     reference.offset());
+            }
+            return null;
+        }
+
+        /** Return a new machine with a random configuration: reflectors
+         *  Rk, fixed rotors Fk and moving rotors Mk, with SPARES more of
+         *  each than its slots need. */
+        private Machine configure() {
+            Alphabet alpha = new Alphabet(new String(_symbols));
+            List<Rotor> rotors = new ArrayList<Rotor>();
+            for (int r = 0; r < SPARES; r += 1) {
+                int[] perm = MacroBench.shuffle(_random, _symbols.length);
+                StringBuilder cycles = new StringBuilder();
+                for (int i = 0; i < perm.length; i += 2) {
+                    cycles.append('(').append(_symbols[perm[i]])
+                        .append(_symbols[perm[i + 1]]).append(')');
+                }
+                rotors.add(new Reflector("R" + r, new Permutation(
+                    cycles.toString(), alpha)));
+            }
+            for (int r = 0; r < _slots - _pawls - 1 + SPARES; r += 1) {
+                rotors.add(new FixedRotor("F" + r, new Permutation(
+                    MacroBench.cycles(_random, _symbols), alpha)));
+            }
+            for (int r = 0; r < _pawls + SPARES; r += 1) {
+                int[] order = MacroBench.shuffle(_random, _symbols.length);
+                int count = Math.min(_random.nextInt(MAX_NOTCHES + 1),
+                                     _symbols.length);
+                StringBuilder notches = new StringBuilder();
+                for (int i = 0; i < count; i += 1) {
+                    notches.append(_symbols[order[i]]);
+                }
+                rotors.add(new MovingRotor("M" + r, new Permutation(
+                    MacroBench.cycles(_random, _symbols), alpha),
+                    notches.toString()));
+            }
+            return new Machine(alpha, _slots, _pawls, rotors);
+        }
+
+        /** Return a random message length, counting the long ones. */
+        private int length() {
+            if (_random.nextInt(LONG_ODDS) == 0) {
+                _longKeys += 1;
+                return MIN_LONG + _random.nextInt(MAX_LONG - MIN_LONG + 1);
+            }
+            return (int) Math.exp(_random.nextDouble()
+                                  * Math.log(MAX_LENGTH + 1)) - 1;
+        }
+
+        /** Return a random key for my configuration: the part of a
+         *  settings line after its "*". */
+        private String key() {
+            int fixed = _slots - _pawls - 1;
+            StringBuilder result = new StringBuilder("R");
+            result.append(_random.nextInt(SPARES));
+            int[] fixedOrder = MacroBench.shuffle(_random, fixed + SPARES);
+            for (int k = 0; k < fixed; k += 1) {
+                result.append(" F").append(fixedOrder[k]);
+            }
+            int[] moving = MacroBench.shuffle(_random, _pawls + SPARES);
+            for (int k = 0; k < _pawls; k += 1) {
+                result.append(" M").append(moving[k]);
+            }
+            result.append(' ').append(letters());
+            if (_random.nextBoolean()) {
+                result.append(' ').append(letters());
+            }
+            if (_random.nextBoolean()) {
+                int[] plugs = MacroBench.shuffle(_random, _symbols.length);
+                int pairs = _random.nextInt(_symbols.length / 2 + 1);
+                for (int k = 0; k < pairs; k += 1) {
+                    result.append(" (").append(_symbols[plugs[2 * k]])
+                        .append(_symbols[plugs[2 * k + 1]]).append(')');
+                }
+            }
+            return result.toString();
+        }
+
+        /** Return random letters for the slots after the reflector. */
+        private String letters() {
+            char[] result = new char[_slots - 1];
+            for (int k = 0; k < result.length; k += 1) {
+                result[k] = _symbols[_random.nextInt(_symbols.length)];
+            }
+            return new String(result);
+        }
+
+        /** The seed of my choices. */
+        private final long _seed;
+
+        /** Source of my choices. */
+        private final Random _random;
+
+        /** The characters of my alphabet. */
+        private final char[] _symbols;
+
+        /** Numbers of slots and pawls of my configuration. */
+        private final int _slots, _pawls;
+
+        /** Number of messages (and keys). */
+        private final int _keys;
+
+        /** Number of long messages. */
+        private int _longKeys;
+
+        /** Number of characters of the messages. */
+        private long _chars;
+
+        /** Nanoseconds spent converting by the reference, then by each
+         *  engine in the order of Engine.NAMES. */
+        private final long[] _nanos;
+
+        /** The differences found. */
+        private final List<String> _differences = new ArrayList<String>();
+    }
+
+    /** Number of spare rotors of each kind in a configuration. */
+    private static final int SPARES = 2;
+
+    /** Name of the reference in the report. */
+    private static final String REFERENCE = "reference";
+
+    /** Nanoseconds in a second. */
+    private static final double NANOS = 1e9;
+
+    /** Characters in a million. */
+    private static final double MEGA = 1e6;
+
+    /** Seed of the first trial. */
+    private final long _seed;
+
+    /** Number of threads. */
+    private final int _threads;
+
+    /** Numbers of trials run, and of their keys, long messages and
+     *  characters. */
+    private long _trials, _keys, _longKeys, _chars;
+
+    /** An engine of each kind, in the order of Engine.NAMES, from which
+     *  those of the trials are forked. */
+    private final Engine[] _engines;
+
+    /** Nanoseconds spent converting by the reference, then by each
+     *  engine in the order of Engine.NAMES. */
+    private final long[] _nanos;
+
+    /** The differences found, in order of trial. */
+    private final List<String> _differences = new ArrayList<String>();
+
+}
@@ -0,0 +1,245 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.EnigmaException.*;
+
+/** What the engines cost on this computer, as measured by calibrate or
+ *  read from a saved profile: the time to convert a character with the
+ *  interpreted, run-length and compiled engines (per rotor slot, since
+ *  all do work in proportion to the number of slots), the one-time cost
+ *  of running the Java compiler, the cost of generating a path for a new
+ *  configuration (per entry of its tables, which have a row for each
+ *  slot and a column for each character), and the cost of handing a
+ *  chunk of work to another thread.  All times are in nanoseconds.  A
+ *  compiled engine that is not available costs infinitely much.
+ *  @author Amy Kwon
+ */
+class EngineProfile {
+
+    /** A profile in which interpreting costs INTERPRETED, converting by
+     *  runs RUNLENGTH and running compiled code COMPILED per character
+     *  and slot, compiling costs COMPILER, generating a path costs SETUP
+     *  per table entry, and starting a thread's work costs THREAD. */
+    EngineProfile(double interpreted, double runLength, double compiled,
+                  double compiler, double setup, double thread) {
+        _interpreted = interpreted;
+        _runLength = runLength;
+        _compiled = compiled;
+        _compiler = compiler;
+        _setup = setup;
+        _thread = thread;
+    }
+
+    /** Return a profile measured by converting with copies of MACHINE,
+     *  which must have its rotors in place. */
+    static EngineProfile calibrate(Machine machine) {
+        int slots = machine.numRotors();
+        int size = machine.alphabet().size();
+        Random random = new Random(CALIBRATION_SEED);
+        int[] text = new int[CALIBRATION_CHARS];
+        for (int i = 0; i < text.length; i += 1) {
+            text[i] = random.nextInt(size);
+        }
+        double interpreted =
+            perChar(machine, new InterpretedEngine(), text) / slots;
+        double runLength =
+            perChar(machine, new RunLengthEngine(), text) / slots;
+
+        boolean available = new CompiledEngine().path(machine) != null;
+        long start = System.nanoTime();
+        new CompiledEngine().path(machine);
+        double setup = (double) (System.nanoTime() - start) / (size * slots);
+        double compiler = PathCompiler.compileNanos(slots);
+        double compiled = Double.POSITIVE_INFINITY;
+        if (available) {
+            compiled = perChar(machine, new CompiledEngine(), text) / slots;
+        } else {
+            compiler = Double.POSITIVE_INFINITY;
+        }
+
+        start = System.nanoTime();
+        for (int i = 0; i < CALIBRATION_TASKS; i += 1) {
+            Machine copy = machine.copy();
+            try {
+                ForkJoinPool.commonPool().submit(() -> copy.advance(1)).get();
+            } catch (ExecutionException | InterruptedException excp) {
+                throw error("calibration failed");
+            }
+        }
+        double thread = (double) (System.nanoTime() - start)
+            / CALIBRATION_TASKS;
+        return new EngineProfile(interpreted, runLength, compiled,
+                                 Math.max(0, compiler), setup, thread);
+    }
+
+    /** Return the least time per character taken by ENGINE to convert
+     *  TEXT with a copy of MACHINE, over CALIBRATION_RUNS runs. */
+    private static double perChar(Machine machine, Engine engine,
+                                  int[] text) {
+        Machine copy = machine.copy();
+        copy.setEngine(engine);
+        int[] buf = new int[text.length];
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < CALIBRATION_RUNS; run += 1) {
+            System.arraycopy(text, 0, buf, 0, text.length);
+            long start = System.nanoTime();
+            copy.convert(buf, 0, buf.length);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / text.length;
+    }
+
+    /** Return the time to convert a character with the interpreted
+     *  engine on a machine with SLOTS slots. */
+    double interpreted(int slots) {
+        return _interpreted * slots;
+    }
+
+    /** Return the time to convert a character with the run-length
+     *  engine on a machine with SLOTS slots. */
+    double runLength(int slots) {
+        return _runLength * slots;
+    }
+
+    /** Return the time to convert a character with the compiled engine
+     *  on a machine with SLOTS slots, once its path exists. */
+    double compiled(int slots) {
+        return _compiled * slots;
+    }
+
+    /** Return the time taken to run the Java compiler. */
+    double compiler() {
+        return _compiler;
+    }
+
+    /** Return the time taken to generate a path for a new configuration
+     *  of SLOTS slots and an alphabet of SIZE characters. */
+    double setup(int size, int slots) {
+        return _setup * size * slots;
+    }
+
+    /** Return the time taken to hand a chunk of work to another
+     *  thread. */
+    double thread() {
+        return _thread;
+    }
+
+    /** Save me in FILE. */
+    void write(File file) {
+        Properties props = new Properties();
+        props.setProperty(VERSION, CURRENT_VERSION);
+        props.setProperty(INTERPRETED, Double.toString(_interpreted));
+        props.setProperty(RUN_LENGTH, Double.toString(_runLength));
+        props.setProperty(COMPILED, Double.toString(_compiled));
+        props.setProperty(COMPILER, Double.toString(_compiler));
+        props.setProperty(SETUP, Double.toString(_setup));
+        props.setProperty(THREAD, Double.toString(_thread));
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                props.store((OutputStream) out, "Enigma engine profile");
+            }
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write profile %s", file);
+        }
+    }
+
+    /** Return the profile saved in FILE. */
+    static EngineProfile read(File file) {
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            props.load(in);
+        } catch (IOException excp) {
+            throw error("could not read profile %s", file);
+        }
+        if (!CURRENT_VERSION.equals(props.getProperty(VERSION))) {
+            throw error("%s is not an engine profile", file);
+        }
+        try {
+            return new EngineProfile(property(props, INTERPRETED),
+                                     property(props, RUN_LENGTH),
+                                     property(props, COMPILED),
+                                     property(props, COMPILER),
+                                     property(props, SETUP),
+                                     property(props, THREAD));
+        } catch (NumberFormatException excp) {
+            throw error("corrupt profile %s", file);
+        }
+    }
+
+    /** Return property KEY of PROPS, which must be present, as a
+     *  number. */
+    private static double property(Properties props, String key) {
+        String value = props.getProperty(key);
+        if (value == null) {
+            throw error("profile has no %s", key);
+        }
+        return Double.parseDouble(value);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("interpreted %.1f, run-length %.1f, compiled"
+                             + " %.1f ns/char/slot; compiler %.0f, setup"
+                             + " %.1f/entry, thread %.0f ns", _interpreted,
+                             _runLength, _compiled, _compiler, _setup,
+                             _thread);
+    }
+
+    /** Number of characters converted by each engine when calibrating. */
+    private static final int CALIBRATION_CHARS = 1 << 16;
+
+    /** Number of times each engine converts them. */
+    private static final int CALIBRATION_RUNS = 32;
+
+    /** Number of tasks handed to other threads when calibrating. */
+    private static final int CALIBRATION_TASKS = 16;
+
+    /** Seed of the text converted when calibrating. */
+    private static final long CALIBRATION_SEED = 32;
+
+    /** Property holding the version of the profile format. */
+    private static final String VERSION = "version";
+
+    /** The version written by this class. */
+    private static final String CURRENT_VERSION = "2";
+
+    /** Property names of the costs. */
+    private static final String INTERPRETED = "interpreted",
+        RUN_LENGTH = "runlength", COMPILED = "compiled",
+        COMPILER = "compiler", SETUP = "setup", THREAD = "thread";
+
+    /** Interpreted cost per character and slot. */
+    private final double _interpreted;
+
+    /** Run-length cost per character and slot. */
+    private final double _runLength;
+
+    /** Compiled cost per character and slot. */
+    private final double _compiled;
+
+    /** Cost of running the Java compiler. */
+    private final double _compiler;
+
+    /** Cost of generating a path, per table entry. */
+    private final double _setup;
+
+    /** Cost of handing work to another thread. */
+    private final double _thread;
+
+}
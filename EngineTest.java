@@ -0,0 +1,237 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the engines, each of which must
+ *  convert exactly as Machine.convert(int) does.
+ *  @author Amy Kwon
+ */
+public class EngineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Check that ENGINE converts as Machine.convert(int) does, for a
+     *  few keys and message lengths, on machines with three pawls and on
+     *  machines with fewer. */
+    private void checkEngine(Engine engine) {
+        Random random = new Random(33);
+        String[] settings = {"AAAA", "ADUQ", "ZEVQ", "MMMM"};
+        String[] rings = {null, "AAAA", "BCDE", "ZZZZ"};
+        for (int k = 0; k < settings.length; k += 1) {
+            checkEngine(engine, random,
+                        machine(settings[k], rings[k], "(AQ) (BX)"),
+                        machine(settings[k], rings[k], "(AQ) (BX)"));
+        }
+        for (int k = 0; k < FEW_PAWLS.length; k += 1) {
+            int slots = FEW_PAWLS_SLOTS[k], pawls = FEW_PAWLS_PAWLS[k];
+            checkEngine(engine, random,
+                        machine(slots, pawls, FEW_PAWLS[k]),
+                        machine(slots, pawls, FEW_PAWLS[k]));
+        }
+    }
+
+    /** Check that ENGINE, used by TESTED, converts random messages from
+     *  RANDOM as REFERENCE, a machine with the same key, does with
+     *  Machine.convert(int). */
+    private void checkEngine(Engine engine, Random random,
+                             Machine reference, Machine tested) {
+        tested.setEngine(engine);
+        for (int len : new int[] {0, 1, 7, 700, 20000}) {
+            int[] buf = new int[len + 2];
+            for (int i = 0; i < buf.length; i += 1) {
+                buf[i] = random.nextInt(26);
+            }
+            int[] expected = buf.clone();
+            for (int i = 1; i <= len; i += 1) {
+                expected[i] = reference.convert(expected[i]);
+            }
+            tested.convert(buf, 1, len);
+            assertArrayEquals(engine.name() + " output", expected, buf);
+            assertArrayEquals(engine.name() + " rotors",
+                              reference.positions(), tested.positions());
+            assertEquals(reference.offset(), tested.offset());
+        }
+    }
+
+    /** Keys of machines with no pawls, or only one, whose numbers of
+     *  slots and pawls are the matching elements of FEW_PAWLS_SLOTS and
+     *  FEW_PAWLS_PAWLS. */
+    private static final String[] FEW_PAWLS = {
+        "B Beta Gamma AB (AQ)", "B Gamma Q", "B Beta I AQ (BX)",
+        "B Beta III CV DA", "B II E"
+    };
+
+    /** Numbers of slots of the machines of FEW_PAWLS. */
+    private static final int[] FEW_PAWLS_SLOTS = {3, 2, 3, 3, 2};
+
+    /** Numbers of pawls of the machines of FEW_PAWLS. */
+    private static final int[] FEW_PAWLS_PAWLS = {0, 0, 1, 1, 1};
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testInterpreted() {
+        checkEngine(new InterpretedEngine());
+    }
+
+    @Test
+    public void testCompiled() {
+        checkEngine(new CompiledEngine());
+    }
+
+    @Test
+    public void testRunLength() {
+        checkEngine(new RunLengthEngine());
+    }
+
+    @Test
+    public void testTable() {
+        checkEngine(new TableEngine());
+        Machine reference = machine("AEVQ", "BCDE", "(AQ) (BX)");
+        Machine tested = machine("AEVQ", "BCDE", "(AQ) (BX)");
+        tested.setEngine(new TableEngine());
+        int len = 4 * 26 * 26 * 26 * 26;
+        int[] buf = new int[len];
+        for (int i = 0; i < len; i += 1) {
+            buf[i] = (i * 7) % 26;
+        }
+        int[] expected = buf.clone();
+        for (int i = 0; i < len; i += 1) {
+            expected[i] = reference.convert(expected[i]);
+        }
+        for (int i = 0; i < len; i += len / 4) {
+            tested.convert(buf, i, Math.min(len / 4, len - i));
+        }
+        assertArrayEquals(expected, buf);
+        assertArrayEquals(reference.positions(), tested.positions());
+    }
+
+    @Test
+    public void testTableNoPawls() {
+        String key = "B Beta Gamma AB CD (AQ) (BX)";
+        Machine reference = machine(3, 0, key);
+        Machine tested = machine(3, 0, key);
+        StateSpace space = new StateSpace(tested);
+        assertEquals(1, space.period());
+        assertEquals(0, space.preperiod());
+        assertTrue(space.table(TableEngine.BUDGET) != null);
+        tested.setEngine(new TableEngine());
+        int len = 10 * 26;
+        int[] buf = new int[len];
+        for (int i = 0; i < len; i += 1) {
+            buf[i] = (i * 7) % 26;
+        }
+        int[] expected = buf.clone();
+        for (int i = 0; i < len; i += 1) {
+            expected[i] = reference.convert(expected[i]);
+        }
+        for (int i = 0; i < len; i += len / 5) {
+            tested.convert(buf, i, len / 5);
+        }
+        assertArrayEquals(expected, buf);
+        assertArrayEquals(reference.positions(), tested.positions());
+        assertEquals(reference.offset(), tested.offset());
+    }
+
+    @Test
+    public void testParallel() {
+        checkEngine(new ParallelEngine(new CompiledEngine(), 3));
+        Machine reference = machine("ZEVQ", "BCDE", "(AQ) (BX)");
+        Machine tested = machine("ZEVQ", "BCDE", "(AQ) (BX)");
+        tested.setEngine(new ParallelEngine(new InterpretedEngine(), 3));
+        int len = 3 * ParallelEngine.MIN_CHUNK + 5;
+        int[] buf = new int[len];
+        for (int i = 0; i < len; i += 1) {
+            buf[i] = i % 26;
+        }
+        int[] expected = buf.clone();
+        for (int i = 0; i < len; i += 1) {
+            expected[i] = reference.convert(expected[i]);
+        }
+        tested.convert(buf, 0, len);
+        assertArrayEquals(expected, buf);
+        assertArrayEquals(reference.positions(), tested.positions());
+        assertEquals(reference.offset(), tested.offset());
+    }
+
+    @Test
+    public void testAdaptive() {
+        AdaptiveEngine engine = new AdaptiveEngine(null);
+        checkEngine(engine);
+        assertTrue(engine.usage().startsWith(AdaptiveEngine.NAME + " ("));
+    }
+
+    @Test
+    public void testAdaptiveNoPawls() {
+        String key = "B Beta Gamma QX ZZ (AQ) (BX)";
+        Machine reference = machine(3, 0, key);
+        Machine tested = machine(3, 0, key);
+        tested.setEngine(new AdaptiveEngine(null));
+        for (int len : new int[] {1, 100, 5000, 1 << 18}) {
+            int[] buf = new int[len];
+            for (int i = 0; i < len; i += 1) {
+                buf[i] = (i * 11) % 26;
+            }
+            int[] expected = buf.clone();
+            for (int i = 0; i < len; i += 1) {
+                expected[i] = reference.convert(expected[i]);
+            }
+            tested.convert(buf, 0, len);
+            assertArrayEquals(expected, buf);
+            assertArrayEquals(reference.positions(), tested.positions());
+        }
+    }
+
+    @Test
+    public void testAdaptiveCalibratesFirst() throws IOException {
+        File profile = File.createTempFile("profile", ".txt");
+        assertTrue(profile.delete());
+        profile.deleteOnExit();
+        Machine m = machine("AXLE", null, "(AQ)");
+        m.setEngine(new AdaptiveEngine(profile));
+        m.convert("HELLO");
+        assertTrue(profile.exists());
+    }
+
+    @Test
+    public void testCompiledSwitchesKeys() {
+        Machine m = machine("AAAA", null, "(AQ)");
+        Machine reference = machine("AAAA", null, "(AQ)");
+        m.setEngine(new CompiledEngine());
+        KeySwitcher keys = new KeySwitcher(m);
+        KeySwitcher referenceKeys = new KeySwitcher(reference);
+        String[] lines = {"B Beta I II III QRST", "B Beta II I III AAAA BCDE",
+                          "B Beta III II I ZZZZ (AB) (CD)"};
+        for (String line : lines) {
+            keys.apply(line);
+            referenceKeys.apply(line);
+            assertEquals(reference.convert("HELLOWORLD"),
+                         m.convert("HELLOWORLD"));
+        }
+    }
+
+    @Test
+    public void testEngineCheck() {
+        EngineCheck check = new EngineCheck(49, 2);
+        check.run(12);
+        assertEquals(check.report(), 0, check.differences().size());
+        assertTrue(check.longKeys() > 0);
+        ParallelEngine parallel =
+            (ParallelEngine) EngineCheck.engine(ParallelEngine.NAME);
+        assertTrue(parallel.chunks(EngineCheck.MIN_LONG) > 1);
+    }
+
+}
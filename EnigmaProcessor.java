@@ -0,0 +1,299 @@
+package enigma;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** A stage of a reactive pipeline that converts the chunks of text it
+ *  receives with a machine, and publishes the results.  Chunks are of
+ *  characters or of bytes (one character per byte), or are settings
+ *  lines, which set a new key for the chunks after them, as settings
+ *  lines do in Main's input.  Text is converted as with
+ *  Machine.convertPassthrough: characters of the alphabet are
+ *  converted, and others are kept or left out by their class.
+ *
+ *  There is one subscriber.  I request no more chunks from upstream
+ *  than I have room for (BATCH at a time), and take them off my queue
+ *  only while my subscriber has demand, so a slow subscriber slows the
+ *  publisher rather than filling memory.  All the chunks waiting when
+ *  there is demand are converted in one run and published as one
+ *  result, so the cost of each result is spread over many small chunks.
+ *  Nothing ever blocks: the work is done by whichever thread delivers a
+ *  chunk or a request, one at a time.
+ *  @author Amy Kwon
+ */
+class EnigmaProcessor implements Flow.Processor<EnigmaProcessor.Chunk,
+                                                 String> {
+
+    /** Largest number of chunks requested from upstream and not yet
+     *  converted. */
+    static final int BATCH = 64;
+
+    /** A piece of the input: text or a settings line. */
+    static final class Chunk {
+
+        /** A chunk of TEXT, or a settings line if KEY. */
+        private Chunk(String text, boolean key) {
+            _text = text;
+            _key = key;
+        }
+
+        /** Return a chunk of the characters TEXT. */
+        static Chunk text(CharSequence text) {
+            return new Chunk(text.toString(), false);
+        }
+
+        /** Return a chunk of the LEN bytes BYTES[FROM ..], each of which
+         *  is one character (in ISO-8859-1). */
+        static Chunk bytes(byte[] bytes, int from, int len) {
+            return new Chunk(new String(bytes, from, len,
+                                        StandardCharsets.ISO_8859_1),
+                             false);
+        }
+
+        /** Return a chunk setting the key of a settings line LINE, with
+         *  or without its "*". */
+        static Chunk key(String line) {
+            return new Chunk(line, true);
+        }
+
+        /** The text or settings line. */
+        private final String _text;
+
+        /** True iff I am a settings line. */
+        private final boolean _key;
+    }
+
+    /** A processor converting with a copy of MACHINE, which must have
+     *  its rotors in place. */
+    EnigmaProcessor(Machine machine) {
+        _machine = machine.copy();
+        _keys = new KeySwitcher(_machine);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> subscriber) {
+        if (!_subscriber.compareAndSet(null, subscriber)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException(
+                "an EnigmaProcessor has only one subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    _failure.compareAndSet(null,
+                        new IllegalArgumentException("bad request: " + n));
+                } else {
+                    _demand.getAndAccumulate(n, EnigmaProcessor::addCapped);
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                _cancelled = true;
+                Flow.Subscription upstream = _upstream;
+                if (upstream != null) {
+                    upstream.cancel();
+                }
+            }
+        });
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (_upstream != null || _cancelled) {
+            subscription.cancel();
+            return;
+        }
+        _upstream = subscription;
+        subscription.request(BATCH);
+    }
+
+    @Override
+    public void onNext(Chunk chunk) {
+        _inbox.add(chunk);
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable failure) {
+        _failure.compareAndSet(null, failure);
+        _upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        _upstreamDone = true;
+        drain();
+    }
+
+    /** Do whatever work my chunks and my subscriber's demand allow, unless
+     *  another thread is doing so, in which case it does mine too. */
+    private void drain() {
+        if (_busy.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super String> subscriber = _subscriber.get();
+            if (subscriber != null && !_cancelled && !_finished) {
+                try {
+                    emit(subscriber);
+                } catch (RuntimeException excp) {
+                    abort(subscriber, excp);
+                }
+            }
+            missed = _busy.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /** Convert and publish to SUBSCRIBER what its demand allows, and
+     *  end the stream if the input is done. */
+    private void emit(Flow.Subscriber<? super String> subscriber) {
+        Throwable failure = _failure.get();
+        if (failure != null) {
+            finish(subscriber, failure);
+            return;
+        }
+        int taken = 0;
+        while (true) {
+            Chunk next = _inbox.peek();
+            if (next != null && next._key) {
+                _inbox.poll();
+                applyKey(next._text);
+                taken += 1;
+            } else if (next != null && _demand.get() > 0) {
+                _batch.setLength(0);
+                while (next != null && !next._key) {
+                    _batch.append(next._text);
+                    _inbox.poll();
+                    taken += 1;
+                    next = _inbox.peek();
+                }
+                String result = _machine.convertPassthrough(
+                    _batch.toString());
+                if (!result.isEmpty()) {
+                    _demand.decrementAndGet();
+                    subscriber.onNext(result);
+                }
+            } else {
+                break;
+            }
+        }
+        if (taken > 0 && _upstream != null && !_upstreamDone) {
+            _upstream.request(taken);
+        }
+        if (_upstreamDone && _inbox.isEmpty()) {
+            finish(subscriber, null);
+        }
+    }
+
+    /** End the stream to SUBSCRIBER, with FAILURE if it is not null,
+     *  dropping any chunks not yet converted. */
+    private void finish(Flow.Subscriber<? super String> subscriber,
+                        Throwable failure) {
+        _finished = true;
+        _inbox.clear();
+        if (failure == null) {
+            subscriber.onComplete();
+            return;
+        }
+        if (_upstream != null && !_upstreamDone) {
+            _upstream.cancel();
+        }
+        subscriber.onError(failure);
+    }
+
+    /** Stop the stream to SUBSCRIBER after EXCP, thrown by my machine or
+     *  by SUBSCRIBER itself: cancel my publisher, and report EXCP unless
+     *  SUBSCRIBER has already been told the stream ended.  SUBSCRIBER
+     *  counts as cancelled once it has thrown, so a second exception
+     *  from it is only recorded. */
+    private void abort(Flow.Subscriber<? super String> subscriber,
+                       RuntimeException excp) {
+        _cancelled = true;
+        _inbox.clear();
+        if (_upstream != null && !_upstreamDone) {
+            _upstream.cancel();
+        }
+        if (!_finished) {
+            _finished = true;
+            try {
+                subscriber.onError(excp);
+            } catch (RuntimeException again) {
+                _failure.compareAndSet(null, again);
+            }
+        }
+    }
+
+    /** Set the key of the settings line LINE, with or without its
+     *  "*". */
+    private void applyKey(String line) {
+        int start = KeySwitcher.settingsStart(line);
+        _keys.apply(line, Math.max(0, start));
+    }
+
+    /** Return A + B, or Long.MAX_VALUE if that overflows (which counts
+     *  as unbounded demand). */
+    private static long addCapped(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    /** The machine converting my text. */
+    private final Machine _machine;
+
+    /** Sets keys on _machine. */
+    private final KeySwitcher _keys;
+
+    /** Chunks received and not yet converted. */
+    private final ConcurrentLinkedQueue<Chunk> _inbox =
+        new ConcurrentLinkedQueue<Chunk>();
+
+    /** Text of the chunks being converted together. */
+    private final StringBuilder _batch = new StringBuilder();
+
+    /** My subscriber, or null. */
+    private final AtomicReference<Flow.Subscriber<? super String>>
+        _subscriber = new AtomicReference<Flow.Subscriber<? super String>>();
+
+    /** Results my subscriber has requested and not yet received. */
+    private final AtomicLong _demand = new AtomicLong();
+
+    /** Number of calls of drain not yet served; nonzero while a thread
+     *  is draining. */
+    private final AtomicInteger _busy = new AtomicInteger();
+
+    /** The first failure to report, or null. */
+    private final AtomicReference<Throwable> _failure =
+        new AtomicReference<Throwable>();
+
+    /** The subscription to my publisher, or null. */
+    private volatile Flow.Subscription _upstream;
+
+    /** True once my publisher has no more chunks for me. */
+    private volatile boolean _upstreamDone;
+
+    /** True once my subscriber has cancelled. */
+    private volatile boolean _cancelled;
+
+    /** True once my subscriber has been told the stream has ended. */
+    private volatile boolean _finished;
+
+}
@@ -0,0 +1,238 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaProcessor class.
+ *  @author Amy Kwon
+ */
+public class EnigmaProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a machine with three pawls and the naval rotors, set to
+     *  the key "B Beta I II III AAAA". */
+    private Machine machine() {
+        return TestUtils.machine(5, 3, "B Beta I II III AAAA");
+    }
+
+    /** A publisher of a list of chunks that delivers them on the thread
+     *  that requests them, and records how much was asked of it. */
+    private static class Source implements Flow.Publisher<
+        EnigmaProcessor.Chunk> {
+
+        /** A publisher of CHUNKS. */
+        Source(List<EnigmaProcessor.Chunk> chunks) {
+            _chunks = chunks;
+        }
+
+        @Override
+        public void subscribe(
+            Flow.Subscriber<? super EnigmaProcessor.Chunk> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    requested += n;
+                    maxOutstanding = Math.max(maxOutstanding,
+                                              requested - delivered);
+                    if (_delivering) {
+                        return;
+                    }
+                    _delivering = true;
+                    while (!cancelled && delivered < requested
+                           && delivered < _chunks.size()) {
+                        delivered += 1;
+                        subscriber.onNext(_chunks.get(delivered - 1));
+                    }
+                    _delivering = false;
+                    if (!cancelled && !_completed
+                        && delivered == _chunks.size()) {
+                        _completed = true;
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+
+        /** Number of chunks requested in all. */
+        long requested;
+        /** Number of chunks delivered. */
+        int delivered;
+        /** Largest number of chunks requested and not yet delivered. */
+        long maxOutstanding;
+        /** True once my subscriber has cancelled. */
+        boolean cancelled;
+
+        /** The chunks I publish. */
+        private final List<EnigmaProcessor.Chunk> _chunks;
+        /** True while I am delivering chunks. */
+        private boolean _delivering;
+        /** True once I have completed. */
+        private boolean _completed;
+    }
+
+    /** A subscriber that requests only when told to, and records what
+     *  it receives. */
+    private static class Sink implements Flow.Subscriber<String> {
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+        }
+
+        @Override
+        public void onNext(String item) {
+            results.add(item);
+        }
+
+        @Override
+        public void onError(Throwable excp) {
+            failure = excp;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        /** Request N more results. */
+        void request(long n) {
+            _subscription.request(n);
+        }
+
+        /** The results received. */
+        final List<String> results = new ArrayList<String>();
+        /** The failure received, or null. */
+        Throwable failure;
+        /** True once the stream has completed. */
+        boolean completed;
+
+        /** My subscription. */
+        private Flow.Subscription _subscription;
+    }
+
+    /** Settings lines used in turn by chunks(), with and without
+     *  their "*". */
+    static final String[] KEYS = {
+        "* B Beta II III IV QRST BCDE (AB)", "B Beta I III II ZZZZ",
+    };
+
+    /** Return N chunks: text, with a line of KEYS as every seventh. */
+    private List<EnigmaProcessor.Chunk> chunks(int n) {
+        List<EnigmaProcessor.Chunk> result =
+            new ArrayList<EnigmaProcessor.Chunk>();
+        for (int k = 0; k < n; k += 1) {
+            if (k % 7 == 6) {
+                result.add(EnigmaProcessor.Chunk.key(KEYS[k % 2]));
+            } else {
+                result.add(EnigmaProcessor.Chunk.text(
+                    "Chunk " + k + ": THE QUICK BROWN FOX\n"));
+            }
+        }
+        return result;
+    }
+
+    /** Return the conversion of N chunks() by machine(), converting each
+     *  in turn. */
+    private String expected(int n) {
+        Machine m = machine();
+        KeySwitcher keys = new KeySwitcher(m);
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < n; k += 1) {
+            if (k % 7 == 6) {
+                String line = KEYS[k % 2];
+                keys.apply(line, Math.max(0, KeySwitcher.settingsStart(line)));
+            } else {
+                result.append(m.convertPassthrough(
+                    "Chunk " + k + ": THE QUICK BROWN FOX\n"));
+            }
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testBackpressure() {
+        int n = 5 * EnigmaProcessor.BATCH;
+        Source source = new Source(chunks(n));
+        EnigmaProcessor processor = new EnigmaProcessor(machine());
+        Sink sink = new Sink();
+        processor.subscribe(sink);
+        source.subscribe(processor);
+        assertEquals(EnigmaProcessor.BATCH, source.requested);
+        assertEquals(EnigmaProcessor.BATCH, source.delivered);
+        assertTrue(sink.results.isEmpty());
+
+        while (!sink.completed) {
+            int before = sink.results.size();
+            sink.request(1);
+            assertTrue(sink.completed || sink.results.size() == before + 1);
+        }
+        assertNull(sink.failure);
+        assertEquals(n, source.delivered);
+        assertTrue(source.maxOutstanding <= EnigmaProcessor.BATCH);
+        assertEquals(expected(n), String.join("", sink.results));
+    }
+
+    @Test
+    public void testSubscriberThrows() {
+        Source source = new Source(chunks(3 * EnigmaProcessor.BATCH));
+        EnigmaProcessor processor = new EnigmaProcessor(machine());
+        RuntimeException thrown = new IllegalStateException("full");
+        Sink sink = new Sink() {
+            @Override
+            public void onNext(String item) {
+                super.onNext(item);
+                if (results.size() == 2) {
+                    throw thrown;
+                }
+            }
+        };
+        processor.subscribe(sink);
+        source.subscribe(processor);
+        sink.request(5);
+        assertSame(thrown, sink.failure);
+        assertTrue(source.cancelled);
+        assertEquals(2, sink.results.size());
+        sink.request(5);
+        processor.onNext(EnigmaProcessor.Chunk.text("MORE"));
+        assertEquals(2, sink.results.size());
+        assertFalse(sink.completed);
+    }
+
+    @Test
+    public void testBadKey() {
+        List<EnigmaProcessor.Chunk> chunks = chunks(3);
+        chunks.add(EnigmaProcessor.Chunk.key("* B Beta I II VI AAAA"));
+        chunks.addAll(chunks(2 * EnigmaProcessor.BATCH));
+        Source source = new Source(chunks);
+        EnigmaProcessor processor = new EnigmaProcessor(machine());
+        Sink sink = new Sink();
+        processor.subscribe(sink);
+        source.subscribe(processor);
+        sink.request(Long.MAX_VALUE);
+        assertTrue(sink.failure instanceof EnigmaException);
+        assertTrue(source.cancelled);
+        assertEquals(expected(3), String.join("", sink.results));
+        assertFalse(sink.completed);
+    }
+
+}
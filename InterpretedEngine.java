@@ -0,0 +1,25 @@
+package enigma;
+
+/** The engine that converts each character with Machine.convert(int):
+ *  the reference for all other engines, and the one to use when too
+ *  few characters are converted under a key to repay any preparation.
+ *  @author Amy Kwon
+ */
+class InterpretedEngine implements Engine {
+
+    /** The name of this engine. */
+    static final String NAME = "interpreted";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void convert(Machine machine, int[] buf, int from, int len) {
+        for (int i = from; i < from + len; i += 1) {
+            buf[i] = machine.convert(buf[i]);
+        }
+    }
+
+}
@@ -0,0 +1,648 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only search for the key of a message, as run over many
+ *  hours by several local processes.  The keys searched are every rotor
+ *  order allowed by a configuration (see Catalog.orders), every setting
+ *  of its rotors, and every ring setting of its rightmost rotor, with
+ *  the other rings at 0 and no plugboard; each is scored by the index of
+ *  coincidence of the message it decrypts, which is highest when the
+ *  rotors are right.  The keyspace is cut into numbered units: a rotor
+ *  order, times a setting of its leftmost rotor, times a range of
+ *  RING_BLOCK ring settings; a unit covers all settings of the other
+ *  rotors.
+ *
+ *  A coordinator hands units to worker processes that it starts on the
+ *  same host, which connect to it over a socket on the loopback
+ *  interface, and merges the TOP best keys each worker finds in each
+ *  unit.  Each worker is given a random token on its command line and
+ *  must present it on connecting; other connections get no units.
+ *  Every completed unit is appended, with its best keys, to a journal,
+ *  so a search that is stopped and started again with the same journal
+ *  only searches the units not yet done.  A unit whose worker dies is
+ *  handed to another.
+ *
+ *  As commands, the arguments
+ *      --search CONFIG FILE JOURNAL [WORKERS [TOP]]
+ *  search for the key of the message letters in FILE (settings lines
+ *  being ignored) with WORKERS (by default, the number of processors)
+ *  worker processes, and print the TOP (by default, DEFAULT_TOP) best
+ *  keys with their scores, and
+ *      --search-worker PORT TOKEN
+ *  runs a worker for the coordinator listening on PORT, which gave it
+ *  TOKEN.
+ *  @author Amy Kwon
+ */
+class KeySearch {
+
+    /** Command-line option that selects a search. */
+    static final String OPTION = "--search";
+
+    /** Command-line option that selects a worker. */
+    static final String WORKER_OPTION = "--search-worker";
+
+    /** Default number of best keys kept. */
+    static final int DEFAULT_TOP = 10;
+
+    /** Number of ring settings of the rightmost rotor in a unit. */
+    static final int RING_BLOCK = 13;
+
+    /** A key and its score. */
+    static class Result implements Comparable<Result> {
+
+        /** The key KEY (a settings line without its "*"), scored
+         *  SCORE. */
+        Result(String key, double score) {
+            this.key = key;
+            this.score = score;
+        }
+
+        /** Results compare by score, then by key. */
+        @Override
+        public int compareTo(Result other) {
+            int c = Double.compare(score, other.score);
+            return c != 0 ? c : other.key.compareTo(key);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.5f %s", score, key);
+        }
+
+        /** The key. */
+        final String key;
+
+        /** Its score: the index of coincidence of the decryption, as a
+         *  multiple of that of random text. */
+        final double score;
+    }
+
+    /** A search for the key of the message letters in the file named
+     *  TEXT with the configuration in the file named CONFIG, keeping the
+     *  TOP best keys. */
+    KeySearch(String config, String text, int top) {
+        _config = new File(config).getAbsolutePath();
+        _textFile = new File(text).getAbsolutePath();
+        _top = top;
+        _machine = Main.configure(_config);
+        _machine.setEngine(new RunLengthEngine());
+        _orders = Catalog.orders(_machine);
+        _text = letters(_machine.alphabet(), _textFile);
+        int n = _machine.alphabet().size();
+        _rings = (n + RING_BLOCK - 1) / RING_BLOCK;
+        _units = (long) _orders.size() * n * _rings;
+        CRC32 crc = new CRC32();
+        try {
+            crc.update(Files.readAllBytes(new File(_config).toPath()));
+        } catch (IOException excp) {
+            throw error("could not read %s", config);
+        }
+        for (int c : _text) {
+            crc.update(c);
+        }
+        _identity = String.format("%s %d %x %d %d", JOURNAL_HEADER,
+                                  JOURNAL_VERSION, crc.getValue(),
+                                  _units, _top);
+    }
+
+    /** Perform the search given by ARGS (see the class comment). */
+    static void search(String[] args) {
+        if (args.length < 4 || args.length > 6) {
+            throw error("Usage: --search CONFIG FILE JOURNAL "
+                        + "[WORKERS [TOP]]");
+        }
+        int workers = args.length > 4 ? count(args[4])
+            : Runtime.getRuntime().availableProcessors();
+        int top = args.length > 5 ? count(args[5]) : DEFAULT_TOP;
+        KeySearch search = new KeySearch(args[1], args[2], top);
+        for (Result result : search.run(new File(args[3]), workers)) {
+            System.out.println(result);
+        }
+    }
+
+    /** Run the worker given by ARGS (see the class comment). */
+    static void work(String[] args) {
+        if (args.length != 3) {
+            throw error("Usage: --search-worker PORT TOKEN");
+        }
+        int port = count(args[1]);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        port)) {
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+            out.writeUTF(args[2]);
+            out.flush();
+            KeySearch search = new KeySearch(in.readUTF(), in.readUTF(),
+                                             in.readInt());
+            for (long unit = in.readLong(); unit >= 0;
+                 unit = in.readLong()) {
+                List<Result> results = search.unit(unit);
+                out.writeLong(unit);
+                out.writeInt(results.size());
+                for (Result result : results) {
+                    out.writeUTF(result.key);
+                    out.writeDouble(result.score);
+                }
+                out.flush();
+            }
+        } catch (IOException excp) {
+            throw error("lost the coordinator on port %d", port);
+        }
+    }
+
+    /** Return the number of units. */
+    long units() {
+        return _units;
+    }
+
+    /** Return the best keys of unit UNIT, best first. */
+    List<Result> unit(long unit) {
+        int n = _machine.alphabet().size();
+        int[] order = _orders.get((int) (unit / ((long) n * _rings)));
+        int first = (int) (unit / _rings % n);
+        int ringFrom = (int) (unit % _rings) * RING_BLOCK;
+        int ringTo = Math.min(n, ringFrom + RING_BLOCK);
+        Rotor[] rotors = new Rotor[order.length];
+        for (int k = 0; k < order.length; k += 1) {
+            rotors[k] = _machine.allRotors().get(order[k]);
+        }
+        _machine.useRotors(rotors);
+        _machine.setPlugboard(null);
+        int[] ring = new int[rotors.length - 1];
+        int[] pos = new int[rotors.length];
+        int[] buf = new int[_text.length];
+        int[] counts = new int[n];
+        PriorityQueue<Result> best = new PriorityQueue<Result>();
+        for (int r = ringFrom; r < ringTo; r += 1) {
+            ring[ring.length - 1] = r;
+            _machine.setRing(ring);
+            Arrays.fill(pos, 0);
+            pos[1] = first;
+            do {
+                _machine.setPositions(pos);
+                System.arraycopy(_text, 0, buf, 0, buf.length);
+                _machine.convert(buf, 0, buf.length);
+                double score = score(buf, counts);
+                if (best.size() < _top || score > best.peek().score) {
+                    best.add(new Result(key(rotors, pos, ring), score));
+                    if (best.size() > _top) {
+                        best.poll();
+                    }
+                }
+            } while (nextPosition(pos, n));
+        }
+        List<Result> result = new ArrayList<Result>(best);
+        Collections.sort(result, Collections.reverseOrder());
+        return result;
+    }
+
+    /** Search every unit not recorded in JOURNAL, with WORKERS worker
+     *  processes, recording each in JOURNAL as it is done.  Return the
+     *  best keys of all units, best first. */
+    List<Result> run(File journal, int workers) {
+        long start = System.nanoTime();
+        boolean[] done = readJournal(journal);
+        ArrayDeque<Long> pending = new ArrayDeque<Long>();
+        for (long u = 0; u < _units; u += 1) {
+            if (!done[(int) u]) {
+                pending.add(u);
+            }
+        }
+        int resumed = (int) (_units - pending.size());
+        byte[] token = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(token);
+        _token = HexFormat.of().formatHex(token);
+        _pending = pending;
+        _remaining = pending.size();
+        List<Process> processes = new ArrayList<Process>();
+        try (ServerSocket server = new ServerSocket(
+                 0, 0, InetAddress.getLoopbackAddress());
+             RandomAccessFile out = new RandomAccessFile(journal, "rw")) {
+            _journal = out;
+            out.seek(out.length());
+            if (_remaining > 0) {
+                Thread acceptor = new Thread(() -> accept(server));
+                acceptor.setDaemon(true);
+                acceptor.start();
+                for (int w = 0; w < Math.min(workers, _remaining); w += 1) {
+                    processes.add(launch(server.getLocalPort(), _token));
+                }
+            }
+            synchronized (this) {
+                while (_remaining > 0) {
+                    if (_active == 0 && !alive(processes)) {
+                        throw error("all search workers failed");
+                    }
+                    wait(POLL);
+                }
+            }
+            out.getFD().sync();
+        } catch (IOException excp) {
+            throw error("search failed: %s", excp.getMessage());
+        } catch (InterruptedException excp) {
+            throw error("search interrupted");
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+        System.err.printf("%d units (%d from the journal) in %.3f s on "
+                          + "%d workers%n", _units, resumed,
+                          (System.nanoTime() - start) / NANOS,
+                          processes.size());
+        List<Result> result = new ArrayList<Result>(_best);
+        Collections.sort(result, Collections.reverseOrder());
+        return result;
+    }
+
+    /** Accept connections from workers on SERVER until it is closed,
+     *  serving each on its own thread. */
+    private void accept(ServerSocket server) {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                synchronized (this) {
+                    _active += 1;
+                }
+                Thread thread = new Thread(() -> serve(socket));
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException excp) {
+                return;
+            }
+        }
+    }
+
+    /** Hand units to the worker connected by SOCKET until none are
+     *  left, recording its results, once it has presented my token
+     *  (within HANDSHAKE milliseconds).  A unit it does not finish is
+     *  returned to the pending units. */
+    private void serve(Socket socket) {
+        Long unit = null;
+        try (Socket s = socket) {
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(s.getOutputStream()));
+            s.setSoTimeout(HANDSHAKE);
+            byte[] token = in.readUTF().getBytes(StandardCharsets.UTF_8);
+            if (!MessageDigest.isEqual(token, _token.getBytes(
+                                           StandardCharsets.UTF_8))) {
+                throw new IOException("not one of my workers");
+            }
+            s.setSoTimeout(0);
+            out.writeUTF(_config);
+            out.writeUTF(_textFile);
+            out.writeInt(_top);
+            while ((unit = take()) != null) {
+                out.writeLong(unit);
+                out.flush();
+                if (in.readLong() != unit) {
+                    throw new IOException("worker answered out of turn");
+                }
+                List<Result> results = new ArrayList<Result>();
+                for (int k = in.readInt(); k > 0; k -= 1) {
+                    results.add(new Result(in.readUTF(), in.readDouble()));
+                }
+                record(unit, results);
+                unit = null;
+            }
+            out.writeLong(-1);
+            out.flush();
+        } catch (IOException excp) {
+            /* The worker is gone (or was never mine); its unit is handed
+             * to another. */
+        } finally {
+            synchronized (this) {
+                if (unit != null) {
+                    _pending.addFirst(unit);
+                }
+                _active -= 1;
+                notifyAll();
+            }
+        }
+    }
+
+    /** Return the next pending unit, waiting while there is none but
+     *  some are being searched, or null when all are done. */
+    private synchronized Long take() throws IOException {
+        try {
+            while (_pending.isEmpty() && _remaining > 0) {
+                wait(POLL);
+            }
+        } catch (InterruptedException excp) {
+            throw new IOException("interrupted");
+        }
+        return _pending.pollFirst();
+    }
+
+    /** Record that UNIT is done, with best keys RESULTS, in the journal
+     *  and in my best keys. */
+    private synchronized void record(long unit, List<Result> results)
+        throws IOException {
+        StringBuilder line = new StringBuilder();
+        line.append(unit);
+        for (Result result : results) {
+            line.append(SEPARATOR).append(result.score)
+                .append(SEPARATOR).append(result.key);
+        }
+        line.append('\n');
+        _journal.write(line.toString().getBytes(StandardCharsets.UTF_8));
+        long now = System.nanoTime();
+        if (now - _synced > SYNC_EVERY) {
+            _journal.getFD().sync();
+            _synced = now;
+        }
+        merge(results);
+        _remaining -= 1;
+        notifyAll();
+    }
+
+    /** Add RESULTS to my best keys, keeping the _top best. */
+    private void merge(List<Result> results) {
+        for (Result result : results) {
+            _best.add(result);
+            if (_best.size() > _top) {
+                _best.poll();
+            }
+        }
+    }
+
+    /** Return which units JOURNAL records as done, merging their results,
+     *  after checking that JOURNAL belongs to this search.  A new journal
+     *  is started if there is none; an incomplete last line (from a
+     *  coordinator that stopped while writing it) is removed. */
+    private boolean[] readJournal(File journal) {
+        if (_units > Integer.MAX_VALUE) {
+            throw error("too many units to journal");
+        }
+        boolean[] done = new boolean[(int) _units];
+        if (!journal.exists()) {
+            try {
+                Files.write(journal.toPath(), (_identity + "\n")
+                            .getBytes(StandardCharsets.UTF_8));
+            } catch (IOException excp) {
+                throw error("could not write %s", journal);
+            }
+            return done;
+        }
+        long good = 0;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                 new FileInputStream(journal), StandardCharsets.UTF_8))) {
+            String header = in.readLine();
+            if (!_identity.equals(header)) {
+                throw error("%s is the journal of another search", journal);
+            }
+            good = header.length() + 1;
+            long size = journal.length();
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                long end = good + line.getBytes(StandardCharsets.UTF_8)
+                    .length + 1;
+                if (end > size) {
+                    break;
+                }
+                String[] fields = line.split(SEPARATOR);
+                long unit = Long.parseLong(fields[0]);
+                if (unit < 0 || unit >= _units
+                    || fields.length % 2 != 1) {
+                    throw new NumberFormatException();
+                }
+                List<Result> results = new ArrayList<Result>();
+                for (int k = 1; k < fields.length; k += 2) {
+                    results.add(new Result(fields[k + 1],
+                                           Double.parseDouble(fields[k])));
+                }
+                if (!done[(int) unit]) {
+                    done[(int) unit] = true;
+                    merge(results);
+                }
+                good = end;
+            }
+        } catch (IOException | NumberFormatException excp) {
+            throw error("%s is not a readable journal", journal);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+            file.setLength(good);
+        } catch (IOException excp) {
+            throw error("could not write %s", journal);
+        }
+        return done;
+    }
+
+    /** Start a worker process for the coordinator on PORT, giving it
+     *  TOKEN. */
+    private static Process launch(int port, String token)
+        throws IOException {
+        String java = new File(new File(System.getProperty("java.home"),
+                                        "bin"), "java").getPath();
+        ProcessBuilder builder = new ProcessBuilder(
+            java, "-cp", System.getProperty("java.class.path"),
+            Main.class.getName(), WORKER_OPTION, Integer.toString(port),
+            token);
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        return builder.start();
+    }
+
+    /** Return true iff any of PROCESSES is still running. */
+    private static boolean alive(List<Process> processes) {
+        for (Process process : processes) {
+            if (process.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the score of the decryption BUF, using COUNTS to count its
+     *  letters. */
+    private static double score(int[] buf, int[] counts) {
+        Arrays.fill(counts, 0);
+        for (int c : buf) {
+            counts[c] += 1;
+        }
+        long pairs = 0;
+        for (int f : counts) {
+            pairs += (long) f * (f - 1);
+        }
+        double len = buf.length;
+        return len < 2 ? 0 : pairs / (len * (len - 1)) * counts.length;
+    }
+
+    /** Return the key of ROTORS at positions POS with ring RING. */
+    private String key(Rotor[] rotors, int[] pos, int[] ring) {
+        Alphabet alpha = _machine.alphabet();
+        StringBuilder result = new StringBuilder();
+        for (Rotor rotor : rotors) {
+            result.append(rotor.name()).append(' ');
+        }
+        for (int k = 1; k < pos.length; k += 1) {
+            result.append(alpha.toChar(pos[k]));
+        }
+        result.append(' ');
+        for (int r : ring) {
+            result.append(alpha.toChar(r));
+        }
+        return result.toString();
+    }
+
+    /** Advance POS to the next setting of its slots after the second,
+     *  each of N positions, returning false if POS was the last. */
+    private static boolean nextPosition(int[] pos, int n) {
+        for (int k = pos.length - 1; k >= 2; k -= 1) {
+            pos[k] += 1;
+            if (pos[k] < n) {
+                return true;
+            }
+            pos[k] = 0;
+        }
+        return false;
+    }
+
+    /** Return the alphabet indices of the letters of the messages in the
+     *  file named NAME, in ALPHA. */
+    private static int[] letters(Alphabet alpha, String name) {
+        StringBuilder text = new StringBuilder();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                 new FileInputStream(name)))) {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                if (KeySwitcher.settingsStart(line) < 0) {
+                    for (int i = 0; i < line.length(); i += 1) {
+                        if (alpha.contains(line.charAt(i))) {
+                            text.append(line.charAt(i));
+                        }
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+        if (text.length() < 2) {
+            throw error("%s has too little text to search", name);
+        }
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = alpha.toInt(text.charAt(i));
+        }
+        return result;
+    }
+
+    /** Return the positive number ARG. */
+    private static int count(String arg) {
+        try {
+            int result = Integer.parseInt(arg);
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
+        }
+        throw error("bad count: %s", arg);
+    }
+
+    /** First word of the first line of a journal. */
+    private static final String JOURNAL_HEADER = "enigma-search";
+
+    /** Version of the journal format. */
+    private static final int JOURNAL_VERSION = 1;
+
+    /** Separator of the fields of a journal line. */
+    private static final String SEPARATOR = "\t";
+
+    /** Number of random bytes in the token given to workers. */
+    private static final int TOKEN_BYTES = 16;
+
+    /** Milliseconds a connection may take to present the token. */
+    private static final int HANDSHAKE = 10000;
+
+    /** Milliseconds between checks on the workers. */
+    private static final long POLL = 100;
+
+    /** Nanoseconds per second. */
+    private static final double NANOS = 1e9;
+
+    /** Least nanoseconds between forcing the journal to disk.  A unit
+     *  written since is already safe from a stopped coordinator, though
+     *  not from a crash of the host, after which it is searched again. */
+    private static final long SYNC_EVERY = 1000000000L;
+
+    /** Absolute name of the configuration file. */
+    private final String _config;
+
+    /** Absolute name of the file holding the message. */
+    private final String _textFile;
+
+    /** Number of best keys kept. */
+    private final int _top;
+
+    /** The machine used to search. */
+    private final Machine _machine;
+
+    /** The rotor orders searched, as indices in _machine.allRotors(). */
+    private final List<int[]> _orders;
+
+    /** The message, as alphabet indices. */
+    private final int[] _text;
+
+    /** Number of ranges of ring settings. */
+    private final int _rings;
+
+    /** Number of units. */
+    private final long _units;
+
+    /** First line of this search's journal. */
+    private final String _identity;
+
+    /** Token my workers present on connecting, in hexadecimal. */
+    private String _token;
+
+    /** Units not yet handed to a worker. */
+    private ArrayDeque<Long> _pending;
+
+    /** Number of units not yet done. */
+    private long _remaining;
+
+    /** Number of workers connected. */
+    private int _active;
+
+    /** The journal, open for appending. */
+    private RandomAccessFile _journal;
+
+    /** Time (System.nanoTime) at which _journal was last forced. */
+    private long _synced;
+
+    /** The best keys found, worst first. */
+    private final PriorityQueue<Result> _best = new PriorityQueue<Result>();
+
+}
@@ -0,0 +1,129 @@
+package enigma;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySearch class.
+ *  @author Amy Kwon
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The temporary directories of the current test. */
+    private final TempDirs _temps = new TempDirs();
+
+    /** Delete the temporary directories of the current test. */
+    @After
+    public void deleteTemps() throws IOException {
+        _temps.delete();
+    }
+
+    /** A configuration on the alphabet A-F with three slots and two
+     *  pawls, and so 6 rotor orders of 6 settings of their leftmost
+     *  rotor, each a unit of one range of ring settings. */
+    static final String CONFIG = "ABCDEF\n3 2\n"
+        + "I MC (ACE) (BDF)\n"
+        + "II ME (ABDC) (EF)\n"
+        + "III MAD (AFB) (CDE)\n"
+        + "R R (AB) (CD) (EF)\n";
+
+    /** Number of units of a search with CONFIG. */
+    static final int UNITS = 36;
+
+    /** Number of best keys kept. */
+    static final int TOP = 5;
+
+    /** Return a new search of a message enciphered with CONFIG, in a new
+     *  directory. */
+    private KeySearch search() throws IOException {
+        File dir = _temps.make("search");
+        File config = new File(dir, "toy.conf");
+        Files.write(config.toPath(), CONFIG.getBytes());
+        Machine machine = Main.configure(config.getPath());
+        new KeySwitcher(machine).apply("R III I CA AD");
+        String text = machine.convert(
+            "ABBAFADEDCAFEBEADFACEDABBEDBADCAFEFEEDDEAFBEEFCABBAFE");
+        File message = new File(dir, "message.in");
+        Files.write(message.toPath(), ("* R III I CA AD\n" + text + "\n")
+                    .getBytes());
+        return new KeySearch(config.getPath(), message.getPath(), TOP);
+    }
+
+    /** Return the lines of FILE. */
+    private List<String> lines(File file) throws IOException {
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testUnit() throws IOException {
+        KeySearch search = search();
+        assertEquals(UNITS, search.units());
+        List<KeySearch.Result> results = search.unit(UNITS - 1);
+        assertEquals(TOP, results.size());
+        for (int k = 0; k < results.size(); k += 1) {
+            assertTrue(results.get(k).key.startsWith("R III II F"));
+            if (k > 0) {
+                assertTrue(results.get(k - 1).compareTo(results.get(k)) > 0);
+            }
+        }
+        assertEquals(results.toString(), search.unit(UNITS - 1).toString());
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        KeySearch search = search();
+        File journal = File.createTempFile("search", ".journal");
+        assertTrue(journal.delete());
+        journal.deleteOnExit();
+        List<KeySearch.Result> all = search.run(journal, 2);
+        assertEquals(TOP, all.size());
+        List<String> lines = lines(journal);
+        assertEquals(UNITS + 1, lines.size());
+
+        long keep = 0;
+        for (int k = 0; k < UNITS - 3; k += 1) {
+            keep += lines.get(k).getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+            file.setLength(keep);
+            file.seek(keep);
+            String torn = lines.get(UNITS - 3);
+            file.write(torn.substring(0, torn.length() / 2)
+                       .getBytes(StandardCharsets.UTF_8));
+        }
+        List<KeySearch.Result> resumed = search().run(journal, 1);
+        assertEquals(all.toString(), resumed.toString());
+        assertEquals(UNITS + 1, lines(journal).size());
+
+        resumed = search().run(journal, 1);
+        assertEquals(all.toString(), resumed.toString());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testOtherJournal() throws IOException {
+        File journal = File.createTempFile("search", ".journal");
+        journal.deleteOnExit();
+        Files.write(journal.toPath(), "enigma-search 1 0 36 5\n".getBytes());
+        search().run(journal, 1);
+    }
+
+}
@@ -0,0 +1,263 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static enigma.EnigmaException.*;
+
+/** Applies settings lines ("* B Beta III IV I AXLE (HQ) (EX)") to a
+ *  machine.  The line is split into tokens by recording their positions
+ *  in reused arrays rather than by building Scanners and substrings;
+ *  rotor names, rings and plugboards are looked up by the region of the
+ *  line they occupy, and the rings and plugboards seen before are kept
+ *  in caches, so that only a key not seen before costs any parsing.
+ *  The machine itself is only told about the parts of the key that
+ *  differ from the key it already has.
+ *  @author Amy Kwon
+ */
+class KeySwitcher {
+
+    /** A switcher that sets keys on MACHINE, whose available rotors are
+     *  ALLROTORS. */
+    KeySwitcher(Machine machine, Collection<Rotor> allRotors) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _rotors = new RegionTable<Rotor>(Integer.MAX_VALUE);
+        for (Rotor rotor : allRotors) {
+            _rotors.put(rotor.name(), rotor);
+        }
+        _rings = new RegionTable<int[]>(CACHE_LIMIT);
+        _plugboards = new RegionTable<Permutation>(CACHE_LIMIT);
+        _order = new Rotor[machine.numRotors()];
+        _starts = new int[INITIAL_TOKENS];
+        _ends = new int[INITIAL_TOKENS];
+    }
+
+    /** A switcher for MACHINE using all of its rotors. */
+    KeySwitcher(Machine machine) {
+        this(machine, machine.allRotors());
+    }
+
+    /** A switcher for MACHINE, made by INDEX, that builds each rotor of
+     *  INDEX when a settings line first names it, and adds it to
+     *  MACHINE. */
+    KeySwitcher(Machine machine, ConfigIndex index) {
+        this(machine, machine.allRotors());
+        _index = index;
+    }
+
+    /** If LINE is a settings line (its first token is "*"), return the
+     *  index just past that token; otherwise return -1. */
+    static int settingsStart(String line) {
+        int i = skipSpace(line, 0);
+        if (i < line.length() && line.charAt(i) == '*') {
+            int end = i + 1;
+            if (end == line.length()
+                || Character.isWhitespace(line.charAt(end))) {
+                return end;
+            }
+        }
+        return -1;
+    }
+
+    /** Set my machine according to characters FROM.. of LINE, which hold
+     *  the part of a settings line after its "*": the rotor names
+     *  (reflector first), the initial setting, an optional ring setting
+     *  and an optional plugboard.  A key without a ring or plugboard
+     *  leaves the machine's current ring or plugboard in place. */
+    void apply(String line, int from) {
+        int count = tokenize(line, from);
+        int numRotors = _machine.numRotors();
+        int k = 0;
+        while (k < count) {
+            Rotor rotor = _rotors.get(line, _starts[k], _ends[k]);
+            if (rotor == null && _index != null) {
+                rotor = _index.rotor(line, _starts[k], _ends[k]);
+                if (rotor != null) {
+                    _rotors.put(rotor.name(), rotor);
+                    _machine.addRotor(rotor);
+                }
+            }
+            if (rotor == null) {
+                break;
+            }
+            for (int j = 0; j < k && j < numRotors; j += 1) {
+                if (_order[j] == rotor) {
+                    throw error("Rotor may not repeat");
+                }
+            }
+            if (k < numRotors) {
+                _order[k] = rotor;
+            }
+            k += 1;
+        }
+        if (k != numRotors) {
+            throw error("Not a correct amount of setting rotors.");
+        }
+        checkOrder();
+        _machine.useRotors(_order);
+
+        if (k == count) {
+            throw error("No initial setting");
+        }
+        int setting = k;
+        k += 1;
+        if (k < count && !isCycles(line, k)) {
+            _machine.setRing(ring(line, k));
+            k += 1;
+        }
+        setRotors(line, setting);
+        if (k < count && isCycles(line, k)) {
+            _machine.setPlugboard(plugboard(line, k, count));
+        }
+        _machine.resetOffset();
+    }
+
+    /** Set my machine according to SETTINGS, the part of a settings line
+     *  after its "*". */
+    void apply(String settings) {
+        apply(settings, 0);
+    }
+
+    /** Return the number of rings and plugboards in my caches. */
+    int cached() {
+        return _rings.size() + _plugboards.size();
+    }
+
+    /** Check that the rotors chosen for the slots of my machine suit
+     *  those slots. */
+    private void checkOrder() {
+        int all = _machine.numRotors();
+        int rangeFix = all - _machine.numPawls();
+        for (int i = 0; i < all; i += 1) {
+            Rotor rotor = _order[i];
+            if (i == 0) {
+                if (!rotor.reflecting()) {
+                    throw error("First rotor is not a reflector!");
+                }
+            } else if (i < rangeFix) {
+                if (rotor.reflecting()) {
+                    throw error("Reflector cannot be in fixed rotor position!");
+                }
+                if (rotor.rotates()) {
+                    throw error("Moving rotor cannot not be in this position!");
+                }
+            } else if (!rotor.rotates()) {
+                throw error("This is not a moving rotor!");
+            }
+        }
+    }
+
+    /** Set the rotors of my machine from token K of LINE. */
+    private void setRotors(String line, int k) {
+        int start = _starts[k];
+        if (_ends[k] - start != _machine.numRotors() - 1) {
+            throw error("Not right amount of settings!");
+        }
+        for (int i = 1; i < _machine.numRotors(); i += 1) {
+            _machine.setRotor(i, _alphabet.toInt(line.charAt(start + i - 1)));
+        }
+    }
+
+    /** Return the ring settings spelled by token K of LINE. */
+    private int[] ring(String line, int k) {
+        int[] ring = _rings.get(line, _starts[k], _ends[k]);
+        if (ring == null) {
+            String key = line.substring(_starts[k], _ends[k]);
+            if (key.length() < _machine.numRotors() - 1) {
+                throw error("Not right amount of ring settings!");
+            }
+            ring = new int[key.length()];
+            for (int i = 0; i < ring.length; i += 1) {
+                ring[i] = _alphabet.toInt(key.charAt(i));
+            }
+            _rings.put(key, ring);
+        }
+        return ring;
+    }
+
+    /** Return the plugboard described by tokens K..COUNT-1 of LINE. */
+    private Permutation plugboard(String line, int k, int count) {
+        int start = _starts[k], end = _ends[count - 1];
+        Permutation plugboard = _plugboards.get(line, start, end);
+        if (plugboard == null) {
+            String key = line.substring(start, end);
+            plugboard = new Permutation(key, _alphabet);
+            _plugboards.put(key, plugboard);
+        }
+        return plugboard;
+    }
+
+    /** Return true iff token K of LINE looks like a cycle "(...)". */
+    private boolean isCycles(String line, int k) {
+        return _ends[k] - _starts[k] >= 2
+            && line.charAt(_starts[k]) == '('
+            && line.charAt(_ends[k] - 1) == ')';
+    }
+
+    /** Record the bounds of the whitespace-separated tokens of LINE from
+     *  position FROM on in _starts and _ends, returning their number. */
+    private int tokenize(String line, int from) {
+        int count = 0;
+        int i = skipSpace(line, from);
+        while (i < line.length()) {
+            if (count == _starts.length) {
+                _starts = Arrays.copyOf(_starts, 2 * count);
+                _ends = Arrays.copyOf(_ends, 2 * count);
+            }
+            _starts[count] = i;
+            while (i < line.length()
+                   && !Character.isWhitespace(line.charAt(i))) {
+                i += 1;
+            }
+            _ends[count] = i;
+            count += 1;
+            i = skipSpace(line, i);
+        }
+        return count;
+    }
+
+    /** Return the position of the first non-whitespace character of
+     *  LINE at or after FROM (or the length of LINE). */
+    private static int skipSpace(String line, int from) {
+        int i = from;
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+            i += 1;
+        }
+        return i;
+    }
+
+    /** Maximum number of rings, and of plugboards, kept in the caches. */
+    static final int CACHE_LIMIT = 4096;
+
+    /** Number of token positions allocated at first. */
+    private static final int INITIAL_TOKENS = 16;
+
+    /** The machine whose key I set. */
+    private final Machine _machine;
+
+    /** Alphabet of my machine. */
+    private final Alphabet _alphabet;
+
+    /** Available rotors, by name. */
+    private final RegionTable<Rotor> _rotors;
+
+    /** Ring settings already seen, by their text. */
+    private final RegionTable<int[]> _rings;
+
+    /** Plugboards already built, by their cycle text. */
+    private final RegionTable<Permutation> _plugboards;
+
+    /** Rotors named by the settings line being applied, by slot. */
+    private final Rotor[] _order;
+
+    /** Start of each token of the line being applied. */
+    private int[] _starts;
+
+    /** End (exclusive) of each token of the line being applied. */
+    private int[] _ends;
+
+    /** Builds rotors not yet available to _machine, or null. */
+    private ConfigIndex _index;
+
+}
@@ -0,0 +1,111 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySwitcher class.
+ *  @author Amy Kwon
+ */
+public class KeySwitcherTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a machine with three pawls and the naval rotors, with no
+     *  rotors inserted. */
+    private Machine machine() {
+        return navalMachine(5, 3);
+    }
+
+    /** Set the key of MACHINE to SETTINGS (a settings line without its
+     *  "*") as Main did before KeySwitcher: by rotor names, then setting,
+     *  optional ring and optional plugboard, each parsed anew. */
+    private void applyByNames(Machine machine, String settings) {
+        Scanner scan = new Scanner(settings);
+        String[] names = new String[machine.numRotors()];
+        for (int i = 0; i < names.length; i += 1) {
+            names[i] = scan.next();
+        }
+        machine.insertRotors(names);
+        String setting = scan.next();
+        if (scan.hasNext() && !scan.hasNext("\\(.*\\)")) {
+            machine.setUpRing(scan.next());
+        }
+        machine.setRotors(setting);
+        if (scan.hasNext("\\(.*\\)")) {
+            machine.setPlugboard(new Permutation(scan.nextLine().strip(),
+                                                 machine.alphabet()));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testSameAsByNames() {
+        String[] lines = {
+            "B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+            "B Beta III IV I AXLE",
+            "C Gamma I II III QRST BCDE (AB)",
+            "C Gamma I II IV QRST",
+            "B Beta II I III ZZZZ AAAA (CD) (EF)",
+            "B Gamma II I III   ZZZZ   BBBB  ",
+            "B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        };
+        Machine tested = machine();
+        Machine reference = machine();
+        KeySwitcher keys = new KeySwitcher(tested);
+        for (String key : lines) {
+            keys.apply(key);
+            applyByNames(reference, key);
+            String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+            assertEquals(key, reference.convert(msg), tested.convert(msg));
+            assertArrayEquals(key, reference.positions(),
+                              tested.positions());
+        }
+    }
+
+    @Test
+    public void testKeepsPlugboard() {
+        Machine m = machine();
+        KeySwitcher keys = new KeySwitcher(m);
+        keys.apply("B Beta III IV I AXLE (HQ) (EX)");
+        Permutation plugboard = m.plugboard();
+        keys.apply("B Beta I II III AAAA");
+        assertSame(plugboard, m.plugboard());
+        keys.apply("B Beta I II III AAAA (AB)");
+        assertEquals('B', m.plugboard().permute('A'));
+    }
+
+    @Test
+    public void testCacheLimit() {
+        Machine m = machine();
+        KeySwitcher keys = new KeySwitcher(m);
+        String letters = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        for (int k = 0; k < KeySwitcher.CACHE_LIMIT; k += 1) {
+            String ring = "A" + letters.charAt(k / 676)
+                + letters.charAt(k / 26 % 26) + letters.charAt(k % 26);
+            keys.apply("B Beta I II III AAAA " + ring);
+        }
+        assertEquals(KeySwitcher.CACHE_LIMIT, keys.cached());
+        keys.apply("B Beta I II III AAAA ZZZZ");
+        assertEquals(1, keys.cached());
+        Machine reference = machine();
+        applyByNames(reference, "B Beta I II III AAAA ZZZZ");
+        assertEquals(reference.convert("HELLOWORLD"), m.convert("HELLOWORLD"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testShortRing() {
+        new KeySwitcher(machine()).apply("B Beta I II III AAAA ZZ");
+    }
+
+}
@@ -1,6 +1,7 @@
 package enigma;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 
 import static enigma.EnigmaException.*;
@@ -15,14 +16,50 @@ class Machine {
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
-        boolean length = pawls >= numRotors;
-        if (allRotors.isEmpty() || length) {
+        this(alpha, numRotors, pawls);
+        if (allRotors.isEmpty()) {
+            throw error("All rotors is not the right size!");
+        }
+        _allRotors.addAll(allRotors);
+    }
+
+    /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     *  and 0 <= PAWLS < NUMROTORS pawls, whose available rotors are added
+     *  later (see addRotor). */
+    Machine(Alphabet alpha, int numRotors, int pawls) {
+        if (pawls >= numRotors) {
             throw error("All rotors is not the right size!");
         }
         _alphabet = alpha;
         _numRotors = numRotors;
         _numPawls = pawls;
-        _allRotors = new ArrayList<Rotor>(allRotors);
+        _allRotors = new ArrayList<Rotor>();
+    }
+
+    /** Return a new machine with the same alphabet, slots, rotors and
+     *  key as mine.  Its rotors are copies of mine, so the two machines
+     *  may be stepped independently, but the permutations, ring settings
+     *  and plugboard, which are never changed in place, are shared.  It
+     *  converts with a fork of my engine. */
+    Machine copy() {
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        for (Rotor rotor : _allRotors) {
+            rotors.add(rotor.copy());
+        }
+        Machine result = new Machine(_alphabet, _numRotors, _numPawls, rotors);
+        if (_activeRotors != null) {
+            Rotor[] active = new Rotor[_activeRotors.size()];
+            for (int i = 0; i < active.length; i += 1) {
+                int k = _allRotors.indexOf(_activeRotors.get(i));
+                active[i] = rotors.get(k);
+            }
+            result.useRotors(active);
+        }
+        result._ring = _ring;
+        result._plugBoard = _plugBoard;
+        result._offset = _offset;
+        result._engine = _engine.fork();
+        return result;
     }
 
     /** Return the number of rotor slots I have. */
@@ -40,6 +77,11 @@ class Machine {
         return _allRotors;
     }
 
+    /** Make ROTOR available to my slots. */
+    void addRotor(Rotor rotor) {
+        _allRotors.add(rotor);
+    }
+
     /** Reset the notches of all moving rotors.
      * @param ring The ring string. */
     void setNotches(String ring) {
@@ -55,6 +97,7 @@ class Machine {
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
+        _stepper = null;
         _activeRotors = new ArrayList<Rotor>();
         for (String el : rotors) {
             for (Rotor ro : _allRotors) {
@@ -66,6 +109,37 @@ class Machine {
         }
     }
 
+    /** Set my rotor slots to ROTORS, where ROTORS[0] is the reflector.
+     *  Slots that already hold the same rotor are left untouched, so
+     *  switching between keys that share a rotor order costs nothing. */
+    void useRotors(Rotor[] rotors) {
+        if (_activeRotors == null) {
+            _activeRotors = new ArrayList<Rotor>();
+        }
+        for (int i = 0; i < rotors.length; i += 1) {
+            if (i == _activeRotors.size()) {
+                _activeRotors.add(rotors[i]);
+                _stepper = null;
+            } else if (_activeRotors.get(i) != rotors[i]) {
+                _activeRotors.set(i, rotors[i]);
+                _stepper = null;
+            }
+        }
+        while (_activeRotors.size() > rotors.length) {
+            _activeRotors.remove(_activeRotors.size() - 1);
+            _stepper = null;
+        }
+    }
+
+    /** Set the rotor in slot K (1 <= K < numRotors()) to POSN, unless it
+     *  is already there. */
+    void setRotor(int k, int posn) {
+        Rotor rotor = _activeRotors.get(k);
+        if (rotor.setting() != posn) {
+            rotor.set(posn);
+        }
+    }
+
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
@@ -83,10 +157,184 @@ class Machine {
         _plugBoard = plugboard;
     }
 
+    /** Return my plugboard, or null if I have none. */
+    Permutation plugboard() {
+        return _plugBoard;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return my ring settings (element K for slot K + 1), or null if
+     *  none have been set.  The result must not be modified. */
+    int[] ring() {
+        return _ring;
+    }
+
+    /** Return the engine used by convert(int[], int, int). */
+    Engine engine() {
+        return _engine;
+    }
+
+    /** Use ENGINE for convert(int[], int, int). */
+    void setEngine(Engine engine) {
+        _engine = engine;
+    }
+
+    /** Return the rotors in my slots, reflector first. */
+    Rotor[] activeRotors() {
+        return _activeRotors.toArray(new Rotor[0]);
+    }
+
+    /** Return the settings of the rotors in my slots. */
+    int[] positions() {
+        int[] result = new int[_activeRotors.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = _activeRotors.get(i).setting();
+        }
+        return result;
+    }
+
+    /** Set the rotors in my slots after the reflector to POSITIONS[1..],
+     *  as returned by positions(). */
+    void setPositions(int[] positions) {
+        for (int i = 1; i < _activeRotors.size(); i += 1) {
+            setRotor(i, positions[i]);
+        }
+    }
+
+    /** Record each character I convert from now on in TRACE, which
+     *  must be for my number of slots, or stop recording if TRACE is
+     *  null.  Copies of me are not traced. */
+    void setTrace(StepTrace trace) {
+        _trace = trace;
+    }
+
+    /** Return the trace I record in, or null. */
+    StepTrace trace() {
+        return _trace;
+    }
+
+    /** Return the stepping of my current rotors. */
+    Stepper stepper() {
+        if (_stepper == null) {
+            _stepper = new Stepper(activeRotors(), _numPawls);
+        }
+        return _stepper;
+    }
+
+    /** Record that an engine has moved my rotors on by K steps, to
+     *  POSITIONS, while converting K characters. */
+    void moved(int[] positions, long k) {
+        setPositions(positions);
+        _offset += k;
+    }
+
+    /** Move my rotors on by K >= 0 steps, as if K characters had been
+     *  converted, without converting anything.  Takes time proportional
+     *  to the number of steps that move more than my rightmost rotor in
+     *  about one period of my states at most, not to K. */
+    void advance(long k) {
+        int[] positions = positions();
+        stepper().advance(positions, k);
+        setPositions(positions);
+        _offset += k;
+    }
+
+    /** Return the number of characters I have converted since
+     *  resetOffset was last called. */
+    long offset() {
+        return _offset;
+    }
+
+    /** Start counting converted characters from 0, as when a new key has
+     *  been set. */
+    void resetOffset() {
+        _offset = 0;
+    }
+
+    /** Return a snapshot of my rotors, key and offset. */
+    Checkpoint snapshot() {
+        int n = _activeRotors.size();
+        String[] names = new String[n];
+        int[] settings = new int[n];
+        int[][] notches = new int[n][];
+        for (int i = 0; i < n; i += 1) {
+            Rotor rotor = _activeRotors.get(i);
+            names[i] = rotor.name();
+            settings[i] = rotor.setting();
+            notches[i] = rotor.notches();
+        }
+        return new Checkpoint(names, settings, notches, _ring,
+                              _plugBoard == null ? null
+                              : _plugBoard.cycleString(), _offset);
+    }
+
+    /** Put my rotors, key and offset back to the state recorded in
+     *  CHECKPOINT, which must have been taken from a machine with the
+     *  same configuration. */
+    void restore(Checkpoint checkpoint) {
+        String[] names = checkpoint.rotors();
+        if (names.length != _numRotors) {
+            throw error("checkpoint does not match configuration");
+        }
+        Rotor[] rotors = new Rotor[names.length];
+        for (int i = 0; i < names.length; i += 1) {
+            for (Rotor rotor : _allRotors) {
+                if (rotor.name().equals(names[i])) {
+                    rotors[i] = rotor;
+                }
+            }
+            if (rotors[i] == null
+                || !Arrays.equals(rotors[i].notches(),
+                                  checkpoint.notches()[i])) {
+                throw error("checkpoint does not match configuration");
+            }
+        }
+        useRotors(rotors);
+        for (int i = 1; i < names.length; i += 1) {
+            setRotor(i, checkpoint.settings()[i]);
+        }
+        _ring = checkpoint.ring();
+        _plugBoard = checkpoint.plugboard() == null ? null
+            : new Permutation(checkpoint.plugboard(), _alphabet);
+        _offset = checkpoint.offset();
+    }
+
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
+        if (_trace != null) {
+            return traceConvert(c);
+        }
+        _offset += 1;
+        stepRotors();
+        return convertAll(c);
+    }
+
+    /** Convert C as convert does, recording the event in _trace. */
+    private int traceConvert(int c) {
+        readPositions(_trace.before());
+        _offset += 1;
+        stepRotors();
+        int result = convertAll(c);
+        readPositions(_trace.after());
+        _trace.record(_offset, c, result, stepper());
+        return result;
+    }
+
+    /** Store the settings of the rotors in my slots in POSITIONS. */
+    private void readPositions(int[] positions) {
+        for (int i = 0; i < positions.length; i += 1) {
+            positions[i] = _activeRotors.get(i).setting();
+        }
+    }
+
+    /** Advance my rotors as for converting one character. */
+    private void stepRotors() {
         Rotor lastRotor = _activeRotors.get(_numRotors - 1);
         int range = _numRotors - _numPawls;
         for (int i = _activeRotors.size() - 1; i >= 0; i -= 1) {
@@ -114,16 +362,22 @@ class Machine {
                 each.advance();
             }
         }
-        return convertAll(c);
     }
 
     /** Return the modifited string with ring.
      * @param ring The ring string. */
     void setUpRing(String ring) {
-        _ring = new ArrayList<Character>();
+        int[] ringInt = new int[ring.length()];
         for (int i = 0; i < ring.length(); i += 1) {
-            _ring.add(ring.charAt(i));
+            ringInt[i] = _alphabet.toInt(ring.charAt(i));
         }
+        setRing(ringInt);
+    }
+
+    /** Use RING as my ring settings, RING[K] being the ring setting of
+     *  the rotor in slot K + 1.  RING is shared, not copied. */
+    void setRing(int[] ring) {
+        _ring = ring;
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -145,9 +399,7 @@ class Machine {
         for (int i = _activeRotors.size() - 1; i >= 0; i -= 1) {
             Rotor each = _activeRotors.get(i);
             if (_ring != null && i != 0) {
-                char eachChar = _ring.get(i - 1);
-                int eachRing = _alphabet.toInt(eachChar);
-                update = each.convertForward(update, eachRing);
+                update = each.convertForward(update, _ring[i - 1]);
             } else {
                 update = each.convertForward(update);
             }
@@ -155,9 +407,7 @@ class Machine {
         for (int i = 1; i < _activeRotors.size(); i += 1) {
             Rotor each = _activeRotors.get(i);
             if (_ring != null) {
-                char eachChar = _ring.get(i - 1);
-                int eachRing = _alphabet.toInt(eachChar);
-                update = each.convertBackward(update, eachRing);
+                update = each.convertBackward(update, _ring[i - 1]);
             } else {
                 update = each.convertBackward(update);
             }
@@ -168,20 +418,88 @@ class Machine {
         return update;
     }
 
+    /** Convert the LEN character indices BUF[FROM .. FROM+LEN-1] in place,
+     *  as LEN calls of convert(int) would, using my engine (or, while
+     *  tracing, those calls). */
+    void convert(int[] buf, int from, int len) {
+        if (_trace != null) {
+            for (int i = from; i < from + len; i += 1) {
+                buf[i] = convert(buf[i]);
+            }
+            return;
+        }
+        _engine.convert(this, buf, from, len);
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        ArrayList<Character> modified = new ArrayList<Character>();
+        if (_buffer.length < msg.length()) {
+            _buffer = new int[Math.max(msg.length(), 2 * _buffer.length)];
+        }
+        int len = 0;
         for (int i = 0; i < msg.length(); i += 1) {
             char curr = msg.charAt(i);
             if (!(curr == ' ')) {
-                int num = _alphabet.toInt(curr);
-                int update = convert(num);
-                char next = _alphabet.toChar(update);
-                modified.add(next);
+                _buffer[len] = _alphabet.toInt(curr);
+                len += 1;
+            }
+        }
+        convert(_buffer, 0, len);
+        StringBuilder convert = new StringBuilder(len + len / 5);
+        for (int i = 0; i < len; i += 1) {
+            if (i > 0 && i % 5 == 0) {
+                convert.append(' ');
+            }
+            convert.append(_alphabet.toChar(_buffer[i]));
+        }
+        return convert.toString();
+    }
+
+    /** Returns the conversion of MSG with its layout kept: the characters
+     *  of my alphabet are converted, in one run, and the others are
+     *  copied or left out according to their classes in the alphabet,
+     *  without stepping the rotors.  Unlike convert(String), never
+     *  rejects a character. */
+    String convertPassthrough(String msg) {
+        if (_buffer.length < msg.length()) {
+            _buffer = new int[Math.max(msg.length(), 2 * _buffer.length)];
+        }
+        int len = 0;
+        for (int i = 0; i < msg.length(); i += 1) {
+            int index = _alphabet.classOf(msg.charAt(i));
+            if (index >= 0) {
+                _buffer[len] = index;
+                len += 1;
             }
         }
-        return convertToString(modified);
+        convert(_buffer, 0, len);
+        if (len == msg.length()) {
+            return toChars(_buffer, len);
+        }
+        StringBuilder result = new StringBuilder(msg.length());
+        int next = 0;
+        for (int i = 0; i < msg.length(); i += 1) {
+            char ch = msg.charAt(i);
+            int index = _alphabet.classOf(ch);
+            if (index >= 0) {
+                result.append(_alphabet.toChar(_buffer[next]));
+                next += 1;
+            } else if (index == Alphabet.PASS) {
+                result.append(ch);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the characters of my alphabet with the indices
+     *  BUF[0 .. LEN-1]. */
+    private String toChars(int[] buf, int len) {
+        char[] result = new char[len];
+        for (int i = 0; i < len; i += 1) {
+            result[i] = _alphabet.toChar(buf[i]);
+        }
+        return new String(result);
     }
 
     /** Converts an ArrayList to a string with each block
@@ -203,6 +521,9 @@ class Machine {
         return convert.toString();
     }
 
+    /** Initial size of the message buffer. */
+    private static final int INITIAL_BUFFER = 128;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
@@ -221,6 +542,21 @@ class Machine {
     /** Plugboard permutation. */
     private Permutation _plugBoard;
 
-    /** String of the ring for each rotor. */
-    private ArrayList<Character> _ring;
+    /** Ring setting of each rotor after the reflector, as indices. */
+    private int[] _ring;
+
+    /** Number of characters converted since the key was set. */
+    private long _offset;
+
+    /** Stepping of my active rotors, or null if not yet worked out. */
+    private Stepper _stepper;
+
+    /** Engine used to convert runs of characters. */
+    private Engine _engine = new InterpretedEngine();
+
+    /** Trace of the characters I convert, or null. */
+    private StepTrace _trace;
+
+    /** Character indices of the message being converted. */
+    private int[] _buffer = new int[INITIAL_BUFFER];
 }
@@ -0,0 +1,611 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** A benchmark of the whole program on synthetic work.  It generates a
+ *  configuration with an alphabet of any size and a library of any
+ *  number of rotors, and an input of any length with a new key (random
+ *  rotors, setting, ring and plugboard) every so many characters, then
+ *  runs Main on them in fresh JVMs, as a user would, measuring for each
+ *  run
+ *      the throughput: message characters per second of wall time,
+ *          including the start of the JVM;
+ *      the latency of the output: percentiles of the time between the
+ *          output lines that the run writes, as a reader of its
+ *          standard output sees them;
+ *      the allocation rate: bytes allocated by its threads per second; and
+ *      its peak resident set size, on hosts that report it.
+ *  The results are printed, and appended to DIR/results.csv.
+ *
+ *  As a command, the arguments
+ *      --bench DIR [NAME=VALUE ...]
+ *  run the benchmark in DIR, generating its files there unless they
+ *  were already generated with the same parameters.  The parameters,
+ *  with their defaults, are
+ *      alphabet=26    the alphabet size (even, for the reflectors);
+ *      slots=5        the number of rotor slots;
+ *      pawls=3        the number of pawls;
+ *      rotors=8       the number of moving rotors in the library;
+ *      chars=10000000 the number of message characters in the input;
+ *      churn=0        the number of characters between keys, or 0 for
+ *                     a single key;
+ *      line=100       the number of characters in an input line;
+ *      seed=1         the seed of the generator;
+ *      runs=3         the number of runs measured;
+ *      options=       options for Main, separated by commas (as
+ *                     "--engine,runlength").
+ *  A run of the benchmark child
+ *      --bench-child ARGS ...
+ *  runs Main with ARGS and then reports what it measures of itself on
+ *  the standard error.
+ *  @author Amy Kwon
+ */
+class MacroBench {
+
+    /** Command-line option that selects the benchmark. */
+    static final String OPTION = "--bench";
+
+    /** Command-line option that selects a measured run of Main. */
+    static final String CHILD_OPTION = "--bench-child";
+
+    /** Percentiles of output latency reported. */
+    static final double[] PERCENTILES = {50, 90, 99, 100};
+
+    /** A benchmark in DIR with the parameters PARAMS (see the class
+     *  comment). */
+    MacroBench(File dir, Properties params) {
+        _dir = dir;
+        _params = new Properties();
+        _params.putAll(DEFAULTS);
+        for (String name : params.stringPropertyNames()) {
+            if (!DEFAULTS.containsKey(name)) {
+                throw error("unknown benchmark parameter: %s", name);
+            }
+            _params.setProperty(name, params.getProperty(name));
+        }
+        _alphabet = number("alphabet");
+        _slots = number("slots");
+        _pawls = number("pawls");
+        _rotors = number("rotors");
+        _chars = Long.parseLong(_params.getProperty("chars"));
+        _churn = Long.parseLong(_params.getProperty("churn"));
+        _line = number("line");
+        _runs = number("runs");
+        if (_alphabet < 2 || _alphabet % 2 != 0) {
+            throw error("the alphabet size must be even and at least 2");
+        }
+        if (_pawls < 1 || _pawls >= _slots || _rotors < _pawls
+            || _line < 1 || _runs < 1 || _chars < 0 || _churn < 0) {
+            throw error("bad benchmark parameters");
+        }
+    }
+
+    /** Perform the benchmark given by ARGS (see the class comment). */
+    static void bench(String[] args) {
+        if (args.length < 2) {
+            throw error("Usage: --bench DIR [NAME=VALUE ...]");
+        }
+        Properties params = new Properties();
+        for (int k = 2; k < args.length; k += 1) {
+            int eq = args[k].indexOf('=');
+            if (eq < 0) {
+                throw error("benchmark parameters are NAME=VALUE: %s",
+                            args[k]);
+            }
+            params.setProperty(args[k].substring(0, eq),
+                               args[k].substring(eq + 1));
+        }
+        new MacroBench(new File(args[1]), params).run();
+    }
+
+    /** Run Main with ARGS[1..], then report on the standard error the
+     *  bytes allocated by the threads still running and the peak
+     *  resident set size, in the form parsed by run. */
+    static void child(String[] args) {
+        Main.main(Arrays.copyOfRange(args, 1, args.length));
+        System.out.flush();
+        long allocated = 0;
+        java.lang.management.ThreadMXBean threads =
+            ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sun =
+                (com.sun.management.ThreadMXBean) threads;
+            for (long bytes
+                     : sun.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+                allocated += Math.max(0, bytes);
+            }
+        }
+        System.err.printf("%s %d %d%n", CHILD_REPORT, allocated, peakRss());
+    }
+
+    /** Generate my files if need be, then measure my runs. */
+    void run() {
+        generate();
+        System.out.printf("%4s %12s %14s %10s %10s %10s %10s %12s %10s%n",
+                          "run", "seconds", "chars/s", "p50 ms", "p90 ms",
+                          "p99 ms", "max ms", "alloc MB/s", "rss MB");
+        try (PrintWriter csv = new PrintWriter(new FileWriter(
+                 new File(_dir, RESULTS), true))) {
+            if (new File(_dir, RESULTS).length() == 0) {
+                csv.println("time,spec,run,seconds,chars_per_s,p50_ms,"
+                            + "p90_ms,p99_ms,max_ms,alloc_bytes_per_s,"
+                            + "rss_bytes");
+            }
+            for (int r = 1; r <= _runs; r += 1) {
+                double[] result = measure();
+                System.out.printf("%4d %12.3f %14.0f %10.3f %10.3f %10.3f "
+                                  + "%10.3f %12.1f %10.1f%n", r, result[0],
+                                  _chars / result[0], result[1], result[2],
+                                  result[3], result[4],
+                                  result[5] / result[0] / MB,
+                                  result[6] / MB);
+                csv.printf("%d,%s,%d,%.6f,%.0f,%.6f,%.6f,%.6f,%.6f,%.0f,"
+                           + "%.0f%n", System.currentTimeMillis(), spec(),
+                           r, result[0], _chars / result[0], result[1],
+                           result[2], result[3], result[4],
+                           result[5] / result[0], result[6]);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", new File(_dir, RESULTS));
+        }
+    }
+
+    /** Run Main once on my files in a new JVM and return its wall time
+     *  in seconds, the PERCENTILES of its output latency in
+     *  milliseconds, the bytes it allocated, and its peak resident set
+     *  size in bytes (or -1). */
+    private double[] measure() {
+        List<String> command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"),
+                                      "bin"), "java").getPath());
+        command.add("-Dfile.encoding=" + Charset.defaultCharset().name());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Main.class.getName());
+        command.add(CHILD_OPTION);
+        String options = _params.getProperty("options");
+        if (!options.isEmpty()) {
+            command.addAll(Arrays.asList(options.split(",")));
+        }
+        command.add(new File(_dir, CONFIG).getPath());
+        command.add(new File(_dir, INPUT).getPath());
+        long start = System.nanoTime();
+        Process process;
+        try {
+            process = new ProcessBuilder(command).start();
+        } catch (IOException excp) {
+            throw error("could not start a benchmark run");
+        }
+        String[] report = new String[1];
+        StringBuilder errors = new StringBuilder();
+        Thread stderr = new Thread(() -> readReport(process.getErrorStream(),
+                                                    report, errors));
+        stderr.start();
+        LatencyHistogram latency = new LatencyHistogram();
+        byte[] chunk = new byte[BUFFER];
+        long last = start;
+        try (InputStream out = process.getInputStream()) {
+            for (int n = out.read(chunk); n >= 0; n = out.read(chunk)) {
+                long now = System.nanoTime();
+                for (int i = 0; i < n; i += 1) {
+                    if (chunk[i] == '\n') {
+                        latency.add(now - last);
+                        last = now;
+                    }
+                }
+            }
+            int status = process.waitFor();
+            stderr.join();
+            if (status != 0 || report[0] == null) {
+                throw error("benchmark run failed: %s",
+                            errors.toString().trim());
+            }
+        } catch (IOException | InterruptedException excp) {
+            throw error("benchmark run failed: %s", excp);
+        }
+        double seconds = (System.nanoTime() - start) / NANOS;
+        String[] fields = report[0].split(" ");
+        double[] result = new double[3 + PERCENTILES.length];
+        result[0] = seconds;
+        for (int p = 0; p < PERCENTILES.length; p += 1) {
+            result[1 + p] = latency.percentile(PERCENTILES[p]) / MILLIS;
+        }
+        result[1 + PERCENTILES.length] = Double.parseDouble(fields[1]);
+        result[2 + PERCENTILES.length] = Double.parseDouble(fields[2]);
+        return result;
+    }
+
+    /** Read IN, the standard error of a run, storing its report line in
+     *  REPORT[0] and anything else in ERRORS. */
+    private static void readReport(InputStream in, String[] report,
+                                   StringBuilder errors) {
+        try (BufferedReader lines = new BufferedReader(
+                 new InputStreamReader(in))) {
+            for (String line = lines.readLine(); line != null;
+                 line = lines.readLine()) {
+                if (line.startsWith(CHILD_REPORT + " ")) {
+                    report[0] = line;
+                } else {
+                    errors.append(line).append('\n');
+                }
+            }
+        } catch (IOException excp) {
+            errors.append(excp.getMessage());
+        }
+    }
+
+    /** Write my configuration and input files, unless they are there
+     *  already for my parameters. */
+    void generate() {
+        if (!_dir.isDirectory() && !_dir.mkdirs()) {
+            throw error("could not create %s", _dir);
+        }
+        File specFile = new File(_dir, SPEC);
+        if (specFile.exists() && new File(_dir, INPUT).exists()) {
+            try {
+                if (Files.readAllLines(specFile.toPath())
+                    .contains(spec())) {
+                    return;
+                }
+            } catch (IOException excp) {
+                throw error("could not read %s", specFile);
+            }
+        }
+        specFile.delete();
+        Random random = new Random(Long.parseLong(
+            _params.getProperty("seed")));
+        char[] chars = alphabet(_alphabet);
+        writeConfig(random, chars);
+        writeInput(random, chars);
+        try {
+            Files.write(specFile.toPath(), List.of(spec()));
+        } catch (IOException excp) {
+            throw error("could not write %s", specFile);
+        }
+    }
+
+    /** Write my configuration, with alphabet CHARS, using RANDOM. */
+    private void writeConfig(Random random, char[] chars) {
+        int fixed = _slots - _pawls - 1;
+        try (Writer out = writer(new File(_dir, CONFIG))) {
+            out.write(new String(chars) + "\n");
+            out.write(_slots + " " + _pawls + "\n");
+            for (int r = 0; r < REFLECTORS; r += 1) {
+                int[] perm = shuffle(random, chars.length);
+                StringBuilder cycles = new StringBuilder();
+                for (int i = 0; i < perm.length; i += 2) {
+                    cycles.append('(').append(chars[perm[i]])
+                        .append(chars[perm[i + 1]]).append(") ");
+                }
+                out.write("R" + r + " R " + cycles.toString().trim() + "\n");
+            }
+            for (int r = 0; r < FIXED_SPARES * fixed; r += 1) {
+                out.write("F" + r + " N " + cycles(random, chars) + "\n");
+            }
+            for (int r = 0; r < _rotors; r += 1) {
+                out.write("M" + r + " M" + chars[random.nextInt(chars.length)]
+                          + " " + cycles(random, chars) + "\n");
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", new File(_dir, CONFIG));
+        }
+    }
+
+    /** Write my input, with alphabet CHARS, using RANDOM. */
+    private void writeInput(Random random, char[] chars) {
+        int fixed = _slots - _pawls - 1;
+        char[] line = new char[_line];
+        try (Writer out = writer(new File(_dir, INPUT))) {
+            long sinceKey = 0;
+            out.write(key(random, chars, fixed));
+            for (long written = 0; written < _chars; ) {
+                if (_churn > 0 && sinceKey >= _churn) {
+                    out.write(key(random, chars, fixed));
+                    sinceKey = 0;
+                }
+                long room = _churn > 0 ? _churn - sinceKey : Long.MAX_VALUE;
+                int len = (int) Math.min(Math.min(_line, room),
+                                         _chars - written);
+                for (int i = 0; i < len; i += 1) {
+                    line[i] = chars[random.nextInt(chars.length)];
+                }
+                out.write(line, 0, len);
+                out.write('\n');
+                written += len;
+                sinceKey += len;
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", new File(_dir, INPUT));
+        }
+    }
+
+    /** Return a random settings line for a configuration with FIXED
+     *  fixed slots, with alphabet CHARS, using RANDOM. */
+    private String key(Random random, char[] chars, int fixed) {
+        StringBuilder result = new StringBuilder("* R");
+        result.append(random.nextInt(REFLECTORS));
+        int[] fixedOrder = shuffle(random, FIXED_SPARES * fixed);
+        for (int k = 0; k < fixed; k += 1) {
+            result.append(" F").append(fixedOrder[k]);
+        }
+        int[] moving = shuffle(random, _rotors);
+        for (int k = 0; k < _pawls; k += 1) {
+            result.append(" M").append(moving[k]);
+        }
+        result.append(' ');
+        for (int k = 1; k < _slots; k += 1) {
+            result.append(chars[random.nextInt(chars.length)]);
+        }
+        result.append(' ');
+        for (int k = 1; k < _slots; k += 1) {
+            result.append(chars[random.nextInt(chars.length)]);
+        }
+        int[] plugs = shuffle(random, chars.length);
+        for (int k = 0; k + 1 < Math.min(2 * PLUGS, plugs.length); k += 2) {
+            result.append(" (").append(chars[plugs[k]])
+                .append(chars[plugs[k + 1]]).append(')');
+        }
+        return result.append('\n').toString();
+    }
+
+    /** Return a random permutation of CHARS, as cycles, using RANDOM. */
+    static String cycles(Random random, char[] chars) {
+        int[] perm = shuffle(random, chars.length);
+        StringBuilder result = new StringBuilder();
+        int start = 0;
+        while (start < perm.length) {
+            int len = 1 + random.nextInt(perm.length - start);
+            result.append('(');
+            for (int i = start; i < start + len; i += 1) {
+                result.append(chars[perm[i]]);
+            }
+            result.append(") ");
+            start += len;
+        }
+        return result.toString().trim();
+    }
+
+    /** Return the numbers 0 .. N-1 in a random order, using RANDOM. */
+    static int[] shuffle(Random random, int n) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            int j = random.nextInt(i + 1);
+            result[i] = result[j];
+            result[j] = i;
+        }
+        return result;
+    }
+
+    /** Return an alphabet of SIZE characters, none of which is blank or
+     *  has a meaning in configurations or inputs, and all of which Main
+     *  can read in the default encoding. */
+    static char[] alphabet(int size) {
+        CharsetEncoder encoder = Charset.defaultCharset().newEncoder();
+        char[] result = new char[size];
+        int k = 0;
+        for (char c = FIRST_CHAR; k < size; c += 1) {
+            if (c == Character.MAX_VALUE) {
+                throw error("alphabet too large to generate in %s",
+                            Charset.defaultCharset());
+            }
+            if (Character.isWhitespace(c) || Character.isSurrogate(c)
+                || Character.isSpaceChar(c) || Character.isISOControl(c)
+                || !Character.isDefined(c) || RESERVED.indexOf(c) >= 0
+                || !encoder.canEncode(c)) {
+                continue;
+            }
+            result[k] = c;
+            k += 1;
+        }
+        return result;
+    }
+
+    /** Return my parameters and the encoding of my files, as one
+     *  line. */
+    private String spec() {
+        StringBuilder result = new StringBuilder();
+        result.append("encoding=").append(Charset.defaultCharset().name())
+            .append(' ');
+        for (String name : new java.util.TreeSet<String>(
+                 _params.stringPropertyNames())) {
+            if (!name.equals("runs") && !name.equals("options")) {
+                result.append(name).append('=')
+                    .append(_params.getProperty(name)).append(' ');
+            }
+        }
+        return result.toString().trim();
+    }
+
+    /** Return the value of my parameter NAME, which must be an int. */
+    private int number(String name) {
+        try {
+            return Integer.parseInt(_params.getProperty(name));
+        } catch (NumberFormatException excp) {
+            throw error("bad value for %s: %s", name,
+                        _params.getProperty(name));
+        }
+    }
+
+    /** Return a buffered writer of FILE in the default encoding, which
+     *  Main reads. */
+    private static Writer writer(File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        return new BufferedWriter(new OutputStreamWriter(out), BUFFER);
+    }
+
+    /** Return the peak resident set size of this process in bytes, or
+     *  -1 if the host does not report it. */
+    private static long peakRss() {
+        File status = new File("/proc/self/status");
+        if (!status.exists()) {
+            return -1;
+        }
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                 new FileInputStream(status)))) {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                if (line.startsWith("VmHWM:")) {
+                    String[] fields = line.trim().split("\\s+");
+                    return Long.parseLong(fields[1]) * KB;
+                }
+            }
+        } catch (IOException | RuntimeException excp) {
+            return -1;
+        }
+        return -1;
+    }
+
+    /** A histogram of latencies in nanoseconds, with buckets that grow
+     *  geometrically, so that percentiles are exact to within
+     *  1/SUB_BUCKETS of their value however many latencies are added. */
+    static class LatencyHistogram {
+
+        /** Add the latency NANOS. */
+        void add(long nanos) {
+            _counts[bucket(Math.max(1, nanos))] += 1;
+            _total += 1;
+        }
+
+        /** Return the smallest latency (the upper bound of its bucket)
+         *  that at least P percent of the latencies do not exceed, or 0
+         *  if there are none. */
+        double percentile(double p) {
+            long rank = (long) Math.ceil(p / 100 * _total);
+            long seen = 0;
+            for (int b = 0; b < _counts.length; b += 1) {
+                seen += _counts[b];
+                if (seen >= rank && seen > 0) {
+                    return upper(b);
+                }
+            }
+            return 0;
+        }
+
+        /** Return the bucket of NANOS > 0. */
+        private static int bucket(long nanos) {
+            int power = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+            if (power < SUB_BITS) {
+                return (int) nanos;
+            }
+            int sub = (int) (nanos >>> (power - SUB_BITS)) - SUB_BUCKETS;
+            return (power - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        /** Return the largest latency in bucket B. */
+        private static double upper(int b) {
+            if (b < SUB_BUCKETS) {
+                return b;
+            }
+            int power = b / SUB_BUCKETS + SUB_BITS - 1;
+            long base = (long) (b % SUB_BUCKETS + SUB_BUCKETS)
+                << (power - SUB_BITS);
+            return base + (1L << (power - SUB_BITS)) - 1;
+        }
+
+        /** Log base 2 of the number of buckets per power of 2. */
+        private static final int SUB_BITS = 4;
+
+        /** Number of buckets per power of 2. */
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+        /** Count of latencies in each bucket. */
+        private final long[] _counts =
+            new long[(Long.SIZE - SUB_BITS + 1) * SUB_BUCKETS];
+
+        /** Number of latencies. */
+        private long _total;
+    }
+
+    /** Default parameters. */
+    private static final Properties DEFAULTS = new Properties();
+
+    static {
+        String[] defaults = {"alphabet", "26", "slots", "5", "pawls", "3",
+                             "rotors", "8", "chars", "10000000", "churn",
+                             "0", "line", "100", "seed", "1", "runs", "3",
+                             "options", ""};
+        for (int k = 0; k < defaults.length; k += 2) {
+            DEFAULTS.setProperty(defaults[k], defaults[k + 1]);
+        }
+    }
+
+    /** Characters never used in a generated alphabet. */
+    private static final String RESERVED = "()*";
+
+    /** First character tried for a generated alphabet. */
+    private static final char FIRST_CHAR = 'A';
+
+    /** Number of reflectors generated. */
+    private static final int REFLECTORS = 2;
+
+    /** Number of fixed rotors generated for each fixed slot. */
+    private static final int FIXED_SPARES = 2;
+
+    /** Number of plugboard pairs in a generated key. */
+    private static final int PLUGS = 5;
+
+    /** First word of the report of a run. */
+    private static final String CHILD_REPORT = "bench-child:";
+
+    /** Names of the configuration and input files in a benchmark
+     *  directory. */
+    static final String CONFIG = "bench.conf", INPUT = "bench.in";
+
+    /** Names of the other files in a benchmark directory. */
+    private static final String SPEC = "bench.spec",
+        RESULTS = "results.csv";
+
+    /** Size of I/O buffers. */
+    private static final int BUFFER = 1 << 16;
+
+    /** Bytes per kilobyte. */
+    private static final long KB = 1024;
+
+    /** Bytes per megabyte. */
+    private static final double MB = KB * KB;
+
+    /** Nanoseconds per second and per millisecond. */
+    private static final double NANOS = 1e9, MILLIS = 1e6;
+
+    /** Directory of the benchmark's files. */
+    private final File _dir;
+
+    /** Parameters of the benchmark. */
+    private final Properties _params;
+
+    /** Alphabet size, slots, pawls and moving rotors in the library. */
+    private final int _alphabet, _slots, _pawls, _rotors;
+
+    /** Message characters, and characters between keys. */
+    private final long _chars, _churn;
+
+    /** Characters per input line. */
+    private final int _line;
+
+    /** Number of runs. */
+    private final int _runs;
+
+}
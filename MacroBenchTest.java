@@ -0,0 +1,114 @@
+package enigma;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MacroBench class.
+ *  @author Amy Kwon
+ */
+public class MacroBenchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The temporary directories of the current test. */
+    private final TempDirs _temps = new TempDirs();
+
+    /** Delete the temporary directories of the current test. */
+    @After
+    public void deleteTemps() throws IOException {
+        _temps.delete();
+    }
+
+    /** Return the parameters given as NAMES and VALUES alternately in
+     *  PAIRS. */
+    private Properties params(String... pairs) {
+        Properties result = new Properties();
+        for (int k = 0; k < pairs.length; k += 2) {
+            result.setProperty(pairs[k], pairs[k + 1]);
+        }
+        return result;
+    }
+
+    /** Check that P percent of the latencies of HISTOGRAM are at most
+     *  EXACT, to within the resolution of its buckets. */
+    private void checkPercentile(MacroBench.LatencyHistogram histogram,
+                                 double p, long exact) {
+        double found = histogram.percentile(p);
+        assertTrue(p + ": " + found, found >= exact);
+        assertTrue(p + ": " + found, found <= exact * (1 + 1.0 / 16));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testPercentiles() {
+        MacroBench.LatencyHistogram histogram =
+            new MacroBench.LatencyHistogram();
+        assertEquals(0, histogram.percentile(50), 0);
+        histogram.add(3);
+        assertEquals(3, histogram.percentile(100), 0);
+        histogram = new MacroBench.LatencyHistogram();
+        for (long nanos = 1000; nanos <= 1000000; nanos += 1000) {
+            histogram.add(nanos);
+        }
+        checkPercentile(histogram, 50, 500000);
+        checkPercentile(histogram, 90, 900000);
+        checkPercentile(histogram, 99, 990000);
+        checkPercentile(histogram, 100, 1000000);
+        histogram.add(Long.MAX_VALUE / 2);
+        assertTrue(histogram.percentile(100) >= Long.MAX_VALUE / 2);
+    }
+
+    @Test
+    public void testGeneratedFilesRun() throws IOException {
+        String[][] cases = {
+            {"alphabet", "26"},
+            {"alphabet", "40", "slots", "6", "pawls", "4", "rotors", "6"},
+            {"alphabet", "2", "slots", "3", "pawls", "1", "rotors", "1"},
+            {"alphabet", "60", "slots", "4", "pawls", "2"},
+        };
+        for (String[] params : cases) {
+            File dir = _temps.make("bench");
+            Properties all = params(params);
+            all.putAll(params("chars", "3000", "churn", "700",
+                              "line", "64"));
+            new MacroBench(dir, all).generate();
+            File output = new File(dir, "bench.out");
+            new Main(new String[] {
+                new File(dir, MacroBench.CONFIG).getPath(),
+                new File(dir, MacroBench.INPUT).getPath(),
+                output.getPath()
+            }).process();
+            String text = new String(Files.readAllBytes(output.toPath()))
+                .replaceAll("[ \n]", "");
+            assertEquals(3000, text.codePointCount(0, text.length()));
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testOddAlphabet() throws IOException {
+        new MacroBench(_temps.make("bench"),
+                       params("alphabet", "25"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testUnknownParameter() throws IOException {
+        new MacroBench(_temps.make("bench"),
+                       params("alphabets", "26"));
+    }
+
+}
@@ -1,12 +1,23 @@
 package enigma;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Paths;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import static enigma.EnigmaException.*;
 
@@ -15,6 +26,15 @@ import static enigma.EnigmaException.*;
  */
 public final class Main {
 
+    /** Prefix of command-line options. */
+    static final String OPTION_PREFIX = "--";
+
+    /** Default number of message characters between checkpoints. */
+    static final long CHECKPOINT_EVERY = 1 << 24;
+
+    /** Initial size of the buffer of a message line for a cascade. */
+    private static final int INITIAL_SYMBOLS = 128;
+
     /** Process a sequence of encryptions and decryptions, as
      *  specified by ARGS, where 1 <= ARGS.length <= 3.
      *  ARGS[0] is the name of a configuration file.
@@ -23,10 +43,82 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  Options may come before ARGS[0]:
+     *      --checkpoint FILE   Save the state of the job in FILE now and
+     *                          then, and if FILE exists when starting,
+     *                          resume the job from the state saved in it
+     *                          (at the start of the input line it was
+     *                          working on).
+     *                          Requires named input and output files.
+     *      --checkpoint-every N  Save a checkpoint after each N message
+     *                          characters or so.
+     *      --engine NAME       Convert with the engine named NAME
+     *                          ("interpreted", "compiled", "runlength",
+     *                          "table", "parallel" or "auto", which
+     *                          chooses among the interpreted, run-length,
+     *                          compiled and parallel engines).
+     *      --profile FILE      Choose engines as "auto" does, by the costs
+     *                          saved in FILE, measuring and saving them
+     *                          there if FILE does not exist.
+     *      --metrics           Report the number of characters converted
+     *                          and the engines used on the standard error.
+     *      --trace N           Record how the rotors stepped for the last
+     *                          N characters or so (converting them one at
+     *                          a time), and print the record on the
+     *                          standard error when the run ends, with or
+     *                          without an error.
+     *      --passthrough       Keep the layout of message lines: convert
+     *                          the characters of the alphabet, copy the
+     *                          others (except control characters other
+     *                          than tabs, which are left out), and do
+     *                          not group the output in fives.
+     *      --async-io          Read the input file ahead and write the
+     *                          output file behind, each on a thread of
+     *                          its own (see AsyncIO), while converting.
+     *      --lazy-config       Build only the rotors that settings lines
+     *                          name, when they first name them (see
+     *                          ConfigIndex), checking the rest of the
+     *                          configuration in parallel meanwhile.
+     *      --cascade CONFIG    Pass the output of the machine through
+     *                          another, configured by CONFIG, on a thread
+     *                          of its own (see Cascade).  May be repeated.
+     *                          Settings lines then hold a key for each
+     *                          machine in turn, separated by "|".
+     *
+     *  With "--batch" as ARGS[0], processes many files instead; see
+     *  Batch for the arguments that follow.  With "--extract", converts
+     *  part of a file; see ArchiveIndex.  With "--analyze", reports the
+     *  period of a key; see StateSpace.  With "--catalog" and
+     *  "--catalog-find", builds and searches a catalog of the cycle
+     *  types of doubled indicators; see Catalog.  With "--triage",
+     *  ranks intercepted messages by their statistics; see Triage.
+     *  With "--search", searches for a message's key with several worker
+     *  processes; see KeySearch.  With "--pack" and "--unpack",
+     *  converts to and from files of bit-packed symbols; see
+     *  PackedFile.  With "--bench", measures whole runs on synthetic
+     *  configurations and inputs; see MacroBench.  With
+     *  "--banburismus", ranks candidates for the rightmost rotors from
+     *  many messages with known keys; see Banburismus.  With
+     *  "--check-engines", compares every engine with the reference on
+     *  random configurations and keys; see EngineCheck.  With "--grep",
+     *  searches the plaintext of an archive for phrases; see
+     *  ArchiveSearch. */
     public static void main(String... args) {
         try {
-            new Main(args).process();
+            Consumer<String[]> command =
+                args.length > 0 ? COMMANDS.get(args[0]) : null;
+            if (command != null) {
+                command.accept(args);
+                return;
+            }
+            Main main = new Main(args);
+            try {
+                main.process();
+            } finally {
+                main.dumpTrace();
+            }
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -34,70 +126,391 @@ public final class Main {
         System.exit(1);
     }
 
+    /** The commands selected by ARGS[0] of main, other than converting a
+     *  single input, by their options. */
+    private static final Map<String, Consumer<String[]>> COMMANDS =
+        Map.ofEntries(
+            Map.entry(Batch.OPTION, args -> {
+                if (!new Batch(args).process()) {
+                    System.exit(1);
+                }
+            }),
+            Map.entry(ArchiveIndex.OPTION, ArchiveIndex::extract),
+            Map.entry(StateSpace.OPTION, StateSpace::analyze),
+            Map.entry(Catalog.OPTION, Catalog::build),
+            Map.entry(Catalog.FIND_OPTION, Catalog::find),
+            Map.entry(Triage.OPTION, Triage::triage),
+            Map.entry(KeySearch.OPTION, KeySearch::search),
+            Map.entry(KeySearch.WORKER_OPTION, KeySearch::work),
+            Map.entry(PackedFile.PACK_OPTION, PackedFile::pack),
+            Map.entry(PackedFile.UNPACK_OPTION, PackedFile::unpack),
+            Map.entry(MacroBench.OPTION, MacroBench::bench),
+            Map.entry(MacroBench.CHILD_OPTION, MacroBench::child),
+            Map.entry(Banburismus.OPTION, Banburismus::attack),
+            Map.entry(EngineCheck.OPTION, EngineCheck::check),
+            Map.entry(ArchiveSearch.OPTION, ArchiveSearch::grep));
+
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        int k = 0;
+        while (k < args.length && args[k].startsWith(OPTION_PREFIX)) {
+            k = option(args, k);
+        }
+        if (_profile != null) {
+            if (_engine != null && !(_engine instanceof AdaptiveEngine)) {
+                throw error("only the %s engine uses a profile",
+                            AdaptiveEngine.NAME);
+            }
+            _engine = new AdaptiveEngine(_profile);
+        }
+        args = Arrays.copyOfRange(args, k, args.length);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
-        _config = getInput(args[0]);
+        _configName = args[0];
+        if (!_lazyConfig) {
+            _config = getInput(args[0]);
+        }
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _inputName = args[1];
+            _input = getInput(args[1], _asyncIO);
         } else {
-            _input = new Scanner(System.in);
+            _inputName = "the standard input";
+            try {
+                _input = new Scanner(Compression.input(System.in));
+            } catch (IOException excp) {
+                throw error("could not read the standard input");
+            }
         }
 
-        if (args.length > 2) {
-            _output = getOutput(args[2]);
+        if (_lazyConfig && (_checkpointFile != null
+                            || !_cascadeConfigs.isEmpty())) {
+            throw error("a lazy configuration cannot be used with "
+                        + "checkpoints or a cascade");
+        }
+        if (_passthrough && !_cascadeConfigs.isEmpty()) {
+            throw error("passthrough cannot be used with a cascade");
+        }
+        if (_checkpointFile != null) {
+            if (!_cascadeConfigs.isEmpty()) {
+                throw error("checkpoints cannot be used with a cascade");
+            }
+            if (args.length < 3) {
+                throw error("checkpoints need input and output files");
+            }
+            if (Compression.compressed(args[2])) {
+                throw error("checkpoints need uncompressed output");
+            }
+            _outputName = args[2];
+        } else if (args.length > 2) {
+            _outputName = args[2];
+            _output = getOutput(args[2], _asyncIO);
         } else {
+            _outputName = "the standard output";
             _output = System.out;
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Handle the option ARGS[K] (see comment on main), returning the
+     *  index of the argument that follows it and its operands. */
+    private int option(String[] args, int k) {
+        if (args[k].equals("--metrics")) {
+            _metrics = true;
+            return k + 1;
+        }
+        if (args[k].equals("--passthrough")) {
+            _passthrough = true;
+            return k + 1;
+        }
+        if (args[k].equals("--async-io")) {
+            _asyncIO = true;
+            return k + 1;
+        }
+        if (args[k].equals("--lazy-config")) {
+            _lazyConfig = true;
+            return k + 1;
+        }
+        if (k + 1 >= args.length) {
+            throw error("option %s needs an operand", args[k]);
+        }
+        switch (args[k]) {
+        case "--checkpoint":
+            _checkpointFile = new File(args[k + 1]);
+            break;
+        case "--checkpoint-every":
+            try {
+                _checkpointEvery = Long.parseLong(args[k + 1]);
+            } catch (NumberFormatException excp) {
+                _checkpointEvery = 0;
+            }
+            if (_checkpointEvery <= 0) {
+                throw error("bad checkpoint interval: %s", args[k + 1]);
+            }
+            break;
+        case "--engine":
+            _engine = Engine.forName(args[k + 1]);
+            break;
+        case "--profile":
+            _profile = new File(args[k + 1]);
+            break;
+        case "--cascade":
+            _cascadeConfigs.add(args[k + 1]);
+            break;
+        case "--trace":
+            try {
+                _trace = Integer.parseInt(args[k + 1]);
+            } catch (NumberFormatException excp) {
+                _trace = 0;
+            }
+            if (_trace <= 0 || _trace > StepTrace.MAX_CAPACITY) {
+                throw error("bad trace length: %s", args[k + 1]);
+            }
+            break;
+        default:
+            throw error("unknown option: %s", args[k]);
+        }
+        return k + 2;
+    }
+
+    /** A Main that applies a copy of MACHINE to the messages in INPUT,
+     *  sending the results to OUTPUT. */
+    Main(Machine machine, Scanner input, PrintStream output) {
+        _machine = machine.copy();
+        _input = input;
+        _output = output;
+    }
+
+    /** A Main that only reads the configuration file named CONFIG. */
+    private Main(String config) {
+        _config = getInput(config);
+    }
+
+    /** Return the machine described by the configuration file named
+     *  NAME, with no rotors yet inserted. */
+    static Machine configure(String name) {
+        Main main = new Main(name);
+        main._allRotorsName = new ArrayList<String>();
+        return main.readConfig();
+    }
+
+    /** Return a Scanner reading from the file named NAME, decompressing
+     *  it if it is compressed (see Compression). */
+    static Scanner getInput(String name) {
+        return getInput(name, false);
+    }
+
+    /** Return a Scanner reading from the file named NAME, decompressing
+     *  it if it is compressed, and reading it ahead on another thread
+     *  iff ASYNC (see AsyncIO). */
+    static Scanner getInput(String name, boolean async) {
         try {
-            return new Scanner(new File(name));
+            InputStream in = async ? AsyncIO.input(Paths.get(name))
+                : new FileInputStream(name);
+            return new Scanner(Compression.input(in));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a PrintStream writing to the file named NAME, compressing
+     *  what it writes if NAME says to (see Compression). */
+    static PrintStream getOutput(String name) {
+        return getOutput(name, false);
+    }
+
+    /** Return a PrintStream writing to the file named NAME, compressing
+     *  what it writes if NAME says to, and writing it behind on another
+     *  thread iff ASYNC (see AsyncIO). */
+    static PrintStream getOutput(String name, boolean async) {
         try {
+            OutputStream out = async ? AsyncIO.output(Paths.get(name))
+                : null;
+            if (Compression.compressed(name)) {
+                return new PrintStream(Compression.output(
+                    out != null ? out : new FileOutputStream(name)));
+            } else if (out != null) {
+                return new PrintStream(out);
+            }
             return new PrintStream(new File(name));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
+    /** Return a PrintStream writing to the file named NAME, whose
+     *  position in the file can be found from _outputFile.  If resuming
+     *  from _resume, keeps the part of the file written before the
+     *  checkpoint was taken, and writes after it. */
+    private PrintStream getCheckpointedOutput(String name) {
+        try {
+            long keep = 0;
+            if (_resume != null) {
+                keep = _resume.outputBytes();
+                try (RandomAccessFile file = new RandomAccessFile(name, "rw")) {
+                    if (file.length() < keep) {
+                        throw error("%s is shorter than its checkpoint", name);
+                    }
+                    file.setLength(keep);
+                }
+            }
+            _outputFile = new FileOutputStream(name, keep > 0);
+            return new PrintStream(new BufferedOutputStream(_outputFile));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
+     *  results to _output.  If I was given a machine, uses it instead of
+     *  reading _config. */
+    void process() {
         if (!_input.hasNext()) {
+            checkRead();
             throw error("No input file!");
         }
-        _allRotorsName = new ArrayList<String>();
-        _machine = readConfig();
-        if (_input.next().equals("*")) {
-            String set = _input.nextLine();
-            setActiveRotors(set);
+        ConfigIndex index = null;
+        CompletableFuture<Void> validation = null;
+        if (_machine == null && _lazyConfig) {
+            index = new ConfigIndex(_configName);
+            validation = index.validate();
+            _machine = index.machine();
+        } else if (_machine == null) {
+            _allRotorsName = new ArrayList<String>();
+            _machine = readConfig();
+        }
+        if (_engine != null) {
+            _machine.setEngine(_engine);
+        }
+        if (_trace > 0) {
+            _machine.setTrace(new StepTrace(_trace, _machine.numRotors()));
+        }
+        _keys = index != null ? new KeySwitcher(_machine, index)
+            : new KeySwitcher(_machine);
+        if (!_cascadeConfigs.isEmpty()) {
+            startCascade();
+        }
+        if (_checkpointFile != null) {
+            if (_checkpointFile.exists()) {
+                _resume = Checkpoint.read(_checkpointFile,
+                                          _machine.alphabet());
+            }
+            _output = getCheckpointedOutput(_outputName);
+        }
+        if (_resume != null) {
+            for (long i = 0; i < _resume.inputLines(); i += 1) {
+                if (!_input.hasNextLine()) {
+                    throw error("input is shorter than its checkpoint");
+                }
+                _input.nextLine();
+            }
+            _machine.restore(_resume);
+            _lines = _resume.inputLines();
         } else {
-            throw error("Input does not start with a setting");
+            String first = "";
+            _lines = 0;
+            while (first.isBlank() && _input.hasNextLine()) {
+                first = _input.nextLine();
+                _lines += 1;
+            }
+            int settings = KeySwitcher.settingsStart(first);
+            if (settings < 0) {
+                checkRead();
+                throw error("Input does not start with a setting");
+            }
+            setActiveRotors(first.substring(settings));
         }
         while (_input.hasNextLine()) {
             String start = _input.nextLine();
-            Scanner startScan = new Scanner(start);
-            if (start.equals("")) {
+            int settings = KeySwitcher.settingsStart(start);
+            if (start.equals("") && _cascade != null) {
+                _cascade.newline();
+            } else if (start.equals("")) {
                 _output.print("\n");
-            } else if (startScan.next().equals("*")) {
-                String set = startScan.nextLine();
-                setActiveRotors(set);
+            } else if (settings >= 0 && _cascade != null) {
+                _cascade.setKey(start.substring(settings));
+            } else if (settings >= 0) {
+                _keys.apply(start, settings);
             } else {
                 printMessageLine(start);
             }
+            _lines += 1;
+            if (_checkpointFile != null
+                && _converted - _checkpointed >= _checkpointEvery) {
+                checkpoint();
+            }
+        }
+        checkRead();
+        if (_cascade != null) {
+            _cascade.finish();
+            _output.flush();
+        }
+        if (_checkpointFile != null) {
+            _output.close();
+        } else {
+            _output.flush();
+        }
+        if (_output.checkError()) {
+            throw error("could not write %s", _outputName);
+        }
+        if (_checkpointFile != null) {
+            _checkpointFile.delete();
+        }
+        if (validation != null) {
+            ConfigIndex.await(validation);
+        }
+        if (_metrics) {
+            System.err.printf("%d characters converted with %s%n",
+                              _converted, _machine.engine().usage());
+        }
+    }
+
+    /** Throw an error if reading _input failed, rather than take the
+     *  end of what was read (of a truncated compressed file, say) for
+     *  the end of the input. */
+    private void checkRead() {
+        if (_input.ioException() != null) {
+            throw error("could not read %s", _inputName);
+        }
+    }
+
+    /** Start a cascade of _machine and the machines configured by
+     *  _cascadeConfigs, printing its output on _output. */
+    private void startCascade() {
+        Machine[] machines = new Machine[_cascadeConfigs.size() + 1];
+        machines[0] = _machine;
+        for (int k = 1; k < machines.length; k += 1) {
+            machines[k] = configure(_cascadeConfigs.get(k - 1));
+            machines[k].setEngine(_machine.engine().fork());
         }
+        _cascade = new Cascade(machines);
+        _cascade.start(new GroupedOutput(_output,
+                                         machines[0].alphabet()));
+    }
+
+    /** Print the step trace of my machine, if it has one, on the
+     *  standard error. */
+    void dumpTrace() {
+        if (_machine != null && _machine.trace() != null) {
+            _machine.trace().dump(System.err, _machine.alphabet());
+        }
+    }
+
+    /** Save the state of the job in _checkpointFile, once everything
+     *  written so far is safely in the output file.  Checkpoints fall
+     *  only between input lines, so a job stopped within a line starts
+     *  that line over when resumed. */
+    private void checkpoint() {
+        _output.flush();
+        try {
+            _outputFile.getFD().sync();
+            Checkpoint state = _machine.snapshot();
+            state.setProgress(_lines, _outputFile.getChannel().position());
+            state.write(_checkpointFile, _machine.alphabet());
+        } catch (IOException excp) {
+            throw error("could not write %s", _outputName);
+        }
+        _checkpointed = _converted;
     }
 
     /** Return an Enigma machine configured from the contents of configuration
@@ -138,23 +551,31 @@ public final class Main {
 
     /** Return a rotor, reading its description from _config. */
     private Rotor readRotor() {
+        Rotor rotor = rotor(_combStr, _alphabet);
+        if (_allRotorsName != null) {
+            if (_allRotorsName.contains(rotor.name())) {
+                throw error("Rotors cannot repeat in config");
+            }
+        }
+        _allRotorsName.add(rotor.name());
+        return rotor;
+    }
+
+    /** Return the rotor with alphabet ALPHABET described by DESCRIPTION,
+     *  an entry of a configuration file: its name, type and notches,
+     *  and cycles. */
+    static Rotor rotor(String description, Alphabet alphabet) {
         try {
-            Scanner combStrScan = new Scanner(_combStr);
+            Scanner combStrScan = new Scanner(description);
             String name = combStrScan.next();
             if (name.contains("(") || name.contains(")")) {
                 throw error("Rotor's name shouldn't contain parentheses.");
             }
-            if (_allRotorsName != null) {
-                if (_allRotorsName.contains(name)) {
-                    throw error("Rotors cannot repeat in config");
-                }
-            }
-            _allRotorsName.add(name);
             String comb = combStrScan.next();
             char type = comb.charAt(0);
             String notches = comb.substring(1);
             String permStr = combStrScan.nextLine().strip();
-            Permutation perm = new Permutation(permStr, _alphabet);
+            Permutation perm = new Permutation(permStr, alphabet);
             Rotor newRotor;
             if (type == 'M') {
                 if (notches.equals("")) {
@@ -177,127 +598,92 @@ public final class Main {
         }
     }
 
-    /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        M.setRotors(settings);
-    }
-
     /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
+     *  have fewer letters), or with its layout kept if _passthrough. */
     private void printMessageLine(String msg) {
-        String convert = _machine.convert(msg);
+        _converted += msg.length();
+        if (_cascade != null) {
+            if (_symbols.length < msg.length()) {
+                _symbols = new int[Math.max(msg.length(),
+                                            2 * _symbols.length)];
+            }
+            Alphabet alpha = _machine.alphabet();
+            int len = 0;
+            for (int i = 0; i < msg.length(); i += 1) {
+                char c = msg.charAt(i);
+                if (c != ' ') {
+                    _symbols[len] = alpha.toInt(c);
+                    len += 1;
+                }
+            }
+            _cascade.write(_symbols, 0, len);
+            _cascade.newline();
+            return;
+        }
+        String convert = _passthrough ? _machine.convertPassthrough(msg)
+            : _machine.convert(msg);
         _output.print(convert + "\n");
     }
 
     /** Set active rotors.
      *  @param settingInput String of the entire setting line. */
     private void setActiveRotors(String settingInput) {
-        Scanner setScan = new Scanner(settingInput);
-        int cnt = 0;
-        String rest = "";
-        ArrayList<String> activeRotor = new ArrayList<String>();
-        while (setScan.hasNext()) {
-            String each = setScan.next();
-            if (_allRotorsName.contains(each)) {
-                if (activeRotor.contains(each)) {
-                    throw error("Rotor may not repeat");
-                }
-                activeRotor.add(each);
-                cnt += 1;
-            } else {
-                rest = each;
-                if (setScan.hasNext()) {
-                    rest = each + setScan.nextLine();
-                }
-                break;
-            }
-        }
-        if (cnt != _machine.numRotors()) {
-            throw error("Not a correct amount of setting rotors.");
+        if (_cascade != null) {
+            _cascade.setKey(settingInput);
+        } else {
+            _keys.apply(settingInput);
         }
-        _activeRotors = activeRotor.toArray(new String[0]);
-        checkOrder();
-        checkMovingNum();
-        _machine.insertRotors(_activeRotors);
+    }
 
-        Scanner restScan = new Scanner(rest);
-        if (!restScan.hasNext()) {
-            throw error("No initial setting");
-        }
-        String setting = restScan.next();
+    /** Prints the output of a cascade, each line in groups of five
+     *  characters as printMessageLine does. */
+    private static class GroupedOutput implements Cascade.Sink {
 
-        if (restScan.hasNext() && !restScan.hasNext("\\(.*\\)")) {
-            String ring = restScan.next();
-            _machine.setUpRing(ring);
+        /** Output printing lines on OUTPUT, in the characters of
+         *  ALPHABET. */
+        GroupedOutput(PrintStream output, Alphabet alphabet) {
+            _output = output;
+            _alphabet = alphabet;
         }
-        setUp(_machine, setting);
 
-        if (restScan.hasNext("\\(.*\\)")) {
-            String plug = restScan.nextLine().strip();
-            setPlugBoard(plug);
+        @Override
+        public void symbols(int[] buf, int from, int len) {
+            for (int i = from; i < from + len; i += 1) {
+                if (_inLine > 0 && _inLine % GROUP == 0) {
+                    _line.append(' ');
+                }
+                _line.append(_alphabet.toChar(buf[i]));
+                _inLine += 1;
+            }
         }
-    }
 
-    /** Set up the plugboard.
-     * @param plug String of the plugboard. */
-    private void setPlugBoard(String plug) {
-        if (plug.charAt(0) != '(') {
-            throw error("Not a right setting for plugboard");
+        @Override
+        public void newline() {
+            _line.append('\n');
+            _output.print(_line);
+            _line.setLength(0);
+            _inLine = 0;
         }
-        Permutation plugBorad = new Permutation(plug, _alphabet);
-        _machine.setPlugboard(plugBorad);
-    }
 
-    /** Return the rotor of its given name.
-     * @param name Name of the rotor. */
-    private Rotor find(String name) {
-        Rotor found = null;
-        for (Rotor each : _machine.allRotors()) {
-            if (each.name().equals(name)) {
-                found = each;
-            }
-        }
-        return found;
-    }
+        /** Characters in a group. */
+        private static final int GROUP = 5;
 
-    /** Check if the setting rotors are in the right order. */
-    private void checkOrder() {
-        int all = _machine.numRotors();
-        int moving = _machine.numPawls();
-        int rangeFix = all - moving;
-        for (int i = 0; i < all; i += 1) {
-            String name = _activeRotors[i];
-            if (i == 0) {
-                if (!find(name).reflecting()) {
-                    throw error("First rotor is not a reflector!");
-                }
-            } else if (i < rangeFix) {
-                if (find(name).reflecting()) {
-                    throw error("Reflector cannot be in fixed rotor position!");
-                }
-                if (find(name).rotates()) {
-                    throw error("Moving rotor cannot not be in this position!");
-                }
-            } else {
-                if (!find(name).rotates()) {
-                    throw error("This is not a moving rotor!");
-                }
-            }
-        }
+        /** Destination of the lines. */
+        private final PrintStream _output;
+
+        /** Alphabet of the characters. */
+        private final Alphabet _alphabet;
+
+        /** The line being built. */
+        private final StringBuilder _line = new StringBuilder();
+
+        /** Number of characters in the line being built. */
+        private int _inLine;
     }
 
-    /** Check the number of moving rotors. */
-    private void checkMovingNum() {
-        int cnt = 0;
-        for (String eachName : _activeRotors) {
-            if (find(eachName).rotates()) {
-                cnt += 1;
-            }
-        }
-        if (cnt != _machine.numPawls()) {
-            throw error("Not a correct number of moving rotor!");
-        }
+    /** Return the number of message characters I have processed. */
+    long converted() {
+        return _converted;
     }
 
     /** Alphabet used in this machine. */
@@ -315,13 +701,74 @@ public final class Main {
     /** Given machine. */
     private Machine _machine;
 
+    /** Sets the keys named by settings lines on _machine. */
+    private KeySwitcher _keys;
+
     /** Combined information of the rotor. */
     private String _combStr;
 
-    /** All active rotors. */
-    private String[] _activeRotors;
-
     /** Names of all the rotors. */
     private ArrayList<String> _allRotorsName;
 
+    /** Number of message characters processed so far. */
+    private long _converted;
+
+    /** File holding checkpoints of the job, or null. */
+    private File _checkpointFile;
+
+    /** Message characters between checkpoints. */
+    private long _checkpointEvery = CHECKPOINT_EVERY;
+
+    /** Checkpoint the job is resuming from, or null. */
+    private Checkpoint _resume;
+
+    /** Name of the input file. */
+    private String _inputName = "the input";
+
+    /** Name of the output file. */
+    private String _outputName = "the output";
+
+    /** Stream underlying _output when checkpointing. */
+    private FileOutputStream _outputFile;
+
+    /** Number of input lines finished. */
+    private long _lines;
+
+    /** Value of _converted at the last checkpoint. */
+    private long _checkpointed;
+
+    /** Engine chosen on the command line, or null. */
+    private Engine _engine;
+
+    /** File holding the profile of the auto engine, or null. */
+    private File _profile;
+
+    /** True iff metrics are to be reported. */
+    private boolean _metrics;
+
+    /** Name of the configuration file. */
+    private String _configName;
+
+    /** True iff rotors are built only when used (see ConfigIndex). */
+    private boolean _lazyConfig;
+
+    /** True iff files are read and written on threads of their own. */
+    private boolean _asyncIO;
+
+    /** True iff message lines keep their layout (see convertPassthrough
+     *  in Machine). */
+    private boolean _passthrough;
+
+    /** Number of characters to trace, or 0 if none. */
+    private int _trace;
+
+    /** Configurations of the further machines of a cascade. */
+    private ArrayList<String> _cascadeConfigs = new ArrayList<String>();
+
+    /** The cascade converting messages, or null if there is none. */
+    private Cascade _cascade;
+
+    /** Character indices of a message line given to _cascade. */
+    private int[] _symbols = new int[INITIAL_SYMBOLS];
+
 }
@@ -45,6 +45,18 @@ class MovingRotor extends Rotor {
         return false;
     }
 
+    @Override
+    int[] notches() {
+        if (_notchesInt == null) {
+            return new int[0];
+        }
+        int[] result = new int[_notchesInt.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = _notchesInt.get(i);
+        }
+        return result;
+    }
+
     @Override
     void advance() {
         this.set(wrap(this.setting() + 1));
@@ -58,6 +70,17 @@ class MovingRotor extends Rotor {
         }
     }
 
+    @Override
+    Rotor copy() {
+        MovingRotor result = new MovingRotor(name(), permutation(),
+                                             _notchesStr);
+        if (_notchesInt != null) {
+            result._notchesInt = new ArrayList<Integer>(_notchesInt);
+        }
+        result.set(setting());
+        return result;
+    }
+
     /** The permutation implemented by this rotor in its 0 position. */
     private String _notchesStr;
     /** Integer notches in an ArrayList. */
@@ -0,0 +1,559 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** A file of messages packed as symbols (alphabet indices) of the
+ *  fewest bits that hold every index of its alphabet: 5 bits for 26
+ *  letters, rather than the 8 bits and a fifth of a blank per letter of
+ *  the grouped text that Main writes.  A packed file holds segments,
+ *  each of the symbols that followed a settings line, recorded with the
+ *  segment.  Its layout is
+ *      a header: MAGIC, VERSION, the alphabet, the bits per symbol, the
+ *          number of symbols per block, and the position of the index;
+ *      the blocks of symbols, each BLOCK symbols of one segment (fewer
+ *          at the end of a segment) packed from the most significant bit
+ *          of its first byte and padded to a whole byte; and
+ *      the index: for each segment its settings line, its length and
+ *          its first block, then the position of every block.
+ *  Any stretch of a segment can therefore be read by reading only the
+ *  blocks that hold it.  Symbols are packed and unpacked a buffer at a
+ *  time, between arrays of alphabet indices such as Machine.convert
+ *  takes and direct byte buffers.
+ *
+ *  As commands, the arguments
+ *      --pack CONFIG INPUT OUTPUT
+ *  convert INPUT, in the input format of Main, writing the result to
+ *  OUTPUT packed, and
+ *      --unpack CONFIG INPUT OUTPUT
+ *  convert each segment of the packed file INPUT with its settings,
+ *  writing the result to OUTPUT in groups of five as Main does.
+ *  @author Amy Kwon
+ */
+class PackedFile {
+
+    /** Command-line option that selects packing. */
+    static final String PACK_OPTION = "--pack";
+
+    /** Command-line option that selects unpacking. */
+    static final String UNPACK_OPTION = "--unpack";
+
+    /** First four bytes of a packed file ("ENGP"). */
+    static final int MAGIC = 0x454e4750;
+
+    /** Version of the format written. */
+    static final int VERSION = 1;
+
+    /** Number of symbols in a full block. */
+    static final int BLOCK = 1 << 12;
+
+    /** Return the number of bits per symbol of an alphabet of N
+     *  characters. */
+    static int bits(int n) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(n - 1));
+    }
+
+    /** The packed file FILE, open for reading. */
+    PackedFile(File file) {
+        _file = file;
+        try {
+            _channel = FileChannel.open(file.toPath());
+            ByteBuffer start = ByteBuffer.allocate(HEADER_LIMIT);
+            readFully(start, 0, (int) Math.min(HEADER_LIMIT,
+                                               _channel.size()));
+            DataInputStream header = new DataInputStream(
+                new ByteArrayInputStream(start.array(), 0, start.limit()));
+            if (header.readInt() != MAGIC || header.readInt() != VERSION) {
+                throw error("%s is not a packed file", file);
+            }
+            _alphabet = new Alphabet(header.readUTF());
+            _bits = header.readByte();
+            _block = header.readInt();
+            long index = header.readLong();
+            long data = start.limit() - header.available();
+            if (_bits != bits(_alphabet.size()) || _block <= 0
+                || _block > MAX_BLOCK
+                || index < data || index > _channel.size()
+                || _channel.size() - index > Integer.MAX_VALUE) {
+                throw error("%s is damaged", file);
+            }
+            ByteBuffer rest = ByteBuffer.allocate(
+                (int) (_channel.size() - index));
+            readFully(rest, index, rest.capacity());
+            DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(rest.array()));
+            int segments = in.readInt();
+            if (segments < 0 || segments > rest.capacity() / MIN_SEGMENT) {
+                throw error("%s is damaged", file);
+            }
+            _keys = new String[segments];
+            _lengths = new long[segments];
+            _firsts = new int[segments];
+            for (int s = 0; s < segments; s += 1) {
+                _keys[s] = in.readUTF();
+                _lengths[s] = in.readLong();
+                _firsts[s] = in.readInt();
+            }
+            int blocks = in.readInt();
+            if (blocks < 0 || blocks > rest.capacity() / Long.BYTES) {
+                throw error("%s is damaged", file);
+            }
+            _offsets = new long[blocks + 1];
+            for (int b = 0; b < blocks; b += 1) {
+                _offsets[b] = in.readLong();
+            }
+            _offsets[blocks] = index;
+            validate(data);
+        } catch (EOFException excp) {
+            throw error("%s is damaged", file);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+        _bytes = ByteBuffer.allocateDirect(_block * _bits / Byte.SIZE + 1);
+    }
+
+    /** Check that my blocks lie in order between position DATA of my
+     *  file and my index, and that each segment's blocks, as many as its
+     *  length needs, are among them and follow those of the segment
+     *  before it. */
+    private void validate(long data) {
+        int blocks = _offsets.length - 1;
+        for (int b = 0; b < blocks; b += 1) {
+            if (_offsets[b] < data || _offsets[b] > _offsets[b + 1]) {
+                throw error("%s is damaged", _file);
+            }
+        }
+        long next = 0;
+        for (int s = 0; s < _keys.length; s += 1) {
+            if (_lengths[s] < 0 || _firsts[s] < next) {
+                throw error("%s is damaged", _file);
+            }
+            next = _firsts[s]
+                + (_lengths[s] == 0 ? 0 : (_lengths[s] - 1) / _block + 1);
+            if (next > blocks) {
+                throw error("%s is damaged", _file);
+            }
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return my number of segments. */
+    int segments() {
+        return _keys.length;
+    }
+
+    /** Return the settings line (without its "*") of segment SEGMENT. */
+    String key(int segment) {
+        return _keys[check(segment)];
+    }
+
+    /** Return the number of symbols in segment SEGMENT. */
+    long length(int segment) {
+        return _lengths[check(segment)];
+    }
+
+    /** Store symbols FROM .. FROM+LEN-1 of segment SEGMENT in
+     *  BUF[OFF .. OFF+LEN-1], reading only the blocks that hold them. */
+    void read(int segment, long from, int[] buf, int off, int len) {
+        if (from < 0 || len < 0 || from + len > length(segment)) {
+            throw error("no symbols %d .. %d in segment %d of %s", from,
+                        from + len - 1, segment, _file);
+        }
+        int mask = (1 << _bits) - 1;
+        while (len > 0) {
+            int b = _firsts[segment] + (int) (from / _block);
+            int within = (int) (from % _block);
+            int count = Math.min(len, _block - within);
+            long first = (long) within * _bits;
+            long last = (long) (within + count) * _bits;
+            int bytes = (int) ((last + Byte.SIZE - 1) / Byte.SIZE
+                               - first / Byte.SIZE);
+            if (_offsets[b] + first / Byte.SIZE + bytes > _offsets[b + 1]) {
+                throw error("%s is damaged", _file);
+            }
+            try {
+                _bytes.clear();
+                readFully(_bytes, _offsets[b] + first / Byte.SIZE, bytes);
+            } catch (IOException excp) {
+                throw error("could not read %s", _file);
+            }
+            int avail = Byte.SIZE - (int) (first % Byte.SIZE);
+            int acc = _bytes.get() & ((1 << avail) - 1);
+            for (int i = off; i < off + count; i += 1) {
+                while (avail < _bits) {
+                    acc = (acc << Byte.SIZE) | (_bytes.get() & BYTE_MASK);
+                    avail += Byte.SIZE;
+                }
+                avail -= _bits;
+                buf[i] = (acc >>> avail) & mask;
+                acc &= (1 << avail) - 1;
+            }
+            from += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    /** Close my file. */
+    void close() {
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw error("could not close %s", _file);
+        }
+    }
+
+    /** Writes a packed file. */
+    static class Writer {
+
+        /** A writer of a new packed file FILE of symbols of ALPHABET. */
+        Writer(File file, Alphabet alphabet) {
+            _file = file;
+            _bits = bits(alphabet.size());
+            _size = alphabet.size();
+            StringBuilder chars = new StringBuilder();
+            for (int c = 0; c < alphabet.size(); c += 1) {
+                chars.append(alphabet.toChar(c));
+            }
+            try {
+                _channel = FileChannel.open(
+                    file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream header = new DataOutputStream(bytes);
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+                header.writeUTF(chars.toString());
+                header.writeByte(_bits);
+                header.writeInt(BLOCK);
+                _indexField = bytes.size();
+                header.writeLong(0);
+                if (bytes.size() > HEADER_LIMIT) {
+                    throw error("alphabet too large to pack");
+                }
+                _out.put(bytes.toByteArray());
+            } catch (IOException excp) {
+                throw error("could not write %s", file);
+            }
+        }
+
+        /** Start a new segment, whose settings line (without its "*") is
+         *  KEY. */
+        void startSegment(String key) {
+            endBlock();
+            _keys.add(key);
+            _lengths.add(0L);
+            _firsts.add(_offsets.size());
+            _inBlock = BLOCK;
+        }
+
+        /** Append the symbols BUF[FROM .. FROM+LEN-1], each an index in
+         *  my alphabet, to the current segment. */
+        void write(int[] buf, int from, int len) {
+            if (len == 0) {
+                return;
+            } else if (_keys.isEmpty()) {
+                throw error("packed symbols must follow a setting");
+            }
+            try {
+                for (int i = from; i < from + len; i += 1) {
+                    if (_inBlock == BLOCK) {
+                        endBlock();
+                        _offsets.add(position());
+                        _inBlock = 0;
+                    }
+                    int c = buf[i];
+                    if (c < 0 || c >= _size) {
+                        throw error("symbol %d not in alphabet", c);
+                    }
+                    _acc = (_acc << _bits) | c;
+                    _avail += _bits;
+                    while (_avail >= Byte.SIZE) {
+                        _avail -= Byte.SIZE;
+                        put((byte) (_acc >>> _avail));
+                    }
+                    _acc &= (1 << _avail) - 1;
+                    _inBlock += 1;
+                }
+            } catch (IOException excp) {
+                throw error("could not write %s", _file);
+            }
+            int last = _lengths.size() - 1;
+            _lengths.set(last, _lengths.get(last) + len);
+        }
+
+        /** Write my index and close my file. */
+        void close() {
+            endBlock();
+            try {
+                long index = position();
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(_keys.size());
+                for (int s = 0; s < _keys.size(); s += 1) {
+                    out.writeUTF(_keys.get(s));
+                    out.writeLong(_lengths.get(s));
+                    out.writeInt(_firsts.get(s));
+                }
+                out.writeInt(_offsets.size());
+                for (long offset : _offsets) {
+                    out.writeLong(offset);
+                }
+                for (byte b : bytes.toByteArray()) {
+                    put(b);
+                }
+                flush();
+                ByteBuffer field = ByteBuffer.allocate(Long.BYTES);
+                field.putLong(index).flip();
+                while (field.hasRemaining()) {
+                    _channel.write(field, _indexField + field.position());
+                }
+                _channel.close();
+            } catch (IOException excp) {
+                throw error("could not write %s", _file);
+            }
+        }
+
+        /** Pad the current block to a whole byte. */
+        private void endBlock() {
+            try {
+                if (_avail > 0) {
+                    put((byte) (_acc << (Byte.SIZE - _avail)));
+                }
+            } catch (IOException excp) {
+                throw error("could not write %s", _file);
+            }
+            _acc = 0;
+            _avail = 0;
+        }
+
+        /** Append B to my file. */
+        private void put(byte b) throws IOException {
+            if (!_out.hasRemaining()) {
+                flush();
+            }
+            _out.put(b);
+        }
+
+        /** Write out what is buffered. */
+        private void flush() throws IOException {
+            _out.flip();
+            _written += _out.remaining();
+            while (_out.hasRemaining()) {
+                _channel.write(_out);
+            }
+            _out.clear();
+        }
+
+        /** Return the position in my file of the next byte put. */
+        private long position() {
+            return _written + _out.position();
+        }
+
+        /** The file written. */
+        private final File _file;
+
+        /** Channel writing _file. */
+        private final FileChannel _channel;
+
+        /** Bits per symbol. */
+        private final int _bits;
+
+        /** Alphabet size. */
+        private final int _size;
+
+        /** Position in _file of the position of the index. */
+        private final int _indexField;
+
+        /** Bytes not yet written to _file. */
+        private final ByteBuffer _out = ByteBuffer.allocateDirect(BUFFER);
+
+        /** Number of bytes written to _file. */
+        private long _written;
+
+        /** Bits not yet in whole bytes, the last _avail of _acc. */
+        private int _acc, _avail;
+
+        /** Number of symbols in the current block. */
+        private int _inBlock;
+
+        /** Settings line of each segment. */
+        private final ArrayList<String> _keys = new ArrayList<String>();
+
+        /** Length of each segment. */
+        private final ArrayList<Long> _lengths = new ArrayList<Long>();
+
+        /** First block of each segment. */
+        private final ArrayList<Integer> _firsts = new ArrayList<Integer>();
+
+        /** Position of each block. */
+        private final ArrayList<Long> _offsets = new ArrayList<Long>();
+    }
+
+    /** Perform the packing given by ARGS (see the class comment). */
+    static void pack(String[] args) {
+        if (args.length != 4) {
+            throw error("Usage: --pack CONFIG INPUT OUTPUT");
+        }
+        Machine machine = Main.configure(args[1]);
+        Alphabet alpha = machine.alphabet();
+        KeySwitcher keys = new KeySwitcher(machine);
+        Scanner input = Main.getInput(args[2]);
+        Writer out = new Writer(new File(args[3]), alpha);
+        int[] buf = new int[BUFFER];
+        while (input.hasNextLine()) {
+            String line = input.nextLine();
+            int settings = KeySwitcher.settingsStart(line);
+            if (settings >= 0) {
+                keys.apply(line, settings);
+                out.startSegment(line.substring(settings).trim());
+                continue;
+            }
+            int len = 0;
+            for (int i = 0; i < line.length(); i += 1) {
+                char c = line.charAt(i);
+                if (c != ' ') {
+                    if (len == buf.length) {
+                        buf = Arrays.copyOf(buf, 2 * len);
+                    }
+                    buf[len] = alpha.toInt(c);
+                    len += 1;
+                }
+            }
+            machine.convert(buf, 0, len);
+            out.write(buf, 0, len);
+        }
+        input.close();
+        out.close();
+    }
+
+    /** Perform the unpacking given by ARGS (see the class comment). */
+    static void unpack(String[] args) {
+        if (args.length != 4) {
+            throw error("Usage: --unpack CONFIG INPUT OUTPUT");
+        }
+        Machine machine = Main.configure(args[1]);
+        KeySwitcher keys = new KeySwitcher(machine);
+        PackedFile in = new PackedFile(new File(args[2]));
+        Alphabet alpha = in.alphabet();
+        PrintStream out = Main.getOutput(args[3]);
+        int[] buf = new int[BUFFER];
+        StringBuilder text = new StringBuilder();
+        for (int s = 0; s < in.segments(); s += 1) {
+            keys.apply(in.key(s));
+            long length = in.length(s);
+            for (long at = 0; at < length; at += buf.length) {
+                int len = (int) Math.min(buf.length, length - at);
+                in.read(s, at, buf, 0, len);
+                machine.convert(buf, 0, len);
+                text.setLength(0);
+                for (int i = 0; i < len; i += 1) {
+                    long k = at + i;
+                    if (k > 0 && k % LINE == 0) {
+                        text.append('\n');
+                    } else if (k > 0 && k % GROUP == 0) {
+                        text.append(' ');
+                    }
+                    text.append(alpha.toChar(buf[i]));
+                }
+                out.print(text);
+            }
+            out.print("\n");
+        }
+        in.close();
+        out.close();
+        if (out.checkError()) {
+            throw error("could not write %s", args[3]);
+        }
+    }
+
+    /** Return SEGMENT, if it is the number of one of my segments. */
+    private int check(int segment) {
+        if (segment < 0 || segment >= _keys.length) {
+            throw error("no segment %d in %s", segment, _file);
+        }
+        return segment;
+    }
+
+    /** Read LEN bytes at position AT of my file into BUF, which must be
+     *  empty, then flip it. */
+    private void readFully(ByteBuffer buf, long at, int len)
+        throws IOException {
+        buf.limit(len);
+        while (buf.hasRemaining()) {
+            if (_channel.read(buf, at + buf.position()) < 0) {
+                throw error("%s is truncated", _file);
+            }
+        }
+        buf.flip();
+    }
+
+    /** Largest size of a header, in bytes. */
+    private static final int HEADER_LIMIT = 1 << 12;
+
+    /** Fewest bytes taken by a segment in the index. */
+    private static final int MIN_SEGMENT = Short.BYTES + Long.BYTES
+        + Integer.BYTES;
+
+    /** Largest number of symbols in a block that is read. */
+    private static final int MAX_BLOCK = 1 << 24;
+
+    /** Size of the buffers of symbols and bytes. */
+    private static final int BUFFER = 1 << 16;
+
+    /** Symbols in a group, and in a line, of unpacked text. */
+    private static final int GROUP = 5, LINE = 50;
+
+    /** The bits of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** The packed file. */
+    private final File _file;
+
+    /** Channel reading _file. */
+    private final FileChannel _channel;
+
+    /** Alphabet of the symbols. */
+    private final Alphabet _alphabet;
+
+    /** Bits per symbol. */
+    private final int _bits;
+
+    /** Symbols per full block. */
+    private final int _block;
+
+    /** Settings line of each segment. */
+    private final String[] _keys;
+
+    /** Number of symbols in each segment. */
+    private final long[] _lengths;
+
+    /** First block of each segment. */
+    private final int[] _firsts;
+
+    /** Position of each block, and of the index after the last. */
+    private final long[] _offsets;
+
+    /** The bytes of the block being read. */
+    private final ByteBuffer _bytes;
+
+}
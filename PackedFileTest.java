@@ -0,0 +1,139 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the PackedFile class.
+ *  @author Amy Kwon
+ */
+public class PackedFileTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return an alphabet of the first N characters from '!' on that
+     *  an alphabet may hold. */
+    private Alphabet alphabet(int n) {
+        StringBuilder chars = new StringBuilder();
+        for (char c = '!'; chars.length() < n; c += 1) {
+            if ("()*".indexOf(c) < 0) {
+                chars.append(c);
+            }
+        }
+        return new Alphabet(chars.toString());
+    }
+
+    /** Return a new packed file of alphabet ALPHA holding, for each K,
+     *  the symbols SEGMENTS[K] under the key "K", written in pieces of
+     *  random lengths chosen by RANDOM. */
+    private File pack(Alphabet alpha, int[][] segments, Random random)
+        throws IOException {
+        File file = File.createTempFile("packed", ".bin");
+        file.deleteOnExit();
+        PackedFile.Writer out = new PackedFile.Writer(file, alpha);
+        out.write(new int[0], 0, 0);
+        for (int k = 0; k < segments.length; k += 1) {
+            out.startSegment(Integer.toString(k));
+            int at = 0;
+            while (at < segments[k].length) {
+                int len = Math.min(segments[k].length - at,
+                                   random.nextInt(PackedFile.BLOCK * 2));
+                out.write(segments[k], at, len);
+                at += len;
+            }
+        }
+        out.close();
+        return file;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Random random = new Random(38);
+        for (int n : new int[] {2, 3, 7, 26, 31, 100}) {
+            Alphabet alpha = alphabet(n);
+            int[][] segments = new int[4][];
+            int[] lengths = {
+                3 * PackedFile.BLOCK + 17, 0, 1, PackedFile.BLOCK
+            };
+            for (int k = 0; k < segments.length; k += 1) {
+                segments[k] = new int[lengths[k]];
+                for (int i = 0; i < lengths[k]; i += 1) {
+                    segments[k][i] = random.nextInt(n);
+                }
+            }
+            PackedFile in = new PackedFile(pack(alpha, segments, random));
+            assertEquals(segments.length, in.segments());
+            for (int k = 0; k < segments.length; k += 1) {
+                assertEquals(Integer.toString(k), in.key(k));
+                assertEquals(segments[k].length, in.length(k));
+                int[] all = new int[segments[k].length];
+                in.read(k, 0, all, 0, all.length);
+                assertArrayEquals(segments[k], all);
+                for (int trial = 0; trial < 20 && all.length > 0;
+                     trial += 1) {
+                    int from = random.nextInt(all.length);
+                    int len = random.nextInt(all.length - from + 1);
+                    int[] buf = new int[len + 2];
+                    in.read(k, from, buf, 1, len);
+                    assertArrayEquals(Arrays.copyOfRange(segments[k], from,
+                                                         from + len),
+                                      Arrays.copyOfRange(buf, 1, len + 1));
+                }
+            }
+            in.close();
+        }
+    }
+
+    /** Damage the file of one three-block segment by changing the
+     *  position of its last block, then its length, to lie beyond the
+     *  file, and by truncating it. */
+    @Test
+    public void testDamaged() throws IOException {
+        Random random = new Random(39);
+        int[][] segments = {new int[2 * PackedFile.BLOCK + 5]};
+        File file = pack(alphabet(26), segments, random);
+        long size = file.length();
+        int blocks = 3;
+        long[] changes = {
+            size - Long.BYTES,
+            size - blocks * Long.BYTES - 2 * Integer.BYTES - Long.BYTES,
+        };
+        for (long at : changes) {
+            File copy = pack(alphabet(26), segments, random);
+            try (RandomAccessFile damaged = new RandomAccessFile(copy, "rw")) {
+                damaged.seek(at);
+                damaged.writeLong(Long.MAX_VALUE / 2);
+            }
+            try {
+                new PackedFile(copy);
+                fail("opened a damaged file");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().endsWith("is damaged"));
+            }
+        }
+        File copy = pack(alphabet(26), segments, random);
+        try (RandomAccessFile truncated = new RandomAccessFile(copy, "rw")) {
+            truncated.setLength(size - 3);
+        }
+        try {
+            new PackedFile(copy);
+            fail("opened a truncated file");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().endsWith("is damaged"));
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** The engine that splits a long run of characters into chunks and
+ *  converts them at once on several threads.  The machine for each
+ *  chunk after the first is a copy of the original jumped ahead to the
+ *  start of its chunk (see Machine.advance), so the result is exactly
+ *  that of converting the run in order.  Runs too short to split are
+ *  converted by the inner engine alone.
+ *  @author Amy Kwon
+ */
+class ParallelEngine implements Engine {
+
+    /** The name of this engine. */
+    static final String NAME = "parallel";
+
+    /** Smallest number of characters given to one thread. */
+    static final int MIN_CHUNK = 1 << 16;
+
+    /** An engine splitting runs among as many threads as there are
+     *  processors, and converting each chunk with a compiled engine. */
+    ParallelEngine() {
+        this(new CompiledEngine(),
+             Runtime.getRuntime().availableProcessors());
+    }
+
+    /** An engine splitting runs among at most THREADS threads, and
+     *  converting each chunk with (a fork of) INNER. */
+    ParallelEngine(Engine inner, int threads) {
+        _inner = inner;
+        _threads = threads;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Engine fork() {
+        return new ParallelEngine(_inner.fork(), _threads);
+    }
+
+    /** Return the number of chunks into which I would split a run of LEN
+     *  characters. */
+    int chunks(int len) {
+        return Math.max(1, Math.min(_threads, len / MIN_CHUNK));
+    }
+
+    @Override
+    public void convert(Machine machine, int[] buf, int from, int len) {
+        int chunks = chunks(len);
+        if (chunks == 1) {
+            _inner.convert(machine, buf, from, len);
+            return;
+        }
+        int size = len / chunks;
+        List<Future<?>> parts = new ArrayList<Future<?>>();
+        for (int c = 1; c < chunks; c += 1) {
+            int skip = c * size;
+            int n = c == chunks - 1 ? len - skip : size;
+            Machine copy = machine.copy();
+            copy.setEngine(_inner.fork());
+            parts.add(ForkJoinPool.commonPool().submit(() -> {
+                copy.advance(skip);
+                copy.convert(buf, from + skip, n);
+            }));
+        }
+        _inner.convert(machine, buf, from, size);
+        for (Future<?> part : parts) {
+            try {
+                part.get();
+            } catch (ExecutionException excp) {
+                if (excp.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) excp.getCause();
+                }
+                throw error("conversion failed: %s", excp.getCause());
+            } catch (InterruptedException excp) {
+                throw error("conversion interrupted");
+            }
+        }
+        machine.advance(len - size);
+    }
+
+    /** Engine converting each chunk. */
+    private final Engine _inner;
+
+    /** Largest number of threads used at once. */
+    private final int _threads;
+
+}
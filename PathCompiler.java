@@ -0,0 +1,233 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/** Generates RotorPaths in which the path of a character through the
+ *  plugboard and the rotors is written out as straight-line code, with
+ *  the permutation tables and ring settings held in static final fields
+ *  that the JIT compiler treats as constants.  For each number of slots,
+ *  the source of such a class is compiled once with the system Java
+ *  compiler; each configuration then gets its own hidden class, defined
+ *  from those bytes with its tables as class data.
+ *  @author Amy Kwon
+ */
+final class PathCompiler {
+
+    /** Not instantiable. */
+    private PathCompiler() {
+    }
+
+    /** Return a RotorPath for the rotors ROTORS (by slot, reflector
+     *  first), ring settings RING (element K for slot K + 1; null for
+     *  none) and plugboard PLUGBOARD (or null), or null if the Java
+     *  compiler is not available or compilation fails. */
+    static RotorPath compile(Rotor[] rotors, int[] ring,
+                             Permutation plugboard) {
+        byte[] bytes = classBytes(rotors.length);
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                .defineHiddenClassWithClassData(bytes,
+                                                tables(rotors, ring,
+                                                       plugboard),
+                                                true);
+            return (RotorPath) lookup.lookupClass()
+                .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return null;
+        }
+    }
+
+    /** Return the class data for a path through ROTORS with RING and
+     *  PLUGBOARD: the alphabet size, the ring settings, the plugboard,
+     *  the reflector, then the forward and backward tables of each other
+     *  slot.  Those tables have twice the alphabet size, so that a
+     *  position plus an offset may index them without reduction. */
+    private static int[][] tables(Rotor[] rotors, int[] ring,
+                                  Permutation plugboard) {
+        int n = rotors[0].size();
+        int slots = rotors.length;
+        int[][] result = new int[FIRST_ROTOR + 2 * (slots - 1)][];
+        result[0] = new int[] {n};
+        result[1] = new int[slots];
+        for (int k = 1; k < slots; k += 1) {
+            result[1][k] = ring == null ? 0 : ring[k - 1];
+        }
+        result[2] = new int[n];
+        for (int c = 0; c < n; c += 1) {
+            result[2][c] = plugboard == null ? c : plugboard.permute(c);
+        }
+        result[REFLECTOR] = rotors[0].permutation().table();
+        for (int k = 1; k < slots; k += 1) {
+            Permutation perm = rotors[k].permutation();
+            int[] forward = new int[2 * n], backward = new int[2 * n];
+            for (int x = 0; x < 2 * n; x += 1) {
+                forward[x] = perm.permute(x % n);
+                backward[x] = perm.invert(x % n);
+            }
+            result[FIRST_ROTOR + 2 * (k - 1)] = forward;
+            result[FIRST_ROTOR + 2 * (k - 1) + 1] = backward;
+        }
+        return result;
+    }
+
+    /** Return the compiled class for SLOTS slots, compiling it if need
+     *  be, or null if it cannot be compiled. */
+    private static synchronized byte[] classBytes(int slots) {
+        if (!_compiled.containsKey(slots)) {
+            long start = System.nanoTime();
+            _compiled.put(slots, compileSource(source(slots)));
+            _compileNanos.put(slots, System.nanoTime() - start);
+        }
+        return _compiled.get(slots);
+    }
+
+    /** Return true iff the class for SLOTS slots has already been
+     *  compiled (or found not to compile), so that compile need not
+     *  call the Java compiler. */
+    static synchronized boolean compiled(int slots) {
+        return _compiled.containsKey(slots);
+    }
+
+    /** Return the number of nanoseconds taken to compile the class for
+     *  SLOTS slots, or -1 if it has not been compiled. */
+    static synchronized long compileNanos(int slots) {
+        return _compileNanos.getOrDefault(slots, -1L);
+    }
+
+    /** Return the source of the path class for SLOTS slots. */
+    static String source(int slots) {
+        StringBuilder src = new StringBuilder();
+        src.append("package enigma;\n")
+            .append("import java.lang.invoke.MethodHandles;\n")
+            .append("final class ").append(CLASS_NAME)
+            .append(" implements RotorPath {\n")
+            .append("    private static final int[][] T = data();\n")
+            .append("    private static final int N = T[0][0];\n")
+            .append("    private static final int[] P = T[2];\n")
+            .append("    private static final int[] F0 = T[3];\n");
+        for (int k = 1; k < slots; k += 1) {
+            int t = FIRST_ROTOR + 2 * (k - 1);
+            src.append(String.format("    private static final int R%d = "
+                                     + "T[1][%d];%n", k, k))
+                .append(String.format("    private static final int[] F%d = "
+                                      + "T[%d];%n", k, t))
+                .append(String.format("    private static final int[] B%d = "
+                                      + "T[%d];%n", k, t + 1));
+        }
+        src.append("    private static int[][] data() {\n")
+            .append("        try {\n")
+            .append("            return MethodHandles.classData(")
+            .append("MethodHandles.lookup(), \"_\", int[][].class);\n")
+            .append("        } catch (IllegalAccessException e) {\n")
+            .append("            throw new IllegalStateException(e);\n")
+            .append("        }\n")
+            .append("    }\n")
+            .append("    public int convert(int c, int[] pos) {\n")
+            .append("        final int n = N;\n");
+        for (int k = 1; k < slots; k += 1) {
+            src.append(String.format("        int o%d = pos[%d] - R%d;%n",
+                                     k, k, k))
+                .append(String.format("        if (o%d < 0) { o%d += n; }%n",
+                                      k, k));
+        }
+        src.append("        c = P[c];\n");
+        for (int k = slots - 1; k >= 1; k -= 1) {
+            src.append(step("F", k));
+        }
+        src.append("        c = F0[c];\n");
+        for (int k = 1; k < slots; k += 1) {
+            src.append(step("B", k));
+        }
+        src.append("        return P[c];\n")
+            .append("    }\n")
+            .append("}\n");
+        return src.toString();
+    }
+
+    /** Return the statements passing c through table TABLE of slot K. */
+    private static String step(String table, int k) {
+        return String.format("        c = %s%d[c + o%d] - o%d;%n"
+                             + "        if (c < 0) { c += n; }%n",
+                             table, k, k, k);
+    }
+
+    /** Return the class file compiled from SOURCE, or null if there is
+     *  no compiler or compilation fails. */
+    private static byte[] compileSource(String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StandardJavaFileManager standard =
+            compiler.getStandardFileManager(null, null, null);
+        JavaFileManager manager =
+            new ForwardingJavaFileManager<JavaFileManager>(standard) {
+                @Override
+                public JavaFileObject getJavaFileForOutput(
+                    JavaFileManager.Location location, String name,
+                    JavaFileObject.Kind kind, FileObject sibling) {
+                    return new SimpleJavaFileObject(
+                        URI.create("bytes:///" + name.replace('.', '/')
+                                   + kind.extension), kind) {
+                        @Override
+                        public OutputStream openOutputStream() {
+                            return bytes;
+                        }
+                    };
+                }
+            };
+        JavaFileObject file = new SimpleJavaFileObject(
+            URI.create("string:///enigma/" + CLASS_NAME
+                       + JavaFileObject.Kind.SOURCE.extension),
+            JavaFileObject.Kind.SOURCE) {
+                @Override
+                public CharSequence getCharContent(boolean ignore) {
+                    return source;
+                }
+            };
+        List<String> options =
+            Arrays.asList("-proc:none", "-g:none", "-classpath",
+                          System.getProperty("java.class.path"));
+        boolean ok = compiler.getTask(null, manager, diagnostic -> { },
+                                      options, null, List.of(file)).call();
+        return ok ? bytes.toByteArray() : null;
+    }
+
+    /** Name of the generated class. */
+    private static final String CLASS_NAME = "GeneratedRotorPath";
+
+    /** Index in the class data of the reflector's table. */
+    private static final int REFLECTOR = 3;
+
+    /** Index in the class data of the first rotor's forward table. */
+    private static final int FIRST_ROTOR = 4;
+
+    /** Compiled classes (null when compilation failed), by number of
+     *  slots. */
+    private static HashMap<Integer, byte[]> _compiled =
+        new HashMap<Integer, byte[]>();
+
+    /** Time taken to compile each class in _compiled, by number of
+     *  slots. */
+    private static HashMap<Integer, Long> _compileNanos =
+        new HashMap<Integer, Long>();
+
+}
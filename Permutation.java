@@ -1,10 +1,16 @@
 package enigma;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
- *  to the characters of an alphabet.
+ *  to the characters of an alphabet.  The permutation is kept as a table
+ *  of images and a table of inverse images, so applying it costs one
+ *  array access, and the algebraic operations (composition, inverse,
+ *  powers, conjugation) build their results table to table without
+ *  going through cycle notation.
  *  @author Amy Kwon
  */
 class Permutation {
@@ -15,32 +21,29 @@ class Permutation {
      *  alphabet that are not included in any cycle map to themselves.
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
-        _cntChar = 0;
         _alphabet = alphabet;
         _strCycle = cycles;
+        _table = identity(alphabet.size());
+        _inverse = identity(alphabet.size());
         if (!cycles.equals("")) {
             if (_strCycle.charAt(0) != '(') {
                 throw error("Must start with an open parenthesis");
             }
-            _arrCycle = new ArrayList<ArrayList<Character>>();
-            int index = -1;
+            ArrayList<StringBuilder> parsed = new ArrayList<StringBuilder>();
             boolean closed = true;
             for (int i = 0; i < cycles.length(); i += 1) {
                 char curr = cycles.charAt(i);
                 if (_alphabet.contains(curr)) {
-                    _arrCycle.get(index).add(curr);
-                    _cntChar += 1;
+                    parsed.get(parsed.size() - 1).append(curr);
                 } else if (curr == '(') {
                     if (!closed) {
                         throw error("Previous parenthesis was not closed");
                     }
                     closed = false;
-                    index += 1;
-                    _arrCycle.add(new ArrayList<Character>());
+                    parsed.add(new StringBuilder());
                 } else if (curr == ')') {
                     if (closed) {
                         throw error("Missing an open parenthesis.");
-
                     }
                     closed = true;
                 } else if (curr == ' ') {
@@ -51,12 +54,51 @@ class Permutation {
                     throw error("Given alphabet in cycle does not exist");
                 }
             }
+            for (StringBuilder cycle : parsed) {
+                addCycle(cycle.toString());
+            }
+            _strCycle = cycles;
+        }
+    }
+
+    /** A permutation of ALPHABET that maps each K to TABLE[K] and whose
+     *  inverse maps each K to INVERSE[K].  The arrays are not copied. */
+    private Permutation(int[] table, int[] inverse, Alphabet alphabet) {
+        _alphabet = alphabet;
+        _table = table;
+        _inverse = inverse;
+    }
+
+    /** Return the permutation of ALPHABET that maps each index K to
+     *  TABLE[K].  TABLE must hold each index exactly once; it is
+     *  copied. */
+    static Permutation fromTable(int[] table, Alphabet alphabet) {
+        if (table.length != alphabet.size()) {
+            throw error("Table does not match the alphabet.");
+        }
+        int[] inverse = new int[table.length];
+        Arrays.fill(inverse, -1);
+        for (int k = 0; k < table.length; k += 1) {
+            int v = table[k];
+            if (v < 0 || v >= table.length || inverse[v] >= 0) {
+                throw error("Table is not a permutation.");
+            }
+            inverse[v] = k;
         }
+        return new Permutation(table.clone(), inverse, alphabet);
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
-    public void addCycle(String cycle) {
+     *  c0c1...cm.  Only used while constructing me: permutations are
+     *  shared between machines and never change once built. */
+    private void addCycle(String cycle) {
+        int m = cycle.length();
+        for (int j = 0; j < m; j += 1) {
+            int curr = _alphabet.toInt(cycle.charAt(j));
+            _table[curr] = _alphabet.toInt(cycle.charAt((j + 1) % m));
+            _inverse[curr] = _alphabet.toInt(cycle.charAt((j + m - 1) % m));
+        }
+        _strCycle = null;
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -76,19 +118,13 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        int realNum = wrap(p);
-        char currChar = _alphabet.toChar(realNum);
-        char newChar = permute(currChar);
-        return _alphabet.toInt(newChar);
+        return _table[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        int realNum = wrap(c);
-        char currChar = _alphabet.toChar(realNum);
-        char newChar = invert(currChar);
-        return _alphabet.toInt(newChar);
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -97,22 +133,7 @@ class Permutation {
         if (!_alphabet.contains(p)) {
             throw error("char not in alphabet, so it cannot be converted!");
         }
-        if (_strCycle.equals("")) {
-            return p;
-        }
-        char end = p;
-        for (ArrayList<Character> characters : _arrCycle) {
-            for (int j = 0; j < characters.size(); j += 1) {
-                if (characters.get(j) == p) {
-                    if (j == characters.size() - 1) {
-                        end = characters.get(0);
-                    } else {
-                        end = characters.get(j + 1);
-                    }
-                }
-            }
-        }
-        return end;
+        return _alphabet.toChar(_table[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
@@ -120,22 +141,7 @@ class Permutation {
         if (!_alphabet.contains(c)) {
             throw error("char not in alphabet, so it cannot be inverted!");
         }
-        if (_strCycle.equals("")) {
-            return c;
-        }
-        char end = c;
-        for (ArrayList<Character> characters : _arrCycle) {
-            for (int j = 0; j < characters.size(); j += 1) {
-                if (characters.get(j) == c) {
-                    if (j == 0) {
-                        end = characters.get(characters.size() - 1);
-                    } else {
-                        end = characters.get(j - 1);
-                    }
-                }
-            }
-        }
-        return end;
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -146,28 +152,238 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        if (_strCycle.equals("")) {
-            return false;
-        }
-        for (ArrayList<Character> characters : _arrCycle) {
-            if (characters.size() <= 1) {
+        for (int k = 0; k < _table.length; k += 1) {
+            if (_table[k] == k) {
                 return false;
             }
         }
-        return _cntChar == _alphabet.size();
+        return true;
+    }
+
+    /** Return the permutation that applies OTHER first and then me
+     *  (this permutation composed with OTHER).  OTHER must permute the
+     *  same alphabet. */
+    Permutation compose(Permutation other) {
+        checkAlphabet(other);
+        int n = _table.length;
+        int[] table = new int[n], inverse = new int[n];
+        for (int k = 0; k < n; k += 1) {
+            table[k] = _table[other._table[k]];
+            inverse[table[k]] = k;
+        }
+        return new Permutation(table, inverse, _alphabet);
+    }
+
+    /** Return my inverse. */
+    Permutation inverse() {
+        return new Permutation(_inverse.clone(), _table.clone(), _alphabet);
+    }
+
+    /** Return me applied K times (the inverse applied -K times if K is
+     *  negative).  Takes time proportional to the alphabet size, whatever
+     *  K is. */
+    Permutation power(int k) {
+        int n = _table.length;
+        int[] table = new int[n], inverse = new int[n];
+        for (int[] cycle : cycles()) {
+            int m = cycle.length;
+            int shift = Math.floorMod(k, m);
+            for (int j = 0; j < m; j += 1) {
+                int image = cycle[(j + shift) % m];
+                table[cycle[j]] = image;
+                inverse[image] = cycle[j];
+            }
+        }
+        return new Permutation(table, inverse, _alphabet);
     }
 
+    /** Return me as seen through a rotor turned SHIFT positions: the
+     *  permutation taking P to my image of P + SHIFT, less SHIFT (all
+     *  modulo the alphabet size).  A rotor at setting S with ring setting
+     *  R implements conjugate(S - R) of its permutation. */
+    Permutation conjugate(int shift) {
+        int n = _table.length;
+        int s = wrap(shift);
+        int[] table = new int[n], inverse = new int[n];
+        for (int k = 0; k < n; k += 1) {
+            int image = _table[(k + s) % n] - s;
+            if (image < 0) {
+                image += n;
+            }
+            table[k] = image;
+            inverse[image] = k;
+        }
+        return new Permutation(table, inverse, _alphabet);
+    }
+
+    /** Return my cycles, each as the indices c0, c1, ... with c0 mapping
+     *  to c1 and so on, the last mapping back to c0.  Every index appears
+     *  in exactly one cycle (fixed points as cycles of length 1), and the
+     *  cycles are ordered by their smallest index, which comes first. */
+    int[][] cycles() {
+        int n = _table.length;
+        boolean[] seen = new boolean[n];
+        int[] lengths = new int[n];
+        int count = 0;
+        for (int k = 0; k < n; k += 1) {
+            if (!seen[k]) {
+                int m = 0;
+                for (int j = k; !seen[j]; j = _table[j]) {
+                    seen[j] = true;
+                    m += 1;
+                }
+                lengths[count] = m;
+                count += 1;
+            }
+        }
+        int[][] result = new int[count][];
+        Arrays.fill(seen, false);
+        count = 0;
+        for (int k = 0; k < n; k += 1) {
+            if (!seen[k]) {
+                int[] cycle = new int[lengths[count]];
+                int j = k;
+                for (int i = 0; i < cycle.length; i += 1) {
+                    cycle[i] = j;
+                    seen[j] = true;
+                    j = _table[j];
+                }
+                result[count] = cycle;
+                count += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return my cycle type: the lengths of my cycles (fixed points
+     *  included), longest first. */
+    int[] cycleType() {
+        int n = _table.length;
+        int[] counts = cycleCounts();
+        int total = 0;
+        for (int m = 1; m <= n; m += 1) {
+            total += counts[m];
+        }
+        int[] result = new int[total];
+        int i = 0;
+        for (int m = n; m >= 1; m -= 1) {
+            for (int c = 0; c < counts[m]; c += 1) {
+                result[i] = m;
+                i += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return an array whose element M is the number of my cycles of
+     *  length M, for 0 <= M <= size(). */
+    int[] cycleCounts() {
+        int n = _table.length;
+        int[] counts = new int[n + 1];
+        boolean[] seen = new boolean[n];
+        for (int k = 0; k < n; k += 1) {
+            if (!seen[k]) {
+                int m = 0;
+                for (int j = k; !seen[j]; j = _table[j]) {
+                    seen[j] = true;
+                    m += 1;
+                }
+                counts[m] += 1;
+            }
+        }
+        return counts;
+    }
+
+    /** Return the number of indices I leave in place. */
+    int fixedPoints() {
+        int result = 0;
+        for (int k = 0; k < _table.length; k += 1) {
+            if (_table[k] == k) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return a copy of my table of images, whose element K is the
+     *  image of K. */
+    int[] table() {
+        return _table.clone();
+    }
+
+    /** Return a copy of my table of inverse images. */
+    int[] inverseTable() {
+        return _inverse.clone();
+    }
+
+    /** Return me in cycle notation. */
+    String cycleString() {
+        if (_strCycle == null) {
+            StringBuilder result = new StringBuilder();
+            for (int[] cycle : cycles()) {
+                if (cycle.length > 1) {
+                    if (result.length() > 0) {
+                        result.append(' ');
+                    }
+                    result.append('(');
+                    for (int k : cycle) {
+                        result.append(_alphabet.toChar(k));
+                    }
+                    result.append(')');
+                }
+            }
+            _strCycle = result.toString();
+        }
+        return _strCycle;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Permutation)) {
+            return false;
+        }
+        Permutation other = (Permutation) obj;
+        return other._alphabet == _alphabet
+            && Arrays.equals(other._table, _table)
+            && Arrays.equals(other._inverse, _inverse);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_table);
+    }
+
+    @Override
+    public String toString() {
+        return cycleString();
+    }
+
+    /** Check that OTHER permutes my alphabet. */
+    private void checkAlphabet(Permutation other) {
+        if (other._table.length != _table.length) {
+            throw error("Permutations of different alphabets.");
+        }
+    }
+
+    /** Return the identity table on N indices. */
+    private static int[] identity(int n) {
+        int[] result = new int[n];
+        for (int k = 0; k < n; k += 1) {
+            result[k] = k;
+        }
+        return result;
+    }
 
     /** Alphabet of this permutation. */
-    private Alphabet _alphabet;
+    private final Alphabet _alphabet;
 
-    /** String of the cycle. */
+    /** String of the cycle, or null if it has yet to be worked out. */
     private String _strCycle;
 
-    /** Nested ArrayList of characters in each cycle. */
-    private ArrayList<ArrayList<Character>> _arrCycle;
+    /** Image of each index. */
+    private final int[] _table;
 
-    /** Count of the characters in the cycle. */
-    private int _cntChar;
+    /** Inverse image of each index. */
+    private final int[] _inverse;
 
 }
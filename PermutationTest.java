@@ -120,6 +120,75 @@ public class PermutationTest {
         assertFalse(p3.derangement());
     }
 
+    @Test
+    public void testAddCycle() {
+        Permutation p = new Permutation("(BAC)", new Alphabet("ABCD"));
+        assertEquals('A', p.permute('B'));
+        assertEquals('B', p.permute('C'));
+        assertEquals('C', p.invert('B'));
+        assertEquals('D', p.permute('D'));
+    }
+
+    @Test
+    public void testCompose() {
+        Alphabet abcd = new Alphabet("ABCD");
+        Permutation p = new Permutation("(AB)", abcd);
+        Permutation q = new Permutation("(BCD)", abcd);
+        Permutation pq = p.compose(q);
+        for (int i = 0; i < 4; i += 1) {
+            assertEquals(p.permute(q.permute(i)), pq.permute(i));
+            assertEquals(i, pq.invert(pq.permute(i)));
+        }
+        assertEquals("(ABCD)", pq.toString());
+    }
+
+    @Test
+    public void testInverseAndPower() {
+        String cycle = "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)";
+        Alphabet alpha = new Alphabet();
+        Permutation p = new Permutation(cycle, alpha);
+        Permutation cube = p.compose(p).compose(p);
+        assertEquals(cube, p.power(3));
+        assertEquals(p.inverse(), p.power(-1));
+        assertEquals(new Permutation("", alpha), p.power(60));
+        for (int i = 0; i < 26; i += 1) {
+            assertEquals(p.invert(i), p.inverse().permute(i));
+        }
+    }
+
+    @Test
+    public void testConjugate() {
+        Permutation p = new Permutation("(AELTPHQXRU) (BKNW) (CMOY) (DFG)",
+                                        new Alphabet());
+        Rotor rotor = new Rotor("I", p);
+        for (int s = 0; s < 26; s += 1) {
+            rotor.set(s);
+            Permutation c = p.conjugate(s);
+            for (int i = 0; i < 26; i += 1) {
+                assertEquals(rotor.convertForward(i), c.permute(i));
+                assertEquals(rotor.convertBackward(i), c.invert(i));
+            }
+        }
+    }
+
+    @Test
+    public void testCycles() {
+        String cycle = "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)";
+        Permutation p = new Permutation(cycle, new Alphabet());
+        assertArrayEquals(new int[] {10, 4, 4, 3, 2, 2, 1}, p.cycleType());
+        assertEquals(1, p.fixedPoints());
+        int[][] cycles = p.cycles();
+        assertEquals(7, cycles.length);
+        assertArrayEquals(new int[] {0, 4, 11, 19, 15, 7, 16, 23, 17, 20},
+                          cycles[0]);
+        assertEquals(p, Permutation.fromTable(p.table(), p.alphabet()));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testFromTableNotPermutation() {
+        Permutation.fromTable(new int[] {0, 0, 1, 2}, new Alphabet("ABCD"));
+    }
+
     @Test
     public void checkIdTransform() {
         perm = new Permutation("", UPPER);
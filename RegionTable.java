@@ -0,0 +1,145 @@
+package enigma;
+
+/** A small string-keyed table that can be probed with a region of a
+ *  larger string, so that looking up a token of an input line does not
+ *  require cutting the token out into a String of its own.  Once the
+ *  table holds more than its limit, it is emptied and starts over.
+ *  @author Amy Kwon
+ */
+class RegionTable<V> {
+
+    /** A table holding at most LIMIT entries before it is cleared. */
+    RegionTable(int limit) {
+        _limit = limit;
+        _keys = new String[INITIAL_CAPACITY];
+        _hashes = new int[INITIAL_CAPACITY];
+        _values = new Object[INITIAL_CAPACITY];
+    }
+
+    /** Return the value stored under the characters FROM..TO-1 of TEXT,
+     *  or null if there is none. */
+    @SuppressWarnings("unchecked")
+    V get(CharSequence text, int from, int to) {
+        int h = hash(text, from, to);
+        int mask = _keys.length - 1;
+        for (int i = h & mask; _keys[i] != null; i = (i + 1) & mask) {
+            if (_hashes[i] == h && matches(_keys[i], text, from, to)) {
+                return (V) _values[i];
+            }
+        }
+        return null;
+    }
+
+    /** Return the value stored under KEY, or null if there is none. */
+    V get(String key) {
+        return get(key, 0, key.length());
+    }
+
+    /** Store VALUE under KEY, replacing any previous value. */
+    void put(String key, V value) {
+        if (_size >= _limit) {
+            clear();
+        }
+        if (2 * (_size + 1) > _keys.length) {
+            grow();
+        }
+        int h = hash(key, 0, key.length());
+        int mask = _keys.length - 1;
+        int i = h & mask;
+        while (_keys[i] != null) {
+            if (_hashes[i] == h && _keys[i].equals(key)) {
+                _values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        _keys[i] = key;
+        _hashes[i] = h;
+        _values[i] = value;
+        _size += 1;
+    }
+
+    /** Return the number of entries in this table. */
+    int size() {
+        return _size;
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        _keys = new String[INITIAL_CAPACITY];
+        _hashes = new int[INITIAL_CAPACITY];
+        _values = new Object[INITIAL_CAPACITY];
+        _size = 0;
+    }
+
+    /** Double the capacity of the table, rehashing every entry. */
+    private void grow() {
+        String[] keys = _keys;
+        int[] hashes = _hashes;
+        Object[] values = _values;
+        _keys = new String[2 * keys.length];
+        _hashes = new int[2 * keys.length];
+        _values = new Object[2 * keys.length];
+        int mask = _keys.length - 1;
+        for (int k = 0; k < keys.length; k += 1) {
+            if (keys[k] != null) {
+                int i = hashes[k] & mask;
+                while (_keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                _keys[i] = keys[k];
+                _hashes[i] = hashes[k];
+                _values[i] = values[k];
+            }
+        }
+    }
+
+    /** Return the hash of characters FROM..TO-1 of TEXT, spread so that
+     *  the low bits used for probing depend on every character. */
+    private static int hash(CharSequence text, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i += 1) {
+            h = HASH_MULTIPLIER * h + text.charAt(i);
+        }
+        return h ^ (h >>> HASH_SHIFT);
+    }
+
+    /** Return true iff KEY consists of characters FROM..TO-1 of TEXT. */
+    private static boolean matches(String key, CharSequence text,
+                                   int from, int to) {
+        if (key.length() != to - from) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i += 1) {
+            if (key.charAt(i) != text.charAt(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Number of slots in a new table (a power of two). */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Multiplier of the polynomial string hash. */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /** Shift used to fold high hash bits into the low ones. */
+    private static final int HASH_SHIFT = 16;
+
+    /** Maximum number of entries kept before the table is cleared. */
+    private final int _limit;
+
+    /** Keys, indexed by slot; null marks an empty slot. */
+    private String[] _keys;
+
+    /** Hash of the key in each slot. */
+    private int[] _hashes;
+
+    /** Value stored in each slot. */
+    private Object[] _values;
+
+    /** Number of occupied slots. */
+    private int _size;
+
+}
@@ -109,6 +109,12 @@ class Rotor {
         return false;
     }
 
+    /** Return the positions at which I allow the rotor to my left to
+     *  advance, or null if I do not move. */
+    int[] notches() {
+        return null;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
@@ -118,6 +124,14 @@ class Rotor {
     void notchReset(int ring) {
     }
 
+    /** Return a new rotor with my name, permutation and setting, which
+     *  may be moved independently of me. */
+    Rotor copy() {
+        Rotor result = new Rotor(_name, _permutation);
+        result.set(_setting);
+        return result;
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
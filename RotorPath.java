@@ -0,0 +1,15 @@
+package enigma;
+
+/** The path of a character through the plugboard and rotors of a
+ *  machine with a fixed choice of rotors, rings and plugboard, as a
+ *  function of the rotor positions.
+ *  @author Amy Kwon
+ */
+interface RotorPath {
+
+    /** Return the conversion of character index C when the rotors are at
+     *  POS (one position per slot, reflector first), without moving
+     *  them. */
+    int convert(int c, int[] pos);
+
+}
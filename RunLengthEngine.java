@@ -0,0 +1,246 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** The engine that converts a run of characters during which only the
+ *  rightmost rotor moves (see Stepper.runLength) by passing each one
+ *  through the plugboard and that rotor, and through a single table for
+ *  everything to its left: the inner stack of slower rotors and the
+ *  reflector, which stays the same for the whole run.  The part of that
+ *  table belonging to the rotors that never move, and the reflector, is
+ *  composed once for each conversion; the rest is composed once for each
+ *  run, an entry at a time as characters need it, so no entry costs more
+ *  than passing a character through the stack directly would.
+ *  @author Amy Kwon
+ */
+class RunLengthEngine implements Engine {
+
+    /** The name of this engine. */
+    static final String NAME = "runlength";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Engine fork() {
+        return new RunLengthEngine();
+    }
+
+    @Override
+    public void convert(Machine machine, int[] buf, int from, int len) {
+        if (len == 0) {
+            return;
+        }
+        prepare(machine);
+        Stepper stepper = machine.stepper();
+        int[] pos = machine.positions();
+        int[] ring = machine.ring();
+        int n = _size, last = _last;
+        int[] plug = _plugboard, forward = _forward[last],
+            backward = _backward[last];
+        int fastRing = ring == null ? 0 : ring[last - 1];
+        composeCore(pos, ring);
+        long run = stepper.runLength(pos);
+        startRun(pos, ring);
+        for (int i = from; i < from + len; i += 1) {
+            if (run > 0) {
+                run = stepper.next(pos, run);
+            } else {
+                stepper.step(pos);
+                run = stepper.runLength(pos);
+                startRun(pos, ring);
+            }
+            int o = pos[last] - fastRing;
+            if (o < 0) {
+                o += n;
+            }
+            int c = forward[plug[buf[i]] + o] - o;
+            if (c < 0) {
+                c += n;
+            }
+            if (_stamp[c] != _run) {
+                _inner[c] = inner(c);
+                _stamp[c] = _run;
+            }
+            c = backward[_inner[c] + o] - o;
+            if (c < 0) {
+                c += n;
+            }
+            buf[i] = plug[c];
+        }
+        machine.moved(pos, len);
+    }
+
+    /** Store in OUT[AT .. AT+N-1], where N is the alphabet size, the
+     *  permutation applied by MACHINE's rotors, rings and plugboard with
+     *  its rotors at positions POS (a character being converted after
+     *  the rotors have stepped to POS). */
+    void permutation(Machine machine, int[] pos, char[] out, int at) {
+        prepare(machine);
+        int[] ring = machine.ring();
+        int n = _size, last = _last;
+        composeCore(pos, ring);
+        startRun(pos, ring);
+        int o = offset(pos, ring, last);
+        for (int c = 0; c < n; c += 1) {
+            int x = through(_forward[last], _plugboard[c], last, o);
+            x = through(_backward[last], inner(x), last, o);
+            out[at + c] = (char) _plugboard[x];
+        }
+    }
+
+    /** Set up my tables for MACHINE's rotors and plugboard, unless they
+     *  are those I last converted with. */
+    private void prepare(Machine machine) {
+        Rotor[] rotors = machine.activeRotors();
+        Permutation plugboard = machine.plugboard();
+        boolean same = _rotors != null && _rotors.length == rotors.length
+            && _plugboardPerm == plugboard;
+        for (int k = 0; same && k < rotors.length; k += 1) {
+            same = _rotors[k] == rotors[k];
+        }
+        if (same) {
+            return;
+        }
+        _rotors = rotors;
+        _plugboardPerm = plugboard;
+        _size = rotors[0].size();
+        _last = rotors.length - 1;
+        _range = Math.min(machine.stepper().firstMoving(), _last);
+        int n = _size;
+        _plugboard = new int[n];
+        for (int c = 0; c < n; c += 1) {
+            _plugboard[c] = plugboard == null ? c : plugboard.permute(c);
+        }
+        _reflector = rotors[0].permutation().table();
+        _forward = new int[rotors.length][];
+        _backward = new int[rotors.length][];
+        for (int k = 1; k < rotors.length; k += 1) {
+            Permutation perm = rotors[k].permutation();
+            _forward[k] = new int[2 * n];
+            _backward[k] = new int[2 * n];
+            for (int x = 0; x < 2 * n; x += 1) {
+                _forward[k][x] = perm.permute(x % n);
+                _backward[k][x] = perm.invert(x % n);
+            }
+        }
+        _offsets = new int[rotors.length];
+        _core = new int[n];
+        _inner = new int[n];
+        _stamp = new int[n];
+        _run = 0;
+    }
+
+    /** Set _offsets for the slots before the first moving one from
+     *  positions POS and ring settings RING (or null), and compose _core,
+     *  the path through those slots and the reflector. */
+    private void composeCore(int[] pos, int[] ring) {
+        for (int k = 1; k < _range; k += 1) {
+            _offsets[k] = offset(pos, ring, k);
+        }
+        for (int c = 0; c < _size; c += 1) {
+            int x = c;
+            for (int k = _range - 1; k >= 1; k -= 1) {
+                x = through(_forward[k], x, k);
+            }
+            x = _reflector[x];
+            for (int k = 1; k < _range; k += 1) {
+                x = through(_backward[k], x, k);
+            }
+            _core[c] = x;
+        }
+    }
+
+    /** Start a new run with the rotors at positions POS and ring settings
+     *  RING (or null), forgetting the entries of _inner. */
+    private void startRun(int[] pos, int[] ring) {
+        for (int k = _range; k < _last; k += 1) {
+            _offsets[k] = offset(pos, ring, k);
+        }
+        _run += 1;
+        if (_run == Integer.MAX_VALUE) {
+            Arrays.fill(_stamp, 0);
+            _run = 1;
+        }
+    }
+
+    /** Return the result of passing C through the moving slots left of
+     *  the rightmost one, _core, and back. */
+    private int inner(int c) {
+        for (int k = _last - 1; k >= _range; k -= 1) {
+            c = through(_forward[k], c, k);
+        }
+        c = _core[c];
+        for (int k = _range; k < _last; k += 1) {
+            c = through(_backward[k], c, k);
+        }
+        return c;
+    }
+
+    /** Return the result of passing C through TABLE, one of the doubled
+     *  tables of slot K, at that slot's offset. */
+    private int through(int[] table, int c, int k) {
+        return through(table, c, k, _offsets[k]);
+    }
+
+    /** Return the result of passing C through TABLE, one of the doubled
+     *  tables of slot K, at offset O. */
+    private int through(int[] table, int c, int k, int o) {
+        c = table[c + o] - o;
+        return c < 0 ? c + _size : c;
+    }
+
+    /** Return the offset of slot K's rotor, at position POS[K] with ring
+     *  settings RING (or null). */
+    private int offset(int[] pos, int[] ring, int k) {
+        int o = pos[k] - (ring == null ? 0 : ring[k - 1]);
+        return o < 0 ? o + _size : o;
+    }
+
+    /** Rotors I last converted with, by slot. */
+    private Rotor[] _rotors;
+
+    /** Plugboard I last converted with. */
+    private Permutation _plugboardPerm;
+
+    /** Alphabet size. */
+    private int _size;
+
+    /** Slot of the rightmost rotor. */
+    private int _last;
+
+    /** Slot of the leftmost rotor that may move, or _last if none may:
+     *  the slots before it make up _core, and the rightmost slot, which
+     *  convert passes through itself, never does. */
+    private int _range;
+
+    /** The plugboard, as a table. */
+    private int[] _plugboard;
+
+    /** The reflector, as a table. */
+    private int[] _reflector;
+
+    /** Forward and backward tables of each slot after the reflector,
+     *  with twice the alphabet size so that a character plus an offset
+     *  may index them without reduction. */
+    private int[][] _forward, _backward;
+
+    /** Current offset of each slot. */
+    private int[] _offsets;
+
+    /** Path through the slots that never move and the reflector. */
+    private int[] _core;
+
+    /** Path through the whole inner stack in the current run, where
+     *  _stamp[C] == _run. */
+    private int[] _inner;
+
+    /** Run in which each entry of _inner was computed. */
+    private int[] _stamp;
+
+    /** Number of the current run. */
+    private int _run;
+
+}
@@ -0,0 +1,235 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The sequence of states (rotor positions) a machine passes through
+ *  from a given state as it converts characters, which, since the
+ *  states are finitely many and each determines the next, is eventually
+ *  periodic: after a preperiod of states never seen again (as when the
+ *  machine starts with a middle rotor where double-stepping will never
+ *  leave it), it repeats with some period.  Both are found exactly by
+ *  Brent's cycle-finding algorithm, stepping with the machine's Stepper.
+ *  When the states up to the end of the first period are few enough,
+ *  the permutation applied at each can be tabulated (see table), after
+ *  which converting the character at any offset is one lookup.
+ *
+ *  As a command, the arguments
+ *      --analyze CONFIG SETTINGS
+ *  print the period, preperiod and state counts of the machine
+ *  described by CONFIG, set by the settings line SETTINGS (one
+ *  argument, with or without its leading "*").
+ *  @author Amy Kwon
+ */
+class StateSpace {
+
+    /** Command-line option that selects analysis. */
+    static final String OPTION = "--analyze";
+
+    /** Default largest number of steps taken to find a period. */
+    static final long LIMIT = 1L << 32;
+
+    /** The states of MACHINE from its current state, which is not
+     *  changed, taking at most LIMIT steps to find them. */
+    StateSpace(Machine machine) {
+        this(machine, LIMIT);
+    }
+
+    /** The states of MACHINE from its current state, which is not
+     *  changed, taking at most LIMIT steps to find them. */
+    StateSpace(Machine machine, long limit) {
+        _machine = machine.copy();
+        _stepper = _machine.stepper();
+        _start = _machine.positions();
+        _size = _stepper.size();
+        _first = _stepper.firstMoving();
+        if (states() == Long.MAX_VALUE) {
+            throw error("too many states to analyze");
+        }
+        findPeriod(limit);
+    }
+
+    /** Perform the analysis given by ARGS (see the class comment). */
+    static void analyze(String[] args) {
+        if (args.length != 3) {
+            throw error("Usage: --analyze CONFIG SETTINGS");
+        }
+        Machine machine = Main.configure(args[1]);
+        String line = args[2];
+        int start = KeySwitcher.settingsStart(line);
+        new KeySwitcher(machine).apply(line, Math.max(start, 0));
+        System.out.println(new StateSpace(machine).report());
+    }
+
+    /** Return the number of states in each period. */
+    long period() {
+        return _period;
+    }
+
+    /** Return the number of states before the first period. */
+    long preperiod() {
+        return _preperiod;
+    }
+
+    /** Return the number of distinct states reached from the start. */
+    long reachable() {
+        return _preperiod + _period;
+    }
+
+    /** Return the number of states of the slots that may move (the
+     *  alphabet size to the power of their number), or Long.MAX_VALUE if
+     *  there are more than that. */
+    long states() {
+        return states(_stepper);
+    }
+
+    /** Return the number of states of the slots of STEPPER that may
+     *  move, or Long.MAX_VALUE if there are more than that. */
+    static long states(Stepper stepper) {
+        long result = 1;
+        for (int k = stepper.firstMoving(); k < stepper.slots(); k += 1) {
+            if (result > Long.MAX_VALUE / stepper.size()) {
+                return Long.MAX_VALUE;
+            }
+            result *= stepper.size();
+        }
+        return result;
+    }
+
+    /** Return the number of bytes taken by table(). */
+    long tableBytes() {
+        return reachable() * (_size * Character.BYTES + Long.BYTES);
+    }
+
+    /** Return a description of my period and state counts. */
+    String report() {
+        return String.format("period %d, preperiod %d%n"
+                             + "states: %d reachable of %d (%d moving "
+                             + "slots, alphabet of %d)%n"
+                             + "table: %d bytes", _period, _preperiod,
+                             reachable(), states(), _start.length - _first,
+                             _size, tableBytes());
+    }
+
+    /** Return the table of the permutations applied to the characters
+     *  converted from my start state, or null if it would take more than
+     *  BUDGET bytes (counting the states it records, which make state
+     *  take constant time).  Row J of the result (entries J*N .. J*N+N-1, where
+     *  N is the alphabet size) is the permutation applied to character
+     *  number J, counting from 0, for J < reachable(); character number
+     *  J >= reachable() uses row row(J). */
+    char[] table(long budget) {
+        if (tableBytes() > budget || reachable() * _size > Integer.MAX_VALUE
+            || _size > Character.MAX_VALUE + 1) {
+            return null;
+        }
+        int rows = (int) reachable();
+        char[] result = new char[rows * _size];
+        long[] codes = new long[rows];
+        RunLengthEngine paths = new RunLengthEngine();
+        int[] pos = _start.clone();
+        for (int j = 0; j < rows; j += 1) {
+            codes[j] = code(pos);
+            _stepper.step(pos);
+            paths.permutation(_machine, pos, result, j * _size);
+        }
+        _codes = codes;
+        return result;
+    }
+
+    /** Return the row of table() used by character number J. */
+    long row(long j) {
+        return j < _preperiod ? j : _preperiod + (j - _preperiod) % _period;
+    }
+
+    /** Return the state (as given by code) reached after J steps from
+     *  the start. */
+    long state(long j) {
+        if (_codes != null) {
+            return _codes[(int) row(j)];
+        }
+        int[] pos = _start.clone();
+        _stepper.advance(pos, row(j));
+        return code(pos);
+    }
+
+    /** Return a number that identifies the positions of the slots that
+     *  may move in POS, when states() < Long.MAX_VALUE. */
+    long code(int[] pos) {
+        long result = 0;
+        for (int k = pos.length - 1; k >= _first; k -= 1) {
+            result = result * _size + pos[k];
+        }
+        return result;
+    }
+
+    /** Set POS to the positions of the slots that may move given by
+     *  CODE, as returned by code. */
+    void decode(long code, int[] pos) {
+        for (int k = _first; k < pos.length; k += 1) {
+            pos[k] = (int) (code % _size);
+            code /= _size;
+        }
+    }
+
+    /** Return the positions of my start state. */
+    int[] start() {
+        return _start.clone();
+    }
+
+    /** Set _period and _preperiod, taking at most LIMIT steps. */
+    private void findPeriod(long limit) {
+        long power = 1, period = 1, steps = 1;
+        int[] tortoise = _start.clone(), hare = _start.clone();
+        _stepper.step(hare);
+        while (code(tortoise) != code(hare)) {
+            if (power == period) {
+                System.arraycopy(hare, 0, tortoise, 0, hare.length);
+                power *= 2;
+                period = 0;
+            }
+            _stepper.step(hare);
+            period += 1;
+            steps += 1;
+            if (steps > limit) {
+                throw error("period longer than %d steps", limit);
+            }
+        }
+        tortoise = _start.clone();
+        hare = _start.clone();
+        _stepper.advance(hare, period);
+        long preperiod = 0;
+        while (code(tortoise) != code(hare)) {
+            _stepper.step(tortoise);
+            _stepper.step(hare);
+            preperiod += 1;
+        }
+        _period = period;
+        _preperiod = preperiod;
+    }
+
+    /** Copy of the analyzed machine. */
+    private final Machine _machine;
+
+    /** Stepping of _machine. */
+    private final Stepper _stepper;
+
+    /** Positions of the start state. */
+    private final int[] _start;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Slot of the leftmost rotor that may move. */
+    private final int _first;
+
+    /** Number of states in each period. */
+    private long _period;
+
+    /** Number of states before the first period. */
+    private long _preperiod;
+
+    /** The codes of the states reached after each number of steps less
+     *  than reachable(), once table has been called, or null. */
+    private long[] _codes;
+
+}
@@ -0,0 +1,166 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A record of the last characters a machine converted: for each, the
+ *  input and output characters, the positions of the rotors after they
+ *  stepped, which rotors stepped, and which of those were double-stepped
+ *  (moved by their own notch, rather than only by the rotor to their
+ *  right).  Events go into arrays allocated once, as a ring buffer in
+ *  which each new event replaces the oldest; recording takes no lock
+ *  and allocates nothing.  The trace may be dumped at any time, from any
+ *  thread, while the machine goes on converting: events that may have
+ *  been overwritten while they were being copied are left out of the
+ *  dump.  A machine only looks for a trace once per character, and
+ *  converts as usual when it has none (see Machine.setTrace).
+ *  @author Amy Kwon
+ */
+class StepTrace {
+
+    /** Largest number of events held. */
+    static final int MAX_CAPACITY = 1 << 24;
+
+    /** A trace of at least the last CAPACITY characters converted by a
+     *  machine with SLOTS rotor slots. */
+    StepTrace(int capacity, int slots) {
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+            throw error("bad trace capacity: %d", capacity);
+        }
+        int size = Integer.highestOneBit(capacity + 1);
+        _capacity = size <= capacity ? 2 * size : size;
+        _slots = slots;
+        _stride = slots + FIELDS;
+        _data = new int[_capacity * _stride];
+        _offsets = new long[_capacity];
+        _before = new int[slots];
+        _after = new int[slots];
+    }
+
+    /** Return the number of events I can hold (one of which may be
+     *  left out of a dump taken while I am recording). */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** Return the number of events ever recorded. */
+    long recorded() {
+        return _next.get();
+    }
+
+    /** Return an array into which the positions of the rotors before
+     *  the next event may be stored. */
+    int[] before() {
+        return _before;
+    }
+
+    /** Return an array into which the positions of the rotors after the
+     *  next event may be stored. */
+    int[] after() {
+        return _after;
+    }
+
+    /** Record that the character IN was converted to OUT as character
+     *  number OFFSET since the key was set, by a machine whose rotors
+     *  stepped from before() to after() with STEPPER. */
+    void record(long offset, int in, int out, Stepper stepper) {
+        int[] after = _after;
+        long n = _next.get();
+        int at = (int) (n & (_capacity - 1));
+        int base = at * _stride;
+        int stepped = 0, doubled = 0;
+        int last = _slots - 1;
+        for (int k = 0; k < _slots; k += 1) {
+            _data[base + FIELDS + k] = after[k];
+            if (after[k] != _before[k] && k < Integer.SIZE - 1) {
+                stepped |= 1 << k;
+                if (k < last && k > stepper.firstMoving()
+                    && stepper.atNotch(k, _before[k])) {
+                    doubled |= 1 << k;
+                }
+            }
+        }
+        _data[base] = in;
+        _data[base + 1] = out;
+        _data[base + 2] = stepped;
+        _data[base + 3] = doubled;
+        _offsets[at] = offset;
+        _next.lazySet(n + 1);
+    }
+
+    /** Print my events on OUT, oldest first, using the characters of
+     *  ALPHA. */
+    void dump(PrintStream out, Alphabet alpha) {
+        long end = _next.get();
+        long start = Math.max(0, end - _capacity);
+        int count = (int) (end - start);
+        int[] data = new int[count * _stride];
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i += 1) {
+            int at = (int) ((start + i) & (_capacity - 1));
+            System.arraycopy(_data, at * _stride, data, i * _stride,
+                             _stride);
+            offsets[i] = _offsets[at];
+        }
+        long valid = Math.max(start, _next.get() - _capacity + 1);
+        out.printf("step trace: %d of %d characters%n", end - valid, end);
+        StringBuilder line = new StringBuilder();
+        for (int i = (int) (valid - start); i < count; i += 1) {
+            int base = i * _stride;
+            line.setLength(0);
+            line.append(String.format("%10d %c>%c ", offsets[i],
+                                      alpha.toChar(data[base]),
+                                      alpha.toChar(data[base + 1])));
+            for (int k = 1; k < _slots; k += 1) {
+                line.append(alpha.toChar(data[base + FIELDS + k]));
+            }
+            appendSlots(line, " stepped", data[base + 2]);
+            appendSlots(line, " double", data[base + 3]);
+            out.println(line);
+        }
+        out.flush();
+    }
+
+    /** Append LABEL and the slots whose bits are set in MASK to LINE,
+     *  unless there are none. */
+    private static void appendSlots(StringBuilder line, String label,
+                                    int mask) {
+        if (mask == 0) {
+            return;
+        }
+        line.append(label);
+        for (int k = 0; k < Integer.SIZE - 1; k += 1) {
+            if ((mask & (1 << k)) != 0) {
+                line.append(' ').append(k);
+            }
+        }
+    }
+
+    /** Fields of an event before the positions: input, output, stepped
+     *  slots and double-stepped slots. */
+    private static final int FIELDS = 4;
+
+    /** Number of events held, a power of 2. */
+    private final int _capacity;
+
+    /** Number of rotor slots. */
+    private final int _slots;
+
+    /** Number of entries of _data per event. */
+    private final int _stride;
+
+    /** The fields and positions of each event. */
+    private final int[] _data;
+
+    /** The offset of each event. */
+    private final long[] _offsets;
+
+    /** Positions before and after the event being recorded. */
+    private final int[] _before, _after;
+
+    /** Number of events recorded, published after each is complete. */
+    private final AtomicLong _next = new AtomicLong();
+
+}
@@ -0,0 +1,76 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the StepTrace class.
+ *  @author Amy Kwon
+ */
+public class StepTraceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a machine with three pawls and the naval rotors, set to
+     *  rotors B, Beta, I, II and III at SETTING with plugboard (AQ). */
+    private Machine machine(String setting) {
+        return TestUtils.machine(setting, null, "(AQ)");
+    }
+
+    /** Return the dump of TRACE, of a machine with alphabet ALPHA. */
+    private String dump(StepTrace trace, Alphabet alpha) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        trace.dump(new PrintStream(bytes), alpha);
+        return bytes.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testTrace() {
+        Machine reference = machine("AADU");
+        Machine traced = machine("AADU");
+        traced.setEngine(new RunLengthEngine());
+        StepTrace trace = new StepTrace(10, traced.numRotors());
+        traced.setTrace(trace);
+        assertEquals(reference.convert("HELLOWORLD"),
+                     traced.convert("HELLOWORLD"));
+        assertEquals(10, trace.recorded());
+        String dump = dump(trace, traced.alphabet());
+        assertTrue(dump.contains(" 3 L>"));
+        assertTrue(dump.contains("ABFX stepped 2 3 4 double 3"));
+    }
+
+    @Test
+    public void testWrapsAround() {
+        Machine traced = machine("AAAA");
+        StepTrace trace = new StepTrace(10, traced.numRotors());
+        traced.setTrace(trace);
+        assertEquals(16, trace.capacity());
+        for (int i = 0; i < 100; i += 1) {
+            traced.convert(0);
+        }
+        assertEquals(100, trace.recorded());
+        String[] lines = dump(trace, traced.alphabet()).split("\n");
+        assertEquals("step trace: 15 of 100 characters", lines[0]);
+        assertEquals(16, lines.length);
+        assertTrue(lines[1].startsWith("        86 "));
+        assertEquals("       100 A>Q AAEW stepped 3 4", lines[15]);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadCapacity() {
+        new StepTrace(0, 5);
+    }
+
+}
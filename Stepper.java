@@ -0,0 +1,236 @@
+package enigma;
+
+import java.util.HashMap;
+
+/** The stepping of a machine's rotors, worked on arrays of rotor
+ *  positions (one per slot, reflector first) rather than on the rotors
+ *  themselves.  Besides taking single steps exactly as Machine.convert
+ *  does, a Stepper can tell how long the machine will go on moving only
+ *  its rightmost rotor, which it uses to jump over runs of steps in
+ *  which no other rotor moves.  Since the states the machine goes
+ *  through are eventually periodic, a long jump also notes the states
+ *  at which other rotors move, and once one of them recurs, skips all
+ *  the whole periods left in one go, so that jumping any number of
+ *  steps takes no longer than jumping about one period.
+ *  @author Amy Kwon
+ */
+class Stepper {
+
+    /** A stepper for the rotors ROTORS (by slot, reflector first) of a
+     *  machine with PAWLS pawls. */
+    Stepper(Rotor[] rotors, int pawls) {
+        _slots = rotors.length;
+        _size = rotors[0].size();
+        _range = _slots - pawls;
+        _last = _slots - 1;
+        _notch = new boolean[_slots][];
+        _rotates = new boolean[_slots];
+        for (int i = 0; i < _slots; i += 1) {
+            _rotates[i] = rotors[i].rotates();
+            _notch[i] = new boolean[_size];
+            int[] notches = rotors[i].notches();
+            if (notches != null) {
+                for (int p : notches) {
+                    _notch[i][p] = true;
+                }
+            }
+        }
+        _toNotch = new int[_size];
+        for (int p = 0; p < _size; p += 1) {
+            _toNotch[p] = NEVER;
+            for (int d = 0; d < _size; d += 1) {
+                if (_notch[_last][(p + d) % _size]) {
+                    _toNotch[p] = d;
+                    break;
+                }
+            }
+        }
+        _moves = new boolean[_slots];
+        long states = 1;
+        for (int i = _range; i < _slots && states > 0; i += 1) {
+            states = states > Long.MAX_VALUE / _size ? 0 : states * _size;
+        }
+        _codable = states > 0;
+    }
+
+    /** Return the number of slots. */
+    int slots() {
+        return _slots;
+    }
+
+    /** Return the alphabet size. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the slot of the leftmost rotor that may move. */
+    int firstMoving() {
+        return _range;
+    }
+
+    /** Return true iff the rotor in slot K is at a notch when at
+     *  position P. */
+    boolean atNotch(int k, int p) {
+        return _notch[k][p];
+    }
+
+    /** Advance POS by one step, exactly as Machine.convert advances the
+     *  rotors before converting a character.  Return a bit mask of the
+     *  slots that moved (bit K set for slot K); slots beyond the 31st are
+     *  not reported. */
+    int step(int[] pos) {
+        boolean[] moves = _moves;
+        for (int i = _last; i >= 0; i -= 1) {
+            if (_notch[i][pos[i]] && i > _range) {
+                moves[i] = true;
+                int before = i - 1;
+                moves[before] = true;
+                i -= 1;
+                while (i > _range) {
+                    int evenBefore = i - 1;
+                    if (_notch[before][pos[before]] && _rotates[evenBefore]) {
+                        moves[evenBefore] = true;
+                        before = evenBefore;
+                        i -= 1;
+                    } else {
+                        break;
+                    }
+                }
+            } else if (i == _last) {
+                moves[i] = true;
+            }
+        }
+        int mask = 0;
+        for (int i = 0; i < _slots; i += 1) {
+            if (moves[i]) {
+                moves[i] = false;
+                if (_rotates[i]) {
+                    pos[i] = pos[i] + 1 == _size ? 0 : pos[i] + 1;
+                    if (i < Integer.SIZE - 1) {
+                        mask |= 1 << i;
+                    }
+                }
+            }
+        }
+        return mask;
+    }
+
+    /** Return the number of steps, starting from POS, during which only
+     *  the rightmost rotor moves (Long.MAX_VALUE if nothing else ever
+     *  will). */
+    long runLength(int[] pos) {
+        if (_range >= _last) {
+            return Long.MAX_VALUE;
+        }
+        for (int i = _range + 1; i < _last; i += 1) {
+            if (_notch[i][pos[i]]) {
+                return 0;
+            }
+        }
+        int d = _toNotch[pos[_last]];
+        return d == NEVER ? Long.MAX_VALUE : d;
+    }
+
+    /** Advance POS by one step, where RUN is runLength(POS), and return
+     *  the runLength of the new POS.  Cheaper than step when only the
+     *  rightmost rotor moves. */
+    long next(int[] pos, long run) {
+        if (run > 0) {
+            if (_rotates[_last]) {
+                pos[_last] = pos[_last] + 1 == _size ? 0 : pos[_last] + 1;
+            }
+            return run == Long.MAX_VALUE ? run : run - 1;
+        }
+        step(pos);
+        return runLength(pos);
+    }
+
+    /** Advance POS by K >= 0 steps.  Runs during which only the rightmost
+     *  rotor moves are jumped over in one go.  When K is at least
+     *  CYCLE_SEARCH, the states at which other rotors move are recorded
+     *  (up to MAX_SEEN of them) with the number of steps taken to reach
+     *  them; when one recurs, the steps between are a period of the
+     *  machine, and as many whole periods as remain are skipped. */
+    void advance(int[] pos, long k) {
+        HashMap<Long, Long> seen =
+            k >= CYCLE_SEARCH && _codable ? new HashMap<Long, Long>() : null;
+        long done = 0;
+        while (done < k) {
+            long run = runLength(pos);
+            if (run >= k - done) {
+                if (_rotates[_last]) {
+                    pos[_last] = (int) ((pos[_last] + k - done) % _size);
+                }
+                return;
+            } else if (run > 0) {
+                pos[_last] = (int) ((pos[_last] + run) % _size);
+                done += run;
+            } else {
+                if (seen != null) {
+                    Long before = seen.putIfAbsent(code(pos), done);
+                    if (before != null) {
+                        long period = done - before;
+                        done += (k - done) / period * period;
+                        seen = null;
+                        continue;
+                    } else if (seen.size() >= MAX_SEEN) {
+                        seen = null;
+                    }
+                }
+                step(pos);
+                done += 1;
+            }
+        }
+    }
+
+    /** Return a number that identifies the positions of the slots that
+     *  may move in POS (when _codable). */
+    private long code(int[] pos) {
+        long result = 0;
+        for (int i = _last; i >= _range; i -= 1) {
+            result = result * _size + pos[i];
+        }
+        return result;
+    }
+
+    /** Smallest jump for which advance looks for a period. */
+    static final long CYCLE_SEARCH = 1 << 16;
+
+    /** Largest number of states advance records while looking for a
+     *  period. */
+    static final int MAX_SEEN = 1 << 18;
+
+    /** Distance recorded for a rotor position that never reaches a
+     *  notch. */
+    private static final int NEVER = -1;
+
+    /** Number of slots. */
+    private final int _slots;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Slot of the leftmost rotor with a pawl. */
+    private final int _range;
+
+    /** Slot of the rightmost rotor. */
+    private final int _last;
+
+    /** _notch[K][P] is true iff slot K's rotor is at a notch at P. */
+    private final boolean[][] _notch;
+
+    /** Whether the rotor in each slot can move. */
+    private final boolean[] _rotates;
+
+    /** Steps from each position of the rightmost rotor to its next notch
+     *  (NEVER if it has none). */
+    private final int[] _toNotch;
+
+    /** Slots moving in the current step (scratch space for step). */
+    private final boolean[] _moves;
+
+    /** True iff the positions of the slots that may move can be coded
+     *  in a long. */
+    private final boolean _codable;
+
+}
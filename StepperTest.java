@@ -0,0 +1,124 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Stepper class and for jumping
+ *  machines ahead.
+ *  @author Amy Kwon
+ */
+public class StepperTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a machine with the naval rotors, set at SETTING to the
+     *  rotors B, V, II, III and I with four pawls when FOUR, and to the
+     *  rotors B, Beta, I, II and III with three pawls otherwise. */
+    private Machine machine(String setting, boolean four) {
+        if (four) {
+            return TestUtils.machine(5, 4, "B V II III I " + setting);
+        }
+        return TestUtils.machine(5, 3, "B Beta I II III " + setting);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testDoubleStep() {
+        Machine m = machine("AADU", false);
+        Stepper stepper = m.stepper();
+        int[] pos = m.positions();
+        stepper.step(pos);
+        assertArrayEquals(new int[] {0, 0, 0, 3, 21}, pos);
+        stepper.step(pos);
+        assertArrayEquals(new int[] {0, 0, 0, 4, 22}, pos);
+        stepper.step(pos);
+        assertArrayEquals(new int[] {0, 0, 1, 5, 23}, pos);
+    }
+
+    @Test
+    public void testStepMatchesConvert() {
+        Random random = new Random(61);
+        for (boolean four : new boolean[] {false, true}) {
+            Machine m = machine("QEVZ", four);
+            int[] pos = m.positions();
+            for (int i = 0; i < 5000; i += 1) {
+                m.convert(random.nextInt(26));
+                m.stepper().step(pos);
+                assertArrayEquals(m.positions(), pos);
+            }
+        }
+    }
+
+    @Test
+    public void testRunLength() {
+        Machine m = machine("AAAA", false);
+        assertEquals(21, m.stepper().runLength(m.positions()));
+        m = machine("AAEA", false);
+        assertEquals(0, m.stepper().runLength(m.positions()));
+    }
+
+    @Test
+    public void testPeriod() {
+        StateSpace space = new StateSpace(machine("AAAA", false));
+        assertEquals(26 * 25 * 26, space.period());
+        assertEquals(0, space.preperiod());
+        assertEquals(26 * 26 * 26, space.states());
+        space = new StateSpace(machine("AAEA", false));
+        assertEquals(26 * 25 * 26, space.period());
+        assertEquals(1, space.preperiod());
+    }
+
+    @Test
+    public void testAdvance() {
+        Random random = new Random(62);
+        for (boolean four : new boolean[] {false, true}) {
+            for (int trial = 0; trial < 20; trial += 1) {
+                StringBuilder setting = new StringBuilder();
+                for (int i = 0; i < 4; i += 1) {
+                    setting.append((char) ('A' + random.nextInt(26)));
+                }
+                Machine stepped = machine(setting.toString(), four);
+                Machine jumped = machine(setting.toString(), four);
+                int k = random.nextInt(20000);
+                for (int i = 0; i < k; i += 1) {
+                    stepped.convert(0);
+                }
+                jumped.advance(k);
+                assertArrayEquals(stepped.positions(), jumped.positions());
+                assertEquals(stepped.offset(), jumped.offset());
+                for (int c = 0; c < 26; c += 1) {
+                    assertEquals(stepped.convert(c), jumped.convert(c));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAdvanceFar() {
+        Random random = new Random(63);
+        for (boolean four : new boolean[] {false, true}) {
+            for (String setting : new String[] {"AAAA", "AAEA", "QEVZ"}) {
+                Machine m = machine(setting, four);
+                StateSpace space = new StateSpace(m);
+                long k = 4_000_000_000L + random.nextInt(1 << 20);
+                m.advance(k);
+                int[] expected = space.start();
+                m.stepper().advance(expected, space.row(k));
+                assertArrayEquals(expected, m.positions());
+                assertEquals(k, m.offset());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+package enigma;
+
+/** The engine that converts with a table of the permutation applied at
+ *  every state a machine reaches under its current key (see
+ *  StateSpace.table), so that each character costs one lookup.  A table
+ *  is only built for a segment that has already run as many characters
+ *  as building it could cost (the alphabet size times the number of
+ *  states of the moving slots), and only if it fits in the engine's
+ *  memory budget; otherwise, characters are converted by runs (see
+ *  RunLengthEngine).
+ *  @author Amy Kwon
+ */
+class TableEngine implements Engine {
+
+    /** The name of this engine. */
+    static final String NAME = "table";
+
+    /** Default memory budget for a table, in bytes. */
+    static final long BUDGET = 1L << 26;
+
+    /** An engine whose tables take at most BUDGET bytes. */
+    TableEngine() {
+        this(BUDGET);
+    }
+
+    /** An engine whose tables take at most BUDGET bytes. */
+    TableEngine(long budget) {
+        _budget = budget;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Engine fork() {
+        return new TableEngine(_budget);
+    }
+
+    @Override
+    public void convert(Machine machine, int[] buf, int from, int len) {
+        char[] table = table(machine, len);
+        if (table == null) {
+            _fallback.convert(machine, buf, from, len);
+            return;
+        }
+        long j = machine.offset() - _base;
+        int n = machine.alphabet().size();
+        int rows = (int) _space.reachable();
+        int pre = (int) _space.preperiod();
+        int row = (int) _space.row(j);
+        for (int i = from; i < from + len; i += 1) {
+            buf[i] = table[row * n + buf[i]];
+            row += 1;
+            if (row == rows) {
+                row = pre;
+            }
+        }
+        int[] pos = machine.positions();
+        _space.decode(_space.state(j + len), pos);
+        machine.moved(pos, len);
+    }
+
+    /** Return the table with which to convert the next LEN characters
+     *  with MACHINE, or null if there is none. */
+    private char[] table(Machine machine, int len) {
+        if (_space != null && matches(machine)) {
+            return _table;
+        }
+        _space = null;
+        _table = null;
+        Stepper stepper = machine.stepper();
+        long states = StateSpace.states(stepper);
+        long length = Math.max(machine.offset(), len);
+        if (states > Long.MAX_VALUE / stepper.size()
+            || length < states * stepper.size()) {
+            return null;
+        }
+        _space = new StateSpace(machine);
+        _base = machine.offset();
+        _rotors = machine.activeRotors();
+        _ring = machine.ring();
+        _plugboard = machine.plugboard();
+        _table = _space.table(_budget);
+        return _table;
+    }
+
+    /** Return true iff MACHINE has the key and the state for which
+     *  _space was found. */
+    private boolean matches(Machine machine) {
+        Rotor[] rotors = machine.activeRotors();
+        if (machine.ring() != _ring || machine.plugboard() != _plugboard
+            || rotors.length != _rotors.length
+            || machine.offset() < _base) {
+            return false;
+        }
+        for (int k = 0; k < rotors.length; k += 1) {
+            if (rotors[k] != _rotors[k]) {
+                return false;
+            }
+        }
+        int[] pos = machine.positions();
+        int[] start = _space.start();
+        for (int k = 0; k < machine.stepper().firstMoving(); k += 1) {
+            if (pos[k] != start[k]) {
+                return false;
+            }
+        }
+        return _space.code(pos) == _space.state(machine.offset() - _base);
+    }
+
+    /** Largest size of a table, in bytes. */
+    private final long _budget;
+
+    /** Engine used when there is no table. */
+    private final Engine _fallback = new RunLengthEngine();
+
+    /** The states under the current key, or null. */
+    private StateSpace _space;
+
+    /** The table for _space, or null if it is too large. */
+    private char[] _table;
+
+    /** Offset of the machine at the start of _space. */
+    private long _base;
+
+    /** Rotors for which _space was found. */
+    private Rotor[] _rotors;
+
+    /** Ring settings for which _space was found. */
+    private int[] _ring;
+
+    /** Plugboard for which _space was found. */
+    private Permutation _plugboard;
+
+}
@@ -0,0 +1,160 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/** The rotor data and helpers shared by the JUnit tests: the naval
+ *  rotors of the default configuration (but for VI, which the tests use
+ *  as a rotor that a machine lacks), and machines built from them.
+ *  @author Amy Kwon
+ */
+class TestUtils {
+
+    /** The alphabet of the naval rotors, as a string. */
+    static final String UPPER_STRING = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    /** The alphabet of the naval rotors. */
+    static final Alphabet UPPER = new Alphabet(UPPER_STRING);
+
+    /** Names of the naval reflectors. */
+    static final String[] NAVAL_REFLECTORS = {"B", "C"};
+
+    /** Names of the naval fixed rotors. */
+    static final String[] NAVAL_FIXED = {"Beta", "Gamma"};
+
+    /** Names of the naval moving rotors. */
+    static final String[] NAVAL_MOVING = {"I", "II", "III", "IV", "V"};
+
+    /** Notches of the rotors of NAVAL_MOVING, in the same order. */
+    static final String[] NAVAL_NOTCHES = {"Q", "E", "V", "J", "Z"};
+
+    /** Cycles of the permutations of the naval rotors, by name. */
+    static final HashMap<String, String> NAVALA =
+        new HashMap<String, String>();
+
+    static {
+        NAVALA.put("B", "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) "
+                   + "(RX) (SZ) (TV)");
+        NAVALA.put("C", "(AR) (BD) (CO) (EJ) (FN) (GT) (HK) (IV) (LM) (PW) "
+                   + "(QZ) (SX) (UY)");
+        NAVALA.put("Beta", "(ALBEVFCYODJWUGNMQTZSKPR) (HIX)");
+        NAVALA.put("Gamma", "(AFNIRLBSQWVXGUZDKMTPCOJHE) (Y)");
+        NAVALA.put("I", "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)");
+        NAVALA.put("II", "(FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)");
+        NAVALA.put("III", "(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)");
+        NAVALA.put("IV", "(AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)");
+        NAVALA.put("V", "(AVOLDRWFIESCUPBJXTHMZNGK) (Q)");
+    }
+
+    /** UPPER_STRING as mapped by each naval rotor at setting A, by
+     *  name. */
+    static final HashMap<String, String> NAVALA_MAP = mappings(0);
+
+    /** UPPER_STRING as mapped by each naval rotor at setting B, by
+     *  name. */
+    static final HashMap<String, String> NAVALB_MAP = mappings(1);
+
+    /** UPPER_STRING as mapped by each naval rotor at setting Z, by
+     *  name. */
+    static final HashMap<String, String> NAVALZ_MAP =
+        mappings(UPPER_STRING.length() - 1);
+
+    /** Return a message for a failure of the test TESTID, formatted from
+     *  FORMAT and ARGS as by String.format. */
+    static String msg(String testId, String format, Object... args) {
+        return String.format("%s (%s)", String.format(format, args), testId);
+    }
+
+    /** Return a machine with SLOTS slots, PAWLS pawls and all the naval
+     *  rotors, none of them inserted. */
+    static Machine navalMachine(int slots, int pawls) {
+        Alphabet alpha = new Alphabet();
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        for (String name : NAVAL_REFLECTORS) {
+            rotors.add(new Reflector(name, new Permutation(NAVALA.get(name),
+                                                           alpha)));
+        }
+        for (String name : NAVAL_FIXED) {
+            rotors.add(new FixedRotor(name, new Permutation(NAVALA.get(name),
+                                                            alpha)));
+        }
+        for (int k = 0; k < NAVAL_MOVING.length; k += 1) {
+            String name = NAVAL_MOVING[k];
+            rotors.add(new MovingRotor(name, new Permutation(
+                NAVALA.get(name), alpha), NAVAL_NOTCHES[k]));
+        }
+        return new Machine(alpha, slots, pawls, rotors);
+    }
+
+    /** Return a machine with SLOTS slots, PAWLS pawls and all the naval
+     *  rotors, set to KEY (a settings line without its "*"). */
+    static Machine machine(int slots, int pawls, String key) {
+        Machine m = navalMachine(slots, pawls);
+        new KeySwitcher(m).apply(key);
+        return m;
+    }
+
+    /** Return a machine with five slots, three pawls and all the naval
+     *  rotors, set to rotors B, Beta, I, II and III at SETTING, with ring
+     *  settings RING (or none if null) and plugboard PLUGBOARD. */
+    static Machine machine(String setting, String ring, String plugboard) {
+        return machine(5, 3, "B Beta I II III " + setting
+                       + (ring == null ? "" : " " + ring) + " " + plugboard);
+    }
+
+    /** Delete FILE and, if it is a directory, everything in it. */
+    static void delete(File file) throws IOException {
+        if (Files.isDirectory(file.toPath(), LinkOption.NOFOLLOW_LINKS)) {
+            for (File child : file.listFiles()) {
+                delete(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+
+    /** Temporary directories made for a test, to be deleted after it
+     *  (by a method marked @After). */
+    static class TempDirs {
+
+        /** Return a new empty temporary directory whose name starts with
+         *  PREFIX. */
+        File make(String prefix) throws IOException {
+            File result = Files.createTempDirectory(prefix).toFile();
+            _dirs.add(result);
+            return result;
+        }
+
+        /** Delete the directories I made, and all they hold. */
+        void delete() throws IOException {
+            for (File dir : _dirs) {
+                TestUtils.delete(dir);
+            }
+            _dirs.clear();
+        }
+
+        /** The directories I made and have not yet deleted. */
+        private final ArrayList<File> _dirs = new ArrayList<File>();
+    }
+
+    /** Return UPPER_STRING as mapped by each naval rotor at setting
+     *  POSN, by name. */
+    private static HashMap<String, String> mappings(int posn) {
+        HashMap<String, String> result = new HashMap<String, String>();
+        int n = UPPER_STRING.length();
+        for (String name : NAVALA.keySet()) {
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            char[] mapped = new char[n];
+            for (int c = 0; c < n; c += 1) {
+                int x = perm.permute((c + posn) % n) - posn;
+                mapped[c] = UPPER_STRING.charAt(x < 0 ? x + n : x);
+            }
+            result.put(name, new String(mapped));
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,496 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Triage of intercepted traffic: statistics of many ciphertext
+ *  messages, ranked to show which are most worth attacking.  Message
+ *  number K (from 1) of a file in the input format of Main is the text
+ *  following its Kth settings line (whose content is ignored), and
+ *  message 0 is any text before the first; blanks and characters
+ *  outside the alphabet are skipped, and empty messages are left out.
+ *  Each file is read once, as a stream, and gives for each of its
+ *  messages
+ *      its letter counts and index of coincidence, as a multiple of that
+ *          of uniformly random text (about 1 for Enigma output, higher
+ *          for text in the clear or from a weak key);
+ *      the number of repeated GRAM-grams (occurrences beyond the first),
+ *          which suggest cribs or a repeated key; and
+ *      its first DEPTH_PREFIX characters.
+ *  Afterwards, every pair of messages is compared letter by letter over
+ *  their common length: messages in depth (sent with the same key)
+ *  coincide as often as the plaintexts do, far more often than the
+ *  inverse of the alphabet size.  Since the number of pairs grows as the
+ *  square of the number of messages, the z-score a pair needs to be
+ *  reported in depth grows with it, so that all the pairs of unrelated
+ *  messages together are unlikely to yield any (see depthThreshold).
+ *  Each statistic is also given as a z-score against uniformly random
+ *  text; a message's score is the sum of its positive z-scores for
+ *  index of coincidence, repeats and its best partner in depth, and the
+ *  report lists the messages by score, then the pairs in depth.  Files,
+ *  and rows of the pair comparisons, are processed in parallel,
+ *  counting in arrays indexed by alphabet index.
+ *
+ *  As a command, the arguments
+ *      --triage CONFIG SOURCE [THREADS]
+ *  print the report for the files in SOURCE (every file of a directory,
+ *  or a single file) with the alphabet of CONFIG, using at most THREADS
+ *  (by default, the number of processors) threads.
+ *  @author Amy Kwon
+ */
+class Triage {
+
+    /** Command-line option that selects triage. */
+    static final String OPTION = "--triage";
+
+    /** Length of the n-grams whose repeats are counted. */
+    static final int GRAM = 3;
+
+    /** Number of characters of each message compared for depth. */
+    static final int DEPTH_PREFIX = 1 << 12;
+
+    /** Least z-score of a pair reported to be in depth, however few
+     *  pairs are compared. */
+    static final double DEPTH_SCORE = 3.0;
+
+    /** Largest chance that any pair of unrelated messages is reported
+     *  to be in depth. */
+    static final double FALSE_DEPTH = 0.01;
+
+    /** The statistics of one message. */
+    static class Message {
+
+        /** Message number NUMBER of FILE, of an alphabet of
+         *  SIZE characters. */
+        Message(File file, int number, int size) {
+            _file = file;
+            _number = number;
+            _counts = new long[size];
+        }
+
+        /** Return the name of this message: its file and number. */
+        String name() {
+            return _file.getPath() + "#" + _number;
+        }
+
+        /** Return my number of characters. */
+        long length() {
+            return _length;
+        }
+
+        /** Return the number of occurrences of character C. */
+        long count(int c) {
+            return _counts[c];
+        }
+
+        /** Return my index of coincidence, as a multiple of that of
+         *  uniformly random text. */
+        double ioc() {
+            double n = _counts.length;
+            if (_length < 2) {
+                return 0.0;
+            }
+            return coincidences() / (_length * (_length - 1) / 2.0) * n;
+        }
+
+        /** Return the number of repeated GRAM-grams. */
+        long repeats() {
+            return _repeats;
+        }
+
+        /** Return the best z-score of a pair in depth that includes me,
+         *  or 0 if there is none. */
+        double depth() {
+            return _depth;
+        }
+
+        /** Return my score: the sum of the positive z-scores of my index
+         *  of coincidence, repeats and depth. */
+        double score() {
+            return Math.max(0, iocScore()) + Math.max(0, repeatScore())
+                + Math.max(0, _depth);
+        }
+
+        /** Return the number of pairs of my characters that are equal. */
+        private double coincidences() {
+            double result = 0;
+            for (long f : _counts) {
+                result += f * (f - 1) / 2.0;
+            }
+            return result;
+        }
+
+        /** Return the z-score of coincidences(). */
+        private double iocScore() {
+            double p = 1.0 / _counts.length;
+            double mean = _length * (_length - 1) / 2.0 * p;
+            return mean == 0 ? 0 : (coincidences() - mean)
+                / Math.sqrt(mean * (1 - p));
+        }
+
+        /** Return the z-score of repeats(), against the number expected
+         *  of as many GRAM-grams drawn uniformly at random. */
+        private double repeatScore() {
+            double cells = Math.pow(_counts.length, GRAM);
+            double grams = Math.max(0, _length - GRAM + 1);
+            double mean = grams - cells
+                * -Math.expm1(grams * Math.log1p(-1 / cells));
+            return (_repeats - mean) / Math.sqrt(Math.max(mean, 1));
+        }
+
+        /** The file that holds me. */
+        private final File _file;
+
+        /** My number in _file. */
+        private final int _number;
+
+        /** Count of each character, by alphabet index. */
+        private final long[] _counts;
+
+        /** Number of characters. */
+        private long _length;
+
+        /** Number of repeated GRAM-grams. */
+        private long _repeats;
+
+        /** My first characters, as alphabet indices. */
+        private char[] _prefix = new char[0];
+
+        /** Best z-score of a pair in depth with me. */
+        private double _depth;
+    }
+
+    /** Two messages in depth. */
+    static class Pair {
+
+        /** Messages A and B, whose z-score of coincidences is SCORE over
+         *  OVERLAP characters. */
+        Pair(Message a, Message b, int overlap, double score) {
+            this.a = a;
+            this.b = b;
+            this.overlap = overlap;
+            this.score = score;
+        }
+
+        /** The messages. */
+        final Message a, b;
+
+        /** Number of characters compared. */
+        final int overlap;
+
+        /** The z-score of the number of coincidences. */
+        final double score;
+    }
+
+    /** Triage of messages in ALPHA, using THREADS threads. */
+    Triage(Alphabet alpha, int threads) {
+        _alphabet = alpha;
+        _threads = threads;
+        int n = alpha.size();
+        if (Math.pow(n, GRAM) > MAX_GRAMS) {
+            throw error("alphabet too large for triage");
+        }
+        char top = 0;
+        for (int c = 0; c < n; c += 1) {
+            top = (char) Math.max(top, alpha.toChar(c));
+        }
+        _index = new int[top + 1];
+        Arrays.fill(_index, -1);
+        for (int c = 0; c < n; c += 1) {
+            _index[alpha.toChar(c)] = c;
+        }
+    }
+
+    /** Perform the triage given by ARGS (see the class comment). */
+    static void triage(String[] args) {
+        if (args.length < 3 || args.length > 4) {
+            throw error("Usage: --triage CONFIG SOURCE [THREADS]");
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 3) {
+            try {
+                threads = Integer.parseInt(args[3]);
+            } catch (NumberFormatException excp) {
+                threads = 0;
+            }
+            if (threads < 1) {
+                throw error("bad thread count: %s", args[3]);
+            }
+        }
+        Triage triage =
+            new Triage(Main.configure(args[1]).alphabet(), threads);
+        List<Message> messages = triage.scan(files(new File(args[2])));
+        System.out.print(report(messages, triage.depths(messages)));
+    }
+
+    /** Return the statistics of the messages in FILES, in order. */
+    List<Message> scan(List<File> files) {
+        List<Message> result = new ArrayList<Message>();
+        for (List<Message> part : run(files, this::scan)) {
+            result.addAll(part);
+        }
+        return result;
+    }
+
+    /** Return the pairs of MESSAGES in depth, setting the depth of each
+     *  message, in decreasing order of score. */
+    List<Pair> depths(List<Message> messages) {
+        List<Integer> rows = new ArrayList<Integer>();
+        for (int i = 0; i < messages.size(); i += 1) {
+            rows.add(i);
+        }
+        double threshold = depthThreshold(pairs(messages.size()));
+        List<Pair> result = new ArrayList<Pair>();
+        for (List<Pair> row
+                 : run(rows, i -> depths(messages, i, threshold))) {
+            for (Pair pair : row) {
+                pair.a._depth = Math.max(pair.a._depth, pair.score);
+                pair.b._depth = Math.max(pair.b._depth, pair.score);
+                result.add(pair);
+            }
+        }
+        result.sort(Comparator.comparingDouble((Pair p) -> -p.score));
+        return result;
+    }
+
+    /** Return the number of pairs of MESSAGES messages. */
+    static long pairs(long messages) {
+        return messages * (messages - 1) / 2;
+    }
+
+    /** Return the least z-score of a pair reported to be in depth when
+     *  PAIRS pairs are compared: the z at which the chance that a pair
+     *  of unrelated messages scores z or more (its coincidences being
+     *  about normally distributed) is FALSE_DEPTH / PAIRS, so that the
+     *  chance of any of them doing so is at most FALSE_DEPTH, but no less
+     *  than DEPTH_SCORE.  The chance is bounded by the normal density at
+     *  z divided by z, and z is found where that bound is met, by
+     *  iterating to its fixed point. */
+    static double depthThreshold(long pairs) {
+        double tail = FALSE_DEPTH / Math.max(1, pairs);
+        double z = DEPTH_SCORE;
+        for (int k = 0; k < THRESHOLD_ITERATIONS; k += 1) {
+            z = Math.sqrt(-2 * Math.log(tail * z * Math.sqrt(2 * Math.PI)));
+        }
+        return Math.max(DEPTH_SCORE, z);
+    }
+
+    /** Return the report of MESSAGES and PAIRS in depth among them. */
+    static String report(List<Message> messages, List<Pair> pairs) {
+        List<Message> ranked = new ArrayList<Message>(messages);
+        ranked.sort(Comparator.comparingDouble((Message m) -> -m.score())
+                    .thenComparingLong(m -> -m.length()));
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("%5s %8s %9s %6s %8s %7s  %s%n",
+                                    "rank", "score", "length", "ioc",
+                                    "repeats", "depth", "message"));
+        for (int i = 0; i < ranked.size(); i += 1) {
+            Message m = ranked.get(i);
+            result.append(String.format("%5d %8.2f %9d %6.3f %8d %7.2f  "
+                                        + "%s%n", i + 1, m.score(),
+                                        m.length(), m.ioc(), m.repeats(),
+                                        m.depth(), m.name()));
+        }
+        result.append(String.format("%d pairs in depth (z-score at least "
+                                    + "%.2f)%n", pairs.size(),
+                                    depthThreshold(pairs(messages.size()))));
+        for (Pair pair : pairs) {
+            result.append(String.format("%8.2f %6d  %s %s%n", pair.score,
+                                        pair.overlap, pair.a.name(),
+                                        pair.b.name()));
+        }
+        return result.toString();
+    }
+
+    /** Return the statistics of the messages in FILE. */
+    private List<Message> scan(File file) {
+        List<Message> result = new ArrayList<Message>();
+        int n = _alphabet.size();
+        int cells = (int) Math.pow(n, GRAM);
+        int[] grams = new int[cells];
+        int[] used = new int[TRACKED];
+        char[] prefix = new char[DEPTH_PREFIX];
+        Message message = new Message(file, 0, n);
+        int gram = 0, kept = 0, distinct = 0;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                 new FileInputStream(file), CHARSET), BUFFER)) {
+            while (true) {
+                String line = in.readLine();
+                if (line == null || KeySwitcher.settingsStart(line) >= 0) {
+                    if (message._length > 0) {
+                        message._repeats =
+                            Math.max(0, message._length - GRAM + 1)
+                            - distinct;
+                        message._prefix = Arrays.copyOf(prefix, kept);
+                        result.add(message);
+                    }
+                    if (line == null) {
+                        break;
+                    }
+                    if (distinct > used.length) {
+                        Arrays.fill(grams, 0);
+                    } else {
+                        for (int k = 0; k < distinct; k += 1) {
+                            grams[used[k]] = 0;
+                        }
+                    }
+                    message = new Message(file, message._number + 1, n);
+                    gram = kept = distinct = 0;
+                    continue;
+                }
+                for (int i = 0; i < line.length(); i += 1) {
+                    char ch = line.charAt(i);
+                    int c = ch < _index.length ? _index[ch] : -1;
+                    if (c < 0) {
+                        continue;
+                    }
+                    message._counts[c] += 1;
+                    message._length += 1;
+                    if (kept < DEPTH_PREFIX) {
+                        prefix[kept] = (char) c;
+                        kept += 1;
+                    }
+                    gram = (gram * n + c) % cells;
+                    if (message._length >= GRAM) {
+                        if (grams[gram] == 0) {
+                            if (distinct < used.length) {
+                                used[distinct] = gram;
+                            }
+                            distinct += 1;
+                        }
+                        grams[gram] += 1;
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+        return result;
+    }
+
+    /** Return the pairs in depth of message I of MESSAGES with the
+     *  messages after it: those whose z-score is at least THRESHOLD. */
+    private List<Pair> depths(List<Message> messages, int i,
+                              double threshold) {
+        List<Pair> result = new ArrayList<Pair>();
+        double p = 1.0 / _alphabet.size();
+        char[] a = messages.get(i)._prefix;
+        for (int j = i + 1; j < messages.size(); j += 1) {
+            char[] b = messages.get(j)._prefix;
+            int overlap = Math.min(a.length, b.length);
+            int same = 0;
+            for (int k = 0; k < overlap; k += 1) {
+                if (a[k] == b[k]) {
+                    same += 1;
+                }
+            }
+            if (overlap > 0) {
+                double score = (same - overlap * p)
+                    / Math.sqrt(overlap * p * (1 - p));
+                if (score >= threshold) {
+                    result.add(new Pair(messages.get(i), messages.get(j),
+                                        overlap, score));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** A task computing a result from an item. */
+    private interface Task<T, R> {
+        /** Return the result for ITEM. */
+        R apply(T item);
+    }
+
+    /** Return the results of TASK for each of ITEMS, in order, computed
+     *  on my threads. */
+    private <T, R> List<R> run(List<T> items, Task<T, R> task) {
+        ExecutorService pool = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(_threads, items.size())));
+        try {
+            List<Future<R>> futures = new ArrayList<Future<R>>();
+            for (T item : items) {
+                futures.add(pool.submit(() -> task.apply(item)));
+            }
+            List<R> result = new ArrayList<R>();
+            for (Future<R> future : futures) {
+                result.add(future.get());
+            }
+            return result;
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("triage failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            throw error("triage interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return the files named by SOURCE: itself, or the files in it if it
+     *  is a directory, in order of name. */
+    private static List<File> files(File source) {
+        List<File> result = new ArrayList<File>();
+        if (source.isDirectory()) {
+            File[] files = source.listFiles();
+            if (files == null) {
+                throw error("could not read %s", source);
+            }
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.isFile()) {
+                    result.add(file);
+                }
+            }
+        } else {
+            result.add(source);
+        }
+        if (result.isEmpty()) {
+            throw error("no files in %s", source);
+        }
+        return result;
+    }
+
+    /** Number of iterations that find depthThreshold. */
+    private static final int THRESHOLD_ITERATIONS = 16;
+
+    /** Largest number of distinct GRAM-grams of an alphabet. */
+    private static final double MAX_GRAMS = 1 << 24;
+
+    /** Number of distinct GRAM-grams of a message remembered so that
+     *  only their entries of the table of GRAM-grams need be cleared
+     *  for the next message. */
+    private static final int TRACKED = 1 << 12;
+
+    /** Size of the buffer for reading a file, in characters. */
+    private static final int BUFFER = 1 << 16;
+
+    /** Encoding of input files. */
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    /** Alphabet of the messages. */
+    private final Alphabet _alphabet;
+
+    /** Alphabet index of each character, or -1 if not in _alphabet. */
+    private final int[] _index;
+
+    /** Number of threads. */
+    private final int _threads;
+
+}
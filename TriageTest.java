@@ -0,0 +1,107 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the Triage class.
+ *  @author Amy Kwon
+ */
+public class TriageTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Relative frequencies of the letters A-Z in English text, in
+     *  hundredths of a percent. */
+    static final int[] ENGLISH = {
+        817, 149, 278, 425, 1270, 223, 202, 609, 697, 15, 77, 403, 241,
+        675, 751, 193, 10, 599, 633, 906, 276, 98, 236, 15, 197, 7,
+    };
+
+    /** Return a letter drawn from RANDOM with the frequencies ENGLISH. */
+    private int english(Random random) {
+        int total = 0;
+        for (int f : ENGLISH) {
+            total += f;
+        }
+        int r = random.nextInt(total);
+        int c = 0;
+        while (r >= ENGLISH[c]) {
+            r -= ENGLISH[c];
+            c += 1;
+        }
+        return c;
+    }
+
+    /** Return a message of LENGTH letters: letters drawn from RANDOM
+     *  with English frequencies, each shifted by the corresponding
+     *  element of KEY (as messages sent with one key are all shifted
+     *  alike), or uniformly random letters if KEY is null. */
+    private String message(Random random, int length, int[] key) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            int c = key == null ? random.nextInt(26)
+                : (english(random) + key[i]) % 26;
+            result.append((char) ('A' + c));
+            if (i % 5 == 4) {
+                result.append(i % 50 == 49 ? '\n' : ' ');
+            }
+        }
+        return result.append('\n').toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testThreshold() {
+        assertEquals(Triage.DEPTH_SCORE, Triage.depthThreshold(1), 1e-9);
+        double last = 0;
+        for (long pairs = 1; pairs < 1L << 40; pairs *= 10) {
+            double z = Triage.depthThreshold(pairs);
+            assertTrue(z >= last);
+            last = z;
+        }
+        assertTrue(Triage.depthThreshold(Triage.pairs(200)) > 4.5);
+    }
+
+    @Test
+    public void testPlantedDepth() throws IOException {
+        Random random = new Random(36);
+        int messages = 200, length = 3000;
+        int[] key = new int[length];
+        for (int i = 0; i < length; i += 1) {
+            key[i] = random.nextInt(26);
+        }
+        int first = 37, second = 151;
+        StringBuilder text = new StringBuilder();
+        for (int k = 1; k <= messages; k += 1) {
+            text.append("* B Beta I II III AAAA\n");
+            boolean planted = k == first || k == second;
+            text.append(message(random, length, planted ? key : null));
+        }
+        File file = File.createTempFile("triage", ".in");
+        file.deleteOnExit();
+        Files.write(file.toPath(), text.toString().getBytes());
+
+        Triage triage = new Triage(new Alphabet(), 4);
+        List<Triage.Message> scanned = triage.scan(List.of(file));
+        assertEquals(messages, scanned.size());
+        List<Triage.Pair> pairs = triage.depths(scanned);
+        assertEquals(1, pairs.size());
+        assertEquals(file.getPath() + "#" + first, pairs.get(0).a.name());
+        assertEquals(file.getPath() + "#" + second, pairs.get(0).b.name());
+        assertEquals(length, pairs.get(0).overlap);
+    }
+
+}